@@ -37,6 +37,8 @@ import org.identityconnectors.framework.common.exceptions.ConfigurationException
 import org.identityconnectors.framework.spi.AbstractConfiguration;
 import org.identityconnectors.framework.spi.ConfigurationProperty;
 
+import com.evolveum.polygon.csvfile.sync.StreamingDiff;
+
 /**
  * Extends the {@link AbstractConfiguration} class to provide all the necessary
  * parameters to initialize the CSVFile Connector.
@@ -60,6 +62,7 @@ public class CSVFileConfiguration extends AbstractConfiguration {
     private String passwordAttribute = null;
     private boolean alwaysQualify = true;
     private int preserveLastTokens = 10;
+    private int syncSortBufferSize = StreamingDiff.DEFAULT_BUFFER_SIZE;
 
 	@ConfigurationProperty(displayMessageKey = "UI_FLAT_FILE_PATH",
 			helpMessageKey = "UI_FLAT_FILE_PATH_HELP", required = true, order = 1)
@@ -174,6 +177,16 @@ public class CSVFileConfiguration extends AbstractConfiguration {
 		this.preserveLastTokens = preserveLastTokens;
 	}
 
+	@ConfigurationProperty(displayMessageKey = "UI_SYNC_SORT_BUFFER_SIZE",
+			helpMessageKey = "UI_SYNC_SORT_BUFFER_SIZE_HELP", order = 12)
+	public int getSyncSortBufferSize() {
+		return syncSortBufferSize;
+	}
+
+	public void setSyncSortBufferSize(int syncSortBufferSize) {
+		this.syncSortBufferSize = syncSortBufferSize;
+	}
+
 	/**
      * {@inheritDoc}
      */
@@ -204,6 +217,10 @@ public class CSVFileConfiguration extends AbstractConfiguration {
             throw new ConfigurationException("Field delimiter '" + fieldDelimiter + "' can't be equal to value qualifier.");
         }
 
+        if (syncSortBufferSize <= 0) {
+            throw new ConfigurationException("Sync sort buffer size must be greater than zero.");
+        }
+
         if (StringUtil.isEmpty(uniqueAttribute)) {
             throw new ConfigurationException("Unique attribute is not defined.");
         }
@@ -90,6 +90,7 @@ import org.identityconnectors.framework.spi.ConnectorClass;
 import org.identityconnectors.framework.spi.operations.AuthenticateOp;
 import org.identityconnectors.framework.spi.operations.CreateOp;
 import org.identityconnectors.framework.spi.operations.DeleteOp;
+import org.identityconnectors.framework.spi.operations.GetOp;
 import org.identityconnectors.framework.spi.operations.ResolveUsernameOp;
 import org.identityconnectors.framework.spi.operations.SchemaOp;
 import org.identityconnectors.framework.spi.operations.ScriptOnConnectorOp;
@@ -100,8 +101,10 @@ import org.identityconnectors.framework.spi.operations.TestOp;
 import org.identityconnectors.framework.spi.operations.UpdateAttributeValuesOp;
 
 import com.evolveum.polygon.csvfile.sync.Change;
-import com.evolveum.polygon.csvfile.sync.InMemoryDiff;
+import com.evolveum.polygon.csvfile.sync.ChangeHandler;
+import com.evolveum.polygon.csvfile.sync.StreamingDiff;
 import com.evolveum.polygon.csvfile.util.CSVSchemaException;
+import com.evolveum.polygon.csvfile.util.CsvIndex;
 import com.evolveum.polygon.csvfile.util.CsvItem;
 import com.evolveum.polygon.csvfile.util.TokenFileNameFilter;
 import com.evolveum.polygon.csvfile.util.Utils;
@@ -126,7 +129,7 @@ import java.util.regex.Pattern;
 @ConnectorClass(displayNameKey = "UI_CONNECTOR_NAME",
 configurationClass = CSVFileConfiguration.class)
 public class CSVFileConnector implements Connector, AuthenticateOp, ResolveUsernameOp, CreateOp, DeleteOp, SchemaOp,
-        SearchOp<String>, SyncOp, TestOp, UpdateAttributeValuesOp, ScriptOnResourceOp, ScriptOnConnectorOp {
+        SearchOp<String>, GetOp, SyncOp, TestOp, UpdateAttributeValuesOp, ScriptOnResourceOp, ScriptOnConnectorOp {
 
     /**
      * Setup logging for the {@link CSVFileConnector}.
@@ -419,6 +422,123 @@ public class CSVFileConnector implements Connector, AuthenticateOp, ResolveUsern
         log.ok("executeQuery::end");
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options) {
+        final ConnectorObject[] result = new ConnectorObject[1];
+        getObjects(objectClass, Collections.singleton(uid), new ResultsHandler() {
+
+            @Override
+            public boolean handle(ConnectorObject object) {
+                result[0] = object;
+                return false;
+            }
+        }, options);
+
+        return result[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The records are read by their offsets in the file from {@link CsvIndex}, the file is scanned only when the
+     * index is built.
+     */
+    public void getObjects(ObjectClass objectClass, Collection<Uid> uids, ResultsHandler handler,
+            OperationOptions options) {
+        log.ok("getObjects::begin");
+        isAccount(objectClass);
+        notNull(handler, "Results handled object can't be null.");
+
+        LOCK.readLock().lock();
+        try {
+            if (CsvIndex.isIndexable(configuration.getEncoding())) {
+                getIndexedObjects(uids, handler);
+            } else {
+                getScannedObjects(uids, handler);
+            }
+        } catch (Exception ex) {
+            handleGenericException(ex, "Can't get objects");
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+        log.ok("getObjects::end");
+    }
+
+    private void getIndexedObjects(Collection<Uid> uids, ResultsHandler handler) throws IOException {
+        final CsvIndex index = CsvIndex.get(configuration, linePattern);
+        List<String> values = new ArrayList<String>();
+        for (Uid uid : uids) {
+            values.add(uid.getUidValue());
+        }
+        // read the file forward
+        Collections.sort(values, new Comparator<String>() {
+
+            @Override
+            public int compare(String value1, String value2) {
+                return Long.compare(index.getOffset(value1), index.getOffset(value2));
+            }
+        });
+
+        RandomAccessFile input = new RandomAccessFile(configuration.getFilePath(), "r");
+        try {
+            CsvIndex current = index;
+            for (String value : values) {
+                CsvIndex.Line line = current.find(value, input, linePattern, configuration);
+                if (line == null && current.getOffset(value) >= 0) {
+                    // the file changed since the index was built
+                    CsvIndex.rebuild(configuration);
+                    current = CsvIndex.get(configuration, linePattern);
+                    line = current.find(value, input, linePattern, configuration);
+                }
+                if (line == null) {
+                    continue;
+                }
+
+                CsvItem item = Utils.createCsvItem(current.getHeader(), line.getText(), line.getLineNumber(),
+                        linePattern, configuration);
+                if (!handler.handle(createConnectorObject(current.getHeader(), item))) {
+                    break;
+                }
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private void getScannedObjects(Collection<Uid> uids, ResultsHandler handler) throws IOException {
+        Set<String> values = new HashSet<String>();
+        for (Uid uid : uids) {
+            values.add(uid.getUidValue());
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = createReader(configuration);
+            List<String> header = readHeader(reader, linePattern, configuration);
+            int uniqueIndex = header.indexOf(configuration.getUniqueAttribute());
+
+            String line;
+            int lineNumber = 1;
+            while (!values.isEmpty() && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (isEmptyOrComment(line)) {
+                    continue;
+                }
+                CsvItem item = Utils.createCsvItem(header, line, lineNumber, linePattern, configuration);
+                // the first record of the value only, like a search
+                if (values.remove(item.getAttribute(uniqueIndex))
+                        && !handler.handle(createConnectorObject(header, item))) {
+                    break;
+                }
+            }
+        } finally {
+            closeReader(reader, null);
+        }
+    }
+
     /**
      * method use when there is not old sync files - no sync token available. New sync file with token (time) is
      * created. It means we're synchronizing from now on.
@@ -486,7 +606,7 @@ public class CSVFileConnector implements Connector, AuthenticateOp, ResolveUsern
         log.ok("sync::end");
     }
 
-    private void syncReal(long tokenLongValue, SyncResultsHandler handler) {
+    private void syncReal(long tokenLongValue, final SyncResultsHandler handler) {
         long timestamp = configuration.getFilePath().lastModified();
         log.ok("Next last sync token value will be {0} ({1}).", timestamp, FORMAT.format(new Date(timestamp)));
         File syncFile = new File(configuration.getFilePath().getParentFile(),
@@ -503,25 +623,24 @@ public class CSVFileConnector implements Connector, AuthenticateOp, ResolveUsern
         File tokenSyncFile = new File(configuration.getFilePath().getParent(), configuration.getFilePath().getName()
                 + "." + tokenLongValue);
         log.info("Diff actual file {0} with last file based on token {1}.", syncFile.getName(), tokenSyncFile.getName());
-        InMemoryDiff memoryDiff = new InMemoryDiff(tokenSyncFile, syncFile, linePattern, configuration);
+        StreamingDiff diff = new StreamingDiff(tokenSyncFile, syncFile, linePattern, configuration,
+                configuration.getSyncSortBufferSize());
         try {
-            List<Change> changes = memoryDiff.diff();
-            log.info("Found {0} differences.", changes.size());
-            if (changes.size() == 0) {
+            final SyncToken newToken = new SyncToken(Long.toString(timestamp));
+            long count = diff.diff(new ChangeHandler() {
+
+                @Override
+                public boolean handle(Change change) {
+                    return handler.handle(createSyncDelta(change, newToken));
+                }
+            });
+            if (count == 0) {
                 //this was only phantom change, nothing was really changed, delete sync file (new token not necessary)
                 log.info("Deleting file {0}.", syncFile.getName());
                 syncFile.delete();
                 return;
             }
 
-            SyncToken newToken = new SyncToken(Long.toString(timestamp));
-            for (Change change : changes) {
-                SyncDelta delta = createSyncDelta(change, newToken);
-                if (!handler.handle(delta)) {
-                    break;
-                }
-            }
-
             File newFile = new File(configuration.getFilePath().getParent(), configuration.getFilePath().getName() + "." + timestamp);
             log.info("Renaming file {0} to {1}.", syncFile.getName(), newFile.getName());
             syncFile.renameTo(newFile);
@@ -0,0 +1,13 @@
+package com.evolveum.polygon.csvfile.sync;
+
+/**
+ * Receives the changes found by {@link StreamingDiff} one by one.
+ */
+public interface ChangeHandler {
+
+    /**
+     * @param change found change
+     * @return true to continue with the next change, false to stop the diff
+     */
+    boolean handle(Change change);
+}
@@ -0,0 +1,254 @@
+package com.evolveum.polygon.csvfile.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Sorts records with bounded memory. At most <code>bufferSize</code> records are kept in memory, when the buffer is
+ * full it is sorted and written to a temporary run file. The runs are merged while the sorted records are read, so
+ * the whole input is never held in memory. Temporary files are deleted by {@link #close()}.
+ */
+class ExternalSorter implements Closeable {
+
+    private static final Log log = Log.getLog(ExternalSorter.class);
+
+    /**
+     * Maximum number of runs merged at once, more runs are merged in several passes.
+     */
+    private static final int MERGE_FACTOR = 64;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Reads records in sorted order.
+     */
+    interface RecordReader extends Closeable {
+
+        /**
+         * @return next record or null if there are no more records
+         */
+        SortRecord read() throws IOException;
+    }
+
+    private final Comparator<SortRecord> comparator;
+    private final int bufferSize;
+    private final File directory;
+
+    private final List<SortRecord> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private final List<Closeable> readers = new ArrayList<>();
+
+    public ExternalSorter(Comparator<SortRecord> comparator, int bufferSize, File directory) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero.");
+        }
+        this.comparator = comparator;
+        this.bufferSize = bufferSize;
+        this.directory = directory;
+    }
+
+    public void add(SortRecord record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Finishes the input, no more records can be added.
+     *
+     * @return reader of all added records in sorted order
+     */
+    public RecordReader sort() throws IOException {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, comparator);
+            final Iterator<SortRecord> iterator = buffer.iterator();
+            return new RecordReader() {
+
+                @Override
+                public SortRecord read() {
+                    return iterator.hasNext() ? iterator.next() : null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        while (runs.size() > MERGE_FACTOR) {
+            List<File> merged = new ArrayList<>(runs.subList(0, MERGE_FACTOR));
+            runs.removeAll(merged);
+
+            File run = createRun();
+            // the merged run replaces the first runs, to keep equal records in the order they were added
+            runs.remove(run);
+            runs.add(0, run);
+            RecordReader reader = null;
+            DataOutputStream out = null;
+            try {
+                reader = openMerged(merged);
+                out = openRun(run);
+                SortRecord record;
+                while ((record = reader.read()) != null) {
+                    record.write(out);
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+                if (reader != null) {
+                    reader.close();
+                }
+                // the merged runs are not in the runs anymore, close() would not delete them
+                for (File file : merged) {
+                    delete(file);
+                }
+            }
+        }
+
+        RecordReader reader = openMerged(runs);
+        readers.add(reader);
+        return reader;
+    }
+
+    @Override
+    public void close() {
+        for (Closeable reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                log.ok(ex, "Couldn't close sorted run");
+            }
+        }
+        readers.clear();
+        for (File run : runs) {
+            delete(run);
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer, comparator);
+
+        File run = createRun();
+        DataOutputStream out = openRun(run);
+        try {
+            for (SortRecord record : buffer) {
+                record.write(out);
+            }
+        } finally {
+            out.close();
+        }
+        log.ok("Sorted {0} records to {1}.", buffer.size(), run.getName());
+        buffer.clear();
+    }
+
+    private File createRun() throws IOException {
+        File run = File.createTempFile("csvsort", ".run", directory);
+        runs.add(run);
+        return run;
+    }
+
+    private DataOutputStream openRun(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+    }
+
+    private RecordReader openMerged(List<File> files) throws IOException {
+        final List<DataInputStream> inputs = new ArrayList<>();
+        final PriorityQueue<RunHead> heads = new PriorityQueue<>(files.size());
+        try {
+            for (File file : files) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                        IO_BUFFER_SIZE));
+                inputs.add(in);
+                SortRecord record = SortRecord.read(in);
+                if (record != null) {
+                    heads.add(new RunHead(record, in, inputs.size() - 1));
+                }
+            }
+        } catch (IOException ex) {
+            closeAll(inputs);
+            throw ex;
+        }
+
+        return new RecordReader() {
+
+            @Override
+            public SortRecord read() throws IOException {
+                RunHead head = heads.poll();
+                if (head == null) {
+                    return null;
+                }
+                SortRecord record = head.record;
+                SortRecord next = SortRecord.read(head.in);
+                if (next != null) {
+                    heads.add(new RunHead(next, head.in, head.index));
+                }
+                return record;
+            }
+
+            @Override
+            public void close() {
+                closeAll(inputs);
+            }
+        };
+    }
+
+    private static void closeAll(List<DataInputStream> inputs) {
+        for (DataInputStream in : inputs) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                log.ok(ex, "Couldn't close sorted run");
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Couldn't delete temporary file {0}.", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Current record of a run being merged, equal records are taken from the runs in the order they were written.
+     */
+    private class RunHead implements Comparable<RunHead> {
+
+        private final SortRecord record;
+        private final DataInputStream in;
+        private final int index;
+
+        private RunHead(SortRecord record, DataInputStream in, int index) {
+            this.record = record;
+            this.in = in;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            int result = comparator.compare(record, other.record);
+            return result != 0 ? result : Integer.compare(index, other.index);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.evolveum.polygon.csvfile.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * One csv line sorted by {@link ExternalSorter}, together with its unique attribute value, its line number and for a
+ * found change the change type.
+ */
+class SortRecord {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String uid;
+    private final int position;
+    private final String line;
+    private final Change.Type type;
+
+    public SortRecord(String uid, int position, String line, Change.Type type) {
+        this.uid = uid;
+        this.position = position;
+        this.line = line;
+        this.type = type;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public Change.Type getType() {
+        return type;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(type != null ? type.ordinal() : -1);
+        out.writeInt(position);
+        writeString(out, uid);
+        writeString(out, line);
+    }
+
+    /**
+     * @return next record from the stream or null if the end of the stream was reached
+     */
+    static SortRecord read(DataInputStream in) throws IOException {
+        int type;
+        try {
+            type = in.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+        int position = in.readInt();
+        String uid = readString(in);
+        String line = readString(in);
+
+        return new SortRecord(uid, position, line, type >= 0 ? Change.Type.values()[type] : null);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF() can't be used, lines may be longer than 64k bytes
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
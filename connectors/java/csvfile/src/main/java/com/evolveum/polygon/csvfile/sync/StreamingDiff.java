@@ -0,0 +1,268 @@
+package com.evolveum.polygon.csvfile.sync;
+
+import static com.evolveum.polygon.csvfile.util.Utils.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import com.evolveum.polygon.csvfile.CSVFileConfiguration;
+import com.evolveum.polygon.csvfile.util.CSVSchemaException;
+import com.evolveum.polygon.csvfile.util.PositionedCsvItem;
+
+/**
+ * Computes the same changes as {@link InMemoryDiff} with bounded memory, so it can be used for csv files which don't
+ * fit into the heap.
+ * <p>
+ * Both files are sorted by the unique attribute with {@link ExternalSorter} and merge-joined. Found changes are
+ * sorted again to the order used by {@link InMemoryDiff}, first creates and modifications in the order of the new
+ * file, then deletes in the order of the old file, and passed to the {@link ChangeHandler} one by one. At most
+ * <code>bufferSize</code> csv lines of each sort are held in memory, the rest is kept in temporary files next to the
+ * new file.
+ */
+public class StreamingDiff {
+
+    private static final Log log = Log.getLog(StreamingDiff.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 100000;
+
+    private static final Comparator<SortRecord> UID_COMPARATOR = new Comparator<SortRecord>() {
+
+        @Override
+        public int compare(SortRecord r1, SortRecord r2) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(r1.getUid(), r2.getUid());
+            return result != 0 ? result : Integer.compare(r1.getPosition(), r2.getPosition());
+        }
+    };
+
+    private static final Comparator<SortRecord> CHANGE_COMPARATOR = new Comparator<SortRecord>() {
+
+        @Override
+        public int compare(SortRecord r1, SortRecord r2) {
+            // first create/modify entries, then delete ones
+            boolean delete1 = r1.getType() == Change.Type.DELETE;
+            boolean delete2 = r2.getType() == Change.Type.DELETE;
+            if (delete1 != delete2) {
+                return delete1 ? 1 : -1;
+            }
+            return Integer.compare(r1.getPosition(), r2.getPosition());
+        }
+    };
+
+    private CSVFileConfiguration configuration;
+    private Pattern linePattern;
+    private File oldFile;
+    private File newFile;
+    private int bufferSize;
+
+    public StreamingDiff(File oldFile, File newFile, Pattern linePattern, CSVFileConfiguration configuration) {
+        this(oldFile, newFile, linePattern, configuration, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamingDiff(File oldFile, File newFile, Pattern linePattern, CSVFileConfiguration configuration,
+            int bufferSize) {
+        notNullArgument(newFile, "newFile");
+        notNullArgument(linePattern, "linePattern");
+        notNullArgument(configuration, "configuration");
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero.");
+        }
+
+        this.oldFile = oldFile;
+        this.newFile = newFile;
+        this.configuration = configuration;
+        this.linePattern = linePattern;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Computes the changes and passes them to the handler.
+     *
+     * @param handler receives the changes
+     * @return number of changes passed to the handler
+     */
+    public long diff(ChangeHandler handler) throws DiffException {
+        notNullArgument(handler, "handler");
+        log.info("Computing diff from old {0} ({1}) and new {2} ({3}).",
+                (oldFile != null ? oldFile.getName() : "null"), (oldFile != null ? oldFile.length() : 0),
+                newFile.getName(), newFile.length());
+
+        File directory = newFile.getAbsoluteFile().getParentFile();
+        ExternalSorter newSorter = new ExternalSorter(UID_COMPARATOR, bufferSize, directory);
+        ExternalSorter oldSorter = new ExternalSorter(UID_COMPARATOR, bufferSize, directory);
+        ExternalSorter changeSorter = new ExternalSorter(CHANGE_COMPARATOR, bufferSize, directory);
+        try {
+            List<String> headers;
+            try {
+                if (oldFile != null) {
+                    testHeaders(newFile, oldFile);
+                }
+
+                headers = sortByUid(newFile, newSorter);
+                if (oldFile != null) {
+                    sortByUid(oldFile, oldSorter);
+                }
+                findChanges(headers, newSorter.sort(), oldSorter.sort(), changeSorter);
+            } catch (IOException ex) {
+                throw new ConnectorIOException(ex.getMessage(), ex);
+            } catch (ConnectorException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new DiffException("Can't create csv diff, reason: " + ex.getMessage(), ex);
+            }
+
+            return handleChanges(headers, changeSorter, handler);
+        } finally {
+            newSorter.close();
+            oldSorter.close();
+            changeSorter.close();
+        }
+    }
+
+    private List<String> sortByUid(File file, ExternalSorter sorter) throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = createReader(file, configuration);
+            List<String> headers = readHeader(reader, linePattern, configuration);
+            int index = headers.indexOf(configuration.getUniqueAttribute());
+            if (index < 0 || index >= headers.size()) {
+                throw new CSVSchemaException("Header in '" + file.getAbsolutePath()
+                        + "' doesn't contain unique attribute '" + configuration.getUniqueAttribute()
+                        + "' as defined in configuration.");
+            }
+
+            String line;
+            int lineNumber = 1;
+            int count = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (isEmptyOrComment(line)) {
+                    continue;
+                }
+
+                PositionedCsvItem item = createCsvItem(headers, line, lineNumber, linePattern, configuration);
+                sorter.add(new SortRecord(item.getAttribute(index), lineNumber, line, null));
+                count++;
+            }
+            log.info("Sorted {0} records of {1}.", count, file.getName());
+
+            return headers;
+        } finally {
+            closeReader(reader, null);
+        }
+    }
+
+    private void findChanges(List<String> headers, ExternalSorter.RecordReader newRecords,
+            ExternalSorter.RecordReader oldRecords, ExternalSorter changes) throws IOException {
+        SortRecord newRecord = nextUid(newRecords, null);
+        SortRecord oldRecord = nextUid(oldRecords, null);
+        while (newRecord != null || oldRecord != null) {
+            int compare;
+            if (newRecord == null) {
+                compare = 1;
+            } else if (oldRecord == null) {
+                compare = -1;
+            } else {
+                compare = String.CASE_INSENSITIVE_ORDER.compare(newRecord.getUid(), oldRecord.getUid());
+            }
+
+            if (compare < 0) {
+                changes.add(createChange(newRecord, Change.Type.CREATE));
+                newRecord = nextUid(newRecords, newRecord);
+            } else if (compare > 0) {
+                changes.add(createChange(oldRecord, Change.Type.DELETE));
+                oldRecord = nextUid(oldRecords, oldRecord);
+            } else {
+                if (!isEqual(headers, newRecord, oldRecord)) {
+                    changes.add(createChange(newRecord, Change.Type.MODIFY));
+                }
+                newRecord = nextUid(newRecords, newRecord);
+                oldRecord = nextUid(oldRecords, oldRecord);
+            }
+        }
+    }
+
+    /**
+     * Only the first line of every unique attribute value is used, like in {@link InMemoryDiff}.
+     */
+    private SortRecord nextUid(ExternalSorter.RecordReader records, SortRecord previous) throws IOException {
+        SortRecord record;
+        do {
+            record = records.read();
+        } while (record != null && previous != null
+                && String.CASE_INSENSITIVE_ORDER.compare(record.getUid(), previous.getUid()) == 0);
+
+        return record;
+    }
+
+    private SortRecord createChange(SortRecord record, Change.Type type) {
+        return new SortRecord(record.getUid(), record.getPosition(), record.getLine(), type);
+    }
+
+    private boolean isEqual(List<String> headers, SortRecord record1, SortRecord record2) {
+        if (record1.getLine().equals(record2.getLine())) {
+            return true;
+        }
+
+        PositionedCsvItem item1 = createCsvItem(headers, record1.getLine(), record1.getPosition(), linePattern,
+                configuration);
+        PositionedCsvItem item2 = createCsvItem(headers, record2.getLine(), record2.getPosition(), linePattern,
+                configuration);
+        return item1.getAttributes().equals(item2.getAttributes());
+    }
+
+    private long handleChanges(List<String> headers, ExternalSorter changes, ChangeHandler handler) {
+        long count = 0;
+        try {
+            ExternalSorter.RecordReader reader = changes.sort();
+            SortRecord record;
+            while ((record = reader.read()) != null) {
+                PositionedCsvItem item = createCsvItem(headers, record.getLine(), record.getPosition(), linePattern,
+                        configuration);
+                Change change = new Change(record.getUid(), record.getType(), headers, item.getAttributes(),
+                        record.getPosition());
+                count++;
+                if (!handler.handle(change)) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            throw new ConnectorIOException(ex.getMessage(), ex);
+        }
+        log.info("Found {0} differences.", count);
+
+        return count;
+    }
+
+    private void testHeaders(File newFile, File oldFile) throws IOException, CSVSchemaException {
+        List<String> newHeaders = null;
+        List<String> oldHeaders = null;
+
+        BufferedReader newReader = null;
+        BufferedReader oldReader = null;
+        try {
+            newReader = createReader(newFile, configuration);
+            newHeaders = readHeader(newReader, linePattern, configuration);
+
+            oldReader = createReader(oldFile, configuration);
+            oldHeaders = readHeader(oldReader, linePattern, configuration);
+        } finally {
+            closeReader(newReader, null);
+            closeReader(oldReader, null);
+        }
+
+        if (newHeaders == null || oldHeaders == null || !Arrays.equals(newHeaders.toArray(),
+                oldHeaders.toArray())) {
+            throw new CSVSchemaException("Headers in files '" + newFile.getPath()
+                    + "' and '" + oldFile.getPath() + "' doesn't match.");
+        }
+    }
+}
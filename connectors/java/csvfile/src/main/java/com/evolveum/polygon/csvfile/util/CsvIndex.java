@@ -0,0 +1,283 @@
+package com.evolveum.polygon.csvfile.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+
+import com.evolveum.polygon.csvfile.CSVFileConfiguration;
+
+/**
+ * Index of the csv lines by the value of the unique attribute, used to read single records without scanning the whole
+ * file.
+ * <p>
+ * The index holds the byte offsets of the lines, the lines are read from the file when they are looked up. It is
+ * shared by the connector instances reading the same file and it is rebuilt when the length or the modification time
+ * of the file changes. A line found at an indexed offset is checked to still contain the looked up value, so a change
+ * of the file which is not visible in its length or modification time rebuilds the index too.
+ * <p>
+ * Only encodings in which line breaks are single ascii bytes can be indexed, see {@link #isIndexable(String)}.
+ */
+public class CsvIndex {
+
+    private static final Log log = Log.getLog(CsvIndex.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<List<String>, CsvIndex> INDEXES = new ConcurrentHashMap<List<String>, CsvIndex>();
+
+    /**
+     * Line found in the file.
+     */
+    public static class Line {
+
+        private final String text;
+        private final int lineNumber;
+
+        private Line(String text, int lineNumber) {
+            this.text = text;
+            this.lineNumber = lineNumber;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+    }
+
+    private final File file;
+    private final Charset charset;
+    private final long length;
+    private final long lastModified;
+    private final List<String> header;
+    private final int uniqueIndex;
+
+    /**
+     * Offsets and line numbers of the first line of every unique attribute value.
+     */
+    private final Map<String, long[]> entries = new HashMap<String, long[]>();
+
+    private CsvIndex(File file, Charset charset, long length, long lastModified, List<String> header,
+            int uniqueIndex) {
+        this.file = file;
+        this.charset = charset;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.header = header;
+        this.uniqueIndex = uniqueIndex;
+    }
+
+    /**
+     * @return true if the lines of files in the encoding can be indexed by their byte offsets
+     */
+    public static boolean isIndexable(String encoding) {
+        Charset charset = Charset.forName(encoding);
+        if ("UTF-8".equals(charset.name())) {
+            return true;
+        }
+        // single byte encodings compatible with ascii
+        byte[] bytes = "\r\n#a".getBytes(charset);
+        return charset.newEncoder().maxBytesPerChar() == 1
+                && Arrays.equals(bytes, new byte[]{'\r', '\n', '#', 'a'});
+    }
+
+    /**
+     * Get the index of the csv file of the configuration, it is built or rebuilt if needed.
+     */
+    public static CsvIndex get(CSVFileConfiguration configuration, Pattern linePattern) throws IOException {
+        File file = configuration.getFilePath().getAbsoluteFile();
+        List<String> key = Arrays.asList(file.getPath(), configuration.getEncoding(),
+                configuration.getUniqueAttribute(), configuration.getFieldDelimiter(),
+                configuration.getValueQualifier());
+
+        CsvIndex index = INDEXES.get(key);
+        if (index == null || !index.isCurrent()) {
+            index = build(file, configuration, linePattern);
+            INDEXES.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drop the index of the csv file of the configuration, the next {@link #get(CSVFileConfiguration, Pattern)}
+     * rebuilds it.
+     */
+    public static void rebuild(CSVFileConfiguration configuration) {
+        File file = configuration.getFilePath().getAbsoluteFile();
+        INDEXES.remove(Arrays.asList(file.getPath(), configuration.getEncoding(),
+                configuration.getUniqueAttribute(), configuration.getFieldDelimiter(),
+                configuration.getValueQualifier()));
+    }
+
+    private boolean isCurrent() {
+        return file.length() == length && file.lastModified() == lastModified;
+    }
+
+    public List<String> getHeader() {
+        return header;
+    }
+
+    private static CsvIndex build(File file, CSVFileConfiguration configuration, Pattern linePattern)
+            throws IOException {
+        Charset charset = Charset.forName(configuration.getEncoding());
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            LineReader reader = new LineReader(in, charset);
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && Utils.isEmptyOrComment(line));
+            if (line == null) {
+                throw new CSVSchemaException("Csv file '" + file + "' doesn't contain header.");
+            }
+            List<String> header = Utils.parseValues(line, linePattern, configuration);
+            int uniqueIndex = header.indexOf(configuration.getUniqueAttribute());
+            if (uniqueIndex < 0) {
+                throw new CSVSchemaException("Header in csv file '" + file + "' doesn't contain unique attribute '"
+                        + configuration.getUniqueAttribute() + "' as defined in configuration.");
+            }
+
+            CsvIndex index = new CsvIndex(file, charset, length, lastModified, header, uniqueIndex);
+            int lineNumber = 1;
+            long offset = reader.getOffset();
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!Utils.isEmptyOrComment(line)) {
+                    List<String> values = Utils.parseValues(line, linePattern, configuration);
+                    String uid = uniqueIndex < values.size() ? values.get(uniqueIndex) : null;
+                    if (!StringUtil.isEmpty(uid) && !index.entries.containsKey(uid)) {
+                        index.entries.put(uid, new long[]{offset, lineNumber});
+                    }
+                }
+                offset = reader.getOffset();
+            }
+            log.ok("Indexed {0} records of {1}.", index.entries.size(), file.getName());
+
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the first line with the unique attribute value.
+     *
+     * @return the line or null if there is no such line or the file changed since the index was built
+     */
+    public Line find(String uid, RandomAccessFile input, Pattern linePattern, CSVFileConfiguration configuration)
+            throws IOException {
+        long[] entry = entries.get(uid);
+        if (entry == null) {
+            return null;
+        }
+        input.seek(entry[0]);
+        String text = new LineReader(new RandomAccessInputStream(input), charset).readLine();
+        if (text == null || Utils.isEmptyOrComment(text)) {
+            return null;
+        }
+        List<String> values = Utils.parseValues(text, linePattern, configuration);
+        if (uniqueIndex >= values.size() || !uid.equals(values.get(uniqueIndex))) {
+            return null;
+        }
+        return new Line(text, (int) entry[1]);
+    }
+
+    /**
+     * @return the offset of the line of the unique attribute value, -1 if it is not indexed
+     */
+    public long getOffset(String uid) {
+        long[] entry = entries.get(uid);
+        return entry != null ? entry[0] : -1;
+    }
+
+    /**
+     * Reads lines like {@link java.io.BufferedReader#readLine()} and counts their bytes.
+     */
+    private static class LineReader {
+
+        private final InputStream in;
+        private final Charset charset;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long offset = 0;
+        private int pending = -1;
+
+        LineReader(InputStream in, Charset charset) {
+            this.in = in;
+            this.charset = charset;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        String readLine() throws IOException {
+            line.reset();
+            int b = pending >= 0 ? pending : in.read();
+            pending = -1;
+            if (b < 0) {
+                return null;
+            }
+            while (b >= 0 && b != '\n' && b != '\r') {
+                line.write(b);
+                offset++;
+                b = in.read();
+            }
+            if (b == '\r') {
+                offset++;
+                b = in.read();
+                if (b == '\n') {
+                    offset++;
+                } else {
+                    pending = b;
+                }
+            } else if (b == '\n') {
+                offset++;
+            }
+            return new String(line.toByteArray(), charset);
+        }
+    }
+
+    private static class RandomAccessInputStream extends InputStream {
+
+        private final RandomAccessFile file;
+        private final byte[] buffer = new byte[1024];
+        private int position = 0;
+        private int count = 0;
+
+        RandomAccessInputStream(RandomAccessFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == count) {
+                count = file.read(buffer);
+                position = 0;
+                if (count <= 0) {
+                    count = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.evolveum.polygon.csvfile;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the reads of records by uid through the index.
+ */
+public class GetOpTest extends AbstractCsvTest {
+
+    private static final Log LOG = Log.getLog(GetOpTest.class);
+
+    private File file;
+    private CSVFileConnector connector;
+
+    public GetOpTest() {
+        super(LOG);
+    }
+
+    @Override
+    public void customBeforeMethod(Method method) throws Exception {
+        file = File.createTempFile("get", ".csv");
+        write("# comment\r\n"
+                + "firstName,uid,lastName,password\r\n"
+                + "\"viliam\",\"vilo\",\"repan\",\"Z29vZA==\"\r\n"
+                + "\r\n"
+                + "# \"x\",\"miso\",\"y\",\"z\"\n"
+                + "\"michal\",\"miso\",\"šmiso\",\"bad=\"\r"
+                + "\"duplicate\",\"vilo\",\"repan\",\"Z29vZA==\"\n"
+                + "\"ján\",\"jano\",\"novák\",\"a\"");
+
+        CSVFileConfiguration config = new CSVFileConfiguration();
+        config.setEncoding("utf-8");
+        config.setFilePath(file);
+        config.setUniqueAttribute("uid");
+        config.setPasswordAttribute("password");
+
+        connector = new CSVFileConnector();
+        connector.init(config);
+    }
+
+    @Override
+    public void customAfterMethod(Method method) throws Exception {
+        connector.dispose();
+        connector = null;
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<ConnectorObject> search() {
+        final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        connector.executeQuery(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+
+            @Override
+            public boolean handle(ConnectorObject object) {
+                objects.add(object);
+                return true;
+            }
+        }, null);
+        return objects;
+    }
+
+    private List<ConnectorObject> getObjects(String... uids) {
+        List<Uid> list = new ArrayList<Uid>();
+        for (String uid : uids) {
+            list.add(new Uid(uid));
+        }
+        final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        connector.getObjects(ObjectClass.ACCOUNT, list, new ResultsHandler() {
+
+            @Override
+            public boolean handle(ConnectorObject object) {
+                objects.add(object);
+                return true;
+            }
+        }, null);
+        return objects;
+    }
+
+    @Test
+    public void getObject() {
+        List<ConnectorObject> expected = search();
+        assertEquals(expected.size(), 4);
+
+        assertEquals(connector.getObject(ObjectClass.ACCOUNT, new Uid("vilo"), null), expected.get(0));
+        assertEquals(connector.getObject(ObjectClass.ACCOUNT, new Uid("miso"), null), expected.get(1));
+        assertEquals(connector.getObject(ObjectClass.ACCOUNT, new Uid("jano"), null), expected.get(3));
+        assertEquals(connector.getObject(ObjectClass.ACCOUNT, new Uid("miso"), null).getAttributeByName("lastName"),
+                AttributeBuilder.build("lastName", "šmiso"));
+        assertNull(connector.getObject(ObjectClass.ACCOUNT, new Uid("unknown"), null));
+        assertNull(connector.getObject(ObjectClass.ACCOUNT, new Uid("x"), null));
+    }
+
+    @Test
+    public void getObjects() {
+        List<ConnectorObject> expected = search();
+
+        // in the order of the file
+        assertEquals(getObjects("jano", "unknown", "vilo", "miso"),
+                Arrays.asList(expected.get(0), expected.get(1), expected.get(3)));
+    }
+
+    @Test
+    public void getObjectsAfterChange() throws Exception {
+        assertEquals(getObjects("vilo", "miso", "jano").size(), 3);
+
+        // same length, the records of vilo and miso are swapped
+        write("# comment\r\n"
+                + "firstName,uid,lastName,password\r\n"
+                + "\"michal\",\"miso\",\"šmiso\",\"bad=\"\r\n"
+                + "\r\n"
+                + "# \"x\",\"miso\",\"y\",\"z\"\n"
+                + "\"viliam\",\"vilo\",\"repan\",\"Z29vZA==\"\r"
+                + "\"duplicate\",\"vilo\",\"repan\",\"Z29vZA==\"\n"
+                + "\"ján\",\"jano\",\"novák\",\"a\"");
+        List<ConnectorObject> expected = search();
+        assertEquals(new HashSet<ConnectorObject>(getObjects("vilo", "miso", "jano")),
+                new HashSet<ConnectorObject>(Arrays.asList(expected.get(0), expected.get(1), expected.get(3))));
+
+        write("firstName,uid,lastName,password\n"
+                + "\"ján\",\"jano\",\"novák\",\"a\"\n"
+                + "\"peter\",\"peto\",\"p\",\"a\"\n");
+        expected = search();
+        assertEquals(getObjects("vilo", "miso", "jano", "peto"), expected);
+    }
+}
@@ -0,0 +1,126 @@
+package com.evolveum.polygon.csvfile;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.common.logging.Log;
+import org.testng.annotations.Test;
+
+import com.evolveum.polygon.csvfile.sync.Change;
+import com.evolveum.polygon.csvfile.sync.ChangeHandler;
+import com.evolveum.polygon.csvfile.sync.InMemoryDiff;
+import com.evolveum.polygon.csvfile.sync.StreamingDiff;
+import com.evolveum.polygon.csvfile.util.TestUtils;
+
+public class StreamingDiffTest extends AbstractCsvTest {
+
+    private static final Log LOG = Log.getLog(StreamingDiffTest.class);
+
+    public StreamingDiffTest() {
+        super(LOG);
+    }
+
+    @Test
+    public void test1() throws Exception {
+        List<Change> changes = diff("test1", StreamingDiff.DEFAULT_BUFFER_SIZE);
+        assertEquals(changes.size(), 1);
+        assertEquals(changes.get(0).getType(), Change.Type.CREATE);
+    }
+
+    @Test
+    public void test2() throws Exception {
+        List<Change> changes = diff("test2", StreamingDiff.DEFAULT_BUFFER_SIZE);
+        assertEquals(changes.size(), 0);
+    }
+
+    @Test
+    public void test3() throws Exception {
+        List<Change> changes = diff("test3", StreamingDiff.DEFAULT_BUFFER_SIZE);
+        assertEquals(changes.size(), 1);
+        assertEquals(changes.get(0).getType(), Change.Type.CREATE);
+    }
+
+    @Test
+    public void sameChangesAsInMemoryDiff() throws Exception {
+        for (String test : new String[]{"test1", "test2", "test3"}) {
+            CSVFileConnector connector = createConnector();
+            List<Change> expected = new InMemoryDiff(getOldFile(test), getNewFile(test),
+                    connector.getLinePattern(), (CSVFileConfiguration) connector.getConfiguration()).diff();
+
+            // buffer of one record sorts every record to its own temporary file
+            List<Change> changes = diff(test, 1);
+            assertEquals(changes.size(), expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(changes.get(i).getType(), expected.get(i).getType());
+                assertEquals(changes.get(i).getUid(), expected.get(i).getUid());
+                assertEquals(changes.get(i).getPosition(), expected.get(i).getPosition());
+                assertEquals(changes.get(i).getAttributes(), expected.get(i).getAttributes());
+            }
+        }
+        assertEquals(new File("./src/test/resources/diff").list().length, 6, "Temporary files were not deleted");
+    }
+
+    @Test
+    public void stopByHandler() throws Exception {
+        CSVFileConnector connector = createConnector();
+        StreamingDiff diff = new StreamingDiff(null, getNewFile("test1"), connector.getLinePattern(),
+                (CSVFileConfiguration) connector.getConfiguration(), 1);
+
+        final List<Change> changes = new ArrayList<Change>();
+        long count = diff.diff(new ChangeHandler() {
+
+            @Override
+            public boolean handle(Change change) {
+                changes.add(change);
+                return false;
+            }
+        });
+        assertEquals(count, 1);
+        assertEquals(changes.size(), 1);
+        assertEquals(changes.get(0).getType(), Change.Type.CREATE);
+    }
+
+    private List<Change> diff(String test, int bufferSize) throws Exception {
+        CSVFileConnector connector = createConnector();
+        StreamingDiff diff = new StreamingDiff(getOldFile(test), getNewFile(test), connector.getLinePattern(),
+                (CSVFileConfiguration) connector.getConfiguration(), bufferSize);
+
+        final List<Change> changes = new ArrayList<Change>();
+        long count = diff.diff(new ChangeHandler() {
+
+            @Override
+            public boolean handle(Change change) {
+                changes.add(change);
+                return true;
+            }
+        });
+        assertEquals(count, changes.size());
+
+        return changes;
+    }
+
+    private File getOldFile(String test) {
+        return new File("./src/test/resources/diff/" + test + ".csv");
+    }
+
+    private File getNewFile(String test) {
+        return new File("./src/test/resources/diff/" + test + ".csv.tmp");
+    }
+
+    private CSVFileConnector createConnector() throws Exception {
+        CSVFileConfiguration config = new CSVFileConfiguration();
+        config.setEncoding("utf-8");
+        //just to make connector initialization happy
+        config.setFilePath(TestUtils.getTestFile("../../../src/test/resources/files/sync.csv"));
+        config.setUniqueAttribute("id");
+        config.setPasswordAttribute("password");
+
+        CSVFileConnector connector = new CSVFileConnector();
+        connector.init(config);
+
+        return connector;
+    }
+}
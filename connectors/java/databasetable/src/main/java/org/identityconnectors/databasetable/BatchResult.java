@@ -0,0 +1,68 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.databasetable;
+
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * The result of one account of the batch operations of the {@link DatabaseTableConnector}.
+ *
+ * @version $Revision 1.0$
+ * @since 1.0
+ */
+public final class BatchResult {
+
+    private final Uid uid;
+
+    private final RuntimeException error;
+
+    BatchResult(Uid uid, RuntimeException error) {
+        this.uid = uid;
+        this.error = error;
+    }
+
+    /**
+     * The uid of the account after the operation
+     *
+     * @return the uid, null if the operation failed
+     */
+    public Uid getUid() {
+        return uid;
+    }
+
+    /**
+     * The exception the single operation would have thrown
+     *
+     * @return the exception, null if the operation succeeded
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * @return true if the operation succeeded
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -737,6 +737,123 @@ public class DatabaseTableConfiguration extends AbstractConfiguration {
         this.lastLoginDateColumn = lastLoginDateColumn;
     }
 
+    /**
+     * The number of rows fetched from the database in one round trip by the search and sync queries.
+     * Zero keeps the default of the driver.
+     */
+    private int fetchSize = 0;
+
+    @ConfigurationProperty(order = 33,
+            displayMessageKey = "FETCH_SIZE_DISPLAY",
+            helpMessageKey = "FETCH_SIZE_HELP")
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * The type of the result sets of the search and sync queries, forwardOnly, scrollInsensitive or
+     * scrollSensitive.
+     */
+    private String resultSetType = RESULT_SET_FORWARD_ONLY;
+
+    @ConfigurationProperty(order = 34,
+            displayMessageKey = "RESULT_SET_TYPE_DISPLAY",
+            helpMessageKey = "RESULT_SET_TYPE_HELP")
+    public String getResultSetType() {
+        return resultSetType;
+    }
+
+    public void setResultSetType(String resultSetType) {
+        this.resultSetType = resultSetType;
+    }
+
+    /**
+     * The number of prepared search and sync statements kept open per physical connection, not used with a
+     * datasource. Zero disables the cache.
+     */
+    private int statementCacheSize = 0;
+
+    @ConfigurationProperty(order = 35,
+            displayMessageKey = "STATEMENT_CACHE_SIZE_DISPLAY",
+            helpMessageKey = "STATEMENT_CACHE_SIZE_HELP")
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * The number of rows of the batch operations sent in one JDBC batch and committed together.
+     */
+    private int batchSize = 100;
+
+    @ConfigurationProperty(order = 36,
+            displayMessageKey = "BATCH_SIZE_DISPLAY",
+            helpMessageKey = "BATCH_SIZE_HELP")
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * The maximum number of connections, in use or idle, of the pool shared by the connector instances with the same
+     * connection settings. Zero keeps one connection per connector instance. Not used with a datasource.
+     */
+    private int connectionPoolSize = 0;
+
+    @ConfigurationProperty(order = 37,
+            displayMessageKey = "CONNECTION_POOL_SIZE_DISPLAY",
+            helpMessageKey = "CONNECTION_POOL_SIZE_HELP")
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * The time in milliseconds after which a pooled connection is closed, zero for no limit.
+     */
+    private long connectionMaxLifetime = 1800000;
+
+    @ConfigurationProperty(order = 38,
+            displayMessageKey = "CONNECTION_MAX_LIFETIME_DISPLAY",
+            helpMessageKey = "CONNECTION_MAX_LIFETIME_HELP")
+    public long getConnectionMaxLifetime() {
+        return connectionMaxLifetime;
+    }
+
+    public void setConnectionMaxLifetime(long connectionMaxLifetime) {
+        this.connectionMaxLifetime = connectionMaxLifetime;
+    }
+
+    /**
+     * The time in milliseconds after which a pooled connection which was not given back is reported as a leak, zero
+     * disables the detection.
+     */
+    private long connectionLeakThreshold = 0;
+
+    @ConfigurationProperty(order = 39,
+            displayMessageKey = "CONNECTION_LEAK_THRESHOLD_DISPLAY",
+            helpMessageKey = "CONNECTION_LEAK_THRESHOLD_HELP")
+    public long getConnectionLeakThreshold() {
+        return connectionLeakThreshold;
+    }
+
+    public void setConnectionLeakThreshold(long connectionLeakThreshold) {
+        this.connectionLeakThreshold = connectionLeakThreshold;
+    }
+
     // =======================================================================
     // Configuration Interface
     // =======================================================================
@@ -799,6 +916,32 @@ public class DatabaseTableConfiguration extends AbstractConfiguration {
             log.ok("datasource configuration is ok");
         }
 
+        if (getFetchSize() < 0) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_FETCH_SIZE, getFetchSize()));
+        }
+        if (getStatementCacheSize() < 0) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_STATEMENT_CACHE_SIZE, getStatementCacheSize()));
+        }
+        if (getBatchSize() < 1) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_BATCH_SIZE, getBatchSize()));
+        }
+        if (getConnectionPoolSize() < 0) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_CONNECTION_POOL_SIZE, getConnectionPoolSize()));
+        }
+        if (getConnectionMaxLifetime() < 0) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_CONNECTION_MAX_LIFETIME,
+                    getConnectionMaxLifetime()));
+        }
+        if (getConnectionLeakThreshold() < 0) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_CONNECTION_LEAK_THRESHOLD,
+                    getConnectionLeakThreshold()));
+        }
+        try {
+            DatabaseTableSQLUtil.getResultSetType(getResultSetType());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(getMessage(MSG_INVALID_RESULT_SET_TYPE, getResultSetType()));
+        }
+
         if (Validation.FULL.equals(validation)) {
             validateConfigurationForTable();
         }
@@ -27,7 +27,11 @@ import static org.identityconnectors.databasetable.DatabaseTableConstants.*;
 
 import java.lang.reflect.Method;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +41,7 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.databasetable.mapping.*;
 import org.identityconnectors.dbcommon.DatabaseConnection;
+import org.identityconnectors.dbcommon.DatabaseQueryBuilder;
 import org.identityconnectors.dbcommon.JNDIUtil;
 import org.identityconnectors.dbcommon.SQLParam;
 import org.identityconnectors.dbcommon.SQLUtil;
@@ -62,8 +67,17 @@ public class DatabaseTableConnection extends DatabaseConnection {
      * @return a new {@link DatabaseTableConnection} connection
      */
     static DatabaseTableConnection createDBTableConnection(DatabaseTableConfiguration config) {
+        if (StringUtil.isBlank(config.getDatasource()) && config.getConnectionPoolSize() > 0) {
+            final DatabaseTableConnectionPool pool = DatabaseTableConnectionPool.acquire(config);
+            try {
+                return new DatabaseTableConnection(pool.borrow(), config, pool);
+            } catch (RuntimeException e) {
+                pool.release();
+                throw e;
+            }
+        }
         Connection connection = getNativeConnection(config);
-        return new DatabaseTableConnection(connection, config);
+        return new DatabaseTableConnection(connection, config, null);
     }
 
     private static java.sql.Connection getNativeConnection(DatabaseTableConfiguration config) {
@@ -82,18 +96,36 @@ public class DatabaseTableConnection extends DatabaseConnection {
                 connection = SQLUtil.getDatasourceConnection(datasource, prop);
             }
             log.ok("The new connection using datasource {0} created", datasource);
-        } else {
-            final String driver = config.getJdbcDriver();
-            final String connectionUrl = config.formatUrlTemplate();
-            log.info("Get a new connection using connection url {0} and user {1}", connectionUrl, login);
-            try {
-                connection = SQLUtil.getDriverMangerConnection(driver, connectionUrl, login, password);
-            } catch (RuntimeException e) {
-                throw new ConnectionFailedException(e);
-            }
-            log.ok("The new connection using connection url {0} and user {1} created", connectionUrl, login);
+            setupConnection(connection);
+            return connection;
         }
+        return getDriverManagerConnection(config);
+    }
 
+    /**
+     * Open a new connection using the connection url
+     *
+     * @param config a {@link DatabaseTableConfiguration} object
+     * @return the connection
+     */
+    static java.sql.Connection getDriverManagerConnection(DatabaseTableConfiguration config) {
+        java.sql.Connection connection;
+        final String login = config.getUser();
+        final GuardedString password = config.getPassword();
+        final String driver = config.getJdbcDriver();
+        final String connectionUrl = config.formatUrlTemplate();
+        log.info("Get a new connection using connection url {0} and user {1}", connectionUrl, login);
+        try {
+            connection = SQLUtil.getDriverMangerConnection(driver, connectionUrl, login, password);
+        } catch (RuntimeException e) {
+            throw new ConnectionFailedException(e);
+        }
+        log.ok("The new connection using connection url {0} and user {1} created", connectionUrl, login);
+        setupConnection(connection);
+        return connection;
+    }
+
+    private static void setupConnection(java.sql.Connection connection) {
         /* On Oracle enable the synonyms */
         try {
             Class<?> clazz = Class.forName("oracle.jdbc.OracleConnection");
@@ -125,7 +157,6 @@ public class DatabaseTableConnection extends DatabaseConnection {
             //expected
             log.error(expected, "setAutoCommit(false) exception");
         }
-        return connection;
     }
 
     /**
@@ -139,17 +170,71 @@ public class DatabaseTableConnection extends DatabaseConnection {
      */
     final DatabaseTableConfiguration config;
 
+    /**
+     * The shared pool of the connections, null if the connections are not pooled
+     */
+    private DatabaseTableConnectionPool pool;
+
+    /**
+     * The statement cache of a connection opened by the driver manager without the connection pool. A pooled
+     * connection keeps its statement cache in the pool, a connection taken from a datasource has none.
+     */
+    private final StatementCache statementCache = new StatementCache();
+
+    /**
+     * The prepared query statements of a physical connection.
+     */
+    static final class StatementCache {
+
+        /**
+         * The prepared query statements by SQL text, the least recently used first
+         */
+        private final LinkedHashMap<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+        /**
+         * The cached statements handed out by {@link DatabaseTableConnection#prepareQuery(DatabaseQueryBuilder)} and not released yet
+         */
+        private final Map<PreparedStatement, String> inUse = new IdentityHashMap<PreparedStatement, String>();
+
+        /**
+         * Close the cached statements and forget the statements in use.
+         */
+        void clear() {
+            final List<PreparedStatement> cached = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+            inUse.clear();
+            for (PreparedStatement statement : cached) {
+                IOUtil.quietClose(statement);
+            }
+        }
+
+        /**
+         * Close the statements which were handed out and never given back.
+         */
+        void closeInUse() {
+            final List<PreparedStatement> abandoned = new ArrayList<PreparedStatement>(inUse.keySet());
+            inUse.clear();
+            for (PreparedStatement statement : abandoned) {
+                IOUtil.quietClose(statement);
+            }
+        }
+    }
+
     /**
      * Use the {@link Configuration} passed in to immediately connect to a database. If the {@link Connection} fails a
      * {@link RuntimeException} will be thrown.
      *
      * @param conn Connection created in the time of calling the newConnection
      * @param config Configuration required to obtain a valid connection.
+     * @param pool the connection pool the connection was taken from, or null
      * @throws RuntimeException if there is a problem creating a {@link java.sql.Connection}.
      */
-    private DatabaseTableConnection(Connection conn, DatabaseTableConfiguration config) {
+    private DatabaseTableConnection(Connection conn, DatabaseTableConfiguration config,
+            DatabaseTableConnectionPool pool) {
         super(conn);
         this.config = config;
+        this.pool = pool;
         this.sms = createMappingStrategy(conn, config);
         log.ok("New DatabaseTableConnection for : {0}", config.getUser());
     }
@@ -232,6 +317,122 @@ public class DatabaseTableConnection extends DatabaseConnection {
         return prepareStatement;
     }
 
+    /**
+     * Prepare the statement of a search or sync query. The statement uses the configured result set type and fetch
+     * size and is taken from the statement cache when the same SQL was prepared before on the same physical
+     * connection. The statements are only cached for a connection opened by the driver manager, pooled or not, a
+     * datasource usually caches the statements of its own pool. It must be given back with {@link #releaseStatement(PreparedStatement, boolean)}.
+     *
+     * @param query the query builder
+     * @return return a prepared statement with the bound parameters
+     * @throws SQLException an exception in statement
+     */
+    public PreparedStatement prepareQuery(DatabaseQueryBuilder query) throws SQLException {
+        return prepareQuery(query, 0);
+    }
+
+    /**
+     * Prepare the statement of a query which reads at most the given number of rows, see
+     * {@link #prepareQuery(DatabaseQueryBuilder)}. The limit is passed to the driver with
+     * {@link java.sql.Statement#setMaxRows(int)}, which does not depend on the SQL dialect of the database.
+     *
+     * @param query the query builder
+     * @param maxRows the maximum number of rows, 0 for no limit
+     * @return return a prepared statement with the bound parameters
+     * @throws SQLException an exception in statement
+     */
+    public PreparedStatement prepareQuery(DatabaseQueryBuilder query, int maxRows) throws SQLException {
+        final String sql = query.getSQL();
+        final StatementCache cache = getStatementCache();
+        PreparedStatement statement = null;
+        if (cache != null) {
+            statement = cache.statements.remove(sql);
+        }
+        if (statement != null) {
+            log.info("Reuse SQL Statement : {0}", sql);
+            statement.clearParameters();
+        } else {
+            log.info("Prepare SQL Statement : {0}", sql);
+            final int resultSetType = DatabaseTableSQLUtil.getResultSetType(config.getResultSetType());
+            statement = getConnection().prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+            if (config.getFetchSize() > 0) {
+                statement.setFetchSize(config.getFetchSize());
+            }
+        }
+        if (cache != null) {
+            cache.inUse.put(statement, sql);
+        }
+        try {
+            // a cached statement keeps the limit of its previous use
+            statement.setMaxRows(maxRows);
+            DatabaseTableSQLUtil.setParams(sms, statement, query.getParams());
+        } catch (SQLException e) {
+            releaseStatement(statement, true);
+            throw e;
+        }
+        log.ok("SQL Statement ok");
+        return statement;
+    }
+
+    /**
+     * Give back a statement prepared by {@link #prepareQuery(DatabaseQueryBuilder)}. The statement is kept in the
+     * statement cache unless it failed or the cache is full, otherwise it is closed.
+     *
+     * @param statement the statement, may be null
+     * @param failed true if the statement threw an exception
+     */
+    public void releaseStatement(PreparedStatement statement, boolean failed) {
+        if (statement == null) {
+            return;
+        }
+        final StatementCache cache = getStatementCache();
+        final String sql = cache != null ? cache.inUse.remove(statement) : null;
+        if (sql == null || failed) {
+            IOUtil.quietClose(statement);
+            return;
+        }
+        final PreparedStatement previous = cache.statements.put(sql, statement);
+        if (previous != null && previous != statement) {
+            IOUtil.quietClose(previous);
+        }
+        final Iterator<PreparedStatement> eldest = cache.statements.values().iterator();
+        while (cache.statements.size() > config.getStatementCacheSize() && eldest.hasNext()) {
+            IOUtil.quietClose(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * The statement cache of the current physical connection
+     *
+     * @return the cache, null if the statements are not cached
+     */
+    private StatementCache getStatementCache() {
+        if (config.getStatementCacheSize() <= 0 || getConnection() == null) {
+            return null;
+        }
+        if (pool != null) {
+            return DatabaseTableConnectionPool.getStatementCache(getConnection());
+        }
+        return isPooled() ? null : statementCache;
+    }
+
+    @Override
+    public void setConnection(Connection connection) {
+        if (!isPooled()) {
+            statementCache.clear();
+        }
+        super.setConnection(connection);
+    }
+
+    @Override
+    public void dispose() {
+        if (!isPooled()) {
+            statementCache.clear();
+        }
+        super.dispose();
+    }
+
     /**
      * Determines if the underlying JDBC {@link java.sql.Connection} is valid.
      *
@@ -295,19 +496,48 @@ public class DatabaseTableConnection extends DatabaseConnection {
      * Close connection if pooled
      */
     void closeConnection() {
-        if (getConnection() != null && StringUtil.isNotBlank(config.getDatasource()) /*&& this.conn.getConnection() instanceof PooledConnection */) {
+        if (getConnection() != null && isPooled()) {
             log.info("Close the pooled connection");
             dispose();
         }
     }
 
     /**
-     * Create new connection if pooled and taken from the datasource
+     * Create new connection if pooled and taken from the datasource or the connection pool
      */
     void openConnection() throws SQLException {
         if (getConnection() == null || getConnection().isClosed()) {
             log.info("Get new connection, it is closed");
-            setConnection(getNativeConnection(config));
+            setConnection(pool != null ? pool.borrow() : getNativeConnection(config));
+        }
+    }
+
+    /**
+     * The connection is taken from the datasource or the connection pool for every operation
+     *
+     * @return true if the connection is pooled
+     */
+    boolean isPooled() {
+        return pool != null || StringUtil.isNotBlank(config.getDatasource());
+    }
+
+    /**
+     * Accessor for the connection pool
+     *
+     * @return the pool, null if the connections are not pooled by the connector
+     */
+    DatabaseTableConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Dispose the connection and give up the share of the connection pool
+     */
+    void close() {
+        dispose();
+        if (pool != null) {
+            pool.release();
+            pool = null;
         }
     }
 }
@@ -0,0 +1,493 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.databasetable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.common.IOUtil;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+
+/**
+ * A pool of driver manager connections shared by the connector instances with the same connection settings.
+ * <p>
+ * The pool hands out proxies of the pooled connections, closing a proxy gives the connection back to the pool after
+ * its transaction was rolled back. The pool opens at most the configured number of connections, a borrower waits for
+ * a connection to be given back when all of them are in use. A connection which has been idle for a while is validated
+ * before it is handed out again, a connection which is older than the maximum lifetime or which failed with a
+ * connection error is closed instead of being pooled. A connection kept longer than the leak threshold is reported
+ * once with the stack trace of the code which took it.
+ *
+ * @version $Revision 1.0$
+ * @since 1.0
+ */
+final class DatabaseTableConnectionPool {
+
+    /**
+     * Setup logging for the {@link DatabaseTableConnectionPool}.
+     */
+    static Log log = Log.getLog(DatabaseTableConnectionPool.class);
+
+    /**
+     * Time in milliseconds after which an idle connection is validated before it is used.
+     */
+    private static final long VALIDATE_AFTER = 5000;
+
+    /**
+     * Time in milliseconds a borrower waits for a connection when all the connections are in use.
+     */
+    private static final long BORROW_TIMEOUT = 30000;
+
+    /**
+     * The pools in use by the connection settings
+     */
+    private static final Map<List<Object>, DatabaseTableConnectionPool> POOLS =
+            new HashMap<List<Object>, DatabaseTableConnectionPool>();
+
+    /**
+     * Get the pool of the connection settings of the configuration, it must be given up with {@link #release()}.
+     *
+     * @param config the configuration
+     * @return the shared pool
+     */
+    static DatabaseTableConnectionPool acquire(DatabaseTableConfiguration config) {
+        final List<Object> key = Arrays.<Object>asList(config.getJdbcDriver(), config.formatUrlTemplate(),
+                config.getUser(), config.getPassword(), config.getValidConnectionQuery(),
+                config.getValidConnectionTimeout(), config.getConnectionPoolSize(), config.getConnectionMaxLifetime(),
+                config.getConnectionLeakThreshold());
+        synchronized (POOLS) {
+            DatabaseTableConnectionPool pool = POOLS.get(key);
+            if (pool == null) {
+                log.info("Create connection pool for connection url {0} and user {1}", config.formatUrlTemplate(),
+                        config.getUser());
+                pool = new DatabaseTableConnectionPool(key, config);
+                POOLS.put(key, pool);
+            }
+            pool.references++;
+            return pool;
+        }
+    }
+
+    /**
+     * A pooled connection
+     */
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final long createdAt = System.currentTimeMillis();
+        private final DatabaseTableConnection.StatementCache statements = new DatabaseTableConnection.StatementCache();
+        private long idleSince;
+        private volatile boolean broken = false;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final List<Object> key;
+    private final DatabaseTableConfiguration config;
+
+    /**
+     * The idle connections, the most recently returned last.
+     */
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+    /**
+     * The connections handed out and not given back yet
+     */
+    private final Map<Lease, Lease> active = new IdentityHashMap<Lease, Lease>();
+
+    /**
+     * The connector instances using the pool, guarded by {@link #POOLS}.
+     */
+    private int references = 0;
+
+    private boolean closed = false;
+
+    /**
+     * The connections opened and not closed yet, in use, idle or being opened.
+     */
+    private int openCount = 0;
+
+    private long createdCount = 0;
+    private long borrowedCount = 0;
+    private long validationFailureCount = 0;
+    private long leakCount = 0;
+
+    private DatabaseTableConnectionPool(List<Object> key, DatabaseTableConfiguration config) {
+        this.key = key;
+        this.config = config;
+    }
+
+    /**
+     * Give up the share of the pool taken by {@link #acquire(DatabaseTableConfiguration)}. The pool is closed when it
+     * is not used anymore.
+     */
+    void release() {
+        synchronized (POOLS) {
+            if (--references > 0) {
+                return;
+            }
+            POOLS.remove(key);
+        }
+        final List<PooledConnection> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<PooledConnection>(idle);
+            idle.clear();
+        }
+        for (PooledConnection pooled : all) {
+            closeQuietly(pooled);
+        }
+        log.info("Connection pool closed: {0}", this);
+    }
+
+    /**
+     * Take a connection from the pool or open a new one. It is given back to the pool when it is closed.
+     *
+     * @return the connection
+     */
+    Connection borrow() {
+        final PooledConnection pooled = take();
+        final Lease lease = new Lease(pooled);
+        synchronized (this) {
+            active.put(lease, lease);
+            borrowedCount++;
+            detectLeaks(lease.borrowedAt);
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, lease);
+    }
+
+    /**
+     * The statement cache of the physical connection behind a connection handed out by a pool. It is kept while the
+     * connection is idle and closed with the connection.
+     *
+     * @param connection a connection returned by {@link #borrow()}
+     * @return the cache, null if the connection does not come from a pool
+     */
+    static DatabaseTableConnection.StatementCache getStatementCache(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof Lease) {
+                return ((Lease) handler).pooled.statements;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the most recently returned usable connection, or open a new one if the pool is not full.
+     */
+    private PooledConnection take() {
+        final long deadline = System.currentTimeMillis() + BORROW_TIMEOUT;
+        while (true) {
+            PooledConnection pooled;
+            synchronized (this) {
+                while (idle.isEmpty() && openCount >= config.getConnectionPoolSize()) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new ConnectionFailedException("No pooled connection was given back within "
+                                + BORROW_TIMEOUT + " ms, " + this);
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ConnectionFailedException(e);
+                    }
+                }
+                pooled = idle.pollLast();
+                if (pooled == null) {
+                    openCount++;
+                }
+            }
+            if (pooled == null) {
+                try {
+                    pooled = new PooledConnection(DatabaseTableConnection.getDriverManagerConnection(config));
+                } catch (RuntimeException e) {
+                    connectionClosed();
+                    throw e;
+                }
+                synchronized (this) {
+                    createdCount++;
+                }
+                return pooled;
+            }
+            final long now = System.currentTimeMillis();
+            if (!isExpired(pooled, now) && (now - pooled.idleSince < VALIDATE_AFTER || isValid(pooled.connection))) {
+                return pooled;
+            }
+            closeQuietly(pooled);
+        }
+    }
+
+    /**
+     * Give back a connection after it was closed by the borrower.
+     */
+    private void giveBack(Lease lease) {
+        final PooledConnection pooled = lease.pooled;
+        final long now = System.currentTimeMillis();
+        final List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+        // the statements still open and the transaction belong to the borrower which gave the connection back
+        pooled.statements.closeInUse();
+        final boolean reset = !pooled.broken && reset(pooled.connection);
+        synchronized (this) {
+            active.remove(lease);
+            if (closed || !reset || isExpired(pooled, now)) {
+                evicted.add(pooled);
+            } else {
+                pooled.idleSince = now;
+                idle.addLast(pooled);
+                notifyAll();
+            }
+            final Iterator<PooledConnection> iter = idle.iterator();
+            while (iter.hasNext()) {
+                final PooledConnection candidate = iter.next();
+                if (isExpired(candidate, now)) {
+                    iter.remove();
+                    evicted.add(candidate);
+                }
+            }
+        }
+        for (PooledConnection candidate : evicted) {
+            closeQuietly(candidate);
+        }
+    }
+
+    /**
+     * Roll back the work left by the borrower and restore the auto-commit mode set when the connection was opened.
+     *
+     * @return false if the connection could not be reset and must not be reused
+     */
+    private static boolean reset(Connection connection) {
+        try {
+            if (connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+            } else {
+                connection.rollback();
+            }
+            return true;
+        } catch (SQLException e) {
+            log.ok(e, "Discarding a pooled connection which could not be reset");
+            return false;
+        }
+    }
+
+    /**
+     * Report the connections kept longer than the leak threshold, called with the lock held.
+     */
+    private void detectLeaks(long now) {
+        final long threshold = config.getConnectionLeakThreshold();
+        if (threshold <= 0) {
+            return;
+        }
+        for (Lease lease : active.keySet()) {
+            if (!lease.leakReported && now - lease.borrowedAt > threshold) {
+                lease.leakReported = true;
+                leakCount++;
+                log.warn(lease.borrowStack, "Connection taken {0} ms ago was not given back to the pool, "
+                        + "possible connection leak", now - lease.borrowedAt);
+            }
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        final long maxLifetime = config.getConnectionMaxLifetime();
+        return maxLifetime > 0 && now - pooled.createdAt >= maxLifetime;
+    }
+
+    /**
+     * Validate a connection with the valid connection query, or with the driver's built-in method.
+     */
+    private boolean isValid(Connection connection) {
+        final String sql = config.getValidConnectionQuery();
+        Statement stmt = null;
+        try {
+            if (StringUtil.isBlank(sql)) {
+                return connection.isValid(config.getValidConnectionTimeout());
+            }
+            stmt = connection.createStatement();
+            stmt.execute(sql);
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            return true;
+        } catch (SQLFeatureNotSupportedException e) {
+            return true;
+        } catch (SQLException e) {
+            log.ok(e, "Discarding a pooled connection which failed the validation");
+        } finally {
+            IOUtil.quietClose(stmt);
+        }
+        synchronized (this) {
+            validationFailureCount++;
+        }
+        return false;
+    }
+
+    private void closeQuietly(PooledConnection pooled) {
+        pooled.statements.clear();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            log.ok(e, "Failed to close a pooled connection");
+        }
+        connectionClosed();
+    }
+
+    /**
+     * Free the place of a closed connection for a waiting borrower.
+     */
+    private synchronized void connectionClosed() {
+        openCount--;
+        notifyAll();
+    }
+
+    /**
+     * The number of connections opened by the pool
+     *
+     * @return the count
+     */
+    synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * The number of connections handed out by the pool
+     *
+     * @return the count
+     */
+    synchronized long getBorrowedCount() {
+        return borrowedCount;
+    }
+
+    /**
+     * The number of connections handed out and not given back yet
+     *
+     * @return the count
+     */
+    synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * The number of idle connections in the pool
+     *
+     * @return the count
+     */
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * The number of idle connections which failed the validation
+     *
+     * @return the count
+     */
+    synchronized long getValidationFailureCount() {
+        return validationFailureCount;
+    }
+
+    /**
+     * The number of connections reported as leaked
+     *
+     * @return the count
+     */
+    synchronized long getLeakCount() {
+        return leakCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "open=" + openCount + ", created=" + createdCount + ", borrowed=" + borrowedCount + ", active="
+                + active.size() + ", idle=" + idle.size() + ", validationFailures=" + validationFailureCount
+                + ", leaks=" + leakCount;
+    }
+
+    /**
+     * The proxy of a pooled connection handed out once, it can not be used after it was closed.
+     */
+    private final class Lease implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Throwable borrowStack;
+        private boolean leakReported = false;
+        private volatile boolean leaseClosed = false;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.borrowStack = config.getConnectionLeakThreshold() > 0 ? new Throwable("Connection taken here") : null;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            final int argCount = args == null ? 0 : args.length;
+            if ("close".equals(name) && argCount == 0) {
+                if (!leaseClosed) {
+                    leaseClosed = true;
+                    giveBack(this);
+                }
+                return null;
+            } else if ("isClosed".equals(name) && argCount == 0) {
+                return leaseClosed || pooled.connection.isClosed();
+            } else if ("equals".equals(name) && argCount == 1) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name) && argCount == 0) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name) && argCount == 0) {
+                return "Pooled " + pooled.connection;
+            }
+            if (leaseClosed) {
+                throw new SQLException("The connection was given back to the pool");
+            }
+            try {
+                return method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                // SQL state class 08 is a connection exception, the connection must not be reused
+                if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null
+                        && ((SQLException) cause).getSQLState().startsWith("08")) {
+                    pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+}
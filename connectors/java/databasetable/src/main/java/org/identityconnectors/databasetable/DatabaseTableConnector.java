@@ -25,12 +25,14 @@ package org.identityconnectors.databasetable;
 
 import static org.identityconnectors.databasetable.DatabaseTableConstants.*;
 
+import java.io.UnsupportedEncodingException;
 import java.sql.*;
 import java.sql.Date;
 import java.text.MessageFormat;
 import java.util.*;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.Base64;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.IOUtil;
 import org.identityconnectors.common.StringUtil;
@@ -46,6 +48,7 @@ import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
 import org.identityconnectors.framework.spi.PoolableConnector;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.*;
 
 /**
@@ -70,7 +73,8 @@ import org.identityconnectors.framework.spi.operations.*;
         displayNameKey = "DBTABLE_CONNECTOR",
         configurationClass = DatabaseTableConfiguration.class)
 public class DatabaseTableConnector implements PoolableConnector, CreateOp, SearchOp<FilterWhereBuilder>,
-        DeleteOp, UpdateOp, SchemaOp, TestOp, AuthenticateOp, SyncOp, ResolveUsernameOp, DiscoverConfigurationOp {
+        DeleteOp, UpdateOp, SchemaOp, TestOp, AuthenticateOp, SyncOp, ResolveUsernameOp, DiscoverConfigurationOp,
+        GetOp {
 
     /**
      * Setup logging for the {@link DatabaseTableConnector}.
@@ -139,7 +143,8 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
     public void checkAlive() {
         log.info("checkAlive DatabaseTable connector");
         try {
-            if (StringUtil.isNotBlank(config.getDatasource())) {
+            if (getConn().isPooled()) {
+                // the pool validates the connections which have been idle for a while
                 openConnection();
             } else {
                 this.config.setValidationOnlyConnection();
@@ -176,7 +181,7 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
     public void dispose() {
         log.info("dispose DatabaseTable connector");
         if (conn != null) {
-            conn.dispose();
+            conn.close();
             conn = null;
         }
         this.defaultAttributesToGet = null;
@@ -195,6 +200,20 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         }
         log.ok("Object class ok");
 
+        final WriteStatement insert = prepareCreate(attrs);
+        executeWrite(insert);
+        log.ok("Account {0} created", insert.accountName);
+        // create and return the uid..
+        return insert.uid;
+    }
+
+    /**
+     * Build the insert statement of a new account.
+     *
+     * @param attrs the attributes of the account
+     * @return the statement
+     */
+    private WriteStatement prepareCreate(Set<Attribute> attrs) {
         if (attrs == null || attrs.size() == 0) {
             throw new IllegalArgumentException(config.getMessage(MSG_INVALID_ATTRIBUTE_SET));
         }
@@ -250,25 +269,8 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         final String SQL_INSERT = "INSERT INTO {0} ( {1} ) VALUES ( {2} )";
         // create the prepared statement..
         final String sql = MessageFormat.format(SQL_INSERT, tblname, bld.getInto(), bld.getValues());
-
-        PreparedStatement pstmt = null;
-        try {
-            openConnection();
-            pstmt = getConn().prepareStatement(sql, bld.getParams());
-            // execute the SQL statement
-            pstmt.execute();
-            log.info("Create account {0} commit", accountName);
-            commit();
-        } catch (SQLException e) {
-
-            evaluateAndHandleException(e, true, true, false, MSG_CAN_NOT_CREATE, accountName);
-        } finally {
-            IOUtil.quietClose(pstmt);
-            closeConnection();
-        }
-        log.ok("Account {0} created", accountName);
-        // create and return the uid..
-        return new Uid(accountName);
+        return new WriteStatement(WriteOperation.CREATE, sql, bld.getParams(), new Uid(accountName), accountName,
+                accountName);
     }
 
     /**
@@ -297,62 +299,41 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
      */
     public void delete(final ObjectClass oclass, final Uid uid, final OperationOptions options) {
         log.info("delete account, check the ObjectClass");
-
-        final String SQL_DELETE = "DELETE FROM {0} WHERE {1} = ?";
-        PreparedStatement stmt = null;
-        // create the SQL string..
-
         if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
             throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
         }
         log.ok("The ObjectClass is ok");
 
+        final WriteStatement delete = prepareDelete(uid);
+        log.info("Deleting account Uid: {0}", delete.accountName);
+        executeWrite(delete);
+        log.ok("Account Uid {0} deleted", delete.accountName);
+    }
+
+    /**
+     * Build the delete statement of an account.
+     *
+     * @param uid the uid of the account
+     * @return the statement
+     */
+    private WriteStatement prepareDelete(final Uid uid) {
+        final String SQL_DELETE = "DELETE FROM {0} WHERE {1} = ?";
         if (uid == null || (uid.getUidValue() == null)) {
             throw new IllegalArgumentException(config.getMessage(MSG_UID_BLANK));
         }
         final String accountUid = uid.getUidValue();
         log.ok("The Uid is present");
 
+        // create the SQL string..
         final String tblname = config.getTable();
         final String keycol = quoteName(config.getKeyColumn());
         final String sql = MessageFormat.format(SQL_DELETE, tblname, keycol);
-        try {
-            log.info("delete account SQL {0}", sql);
-            openConnection();
-            // create a prepared call..
-            stmt = getConn().getConnection().prepareStatement(sql);
-            // set object to delete..
-            final SQLColumnTypeInfo sqlColumnTypeInfo = getColumnTypeInfo(config.getKeyColumn());
-            SQLUtil.setSQLParam(stmt, 1, new SQLParam(quoteName(config.getKeyColumn()), accountUid, sqlColumnTypeInfo.getTypeCode(), sqlColumnTypeInfo.getTypeName()));
-            // stmt.setString(1, accountUid);
-            // uid to delete..
-            log.info("Deleting account Uid: {0}", accountUid);
-            final int dr = stmt.executeUpdate();
-            if (dr < 1) {
-                SQLUtil.rollbackQuietly(getConn());
-                // TODO: Before we throw this error we should recheck that the account is really not there with select.
-                // This may happen when the "table" is view and update returns UPDATED 0.
-                // The consequences of killing the shadow are quite annoying, so we should double-check.
-                // Of course, the previous behaviour quietly ignoring the problem was not good either.
-                handleUnknownUid(MSG_EXP_UNKNOWN_UID, accountUid);
-            }
-            if (dr > 1) {
-                SQLUtil.rollbackQuietly(getConn());
-                // TODO: This one is even stranger - again, should it make the shadow dead?
-                // It likely should not be ignored like before, I agree with that.
-                handleUnknownUid(MSG_EXP_TOO_MANY_UID, accountUid);
-            }
-            log.info("Delete account {0} commit", accountUid);
-            commit();
-        } catch (SQLException e) {
-
-            SQLUtil.rollbackQuietly(getConn());
-            evaluateAndHandleException(e, false, true, false, MSG_CAN_NOT_DELETE, accountUid);
-        } finally {
-            IOUtil.quietClose(stmt);
-            closeConnection();
-        }
-        log.ok("Account Uid {0} deleted", accountUid);
+        log.info("delete account SQL {0}", sql);
+        // set object to delete..
+        final SQLColumnTypeInfo sqlColumnTypeInfo = getColumnTypeInfo(config.getKeyColumn());
+        final List<SQLParam> params = Collections.singletonList(new SQLParam(keycol, accountUid,
+                sqlColumnTypeInfo.getTypeCode(), sqlColumnTypeInfo.getTypeName()));
+        return new WriteStatement(WriteOperation.DELETE, sql, params, uid, accountUid, accountUid);
     }
 
     /**
@@ -361,15 +342,28 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
      */
     public Uid update(ObjectClass oclass, Uid uid, Set<Attribute> attrs, OperationOptions options) {
         log.info("update account, check the ObjectClass");
-
-        final String sqlTemplate = "UPDATE {0} SET {1} WHERE {2} = ?";
-        // create the sql statement..
-
         if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
             throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
         }
         log.ok("The ObjectClass is ok");
 
+        final WriteStatement update = prepareUpdate(uid, attrs);
+        executeWrite(update);
+        log.ok("Account {0} updated", update.accountName);
+        return update.uid;
+    }
+
+    /**
+     * Build the update statement of an account.
+     *
+     * @param uid the uid of the account
+     * @param attrs the attributes to replace
+     * @return the statement
+     */
+    private WriteStatement prepareUpdate(Uid uid, Set<Attribute> attrs) {
+        final String sqlTemplate = "UPDATE {0} SET {1} WHERE {2} = ?";
+        // create the sql statement..
+
         if (attrs == null || attrs.size() == 0) {
             throw new IllegalArgumentException(config.getMessage(MSG_INVALID_ATTRIBUTE_SET));
         }
@@ -424,38 +418,256 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         SQLColumnTypeInfo columnTypeInfo = getColumnTypeInfo(config.getKeyColumn());
         updateSet.addValue(new SQLParam(keycol, accountUid, columnTypeInfo.getTypeCode(), columnTypeInfo.getTypeName()));
         final String sql = MessageFormat.format(sqlTemplate, tblname, updateSet.getSQL(), keycol);
+        return new WriteStatement(WriteOperation.UPDATE, sql, updateSet.getParams(), ret, accountName, accountUid);
+    }
+
+    /**
+     * Execute an insert, update or delete of one account in its own transaction.
+     *
+     * @param write the statement
+     */
+    private void executeWrite(WriteStatement write) {
         PreparedStatement stmt = null;
         try {
             openConnection();
             // create the prepared statement..
-            stmt = getConn().prepareStatement(sql, updateSet.getParams());
-
-            log.info("The prepared statement in case of update {0}", stmt.toString());
-
-            int retCode = stmt.executeUpdate();
+            stmt = getConn().prepareStatement(write.sql, write.params);
+            final int retCode = stmt.executeUpdate();
             log.info("The return code for the statement: {0}", retCode);
-            // commit changes
-
-            if (retCode == 0) {
-                String uidValue = uid.getUidValue();
-                // TODO: Before we throw this error we should recheck that the account is really not there with select.
-                // This may happen when the "table" is view and update returns UPDATED 0.
-                // The consequences of killing the shadow are quite annoying, so we should double-check.
-                // Of course, the previous behaviour quietly ignoring the problem was not good either.
-                log.error("Account with the uid {0} not found during the update operation.", uidValue);
-                handleUnknownUid(MSG_OP_UPDATE_UNKNOWN, uidValue);
+            if (!write.isExpectedRowCount(retCode)) {
+                SQLUtil.rollbackQuietly(getConn());
+                handleUnexpectedRowCount(write, retCode);
             }
-            log.info("Update account {0} commit", accountName);
+            log.info("{0} account {1} commit", write.operation, write.accountName);
             commit();
         } catch (SQLException e) {
 
-            evaluateAndHandleException(e, true, true, false, MSG_CAN_NOT_UPDATE, accountName);
+            SQLUtil.rollbackQuietly(getConn());
+            evaluateAndHandleException(e, write.operation != WriteOperation.DELETE, true, false,
+                    write.operation.failMessage, write.accountName);
         } finally {
             IOUtil.quietClose(stmt);
             closeConnection();
         }
-        log.ok("Account {0} updated", accountName);
-        return ret;
+    }
+
+    /**
+     * Throw the exception for an update or delete which did not change exactly one row.
+     *
+     * @param write the statement
+     * @param retCode the number of changed rows
+     */
+    private void handleUnexpectedRowCount(WriteStatement write, int retCode) {
+        // TODO: Before we throw this error we should recheck that the account is really not there with select.
+        // This may happen when the "table" is view and update returns UPDATED 0.
+        // The consequences of killing the shadow are quite annoying, so we should double-check.
+        // Of course, the previous behaviour quietly ignoring the problem was not good either.
+        if (write.operation == WriteOperation.UPDATE) {
+            log.error("Account with the uid {0} not found during the update operation.", write.target);
+            handleUnknownUid(MSG_OP_UPDATE_UNKNOWN, write.target);
+        }
+        handleUnknownUid(retCode < 1 ? MSG_EXP_UNKNOWN_UID : MSG_EXP_TOO_MANY_UID, write.target);
+    }
+
+    /**
+     * Creates the rows of many accounts. The inserts are sent to the database in JDBC batches and committed every
+     * {@link DatabaseTableConfiguration#getBatchSize()} rows.
+     *
+     * @param oclass the object class, only accounts are supported
+     * @param attrSets the attributes of the accounts
+     * @param options the operation options
+     * @return the result of every account in the order of the attribute sets, with the uid of the new row or the
+     *         exception {@link #create(ObjectClass, Set, OperationOptions)} would have thrown
+     */
+    public List<BatchResult> createBatch(ObjectClass oclass, List<Set<Attribute>> attrSets, OperationOptions options) {
+        log.info("create accounts, check the ObjectClass");
+        if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
+            throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
+        }
+        log.ok("Object class ok");
+
+        final WriteStatement[] writes = new WriteStatement[attrSets.size()];
+        final BatchResult[] results = new BatchResult[attrSets.size()];
+        for (int i = 0; i < writes.length; i++) {
+            try {
+                writes[i] = prepareCreate(attrSets.get(i));
+            } catch (RuntimeException e) {
+                results[i] = new BatchResult(null, e);
+            }
+        }
+        executeBatch(writes, results);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Updates the rows of many accounts. The updates are sent to the database in JDBC batches and committed every
+     * {@link DatabaseTableConfiguration#getBatchSize()} rows.
+     *
+     * @param oclass the object class, only accounts are supported
+     * @param updates the attributes to replace by the uid of the account
+     * @param options the operation options
+     * @return the result of every account in the iteration order of the updates, with the uid after the update or
+     *         the exception {@link #update(ObjectClass, Uid, Set, OperationOptions)} would have thrown
+     */
+    public List<BatchResult> updateBatch(ObjectClass oclass, Map<Uid, Set<Attribute>> updates,
+            OperationOptions options) {
+        log.info("update accounts, check the ObjectClass");
+        if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
+            throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
+        }
+        log.ok("The ObjectClass is ok");
+
+        final WriteStatement[] writes = new WriteStatement[updates.size()];
+        final BatchResult[] results = new BatchResult[updates.size()];
+        int i = 0;
+        for (Map.Entry<Uid, Set<Attribute>> update : updates.entrySet()) {
+            try {
+                writes[i] = prepareUpdate(update.getKey(), update.getValue());
+            } catch (RuntimeException e) {
+                results[i] = new BatchResult(null, e);
+            }
+            i++;
+        }
+        executeBatch(writes, results);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Deletes the rows of many accounts. The deletes are sent to the database in JDBC batches and committed every
+     * {@link DatabaseTableConfiguration#getBatchSize()} rows.
+     *
+     * @param oclass the object class, only accounts are supported
+     * @param uids the uids of the accounts
+     * @param options the operation options
+     * @return the result of every account in the order of the uids, with the deleted uid or the exception
+     *         {@link #delete(ObjectClass, Uid, OperationOptions)} would have thrown
+     */
+    public List<BatchResult> deleteBatch(ObjectClass oclass, List<Uid> uids, OperationOptions options) {
+        log.info("delete accounts, check the ObjectClass");
+        if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
+            throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
+        }
+        log.ok("The ObjectClass is ok");
+
+        final WriteStatement[] writes = new WriteStatement[uids.size()];
+        final BatchResult[] results = new BatchResult[uids.size()];
+        for (int i = 0; i < writes.length; i++) {
+            try {
+                writes[i] = prepareDelete(uids.get(i));
+            } catch (RuntimeException e) {
+                results[i] = new BatchResult(null, e);
+            }
+        }
+        executeBatch(writes, results);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Execute the statements of a batch operation in chunks of {@link DatabaseTableConfiguration#getBatchSize()}.
+     *
+     * @param writes the statements, null for the items which could not be prepared
+     * @param results the results, filled in for the executed statements
+     */
+    private void executeBatch(WriteStatement[] writes, BatchResult[] results) {
+        final List<Integer> chunk = new ArrayList<>(config.getBatchSize());
+        for (int i = 0; i < writes.length; i++) {
+            if (writes[i] == null) {
+                continue;
+            }
+            chunk.add(i);
+            if (chunk.size() == config.getBatchSize()) {
+                executeChunk(writes, chunk, results);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            executeChunk(writes, chunk, results);
+        }
+    }
+
+    /**
+     * Execute the statements of a chunk in one transaction. Consecutive statements with the same SQL are sent in
+     * one JDBC batch. If any of them fails, or does not change the expected number of rows, the chunk is rolled
+     * back and the statements are executed one by one, so every statement gets the result of the single operation.
+     *
+     * @param writes the statements
+     * @param chunk the indexes of the statements of the chunk
+     * @param results the results
+     */
+    private void executeChunk(WriteStatement[] writes, List<Integer> chunk, BatchResult[] results) {
+        boolean failed = true;
+        PreparedStatement stmt = null;
+        try {
+            openConnection();
+            final List<WriteStatement> group = new ArrayList<>();
+            boolean valid = true;
+            for (int i = 0; i < chunk.size() && valid; i++) {
+                final WriteStatement write = writes[chunk.get(i)];
+                if (!group.isEmpty() && !group.get(0).sql.equals(write.sql)) {
+                    valid = executeGroup(stmt, group);
+                    IOUtil.quietClose(stmt);
+                    stmt = null;
+                    group.clear();
+                }
+                if (stmt == null) {
+                    log.info("Prepare SQL batch statement : {0}", write.sql);
+                    stmt = getConn().getConnection().prepareStatement(write.sql);
+                }
+                DatabaseTableSQLUtil.setParams(getConn().getSms(), stmt, write.params);
+                stmt.addBatch();
+                group.add(write);
+            }
+            if (valid && executeGroup(stmt, group)) {
+                log.info("Batch of {0} statements commit", chunk.size());
+                commit();
+                failed = false;
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.info("Batch of {0} statements failed, executing them one by one: {1}", chunk.size(), e);
+        } finally {
+            if (failed) {
+                SQLUtil.rollbackQuietly(getConn());
+            }
+            IOUtil.quietClose(stmt);
+            closeConnection();
+        }
+        for (int i : chunk) {
+            if (!failed) {
+                results[i] = new BatchResult(writes[i].uid, null);
+                continue;
+            }
+            try {
+                executeWrite(writes[i]);
+                results[i] = new BatchResult(writes[i].uid, null);
+            } catch (RuntimeException e) {
+                results[i] = new BatchResult(null, e);
+            }
+        }
+    }
+
+    /**
+     * Execute a JDBC batch of statements with the same SQL.
+     *
+     * @param stmt the prepared statement with the batch, null if the group is empty
+     * @param group the statements of the batch
+     * @return true if every statement changed the expected number of rows
+     * @throws SQLException if the batch fails
+     */
+    private boolean executeGroup(PreparedStatement stmt, List<WriteStatement> group) throws SQLException {
+        if (group.isEmpty()) {
+            return true;
+        }
+        log.info("Execute batch of {0} statements", group.size());
+        final int[] retCodes = stmt.executeBatch();
+        for (int i = 0; i < group.size(); i++) {
+            final int retCode = i < retCodes.length ? retCodes[i] : Statement.EXECUTE_FAILED;
+            if (retCode == Statement.EXECUTE_FAILED
+                    || (retCode != Statement.SUCCESS_NO_INFO && !group.get(i).isExpectedRowCount(retCode))) {
+                log.info("Unexpected return code {0} of account {1}", retCode, group.get(i).accountName);
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -496,19 +708,55 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         final DatabaseQueryBuilder query = new DatabaseQueryBuilder(tblname, columnNamesToGet);
         query.setWhere(where);
 
+        // Paged results, the rows are ordered by the key column and the cookie is the key of the last row
+        final int pageSize = options != null && options.getPageSize() != null ? options.getPageSize() : 0;
+        int skip = 0;
+        if (pageSize > 0) {
+            final String keyColumnName = quoteName(config.getKeyColumn());
+            if (options.getPagedResultsOffset() != null && options.getPagedResultsOffset() > 0) {
+                skip = options.getPagedResultsOffset() - 1;
+            } else if (options.getPagedResultsCookie() != null) {
+                final SQLColumnTypeInfo sqlColumnTypeInfo = getColumnTypeInfo(config.getKeyColumn());
+                final FilterWhereBuilder keyset = new FilterWhereBuilder();
+                keyset.addBind(new SQLParam(keyColumnName, decodeCookie(options.getPagedResultsCookie()),
+                        sqlColumnTypeInfo.getTypeCode(), sqlColumnTypeInfo.getTypeName()), ">");
+                if (where == null || StringUtil.isBlank(where.getWhereClause())) {
+                    query.setWhere(keyset);
+                } else {
+                    final FilterWhereBuilder and = new FilterWhereBuilder();
+                    and.join("AND", where, keyset);
+                    query.setWhere(and);
+                }
+            }
+            query.setOrderBy(Collections.singletonList(new OrderBy(keyColumnName, true)));
+        }
+
+        String pagedResultsCookie = null;
         ResultSet result = null;
         PreparedStatement statement = null;
+        boolean failed = true;
         try {
             openConnection();
-            statement = getConn().prepareStatement(query);
+            // one more row than the page tells whether there is a next page
+            statement = getConn().prepareQuery(query, pageSize > 0 ? skip + pageSize + 1 : 0);
             result = statement.executeQuery();
             log.ok("executeQuery {0} on {1}", query.getSQL(), oclass);
+            skipRows(result, skip);
+            final RowMapper mapper = new RowMapper(getConn().getSms(), result.getMetaData());
+            int count = 0;
+            String lastUidValue = null;
             while (result.next()) {
-                final Map<String, SQLParam> columnValues = getConn().getColumnValues(result);
-                log.ok("Column values {0} from result set ", columnValues);
+                if (pageSize > 0 && count == pageSize) {
+                    log.ok("The page is complete, there are more rows");
+                    pagedResultsCookie = encodeCookie(lastUidValue);
+                    break;
+                }
                 // create the connector object
-                final ConnectorObjectBuilder bld = buildConnectorObject(columnValues);
-                if (!handler.handle(bld.build())) {
+                final ConnectorObjectBuilder bld = mapper.buildConnectorObject(result);
+                final ConnectorObject object = bld.build();
+                count++;
+                lastUidValue = object.getUid().getUidValue();
+                if (!handler.handle(object)) {
                     log.ok("Stop processing of the result set");
                     break;
                 }
@@ -516,6 +764,7 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
             // commit changes
             log.info("commit executeQuery account");
             commit();
+            failed = false;
         } catch (SQLException e) {
             log.error(e, "Query {0} on {1} error", query.getSQL(), oclass);
 
@@ -523,12 +772,165 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
             evaluateAndHandleException(e, true, true, false, MSG_CAN_NOT_READ, tblname);
         } finally {
             IOUtil.quietClose(result);
-            IOUtil.quietClose(statement);
+            getConn().releaseStatement(statement, failed);
             closeConnection();
         }
+        if (handler instanceof SearchResultsHandler) {
+            ((SearchResultsHandler) handler).handleResult(new SearchResult(pagedResultsCookie, -1));
+        }
         log.ok("Query Account committed");
     }
 
+    /**
+     * Move the cursor of the result set behind the rows of the previous pages.
+     *
+     * @param result the result set
+     * @param skip the number of rows to skip
+     * @throws SQLException if the rows can not be read
+     */
+    private void skipRows(ResultSet result, int skip) throws SQLException {
+        if (skip == 0) {
+            return;
+        }
+        if (result.getType() != ResultSet.TYPE_FORWARD_ONLY) {
+            // the cursor is behind the last row when there are fewer rows
+            result.absolute(skip);
+            return;
+        }
+        for (int i = 0; i < skip && result.next(); i++) {
+            // skip the row
+        }
+    }
+
+    /**
+     * The paged results cookie is the key of the last row of the page.
+     *
+     * @param uidValue the key
+     * @return the opaque cookie
+     */
+    private static String encodeCookie(String uidValue) {
+        try {
+            return Base64.encode(uidValue.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    /**
+     * Read the key of the last row of the previous page from the paged results cookie.
+     *
+     * @param cookie the opaque cookie
+     * @return the key
+     */
+    private String decodeCookie(String cookie) {
+        try {
+            return new String(Base64.decode(cookie), "UTF-8");
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(config.getMessage(MSG_INVALID_PAGED_RESULTS_COOKIE, cookie), e);
+        } catch (UnsupportedEncodingException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
+    /**
+     * Read the row of the key.
+     * {@inheritDoc}
+     */
+    public ConnectorObject getObject(ObjectClass oclass, Uid uid, OperationOptions options) {
+        final ConnectorObject[] ret = new ConnectorObject[1];
+        getObjects(oclass, Collections.singletonList(uid), new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                ret[0] = object;
+                return false;
+            }
+        }, options);
+        return ret[0];
+    }
+
+    /**
+     * Read the rows of the keys, with a <code>WHERE key = ? OR key = ? ...</code> query for every
+     * {@link DatabaseTableConfiguration#getBatchSize()} keys.
+     * {@inheritDoc}
+     */
+    public void getObjects(ObjectClass oclass, Collection<Uid> uids, ResultsHandler handler,
+            OperationOptions options) {
+        log.info("check the ObjectClass and result handler");
+        if (oclass == null || (!oclass.equals(ObjectClass.ACCOUNT))) {
+            throw new IllegalArgumentException(config.getMessage(MSG_ACCOUNT_OBJECT_CLASS_REQUIRED));
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException(config.getMessage(MSG_RESULT_HANDLER_NULL));
+        }
+        log.ok("The ObjectClass and result handler is ok");
+
+        final String tblname = config.getTable();
+        final Set<String> columnNamesToGet = resolveColumnNamesToGet(options);
+        final String keyColumnName = quoteName(config.getKeyColumn());
+        final SQLColumnTypeInfo sqlColumnTypeInfo = getColumnTypeInfo(config.getKeyColumn());
+        final List<SQLParam> keys = new ArrayList<>(uids.size());
+        for (Uid uid : uids) {
+            keys.add(new SQLParam(keyColumnName, uid.getUidValue(), sqlColumnTypeInfo.getTypeCode(),
+                    sqlColumnTypeInfo.getTypeName()));
+        }
+
+        DatabaseQueryBuilder query = null;
+        ResultSet result = null;
+        PreparedStatement statement = null;
+        boolean failed = true;
+        try {
+            openConnection();
+            boolean proceed = true;
+            for (int i = 0; i < keys.size() && proceed; i += config.getBatchSize()) {
+                query = new DatabaseQueryBuilder(tblname, columnNamesToGet);
+                query.setWhere(whereAnyKey(keys.subList(i, Math.min(i + config.getBatchSize(), keys.size()))));
+
+                statement = getConn().prepareQuery(query);
+                result = statement.executeQuery();
+                log.ok("getObjects {0} on {1}", query.getSQL(), oclass);
+                final RowMapper mapper = new RowMapper(getConn().getSms(), result.getMetaData());
+                while (proceed && result.next()) {
+                    proceed = handler.handle(mapper.buildConnectorObject(result).build());
+                }
+                IOUtil.quietClose(result);
+                result = null;
+                getConn().releaseStatement(statement, false);
+                statement = null;
+            }
+            // commit changes
+            log.info("commit getObjects account");
+            commit();
+            failed = false;
+        } catch (SQLException e) {
+            log.error(e, "Query {0} on {1} error", query != null ? query.getSQL() : null, oclass);
+
+            SQLUtil.rollbackQuietly(getConn());
+            evaluateAndHandleException(e, true, true, false, MSG_CAN_NOT_READ, tblname);
+        } finally {
+            IOUtil.quietClose(result);
+            getConn().releaseStatement(statement, failed);
+            closeConnection();
+        }
+        log.ok("getObjects Account committed");
+    }
+
+    /**
+     * Match any of the keys. The equalities are joined pairwise, so the brackets nest only as deep as the logarithm
+     * of the number of keys.
+     *
+     * @param keys the non empty key bindings
+     * @return the where builder
+     */
+    private static FilterWhereBuilder whereAnyKey(final List<SQLParam> keys) {
+        final FilterWhereBuilder where = new FilterWhereBuilder();
+        if (keys.size() == 1) {
+            where.addBind(keys.get(0), "=");
+        } else {
+            final int half = keys.size() / 2;
+            where.join("OR", whereAnyKey(keys.subList(0, half)), whereAnyKey(keys.subList(half, keys.size())));
+        }
+        return where;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -587,18 +989,17 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
 
         ResultSet result = null;
         PreparedStatement statement = null;
+        boolean failed = true;
         try {
             openConnection();
 
-            statement = getConn().prepareStatement(query);
+            statement = getConn().prepareQuery(query);
             result = statement.executeQuery();
             log.info("execute sync query {0} on {1}", query.getSQL(), oclass);
+            final RowMapper mapper = new RowMapper(getConn().getSms(), result.getMetaData());
             while (result.next()) {
-                final Map<String, SQLParam> columnValues = getConn().getColumnValues(result);
-                log.ok("Column values {0} from sync result set ", columnValues);
-
                 // create the connector object..
-                final SyncDeltaBuilder sdb = buildSyncDelta(columnValues);
+                final SyncDeltaBuilder sdb = mapper.buildSyncDelta(result);
                 if (!handler.handle(sdb.build())) {
                     log.ok("Stop processing of the sync result set");
                     break;
@@ -607,13 +1008,14 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
             // commit changes
             log.info("commit sync account");
             commit();
+            failed = false;
         } catch (SQLException e) {
 
             SQLUtil.rollbackQuietly(getConn());
             evaluateAndHandleException(e, false, true, false, MSG_CAN_NOT_READ, tblname);
         } finally {
             IOUtil.quietClose(result);
-            IOUtil.quietClose(statement);
+            getConn().releaseStatement(statement, failed);
 
             closeConnection();
         }
@@ -967,6 +1369,10 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         final ObjectClassInfo oci = ociB.build();
         schemaBld.defineObjectClass(oci);
 
+        schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildPageSize(), SearchOp.class);
+        schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsCookie(), SearchOp.class);
+        schemaBld.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsOffset(), SearchOp.class);
+
         /*
          * Note: AuthenticateOp, and all the 'SPIOperation'-s are by default added by Reflection API to the Schema.
          *
@@ -1111,90 +1517,255 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
     }
 
     /**
-     * Construct a connector object
-     * <p>Taking care about special attributes</p>
-     *
-     * @param columnValues from the result set
-     * @return ConnectorObjectBuilder object
+     * The kinds of write statements, with the message of a failure.
+     */
+    private enum WriteOperation {
+        CREATE(MSG_CAN_NOT_CREATE), UPDATE(MSG_CAN_NOT_UPDATE), DELETE(MSG_CAN_NOT_DELETE);
+
+        private final String failMessage;
+
+        WriteOperation(String failMessage) {
+            this.failMessage = failMessage;
+        }
+    }
+
+    /**
+     * An insert, update or delete of one account, executed alone or in a batch.
+     */
+    private static final class WriteStatement {
+
+        private final WriteOperation operation;
+        private final String sql;
+        private final List<SQLParam> params;
+        /**
+         * The uid of the account after the statement
+         */
+        private final Uid uid;
+        /**
+         * The account name used in the messages
+         */
+        private final String accountName;
+        /**
+         * The key of the row the statement changes
+         */
+        private final String target;
+
+        private WriteStatement(WriteOperation operation, String sql, List<SQLParam> params, Uid uid,
+                String accountName, String target) {
+            this.operation = operation;
+            this.sql = sql;
+            this.params = params;
+            this.uid = uid;
+            this.accountName = accountName;
+            this.target = target;
+        }
+
+        /**
+         * An update must change a row, a delete exactly one row.
+         *
+         * @param retCode the number of changed rows
+         * @return true if the number is expected
+         */
+        private boolean isExpectedRowCount(int retCode) {
+            switch (operation) {
+            case UPDATE:
+                return retCode != 0;
+            case DELETE:
+                return retCode == 1;
+            default:
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Maps the rows of a result set to connector objects.
+     * <p>The role of every column is resolved once from the result set metadata, the values are then read
+     * straight into the {@link ConnectorObjectBuilder} without an intermediate column map.</p>
      */
-    private ConnectorObjectBuilder buildConnectorObject(Map<String, SQLParam> columnValues) {
-        log.info("build ConnectorObject");
-        String uidValue = null;
-        ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
-        for (Map.Entry<String, SQLParam> colValue : columnValues.entrySet()) {
-            final String columnName = colValue.getKey();
-            final SQLParam param = colValue.getValue();
-            // Map the special
-            if (columnName.equalsIgnoreCase(config.getKeyColumn())) {
-                if (param == null || param.getValue() == null) {
-                    log.error("Name cannot be null.");
-                    String msg = "Name cannot be null.";
-                    throw new IllegalArgumentException(msg);
+    private final class RowMapper {
+
+        private static final int OTHER = 0;
+        private static final int KEY = 1;
+        private static final int PASSWORD = 2;
+        private static final int CHANGE_LOG = 3;
+        private static final int LAST_LOGIN_DATE = 4;
+        private static final int DUPLICATE = 5;
+
+        private final MappingStrategy sms;
+        private final String[] names;
+        private final int[] sqlTypes;
+        private final String[] sqlTypeNames;
+        private final int[] roles;
+        private int changeLogIndex = -1;
+
+        private RowMapper(MappingStrategy sms, ResultSetMetaData meta) throws SQLException {
+            this.sms = sms;
+            final int count = meta.getColumnCount();
+            names = new String[count];
+            sqlTypes = new int[count];
+            sqlTypeNames = new String[count];
+            roles = new int[count];
+            final Map<String, Integer> seen = CollectionUtil.newCaseInsensitiveMap();
+            for (int i = 0; i < count; i++) {
+                String name = meta.getColumnName(i + 1);
+                // A column repeated in the result keeps its first name and its last value
+                final Integer previous = seen.put(name, i);
+                if (previous != null) {
+                    name = names[previous];
+                    roles[previous] = DUPLICATE;
                 }
-                uidValue = param.getValue().toString();
-                bld.setName(uidValue);
-            } else if (columnName.equalsIgnoreCase(config.getPasswordColumn())) {
-                if (config.getSuppressPassword()) {
-                    // No Password in the result object
-                    log.ok("Password is suppressed in the result object");
+                names[i] = name;
+                sqlTypes[i] = meta.getColumnType(i + 1);
+                sqlTypeNames[i] = meta.getColumnTypeName(i + 1);
+                if (name.equalsIgnoreCase(config.getKeyColumn())) {
+                    roles[i] = KEY;
+                } else if (name.equalsIgnoreCase(config.getPasswordColumn())) {
+                    roles[i] = PASSWORD;
+                } else if (name.equalsIgnoreCase(config.getChangeLogColumn())) {
+                    roles[i] = CHANGE_LOG;
+                    changeLogIndex = i;
+                } else if (name.equalsIgnoreCase(config.getLastLoginDateColumn())) {
+                    roles[i] = LAST_LOGIN_DATE;
                 } else {
-                    GuardedString passwordValue = null;
-                    if (param != null && param.getValue() != null) {
-                        passwordValue = new GuardedString(((String) param.getValue()).toCharArray());
-                    }
-                    if (passwordValue != null) {
-                        bld.addAttribute(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME, passwordValue));
-                    } else {
-                        bld.addAttribute(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME));
-                    }
+                    roles[i] = OTHER;
                 }
-            } else if (columnName.equalsIgnoreCase(config.getChangeLogColumn())) {
-                //No changelogcolumn attribute in the results
-                log.ok("changelogcolumn attribute in the result");
-            } else if (columnName.equalsIgnoreCase(config.getLastLoginDateColumn())) {
-                log.ok("Last login date column in the result");
-                if (param != null && param.getValue() != null) {
-                    Long lastLoginDateValue = getLastLoginDateValue(param);
-                    if (lastLoginDateValue != null) {
-                        bld.addAttribute(AttributeBuilder.build(PredefinedAttributes.LAST_LOGIN_DATE_NAME, lastLoginDateValue));
-                    } else {
-                        log.ok("Couldn't parse the last login date value from the column {0}, param {1}", columnName, param);
-                    }
-                } else {
-                    bld.addAttribute(AttributeBuilder.build(PredefinedAttributes.LAST_LOGIN_DATE_NAME));
+            }
+        }
+
+        /**
+         * Construct a connector object from the current row
+         * <p>Taking care about special attributes</p>
+         *
+         * @param resultSet positioned on the row
+         * @return ConnectorObjectBuilder object
+         */
+        private ConnectorObjectBuilder buildConnectorObject(ResultSet resultSet) throws SQLException {
+            return buildConnectorObject(resultSet, null);
+        }
+
+        /**
+         * Construct a SyncDeltaBuilder from the current row
+         * <p>Taking care about special attributes</p>
+         *
+         * @param resultSet positioned on the row
+         * @return SyncDeltaBuilder the sync builder
+         */
+        private SyncDeltaBuilder buildSyncDelta(ResultSet resultSet) throws SQLException {
+            log.info("buildSyncDelta");
+            if (changeLogIndex < 0) {
+                throw new IllegalArgumentException(config.getMessage(MSG_INVALID_SYNC_TOKEN_VALUE));
+            }
+            final SQLParam[] tokenParam = new SQLParam[1];
+            final ConnectorObjectBuilder objectBuilder = buildConnectorObject(resultSet, tokenParam);
+            SyncDeltaBuilder bld = new SyncDeltaBuilder();
+            Object token = tokenParam[0] != null ? tokenParam[0].getValue() : null;
+            // Null token, set some acceptable value
+            if (token == null) {
+                log.ok("token value is null, replacing to 0L");
+                token = 0L;
+            }
+
+            // To be sure that sync token is present
+            bld.setToken(new SyncToken(token));
+            bld.setObject(objectBuilder.build());
+
+            // only deals w/ updates
+            bld.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+            log.ok("SyncDeltaBuilder is ok");
+            return bld;
+        }
+
+        private ConnectorObjectBuilder buildConnectorObject(ResultSet resultSet, SQLParam[] tokenParam)
+                throws SQLException {
+            log.info("build ConnectorObject");
+            String uidValue = null;
+            ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+            for (int i = 0; i < names.length; i++) {
+                final String columnName = names[i];
+                if (roles[i] == DUPLICATE) {
+                    continue;
                 }
-            } else {
-                if (param != null && param.getValue() != null) {
-                    Object paramValue = param.getValue();
+                if (roles[i] == PASSWORD && config.getSuppressPassword()) {
+                    // No Password in the result object, do not even read it
+                    log.ok("Password is suppressed in the result object");
+                    continue;
+                }
+                final SQLParam param = sms.getSQLParam(resultSet, i + 1, columnName, sqlTypes[i], sqlTypeNames[i]);
+                switch (roles[i]) {
+                    case KEY:
+                        if (param == null || param.getValue() == null) {
+                            log.error("Name cannot be null.");
+                            String msg = "Name cannot be null.";
+                            throw new IllegalArgumentException(msg);
+                        }
+                        uidValue = param.getValue().toString();
+                        bld.setName(uidValue);
+                        break;
+                    case PASSWORD:
+                        GuardedString passwordValue = null;
+                        if (param != null && param.getValue() != null) {
+                            passwordValue = new GuardedString(((String) param.getValue()).toCharArray());
+                        }
+                        if (passwordValue != null) {
+                            bld.addAttribute(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME, passwordValue));
+                        } else {
+                            bld.addAttribute(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME));
+                        }
+                        break;
+                    case CHANGE_LOG:
+                        //No changelogcolumn attribute in the results
+                        log.ok("changelogcolumn attribute in the result");
+                        if (tokenParam != null) {
+                            tokenParam[0] = param;
+                        }
+                        break;
+                    case LAST_LOGIN_DATE:
+                        log.ok("Last login date column in the result");
+                        if (param != null && param.getValue() != null) {
+                            Long lastLoginDateValue = getLastLoginDateValue(param);
+                            if (lastLoginDateValue != null) {
+                                bld.addAttribute(AttributeBuilder.build(PredefinedAttributes.LAST_LOGIN_DATE_NAME, lastLoginDateValue));
+                            } else {
+                                log.ok("Couldn't parse the last login date value from the column {0}, param {1}", columnName, param);
+                            }
+                        } else {
+                            bld.addAttribute(AttributeBuilder.build(PredefinedAttributes.LAST_LOGIN_DATE_NAME));
+                        }
+                        break;
+                    default:
+                        if (param != null && param.getValue() != null) {
+                            Object paramValue = param.getValue();
 
-                    if (!(paramValue instanceof UUID)) {
+                            if (!(paramValue instanceof UUID)) {
 
-                        bld.addAttribute(AttributeBuilder.build(columnName, paramValue));
-                    } else {
+                                bld.addAttribute(AttributeBuilder.build(columnName, paramValue));
+                            } else {
 
-                        log.ok("Column with the name: {0} with the UUID datatype will be handled as a String.class type" +
-                                "Object for the purpose of Connector object translation", columnName);
-                        bld.addAttribute(AttributeBuilder.build(columnName, paramValue.toString()));
-                    }
+                                log.ok("Column with the name: {0} with the UUID datatype will be handled as a String.class type" +
+                                        "Object for the purpose of Connector object translation", columnName);
+                                bld.addAttribute(AttributeBuilder.build(columnName, paramValue.toString()));
+                            }
 
-                } else {
-                    bld.addAttribute(AttributeBuilder.build(columnName));
+                        } else {
+                            bld.addAttribute(AttributeBuilder.build(columnName));
+                        }
                 }
             }
-        }
 
-        // To be sure that uid and name are present for mysql
-        if (uidValue == null) {
-            final String msg = "The uid value is missing in query.";
-            log.error(msg);
-            throw new IllegalStateException(msg);
+            // To be sure that uid and name are present for mysql
+            if (uidValue == null) {
+                final String msg = "The uid value is missing in query.";
+                log.error(msg);
+                throw new IllegalStateException(msg);
+            }
+            // Add Uid attribute to object
+            bld.setUid(new Uid(uidValue));
+            // only deals w/ accounts..
+            bld.setObjectClass(ObjectClass.ACCOUNT);
+            log.ok("ConnectorObject is builded");
+            return bld;
         }
-        // Add Uid attribute to object
-        bld.setUid(new Uid(uidValue));
-        // only deals w/ accounts..
-        bld.setObjectClass(ObjectClass.ACCOUNT);
-        log.ok("ConnectorObject is builded");
-        return bld;
     }
 
     private Object getLastLoginDateOriginalValue(Long value, SQLColumnTypeInfo info) {
@@ -1240,39 +1811,6 @@ public class DatabaseTableConnector implements PoolableConnector, CreateOp, Sear
         return result;
     }
 
-    /**
-     * Construct a SyncDeltaBuilder the sync builder
-     * <p>Taking care about special attributes</p>
-     *
-     * @param columnValues from the resultSet
-     * @return SyncDeltaBuilder the sync builder
-     */
-    private SyncDeltaBuilder buildSyncDelta(Map<String, SQLParam> columnValues) {
-        log.info("buildSyncDelta");
-        SyncDeltaBuilder bld = new SyncDeltaBuilder();
-        // Find a token
-        SQLParam tokenParam = columnValues.get(config.getChangeLogColumn());
-
-        if (tokenParam == null) {
-            throw new IllegalArgumentException(config.getMessage(MSG_INVALID_SYNC_TOKEN_VALUE));
-        }
-        Object token = tokenParam.getValue();
-        // Null token, set some acceptable value
-        if (token == null) {
-            log.ok("token value is null, replacing to 0L");
-            token = 0L;
-        }
-
-        // To be sure that sync token is present
-        bld.setToken(new SyncToken(token));
-        bld.setObject(buildConnectorObject(columnValues).build());
-
-        // only deals w/ updates
-        bld.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
-        log.ok("SyncDeltaBuilder is ok");
-        return bld;
-    }
-
     private Set<String> resolveColumnNamesToGet(OperationOptions options) {
         Set<String> attributesToGet = getDefaultAttributesToGet();
         if (options != null && options.getAttributesToGet() != null) {
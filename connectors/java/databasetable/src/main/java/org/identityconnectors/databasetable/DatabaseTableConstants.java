@@ -37,6 +37,12 @@ public class DatabaseTableConstants {
      * The null column default value
      */
     public static final String EMPTY_STR = "";
+    /**
+     * The result set types of the search and sync queries
+     */
+    public static final String RESULT_SET_FORWARD_ONLY = "forwardOnly";
+    public static final String RESULT_SET_SCROLL_INSENSITIVE = "scrollInsensitive";
+    public static final String RESULT_SET_SCROLL_SENSITIVE = "scrollSensitive";
 
     static final String MSG_ACCOUNT_OBJECT_CLASS_REQUIRED = "acount.object.class.required";
     static final String MSG_AUTH_FAILED = "auth.op.failed";
@@ -50,7 +56,15 @@ public class DatabaseTableConstants {
     static final String MSG_CHANGELOG_COLUMN_BLANK = "changelog.column.blank";
     static final String MSG_INVALID_ATTRIBUTE_SET = "invalid.attribute.set";
     static final String MSG_INVALID_QUOTING = "invalid.quoting";
+    static final String MSG_INVALID_FETCH_SIZE = "invalid.fetch.size";
+    static final String MSG_INVALID_RESULT_SET_TYPE = "invalid.result.set.type";
+    static final String MSG_INVALID_STATEMENT_CACHE_SIZE = "invalid.statement.cache.size";
+    static final String MSG_INVALID_BATCH_SIZE = "invalid.batch.size";
+    static final String MSG_INVALID_CONNECTION_POOL_SIZE = "invalid.connection.pool.size";
+    static final String MSG_INVALID_CONNECTION_MAX_LIFETIME = "invalid.connection.max.lifetime";
+    static final String MSG_INVALID_CONNECTION_LEAK_THRESHOLD = "invalid.connection.leak.threshold";
     static final String MSG_INVALID_SYNC_TOKEN_VALUE = "invalid.sync.token.value";
+    static final String MSG_INVALID_PAGED_RESULTS_COOKIE = "invalid.paged.results.cookie";
     static final String MSG_JDBC_DRIVER_BLANK = "jdbc.driver.blank";
     static final String MSG_JDBC_DRIVER_NOT_FOUND = "jdbc.driver.not.found";
     static final String MSG_JDBC_TEMPLATE_BLANK = "jdbc.template.blank";
@@ -175,6 +175,22 @@ public final class DatabaseTableSQLUtil {
     }
 
     
+    /**
+     * Converts the configured result set type to the JDBC constant.
+     * @param resultSetType forwardOnly, scrollInsensitive or scrollSensitive, blank for forwardOnly
+     * @return the {@link ResultSet} type
+     */
+    public static int getResultSetType(String resultSetType) {
+        if (StringUtil.isBlank(resultSetType) || DatabaseTableConstants.RESULT_SET_FORWARD_ONLY.equalsIgnoreCase(resultSetType)) {
+            return ResultSet.TYPE_FORWARD_ONLY;
+        } else if (DatabaseTableConstants.RESULT_SET_SCROLL_INSENSITIVE.equalsIgnoreCase(resultSetType)) {
+            return ResultSet.TYPE_SCROLL_INSENSITIVE;
+        } else if (DatabaseTableConstants.RESULT_SET_SCROLL_SENSITIVE.equalsIgnoreCase(resultSetType)) {
+            return ResultSet.TYPE_SCROLL_SENSITIVE;
+        }
+        throw new IllegalArgumentException();
+    }
+
     /**
      * Used to escape the table or column name.
      * @param quoting the string double, single, back, brackets
@@ -135,6 +135,20 @@ public class DatabaseTableConfigurationTests {
         assertEquals("USR", config.getUser());
         config.setValidConnectionQuery("VALID");
         assertEquals("VALID", config.getValidConnectionQuery());
+        config.setFetchSize(500);
+        assertEquals(500, config.getFetchSize());
+        config.setResultSetType("scrollInsensitive");
+        assertEquals("scrollInsensitive", config.getResultSetType());
+        config.setStatementCacheSize(10);
+        assertEquals(10, config.getStatementCacheSize());
+        config.setBatchSize(500);
+        assertEquals(500, config.getBatchSize());
+        config.setConnectionPoolSize(5);
+        assertEquals(5, config.getConnectionPoolSize());
+        config.setConnectionMaxLifetime(60000L);
+        assertEquals(60000L, config.getConnectionMaxLifetime());
+        config.setConnectionLeakThreshold(1000L);
+        assertEquals(1000L, config.getConnectionLeakThreshold());
     }       
 
     /**
@@ -172,6 +186,50 @@ public class DatabaseTableConfigurationTests {
         AssertJUnit.fail("empty database");
     }   
     
+    /**
+     * test method
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testConfigurationNegativeFetchSize() {
+        DatabaseTableConfiguration config = getConfiguration();
+        config.setFetchSize(-1);
+        config.validate();
+        AssertJUnit.fail("negative fetch size");
+    }
+
+    /**
+     * test method
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testConfigurationZeroBatchSize() {
+        DatabaseTableConfiguration config = getConfiguration();
+        config.setBatchSize(0);
+        config.validate();
+        AssertJUnit.fail("zero batch size");
+    }
+
+    /**
+     * test method
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testConfigurationNegativeConnectionPoolSize() {
+        DatabaseTableConfiguration config = getConfiguration();
+        config.setConnectionPoolSize(-1);
+        config.validate();
+        AssertJUnit.fail("negative connection pool size");
+    }
+
+    /**
+     * test method
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testConfigurationInvalidResultSetType() {
+        DatabaseTableConfiguration config = getConfiguration();
+        config.setResultSetType("backward");
+        config.validate();
+        AssertJUnit.fail("invalid result set type");
+    }
+
     /**
      * test method
      */
@@ -27,6 +27,7 @@ import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.objects.*;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeClass;
@@ -441,6 +442,77 @@ public class DatabaseTableDerbyTests extends DatabaseTableTestBase {
         }
     }
 
+    /**
+     * The connector instances with the same configuration share the pooled connection
+     */
+    @Test
+    public void testConnectionPool() throws Exception {
+        DatabaseTableConfiguration cfg = getConfiguration();
+        cfg.setConnectionPoolSize(2);
+        DatabaseTableConnector first = getConnector(cfg);
+        DatabaseTableConnector second = getConnector(cfg);
+        try {
+            first.checkAlive();
+            final Uid uid = first.create(ObjectClass.ACCOUNT, getCreateAttributeSet(cfg), null);
+            assertTrue(first.getConn().isPooled());
+            second.checkAlive();
+            assertEquals(1, TestHelpers.searchToList(second, ObjectClass.ACCOUNT, FilterBuilder.equalTo(uid)).size());
+
+            final DatabaseTableConnectionPool pool = first.getConn().getPool();
+            assertSame(pool, second.getConn().getPool());
+            assertEquals(0, pool.getActiveCount());
+            // the second connector reused the connection given back by the first one
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(2, pool.getBorrowedCount());
+        } finally {
+            first.dispose();
+            second.dispose();
+        }
+    }
+
+    /**
+     * A connection given back to the pool is reset, and the pool does not open more connections than its size
+     */
+    @Test
+    public void testConnectionPoolReset() throws Exception {
+        DatabaseTableConfiguration cfg = getConfiguration();
+        cfg.setConnectionPoolSize(1);
+        final DatabaseTableConnectionPool pool = DatabaseTableConnectionPool.acquire(cfg);
+        try {
+            final Connection first = pool.borrow();
+            first.setAutoCommit(true);
+            final Thread waiting = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        final Connection second = pool.borrow();
+                        second.close();
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            waiting.start();
+            waiting.join(500);
+            // the second borrower waits for the first connection
+            assertTrue(waiting.isAlive());
+            first.close();
+            waiting.join(10000);
+            assertFalse(waiting.isAlive());
+
+            final Connection again = pool.borrow();
+            try {
+                assertFalse(again.getAutoCommit());
+            } finally {
+                again.close();
+            }
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(3, pool.getBorrowedCount());
+        } finally {
+            pool.release();
+        }
+    }
+
     static String getResourceAsString(String res) {
         return IOUtil.getResourceAsString(DatabaseTableDerbyTests.class, res);
     }
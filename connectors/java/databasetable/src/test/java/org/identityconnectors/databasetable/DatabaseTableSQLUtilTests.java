@@ -146,4 +146,21 @@ public class DatabaseTableSQLUtilTests {
         assertTrue("setSQLParam not called", mse.isDone());
         assertTrue("setSQLParam not called", cse.isDone());
     }        
+
+    /**
+     * Test method for {@link DatabaseTableSQLUtil#getResultSetType(String)}.
+     */
+    @Test
+    public void testGetResultSetType() {
+        assertEquals(ResultSet.TYPE_FORWARD_ONLY, DatabaseTableSQLUtil.getResultSetType(null));
+        assertEquals(ResultSet.TYPE_FORWARD_ONLY, DatabaseTableSQLUtil.getResultSetType("forwardOnly"));
+        assertEquals(ResultSet.TYPE_SCROLL_INSENSITIVE, DatabaseTableSQLUtil.getResultSetType("scrollInsensitive"));
+        assertEquals(ResultSet.TYPE_SCROLL_SENSITIVE, DatabaseTableSQLUtil.getResultSetType("SCROLLSENSITIVE"));
+        try {
+            DatabaseTableSQLUtil.getResultSetType("random");
+            AssertJUnit.fail("Invalid result set type");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
 }
@@ -48,6 +48,7 @@ import org.identityconnectors.framework.common.exceptions.InvalidCredentialExcep
 import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
 import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.test.common.TestHelpers;
 
 import static org.testng.AssertJUnit.assertTrue;
@@ -854,6 +855,147 @@ public abstract class DatabaseTableTestBase {
         attributeSetsEquals(con.schema(), expected, actual.getAttributes());
     }
 
+    /**
+     * Test the paged search, all the rows are returned once in pages ordered by the key
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSearchPaged() throws Exception {
+        log.ok("testSearchPaged");
+        final DatabaseTableConfiguration cfg = getConfiguration();
+        con = getConnector(cfg);
+        final Set<Uid> created = new HashSet<Uid>();
+        for (int i = 0; i < 3; i++) {
+            created.add(con.create(ObjectClass.ACCOUNT, getCreateAttributeSet(cfg), null));
+        }
+
+        final List<Uid> found = new ArrayList<Uid>();
+        final AtomicReference<SearchResult> searchResult = new AtomicReference<SearchResult>();
+        String cookie = null;
+        do {
+            final int pageStart = found.size();
+            final OperationOptionsBuilder opts = new OperationOptionsBuilder().setPageSize(2);
+            if (cookie != null) {
+                opts.setPagedResultsCookie(cookie);
+            }
+            con.executeQuery(ObjectClass.ACCOUNT, null, new SearchResultsHandler() {
+                public boolean handle(ConnectorObject obj) {
+                    return found.add(obj.getUid());
+                }
+
+                public void handleResult(SearchResult result) {
+                    searchResult.set(result);
+                }
+            }, opts.build());
+            AssertJUnit.assertTrue("page too large", found.size() - pageStart <= 2);
+            cookie = searchResult.get().getPagedResultsCookie();
+        } while (cookie != null);
+
+        AssertJUnit.assertEquals("duplicate rows", found.size(), new HashSet<Uid>(found).size());
+        AssertJUnit.assertTrue("missing rows", found.containsAll(created));
+
+        // the offset returns the same second page
+        final List<Uid> offsetPage = new ArrayList<Uid>();
+        con.executeQuery(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                return offsetPage.add(obj.getUid());
+            }
+        }, new OperationOptionsBuilder().setPageSize(2).setPagedResultsOffset(3).build());
+        AssertJUnit.assertEquals(found.subList(2, Math.min(4, found.size())), offsetPage);
+    }
+
+    /**
+     * Test the read of rows by their keys, in more queries than one
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetObjects() throws Exception {
+        log.ok("testGetObjects");
+        final DatabaseTableConfiguration cfg = getConfiguration();
+        cfg.setBatchSize(2);
+        con = getConnector(cfg);
+        final Set<Attribute> expected = getCreateAttributeSet(cfg);
+        final Uid uid = con.create(ObjectClass.ACCOUNT, expected, null);
+        final Set<Uid> uids = new HashSet<Uid>();
+        uids.add(uid);
+        uids.add(con.create(ObjectClass.ACCOUNT, getCreateAttributeSet(cfg), null));
+        uids.add(con.create(ObjectClass.ACCOUNT, getCreateAttributeSet(cfg), null));
+
+        ConnectorObject actual = con.getObject(ObjectClass.ACCOUNT, uid, null);
+        AssertJUnit.assertNotNull(actual);
+        attributeSetsEquals(con.schema(), expected, actual.getAttributes());
+        AssertJUnit.assertNull(con.getObject(ObjectClass.ACCOUNT, new Uid("unknown"), null));
+
+        final List<Uid> keys = new ArrayList<Uid>(uids);
+        keys.add(new Uid("unknown"));
+        final Set<Uid> found = new HashSet<Uid>();
+        con.getObjects(ObjectClass.ACCOUNT, keys, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                AssertJUnit.assertTrue("duplicate row", found.add(obj.getUid()));
+                return true;
+            }
+        }, null);
+        AssertJUnit.assertEquals(uids, found);
+    }
+
+    /**
+     * Test the batch operations, a failing item does not affect the others
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatchCreateUpdateDelete() throws Exception {
+        log.ok("testBatchCreateUpdateDelete");
+        final DatabaseTableConfiguration cfg = getConfiguration();
+        cfg.setBatchSize(2);
+        con = getConnector(cfg);
+
+        final Set<Attribute> duplicate = getCreateAttributeSet(cfg);
+        final List<Set<Attribute>> attrSets = new ArrayList<Set<Attribute>>();
+        attrSets.add(getCreateAttributeSet(cfg));
+        attrSets.add(duplicate);
+        attrSets.add(duplicate);
+        attrSets.add(getCreateAttributeSet(cfg));
+        List<BatchResult> results = con.createBatch(ObjectClass.ACCOUNT, attrSets, null);
+        AssertJUnit.assertEquals(4, results.size());
+        AssertJUnit.assertTrue(results.get(0).isSuccess());
+        AssertJUnit.assertTrue(results.get(1).isSuccess());
+        AssertJUnit.assertFalse(results.get(2).isSuccess());
+        AssertJUnit.assertTrue(results.get(3).isSuccess());
+        for (int i : new int[] { 0, 1, 3 }) {
+            final Uid uid = results.get(i).getUid();
+            List<ConnectorObject> list = TestHelpers.searchToList(con, ObjectClass.ACCOUNT, new EqualsFilter(uid));
+            AssertJUnit.assertEquals(1, list.size());
+        }
+
+        final Map<Uid, Set<Attribute>> updates = new LinkedHashMap<Uid, Set<Attribute>>();
+        updates.put(results.get(0).getUid(), getModifyAttributeSet(cfg));
+        updates.put(new Uid("unknown"), getModifyAttributeSet(cfg));
+        updates.put(results.get(3).getUid(), getModifyAttributeSet(cfg));
+        List<BatchResult> updated = con.updateBatch(ObjectClass.ACCOUNT, updates, null);
+        AssertJUnit.assertTrue(updated.get(0).isSuccess());
+        AssertJUnit.assertTrue(updated.get(1).getError() instanceof UnknownUidException);
+        AssertJUnit.assertTrue(updated.get(2).isSuccess());
+
+        final List<Uid> uids = new ArrayList<Uid>();
+        uids.add(updated.get(0).getUid());
+        uids.add(results.get(1).getUid());
+        uids.add(new Uid("unknown"));
+        uids.add(updated.get(2).getUid());
+        List<BatchResult> deleted = con.deleteBatch(ObjectClass.ACCOUNT, uids, null);
+        AssertJUnit.assertTrue(deleted.get(0).isSuccess());
+        AssertJUnit.assertTrue(deleted.get(1).isSuccess());
+        AssertJUnit.assertTrue(deleted.get(2).getError() instanceof UnknownUidException);
+        AssertJUnit.assertTrue(deleted.get(3).isSuccess());
+        for (int i : new int[] { 0, 1, 3 }) {
+            List<ConnectorObject> list =
+                    TestHelpers.searchToList(con, ObjectClass.ACCOUNT, new EqualsFilter(uids.get(i)));
+            AssertJUnit.assertEquals(0, list.size());
+        }
+    }
+
     /**
      * Test method to issue #238
      *
@@ -194,7 +194,7 @@ public class ADLdapUtil {
         return bString.toString();
     }
     
-    public static List fetchGroupMembersByRange(LdapConnection conn, SearchResult result){
+    public static List<Object> fetchGroupMembersByRange(LdapConnection conn, SearchResult result){
         return fetchGroupMembersByRange(conn, LdapEntry.create(null, result));
     }
     
@@ -202,11 +202,11 @@ public class ADLdapUtil {
      * This method returns the list of members when the group has over 1500 members.
      * 
      */
-    public static List fetchGroupMembersByRange(LdapConnection conn, LdapEntry entry){
+    public static List<Object> fetchGroupMembersByRange(LdapConnection conn, LdapEntry entry){
         boolean done = false;
         int first = 0;
         int last = GROUP_MEMBERS_MAXRANGE -1;
-        List members = new ArrayList();
+        List<Object> members = new ArrayList<Object>();
         // get the first slice (0-1499)
         org.identityconnectors.framework.common.objects.Attribute range = conn.getSchemaMapping().createAttribute(ObjectClass.GROUP, String.format("member;range=%d-%d",first,last), entry, false);
         if (range != null){
@@ -26,15 +26,21 @@ package org.identityconnectors.ldap;
 
 import static java.util.Collections.singletonList;
 import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
+import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.AttributeInUseException;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.DirContext;
@@ -84,6 +90,65 @@ public class GroupHelper {
         return handler.getResults();
     }
 
+    /**
+     * Returns the LDAP groups of several entries with a single search. The
+     * matching groups are returned with their members, which are then matched
+     * to the given entries.
+     *
+     * @return the DNs of the groups by the entry DNs given.
+     */
+    public Map<String, List<String>> getLdapGroups(Collection<String> entryDNs) {
+        log.ok("Retrieving LDAP groups for {0} entries", entryDNs.size());
+        final String memberAttr = getLdapGroupMemberAttribute();
+        final Map<LdapName, List<String>> byName = new HashMap<LdapName, List<String>>();
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (String entryDN : entryDNs) {
+            List<String> groups = new ArrayList<String>();
+            byName.put(quietCreateLdapName(entryDN), groups);
+            result.put(entryDN, groups);
+        }
+        String filter = createAttributeFilter(memberAttr, entryDNs);
+        LdapSearches.findEntries(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult searchResult) throws NamingException {
+                LdapEntry group = LdapEntry.create(baseDN, searchResult);
+                String groupDN = group.getDN().toString();
+                for (Object member : getMemberValues(group, memberAttr)) {
+                    List<String> groups;
+                    try {
+                        groups = byName.get(new LdapName(member.toString()));
+                    } catch (InvalidNameException e) {
+                        log.ok("Ignoring invalid member {0} of group {1}", member, groupDN);
+                        continue;
+                    }
+                    if (groups != null) {
+                        groups.add(groupDN);
+                    }
+                }
+                return true;
+            }
+        }, conn, filter, memberAttr);
+        return result;
+    }
+
+    /**
+     * Returns the values of the member attribute of a group, including the
+     * ones Active Directory only returns in ranges for large groups.
+     */
+    private List<?> getMemberValues(LdapEntry group, String memberAttr) throws NamingException {
+        List<Object> values = new ArrayList<Object>();
+        Attribute attr = group.getAttributes().get(memberAttr);
+        if (attr != null) {
+            NamingEnumeration<?> en = attr.getAll();
+            while (en.hasMore()) {
+                values.add(en.next());
+            }
+        } else if (group.getAttributes().get(memberAttr + ";range=0-"
+                + (ADLdapUtil.GROUP_MEMBERS_MAXRANGE - 1)) != null) {
+            values.addAll(ADLdapUtil.fetchGroupMembersByRange(conn, group));
+        }
+        return values;
+    }
+
     public Set<GroupMembership> getLdapGroupMemberships(String entryDN) {
         log.ok("Retrieving LDAP group memberships for {0}", entryDN);
         String filter = createAttributeFilter(getLdapGroupMemberAttribute(), singletonList(entryDN));
@@ -128,6 +193,38 @@ public class GroupHelper {
         return handler.getResults();
     }
 
+    /**
+     * Returns the POSIX groups of several {@code memberUid} values with a
+     * single search.
+     *
+     * @return the DNs of the groups by the given {@code memberUid} values.
+     */
+    public Map<String, List<String>> getPosixGroupsByRef(Collection<String> posixRefAttrs) {
+        log.ok("Retrieving POSIX groups for {0} member references", posixRefAttrs.size());
+        final Map<String, List<String>> result = new HashMap<String, List<String>>();
+        for (String posixRefAttr : posixRefAttrs) {
+            result.put(posixRefAttr, new ArrayList<String>());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+        String filter = createAttributeFilter("memberUid", posixRefAttrs);
+        LdapSearches.findEntries(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult searchResult) throws NamingException {
+                LdapEntry group = LdapEntry.create(baseDN, searchResult);
+                String groupDN = group.getDN().toString();
+                for (String member : LdapUtil.getStringAttrValues(group.getAttributes(), "memberUid")) {
+                    List<String> groups = result.get(member);
+                    if (groups != null) {
+                        groups.add(groupDN);
+                    }
+                }
+                return true;
+            }
+        }, conn, filter, "memberUid");
+        return result;
+    }
+
     public Set<GroupMembership> getPosixGroupMemberships(Collection<String> posixRefAttrs) {
         log.ok("Retrieving POSIX group memberships for {0}", posixRefAttrs);
         ToGroupMembershipHandler handler = new ToGroupMembershipHandler();
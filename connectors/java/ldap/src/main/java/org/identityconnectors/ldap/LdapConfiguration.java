@@ -194,6 +194,56 @@ public class LdapConfiguration extends AbstractConfiguration {
      */
     private int blockSize = 100;
 
+    /**
+     * The number of entries whose LDAP or POSIX groups are resolved with one
+     * search. Zero or one resolves the groups of every entry separately.
+     */
+    private int groupMembershipBatchSize = 0;
+
+    /**
+     * The maximum number of entry DNs cached by Uid. Zero disables the cache.
+     */
+    private int uidCacheSize = 0;
+
+    /**
+     * The time in milliseconds a cached entry DN is used.
+     */
+    private long uidCacheTimeToLive = 300000;
+
+    /**
+     * The number of base contexts searched at the same time. Zero or one
+     * searches them one after the other.
+     */
+    private int parallelSearchThreads = 0;
+
+    /**
+     * Whether the results of a parallel search are returned in the order of
+     * the base contexts.
+     */
+    private boolean parallelSearchOrdered = true;
+
+    /**
+     * The maximum number of pooled contexts for parallel operations. Zero
+     * disables the pool.
+     */
+    private int contextPoolSize = 0;
+
+    /**
+     * The time in milliseconds an idle pooled context is kept open.
+     */
+    private long contextPoolIdleTimeout = 60000;
+
+    /**
+     * The maximum number of idle run-as contexts kept open. Zero disables the
+     * pool.
+     */
+    private int runAsContextPoolSize = 0;
+
+    /**
+     * The time in milliseconds an idle run-as context is kept open.
+     */
+    private long runAsContextPoolIdleTimeout = 30000;
+
     /**
      * If true, simple paged search will be preferred over VLV index search
      * when both are available.
@@ -245,6 +295,12 @@ public class LdapConfiguration extends AbstractConfiguration {
 
     private boolean removeLogEntryObjectClassFromFilter = true;
 
+    /**
+     * If true, the change log is read with one paged search and the modified
+     * entries are read by blocks.
+     */
+    private boolean useChangeLogPagedSearch = false;
+
     private boolean synchronizePasswords;
 
     private String passwordAttributeToSynchronize;
@@ -255,6 +311,17 @@ public class LdapConfiguration extends AbstractConfiguration {
 
     private boolean useTimestampsForSync = false;
 
+    /**
+     * If true, changes are read from a persistent search kept open between
+     * two syncs, when the server supports it.
+     */
+    private boolean usePersistentSearch = false;
+
+    /**
+     * The maximum number of changes buffered by a persistent search.
+     */
+    private int persistentSearchQueueSize = 10000;
+
     // Other state.
 
     private final ObjectClassMappingConfig accountConfig = new ObjectClassMappingConfig(ObjectClass.ACCOUNT,
@@ -305,6 +372,42 @@ public class LdapConfiguration extends AbstractConfiguration {
             failValidation("blockSize.legalValue");
         }
 
+        if (groupMembershipBatchSize < 0) {
+            failValidation("groupMembershipBatchSize.legalValue");
+        }
+
+        if (uidCacheSize < 0) {
+            failValidation("uidCacheSize.legalValue");
+        }
+
+        if (uidCacheTimeToLive <= 0) {
+            failValidation("uidCacheTimeToLive.legalValue");
+        }
+
+        if (parallelSearchThreads < 0) {
+            failValidation("parallelSearchThreads.legalValue");
+        }
+
+        if (contextPoolSize < 0) {
+            failValidation("contextPoolSize.legalValue");
+        }
+
+        if (contextPoolIdleTimeout <= 0) {
+            failValidation("contextPoolIdleTimeout.legalValue");
+        }
+
+        if (runAsContextPoolSize < 0) {
+            failValidation("runAsContextPoolSize.legalValue");
+        }
+
+        if (runAsContextPoolIdleTimeout <= 0) {
+            failValidation("runAsContextPoolIdleTimeout.legalValue");
+        }
+
+        if (persistentSearchQueueSize <= 0) {
+            failValidation("persistentSearchQueueSize.legalValue");
+        }
+
         checkNotBlank(vlvSortAttribute, "vlvSortAttribute.notBlank");
 
         checkNotBlank(uidAttribute, "uidAttribute.notBlank");
@@ -642,6 +745,78 @@ public class LdapConfiguration extends AbstractConfiguration {
         this.blockSize = blockSize;
     }
 
+    public int getGroupMembershipBatchSize() {
+        return groupMembershipBatchSize;
+    }
+
+    public void setGroupMembershipBatchSize(int groupMembershipBatchSize) {
+        this.groupMembershipBatchSize = groupMembershipBatchSize;
+    }
+
+    public int getUidCacheSize() {
+        return uidCacheSize;
+    }
+
+    public void setUidCacheSize(int uidCacheSize) {
+        this.uidCacheSize = uidCacheSize;
+    }
+
+    public long getUidCacheTimeToLive() {
+        return uidCacheTimeToLive;
+    }
+
+    public void setUidCacheTimeToLive(long uidCacheTimeToLive) {
+        this.uidCacheTimeToLive = uidCacheTimeToLive;
+    }
+
+    public int getParallelSearchThreads() {
+        return parallelSearchThreads;
+    }
+
+    public void setParallelSearchThreads(int parallelSearchThreads) {
+        this.parallelSearchThreads = parallelSearchThreads;
+    }
+
+    public boolean isParallelSearchOrdered() {
+        return parallelSearchOrdered;
+    }
+
+    public void setParallelSearchOrdered(boolean parallelSearchOrdered) {
+        this.parallelSearchOrdered = parallelSearchOrdered;
+    }
+
+    public int getContextPoolSize() {
+        return contextPoolSize;
+    }
+
+    public void setContextPoolSize(int contextPoolSize) {
+        this.contextPoolSize = contextPoolSize;
+    }
+
+    public long getContextPoolIdleTimeout() {
+        return contextPoolIdleTimeout;
+    }
+
+    public void setContextPoolIdleTimeout(long contextPoolIdleTimeout) {
+        this.contextPoolIdleTimeout = contextPoolIdleTimeout;
+    }
+
+    public int getRunAsContextPoolSize() {
+        return runAsContextPoolSize;
+    }
+
+    public void setRunAsContextPoolSize(int runAsContextPoolSize) {
+        this.runAsContextPoolSize = runAsContextPoolSize;
+    }
+
+    public long getRunAsContextPoolIdleTimeout() {
+        return runAsContextPoolIdleTimeout;
+    }
+
+    public void setRunAsContextPoolIdleTimeout(long runAsContextPoolIdleTimeout) {
+        this.runAsContextPoolIdleTimeout = runAsContextPoolIdleTimeout;
+    }
+
     public Boolean getUsePagedResultControl() {
         return usePagedResultControl;
     }
@@ -765,6 +940,24 @@ public class LdapConfiguration extends AbstractConfiguration {
         this.useTimestampsForSync = useTimestampsForSync;
     }
 
+    @ConfigurationProperty(operations = { SyncOp.class })
+    public boolean isUsePersistentSearch() {
+        return usePersistentSearch;
+    }
+
+    public void setUsePersistentSearch(boolean usePersistentSearch) {
+        this.usePersistentSearch = usePersistentSearch;
+    }
+
+    @ConfigurationProperty(operations = { SyncOp.class })
+    public int getPersistentSearchQueueSize() {
+        return persistentSearchQueueSize;
+    }
+
+    public void setPersistentSearchQueueSize(int persistentSearchQueueSize) {
+        this.persistentSearchQueueSize = persistentSearchQueueSize;
+    }
+
     @ConfigurationProperty(operations = { SyncOp.class })
     public boolean isFilterWithOrInsteadOfAnd() {
         return filterWithOrInsteadOfAnd;
@@ -783,6 +976,15 @@ public class LdapConfiguration extends AbstractConfiguration {
         this.removeLogEntryObjectClassFromFilter = removeLogEntryObjectClassFromFilter;
     }
 
+    @ConfigurationProperty(operations = { SyncOp.class })
+    public boolean isUseChangeLogPagedSearch() {
+        return useChangeLogPagedSearch;
+    }
+
+    public void setUseChangeLogPagedSearch(boolean useChangeLogPagedSearch) {
+        this.useChangeLogPagedSearch = useChangeLogPagedSearch;
+    }
+
     @ConfigurationProperty(operations = { SyncOp.class })
     public boolean isSynchronizePasswords() {
         return synchronizePasswords;
@@ -896,6 +1098,17 @@ public class LdapConfiguration extends AbstractConfiguration {
         builder.append(respectResourcePasswordPolicyChangeAfterReset);
         builder.append(useBlocks);
         builder.append(blockSize);
+        builder.append(groupMembershipBatchSize);
+        builder.append(uidCacheSize);
+        builder.append(uidCacheTimeToLive);
+        builder.append(parallelSearchThreads);
+        builder.append(parallelSearchOrdered);
+        builder.append(contextPoolSize);
+        builder.append(contextPoolIdleTimeout);
+        builder.append(runAsContextPoolSize);
+        builder.append(runAsContextPoolIdleTimeout);
+        builder.append(usePersistentSearch);
+        builder.append(persistentSearchQueueSize);
         builder.append(usePagedResultControl);
         builder.append(vlvSortAttribute);
         builder.append(vlvSortOrderingRule);
@@ -919,6 +1132,7 @@ public class LdapConfiguration extends AbstractConfiguration {
         builder.append(changeNumberAttribute);
         builder.append(filterWithOrInsteadOfAnd);
         builder.append(removeLogEntryObjectClassFromFilter);
+        builder.append(useChangeLogPagedSearch);
         builder.append(synchronizePasswords);
         builder.append(passwordAttributeToSynchronize);
         builder.append(passwordDecryptionKey);
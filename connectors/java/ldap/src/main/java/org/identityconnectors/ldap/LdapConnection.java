@@ -35,8 +35,10 @@ import static org.identityconnectors.ldap.LdapUtil.nullAsEmpty;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.naming.AuthenticationException;
@@ -58,7 +60,9 @@ import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.PasswordExpiredException;
 import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
 import org.identityconnectors.framework.common.exceptions.InvalidCredentialException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.ldap.schema.LdapSchemaMapping;
+import org.identityconnectors.ldap.sync.persistent.PersistentSearch;
 
 public class LdapConnection {
 
@@ -112,10 +116,17 @@ public class LdapConnection {
     private LdapContext initCtx;
     private Set<String> supportedControls;
     private ServerType serverType;
+    private final UidDnCache uidCache;
+    private LdapContextPool contextPool;
+    private LdapContextPool runAsContextPool;
+    private final Map<ObjectClass, PersistentSearch> persistentSearches = new HashMap<ObjectClass, PersistentSearch>();
 
     public LdapConnection(LdapConfiguration config) {
         this.config = config;
         schemaMapping = new LdapSchemaMapping(this);
+        // Nothing to cache when the Uid is the entry DN.
+        uidCache = new UidDnCache(LdapEntry.isDNAttribute(config.getUidAttribute()) ? 0 : config.getUidCacheSize(),
+                config.getUidCacheTimeToLive());
     }
 
     public String format(String key, String dflt, Object... args) {
@@ -152,8 +163,101 @@ public class LdapConnection {
         return initCtx;
     }
     
+    /**
+     * Returns a context bound as the given user. It must be given back with
+     * {@link #releaseRunAsContext(LdapContext, boolean)}.
+     */
     public LdapContext getRunAsContext(String principal, GuardedString credentials) {
-        return connect(principal, credentials);
+        LdapContextPool pool = getRunAsContextPool();
+        return pool != null ? pool.borrow(principal, credentials) : connect(principal, credentials);
+    }
+
+    /**
+     * Gives back a context returned by {@link #getRunAsContext(String, GuardedString)}.
+     *
+     * @param failed whether the operation failed, in which case the context is closed.
+     */
+    public void releaseRunAsContext(LdapContext context, boolean failed) {
+        LdapContextPool pool = getRunAsContextPool();
+        if (pool == null) {
+            quietClose(context);
+        } else if (failed) {
+            pool.invalidate(context);
+        } else {
+            pool.release(context);
+        }
+    }
+
+    private synchronized LdapContextPool getRunAsContextPool() {
+        if (runAsContextPool == null && config.getRunAsContextPoolSize() > 0) {
+            runAsContextPool = new LdapContextPool(0, config.getRunAsContextPoolSize(),
+                    config.getRunAsContextPoolIdleTimeout()) {
+                @Override
+                protected LdapContext createContext(String principal, GuardedString credentials) {
+                    return connect(principal, credentials);
+                }
+
+                @Override
+                protected boolean reuseContext(LdapContext context) {
+                    // The password may have changed or the account been locked
+                    // since the context was bound, bind again on its connection.
+                    try {
+                        context.reconnect(null);
+                        return !(config.isRespectResourcePasswordPolicyChangeAfterReset()
+                                && hasPasswordExpiredControl(context.getResponseControls()));
+                    } catch (NamingException e) {
+                        log.ok(e, "Pooled run as context failed to bind again");
+                        return false;
+                    }
+                }
+            };
+        }
+        return runAsContextPool;
+    }
+
+    /**
+     * Returns a context for use by another thread, bound as the configured
+     * principal. If the context pool is enabled the context has its own
+     * connection, otherwise it shares the connection of the initial context.
+     * It must be given back with {@link #releaseContext(LdapContext, boolean)}.
+     */
+    public LdapContext borrowContext() throws NamingException {
+        LdapContextPool pool = getContextPool();
+        if (pool != null) {
+            return pool.borrow(config.getPrincipal(), config.getCredentials());
+        }
+        synchronized (this) {
+            return getInitialContext().newInstance(null);
+        }
+    }
+
+    /**
+     * Gives back a context returned by {@link #borrowContext()}.
+     *
+     * @param failed whether the context failed, in which case it is closed.
+     */
+    public void releaseContext(LdapContext context, boolean failed) {
+        LdapContextPool pool = getContextPool();
+        if (pool == null) {
+            quietClose(context);
+        } else if (failed) {
+            pool.invalidate(context);
+        } else {
+            pool.release(context);
+        }
+    }
+
+    private synchronized LdapContextPool getContextPool() {
+        if (contextPool == null && config.getContextPoolSize() > 0) {
+            contextPool = new LdapContextPool(config.getContextPoolSize(), config.getContextPoolSize(),
+                    config.getContextPoolIdleTimeout()) {
+                @Override
+                protected LdapContext createContext(String principal, GuardedString credentials) {
+                    return connect(principal, credentials);
+                }
+            };
+        }
+        return contextPool;
     }
 
     private LdapContext connect(String principal, GuardedString credentials) {
@@ -327,10 +431,29 @@ public class LdapConnection {
     }
 
     public void close() {
+        List<PersistentSearch> searches;
+        synchronized (persistentSearches) {
+            searches = new ArrayList<PersistentSearch>(persistentSearches.values());
+            persistentSearches.clear();
+        }
+        for (PersistentSearch search : searches) {
+            search.close();
+        }
         try {
             quietClose(initCtx);
         } finally {
             initCtx = null;
+            uidCache.clear();
+            synchronized (this) {
+                if (contextPool != null) {
+                    contextPool.close();
+                    contextPool = null;
+                }
+                if (runAsContextPool != null) {
+                    runAsContextPool.close();
+                    runAsContextPool = null;
+                }
+            }
         }
     }
 
@@ -348,6 +471,34 @@ public class LdapConnection {
         return schemaMapping;
     }
 
+    /**
+     * Returns the cache of entry DNs by Uid. The cache is disabled unless
+     * {@link LdapConfiguration#getUidCacheSize()} is set.
+     */
+    public UidDnCache getUidCache() {
+        return uidCache;
+    }
+
+    /**
+     * Returns the persistent search opened by this connection for the object
+     * class, or null.
+     */
+    public PersistentSearch getPersistentSearch(ObjectClass oclass) {
+        synchronized (persistentSearches) {
+            return persistentSearches.get(oclass);
+        }
+    }
+
+    /**
+     * Sets the persistent search for the object class. It is closed with this
+     * connection.
+     */
+    public void setPersistentSearch(ObjectClass oclass, PersistentSearch search) {
+        synchronized (persistentSearches) {
+            persistentSearches.put(oclass, search);
+        }
+    }
+
     public LdapNativeSchema createNativeSchema() {
         try {
             if (config.isReadSchema()) {
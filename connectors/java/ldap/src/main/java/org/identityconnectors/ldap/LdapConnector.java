@@ -26,6 +26,8 @@ package org.identityconnectors.ldap;
 
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import javax.naming.NamingException;
@@ -35,6 +37,7 @@ import javax.security.auth.login.LoginException;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
@@ -49,6 +52,7 @@ import org.identityconnectors.framework.spi.PoolableConnector;
 import org.identityconnectors.framework.spi.operations.AuthenticateOp;
 import org.identityconnectors.framework.spi.operations.CreateOp;
 import org.identityconnectors.framework.spi.operations.DeleteOp;
+import org.identityconnectors.framework.spi.operations.GetOp;
 import org.identityconnectors.framework.spi.operations.ResolveUsernameOp;
 import org.identityconnectors.framework.spi.operations.SchemaOp;
 import org.identityconnectors.framework.spi.operations.SearchOp;
@@ -60,15 +64,18 @@ import org.identityconnectors.ldap.modify.LdapDelete;
 import org.identityconnectors.ldap.modify.LdapUpdate;
 import org.identityconnectors.ldap.search.LdapFilter;
 import org.identityconnectors.ldap.search.LdapFilterTranslator;
+import org.identityconnectors.ldap.search.LdapGet;
 import org.identityconnectors.ldap.search.LdapSearch;
+import org.identityconnectors.ldap.sync.LdapSyncStrategy;
 import org.identityconnectors.ldap.sync.activedirectory.ActiveDirectoryChangeLogSyncStrategy;
 import org.identityconnectors.ldap.sync.ibm.IBMDSChangeLogSyncStrategy;
+import org.identityconnectors.ldap.sync.persistent.PersistentSearchSyncStrategy;
 import org.identityconnectors.ldap.sync.sunds.SunDSChangeLogSyncStrategy;
 import org.identityconnectors.ldap.sync.timestamps.TimestampsSyncStrategy;
 
 @ConnectorClass(configurationClass = LdapConfiguration.class, displayNameKey = "LdapConnector")
 public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, SearchOp<LdapFilter>, AuthenticateOp, ResolveUsernameOp, CreateOp, DeleteOp,
-        UpdateAttributeValuesOp, SyncOp {
+        UpdateAttributeValuesOp, SyncOp, GetOp {
 
     // XXX groups.
     /**
@@ -198,6 +205,49 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
         }
     }
 
+    public ConnectorObject getObject(final ObjectClass objectClass, final Uid uid, final OperationOptions options) {
+        if (objectClass.is(LdapUtil.SERVER_INFO_NAME)) {
+            final ConnectorObject[] result = new ConnectorObject[]{null};
+            getObjects(objectClass, Collections.singletonList(uid), new ResultsHandler() {
+                public boolean handle(ConnectorObject object) {
+                    result[0] = object;
+                    return false;
+                }
+            }, options);
+            return result[0];
+        }
+        if (loginContext != null) {
+            return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<ConnectorObject>() {
+                public ConnectorObject run() {
+                    return new LdapGet(conn, objectClass, options).getObject(uid);
+                }
+            });
+        } else {
+            return new LdapGet(conn, objectClass, options).getObject(uid);
+        }
+    }
+
+    public void getObjects(final ObjectClass objectClass, final Collection<Uid> uids, final ResultsHandler handler, final OperationOptions options) {
+        if (objectClass.is(LdapUtil.SERVER_INFO_NAME)) {
+            LdapUtil.getServerInfo(conn, new ResultsHandler() {
+                public boolean handle(ConnectorObject object) {
+                    return !uids.contains(object.getUid()) || handler.handle(object);
+                }
+            });
+        } else {
+            if (loginContext != null) {
+                Subject.doAs(loginContext.getSubject(), new PrivilegedAction() {
+                    public Object run() {
+                        new LdapGet(conn, objectClass, options).getObjects(uids, handler);
+                        return null;
+                    }
+                });
+            } else {
+                new LdapGet(conn, objectClass, options).getObjects(uids, handler);
+            }
+        }
+    }
+
     public Uid create(final ObjectClass objectClass, final Set<Attribute> attrs, final OperationOptions options) {
         if (loginContext != null) {
             return Subject.doAs(loginContext.getSubject(), new PrivilegedAction<Uid>() {
@@ -285,46 +335,39 @@ public class LdapConnector implements TestOp, PoolableConnector, SchemaOp, Searc
     }
     
     private SyncToken lastSyncToken(ObjectClass objectClass){
-          if (config.isUseTimestampsForSync()) {
-            return new TimestampsSyncStrategy(conn, objectClass).getLatestSyncToken();
-        } else {
-            switch (conn.getServerType()) {
-                case UNKNOWN:
-                case OPENLDAP:
-                case MSAD_GC:
-                    return new TimestampsSyncStrategy(conn, objectClass).getLatestSyncToken();
-                case IBM:
-                    return new IBMDSChangeLogSyncStrategy(conn, objectClass).getLatestSyncToken();
-                case MSAD:
-                case MSAD_LDS:
-                    return new ActiveDirectoryChangeLogSyncStrategy(conn, objectClass).getLatestSyncToken();
-                default:
-                    return new SunDSChangeLogSyncStrategy(conn, objectClass).getLatestSyncToken();
-            }
-        }
+        return createSyncStrategy(objectClass).getLatestSyncToken();
     }
     
     private void doSync(ObjectClass objectClass, SyncToken token, SyncResultsHandler handler, OperationOptions options) {
+        createSyncStrategy(objectClass).sync(token, handler, options);
+    }
+
+    private LdapSyncStrategy createSyncStrategy(ObjectClass objectClass) {
+        LdapSyncStrategy strategy;
         if (config.isUseTimestampsForSync()) {
-            new TimestampsSyncStrategy(conn, objectClass).sync(token, handler, options);
+            strategy = new TimestampsSyncStrategy(conn, objectClass);
         } else {
             switch (conn.getServerType()) {
                 case UNKNOWN:
                 case OPENLDAP:
                 case MSAD_GC:
-                    new TimestampsSyncStrategy(conn, objectClass).sync(token, handler, options);
+                    strategy = new TimestampsSyncStrategy(conn, objectClass);
                     break;
                 case IBM:
-                    new IBMDSChangeLogSyncStrategy(conn, objectClass).sync(token, handler, options);
+                    strategy = new IBMDSChangeLogSyncStrategy(conn, objectClass);
                     break;
                 case MSAD:
                 case MSAD_LDS:
-                    new ActiveDirectoryChangeLogSyncStrategy(conn, objectClass).sync(token, handler, options);
+                    strategy = new ActiveDirectoryChangeLogSyncStrategy(conn, objectClass);
                     break;
                 default:
-                    new SunDSChangeLogSyncStrategy(conn, objectClass).sync(token, handler, options);
+                    strategy = new SunDSChangeLogSyncStrategy(conn, objectClass);
             }
         }
+        if (config.isUsePersistentSearch()) {
+            strategy = new PersistentSearchSyncStrategy(conn, objectClass, strategy);
+        }
+        return strategy;
     }
     
     private void doTest(){
@@ -0,0 +1,276 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.identityconnectors.common.Pair;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * A pool of bound {@link LdapContext}s, keyed by the principal and the
+ * credentials they are bound with.
+ * <p>
+ * Every pooled context has its own connection to the server, unlike the
+ * contexts created by {@link LdapContext#newInstance}, which share the
+ * connection of the initial context. Contexts which have been idle for a while
+ * are checked with a read of the root DSE before they are handed out again,
+ * and are closed once they have been idle longer than the idle timeout.
+ */
+public abstract class LdapContextPool {
+
+    private static final Log log = Log.getLog(LdapContextPool.class);
+
+    /**
+     * Time in milliseconds after which an idle context is checked before it
+     * is used.
+     */
+    private static final long VALIDATE_AFTER = 5000;
+
+    private static final class IdleContext {
+
+        private final Pair<String, GuardedString> key;
+        private final LdapContext context;
+        private final long idleSince;
+
+        private IdleContext(Pair<String, GuardedString> key, LdapContext context) {
+            this.key = key;
+            this.context = context;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private final int maxIdle;
+    private final long maxIdleTime;
+    private final Semaphore permits;
+
+    /**
+     * The idle contexts, the most recently returned last.
+     */
+    private final LinkedList<IdleContext> idle = new LinkedList<IdleContext>();
+
+    private final Map<LdapContext, Pair<String, GuardedString>> active =
+            new IdentityHashMap<LdapContext, Pair<String, GuardedString>>();
+
+    private boolean closed = false;
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxActive the maximum number of contexts in use at the same time,
+     *        0 for no limit. Borrowers wait when the limit is reached.
+     * @param maxIdle the maximum number of idle contexts kept open.
+     * @param maxIdleTime the time in milliseconds an idle context is kept open.
+     */
+    public LdapContextPool(int maxActive, int maxIdle, long maxIdleTime) {
+        this.maxIdle = maxIdle;
+        this.maxIdleTime = maxIdleTime;
+        this.permits = maxActive > 0 ? new Semaphore(maxActive, true) : null;
+    }
+
+    /**
+     * Creates a new context bound with the given principal and credentials.
+     */
+    protected abstract LdapContext createContext(String principal, GuardedString credentials);
+
+    /**
+     * Prepares an idle context before it is handed out again.
+     *
+     * @return false if the context must not be used, a new one is created
+     *         instead.
+     */
+    protected boolean reuseContext(LdapContext context) {
+        return true;
+    }
+
+    /**
+     * Borrows a context bound with the given principal and credentials. It
+     * must be given back by {@link #release} or {@link #invalidate}.
+     */
+    public LdapContext borrow(String principal, GuardedString credentials) {
+        Pair<String, GuardedString> key = new Pair<String, GuardedString>(principal, credentials);
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorException(e);
+            }
+        }
+        try {
+            LdapContext context = pollIdle(key);
+            if (context != null && !reuseContext(context)) {
+                closeQuietly(context);
+                context = null;
+            }
+            if (context == null) {
+                context = createContext(principal, credentials);
+            }
+            synchronized (this) {
+                active.put(context, key);
+            }
+            return context;
+        } catch (RuntimeException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a context after it was used successfully. Contexts which were
+     * not borrowed from this pool are closed.
+     */
+    public void release(LdapContext context) {
+        Pair<String, GuardedString> key;
+        List<IdleContext> evicted = new ArrayList<IdleContext>();
+        synchronized (this) {
+            key = active.remove(context);
+            if (key != null && !closed && maxIdle > 0 && reset(context)) {
+                idle.addLast(new IdleContext(key, context));
+                context = null;
+            }
+            long now = System.currentTimeMillis();
+            Iterator<IdleContext> iter = idle.iterator();
+            while (iter.hasNext()) {
+                IdleContext entry = iter.next();
+                if (idle.size() <= maxIdle && now - entry.idleSince < maxIdleTime) {
+                    // entries are ordered by the time they were returned
+                    break;
+                }
+                iter.remove();
+                evicted.add(entry);
+            }
+        }
+        if (key != null && permits != null) {
+            permits.release();
+        }
+        closeQuietly(context);
+        for (IdleContext entry : evicted) {
+            closeQuietly(entry.context);
+        }
+    }
+
+    /**
+     * Closes a context which failed and must not be used again.
+     */
+    public void invalidate(LdapContext context) {
+        Pair<String, GuardedString> key;
+        synchronized (this) {
+            key = active.remove(context);
+        }
+        if (key != null && permits != null) {
+            permits.release();
+        }
+        closeQuietly(context);
+    }
+
+    /**
+     * Closes the idle contexts. The contexts in use are closed when they are
+     * given back.
+     */
+    public void close() {
+        List<IdleContext> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<IdleContext>(idle);
+            idle.clear();
+        }
+        for (IdleContext entry : all) {
+            closeQuietly(entry.context);
+        }
+    }
+
+    /**
+     * Takes the most recently returned usable context for the key.
+     */
+    private LdapContext pollIdle(Pair<String, GuardedString> key) {
+        while (true) {
+            IdleContext entry = null;
+            synchronized (this) {
+                Iterator<IdleContext> iter = idle.descendingIterator();
+                while (iter.hasNext()) {
+                    IdleContext candidate = iter.next();
+                    if (candidate.key.equals(key)) {
+                        iter.remove();
+                        entry = candidate;
+                        break;
+                    }
+                }
+            }
+            if (entry == null) {
+                return null;
+            }
+            long idleTime = System.currentTimeMillis() - entry.idleSince;
+            if (idleTime < maxIdleTime && (idleTime < VALIDATE_AFTER || isAlive(entry.context))) {
+                return entry.context;
+            }
+            closeQuietly(entry.context);
+        }
+    }
+
+    private static boolean isAlive(LdapContext context) {
+        try {
+            // "1.1" asks for no attributes at all
+            context.getAttributes("", new String[] { "1.1" });
+            return true;
+        } catch (NamingException e) {
+            log.ok(e, "Discarding a pooled context which failed the check");
+            return false;
+        }
+    }
+
+    /**
+     * Removes the request controls the last user of the context has set.
+     */
+    private static boolean reset(LdapContext context) {
+        try {
+            context.setRequestControls(null);
+            return true;
+        } catch (NamingException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(LdapContext context) {
+        if (context != null) {
+            try {
+                context.close();
+            } catch (NamingException e) {
+                log.ok(e, "Failed to close a pooled context");
+            }
+        }
+    }
+}
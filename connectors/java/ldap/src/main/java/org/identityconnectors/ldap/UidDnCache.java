@@ -0,0 +1,175 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ * 
+ */
+package org.identityconnectors.ldap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.naming.NameNotFoundException;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * A bounded cache of entry DNs by {@link Uid}, so an update or delete does not
+ * need a search to find the entry it modifies.
+ * <p>
+ * The cache is filled by the DN lookups of modifications and by created
+ * entries, not by searches which would evict them. The entries are removed
+ * when they are renamed or deleted through the connector. An entry renamed or
+ * deleted by another client is detected when the modification fails, see
+ * {@link #isStale}, or when a lookup which must check the entry finds another
+ * one at the cached DN. Entries expire after the configured time to live in
+ * any case.
+ */
+public class UidDnCache {
+
+    private static final Log log = Log.getLog(UidDnCache.class);
+
+    private static final class CachedDN {
+
+        private final String entryDN;
+        private final long expires;
+
+        private CachedDN(String entryDN, long expires) {
+            this.entryDN = entryDN;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<String, CachedDN> cache;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum number of entries, 0 disables the cache.
+     * @param timeToLive the time in milliseconds an entry is valid.
+     */
+    public UidDnCache(final int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.cache = new LinkedHashMap<String, CachedDN>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDN> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the cached DN of the entry, or {@code null}.
+     */
+    public synchronized String get(ObjectClass oclass, Uid uid) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = getKey(oclass, uid);
+        CachedDN cached = cache.get(key);
+        if (cached != null && cached.expires < System.currentTimeMillis()) {
+            cache.remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.entryDN;
+    }
+
+    public synchronized void put(ObjectClass oclass, Uid uid, String entryDN) {
+        if (isEnabled()) {
+            cache.put(getKey(oclass, uid), new CachedDN(entryDN, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    /**
+     * Removes the DN of the entry.
+     *
+     * @return {@code true} if the DN was cached.
+     */
+    public synchronized boolean remove(ObjectClass oclass, Uid uid) {
+        return isEnabled() && cache.remove(getKey(oclass, uid)) != null;
+    }
+
+    /**
+     * Checks whether the modification of an entry failed because its cached
+     * DN is outdated. In this case the DN is removed and the modification can
+     * be retried, the DN will then be searched again.
+     */
+    public boolean isStale(ObjectClass oclass, Uid uid, RuntimeException failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NameNotFoundException) {
+                if (remove(oclass, uid)) {
+                    log.ok("Cached DN of {0} is outdated", uid.getUidValue());
+                    return true;
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void clear() {
+        if (hits + misses > 0) {
+            log.ok("Uid to DN cache: {0} hits, {1} misses, hit rate {2}", hits, misses, getHitRate());
+        }
+        cache.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the ratio of lookups which found the DN in the cache.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    private static String getKey(ObjectClass oclass, Uid uid) {
+        return oclass.getObjectClassValue() + '\u0000' + uid.getUidValue();
+    }
+}
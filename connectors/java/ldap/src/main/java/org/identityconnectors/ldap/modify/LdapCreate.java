@@ -123,6 +123,7 @@ public class LdapCreate extends LdapModifyOperation {
         }
 
         final String[] entryDN = {null};
+        boolean succeeded = false;
         try {
             if (pwdAttr != null) {
                 pwdAttr.access(new Accessor() {
@@ -147,16 +148,16 @@ public class LdapCreate extends LdapModifyOperation {
                 String posixRefAttr = getFirstPosixRefAttr(entryDN[0], posixRefAttrs);
                 groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, runAsContext);
             }
+            succeeded = true;
         } finally {
             if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException e) {
-                }
+                conn.releaseRunAsContext(runAsContext, !succeeded);
             }
         }
 
-        return conn.getSchemaMapping().createUid(oclass, entryDN[0]);
+        Uid uid = conn.getSchemaMapping().createUid(oclass, entryDN[0]);
+        conn.getUidCache().put(oclass, uid, entryDN[0]);
+        return uid;
     }
 
     public String doCreate(Name name, javax.naming.directory.Attributes initialAttrs, LdapContext runAsContext) {
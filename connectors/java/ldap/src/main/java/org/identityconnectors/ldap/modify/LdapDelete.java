@@ -59,6 +59,18 @@ public class LdapDelete extends LdapModifyOperation {
     }
 
     public void execute() {
+        try {
+            doExecute();
+        } catch (RuntimeException e) {
+            if (!conn.getUidCache().isStale(oclass, uid, e)) {
+                throw e;
+            }
+            doExecute();
+        }
+        conn.getUidCache().remove(oclass, uid);
+    }
+
+    private void doExecute() {
         String entryDN = escapeDNValueOfJNDIReservedChars(LdapSearches.getEntryDN(conn, oclass, uid));
         LdapContext runAsContext = null;
         
@@ -67,35 +79,33 @@ public class LdapDelete extends LdapModifyOperation {
             runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
         }
         
-        if (conn.getConfiguration().isMaintainLdapGroupMembership()) {
-            List<String> ldapGroups = groupHelper.getLdapGroups(entryDN);
-            groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
+        boolean succeeded = false;
+        try {
+            if (conn.getConfiguration().isMaintainLdapGroupMembership()) {
+                List<String> ldapGroups = groupHelper.getLdapGroups(entryDN);
+                groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
+            }
 
-        if (conn.getConfiguration().isMaintainPosixGroupMembership()) {
-            PosixGroupMember posixMember = new PosixGroupMember(entryDN);
-            Set<GroupMembership> memberships = posixMember.getPosixGroupMemberships();
-            groupHelper.removePosixGroupMemberships(memberships, runAsContext);
-        }
-        
+            if (conn.getConfiguration().isMaintainPosixGroupMembership()) {
+                PosixGroupMember posixMember = new PosixGroupMember(entryDN);
+                Set<GroupMembership> memberships = posixMember.getPosixGroupMemberships();
+                groupHelper.removePosixGroupMemberships(memberships, runAsContext);
+            }
 
-        log.ok("Deleting LDAP entry {0}", entryDN);
-        try {
+            log.ok("Deleting LDAP entry {0}", entryDN);
             if (runAsContext == null) {
                 conn.getInitialContext().destroySubcontext(entryDN);
             }
             else {
                 runAsContext.destroySubcontext(entryDN);
             }
+            succeeded = true;
         } catch (NamingException e) {
             throw new ConnectorException(e);
         }
         finally {
             if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException ex) {
-                }
+                conn.releaseRunAsContext(runAsContext, !succeeded);
             }
         }
     }
@@ -89,6 +89,39 @@ public class LdapUpdate extends LdapModifyOperation {
     }
 
     public Uid update(Set<Attribute> attrs) {
+        try {
+            return doUpdate(attrs);
+        } catch (RuntimeException e) {
+            if (!conn.getUidCache().isStale(oclass, uid, e)) {
+                throw e;
+            }
+            return doUpdate(attrs);
+        }
+    }
+
+    public Uid addAttributeValues(Set<Attribute> attrs) {
+        try {
+            return doAddAttributeValues(attrs);
+        } catch (RuntimeException e) {
+            if (!conn.getUidCache().isStale(oclass, uid, e)) {
+                throw e;
+            }
+            return doAddAttributeValues(attrs);
+        }
+    }
+
+    public Uid removeAttributeValues(Set<Attribute> attrs) {
+        try {
+            return doRemoveAttributeValues(attrs);
+        } catch (RuntimeException e) {
+            if (!conn.getUidCache().isStale(oclass, uid, e)) {
+                throw e;
+            }
+            return doRemoveAttributeValues(attrs);
+        }
+    }
+
+    private Uid doUpdate(Set<Attribute> attrs) {
         String entryDN = escapeDNValueOfJNDIReservedChars(LdapSearches.getEntryDN(conn, oclass, uid));
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
         LdapContext runAsContext = null;
@@ -122,6 +155,7 @@ public class LdapUpdate extends LdapModifyOperation {
             runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
         }
         
+        boolean succeeded = false;
         try {
             // Rename the entry if needed.
             String oldEntryDN = null;
@@ -136,6 +170,7 @@ public class LdapUpdate extends LdapModifyOperation {
                     runAsContext.rename(oldEntryDN, newEntryDN);
                 }
                 entryDN = newEntryDN;
+                conn.getUidCache().remove(oclass, uid);
             }
             // Update the attributes.
             modifyAttributes(entryDN, attrToModify, DirContext.REPLACE_ATTRIBUTE, runAsContext);
@@ -185,23 +220,21 @@ public class LdapUpdate extends LdapModifyOperation {
                 }
             }
             groupHelper.modifyPosixGroupMemberships(posixGroupMod, runAsContext);
+            succeeded = true;
         } catch (NameAlreadyBoundException e) {
             throw new AlreadyExistsException(e);
         } catch (NamingException e) {
             throw new ConnectorException(e);
         } finally {
             if (runAsContext != null) {
-                try {
-                    runAsContext.close();
-                } catch (NamingException e) {
-                }
+                conn.releaseRunAsContext(runAsContext, !succeeded);
             }
         }
 
         return conn.getSchemaMapping().createUid(oclass, entryDN);
     }
 
-    public Uid addAttributeValues(Set<Attribute> attrs) {
+    private Uid doAddAttributeValues(Set<Attribute> attrs) {
         String entryDN = LdapSearches.findEntryDN(conn, oclass, uid);
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
         LdapContext runAsContext = null;
@@ -211,25 +244,33 @@ public class LdapUpdate extends LdapModifyOperation {
             runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
         }
 
-        Pair<Attributes, GuardedPasswordAttribute> attrsToModify = getAttributesToModify(attrs);
-        modifyAttributes(entryDN, attrsToModify, DirContext.ADD_ATTRIBUTE, runAsContext);
+        boolean succeeded = false;
+        try {
+            Pair<Attributes, GuardedPasswordAttribute> attrsToModify = getAttributesToModify(attrs);
+            modifyAttributes(entryDN, attrsToModify, DirContext.ADD_ATTRIBUTE, runAsContext);
 
-        List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
-        if (!isEmpty(ldapGroups)) {
-            groupHelper.addLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
+            List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
+            if (!isEmpty(ldapGroups)) {
+                groupHelper.addLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
+            }
 
-        List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
-        if (!isEmpty(posixGroups)) {
-            Set<String> posixRefAttrs = posixMember.getPosixRefAttributes();
-            String posixRefAttr = getFirstPosixRefAttr(entryDN, posixRefAttrs);
-            groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, runAsContext);
-        } 
+            List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
+            if (!isEmpty(posixGroups)) {
+                Set<String> posixRefAttrs = posixMember.getPosixRefAttributes();
+                String posixRefAttr = getFirstPosixRefAttr(entryDN, posixRefAttrs);
+                groupHelper.addPosixGroupMemberships(posixRefAttr, posixGroups, runAsContext);
+            } 
+            succeeded = true;
+        } finally {
+            if (runAsContext != null) {
+                conn.releaseRunAsContext(runAsContext, !succeeded);
+            }
+        }
 
         return uid;
     }
 
-    public Uid removeAttributeValues(Set<Attribute> attrs) {
+    private Uid doRemoveAttributeValues(Set<Attribute> attrs) {
         String entryDN = LdapSearches.findEntryDN(conn, oclass, uid);
         PosixGroupMember posixMember = new PosixGroupMember(entryDN);
         LdapContext runAsContext = null;
@@ -239,25 +280,33 @@ public class LdapUpdate extends LdapModifyOperation {
             runAsContext = conn.getRunAsContext(dn, options.getRunWithPassword());
         }
 
-        Pair<Attributes, GuardedPasswordAttribute> attrsToModify = getAttributesToModify(attrs);
-        Attributes ldapAttrs = attrsToModify.first;
+        boolean succeeded = false;
+        try {
+            Pair<Attributes, GuardedPasswordAttribute> attrsToModify = getAttributesToModify(attrs);
+            Attributes ldapAttrs = attrsToModify.first;
 
-        Set<String> removedPosixRefAttrs = getAttributeValues(GroupHelper.getPosixRefAttribute(), null, ldapAttrs);
-        if (!isEmpty(removedPosixRefAttrs)) {
-            checkRemovedPosixRefAttrs(removedPosixRefAttrs, posixMember.getPosixGroupMemberships());
-        }
+            Set<String> removedPosixRefAttrs = getAttributeValues(GroupHelper.getPosixRefAttribute(), null, ldapAttrs);
+            if (!isEmpty(removedPosixRefAttrs)) {
+                checkRemovedPosixRefAttrs(removedPosixRefAttrs, posixMember.getPosixGroupMemberships());
+            }
 
-        modifyAttributes(entryDN, attrsToModify, DirContext.REMOVE_ATTRIBUTE, runAsContext);
+            modifyAttributes(entryDN, attrsToModify, DirContext.REMOVE_ATTRIBUTE, runAsContext);
 
-        List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
-        if (!isEmpty(ldapGroups)) {
-            groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
-        }
+            List<String> ldapGroups = getStringListValue(attrs, LdapConstants.LDAP_GROUPS_NAME);
+            if (!isEmpty(ldapGroups)) {
+                groupHelper.removeLdapGroupMemberships(entryDN, ldapGroups, runAsContext);
+            }
 
-        List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
-        if (!isEmpty(posixGroups)) {
-            Set<GroupMembership> members = posixMember.getPosixGroupMembershipsByGroups(posixGroups);
-            groupHelper.removePosixGroupMemberships(members, runAsContext);
+            List<String> posixGroups = getStringListValue(attrs, LdapConstants.POSIX_GROUPS_NAME);
+            if (!isEmpty(posixGroups)) {
+                Set<GroupMembership> members = posixMember.getPosixGroupMembershipsByGroups(posixGroups);
+                groupHelper.removePosixGroupMemberships(members, runAsContext);
+            }
+            succeeded = true;
+        } finally {
+            if (runAsContext != null) {
+                conn.releaseRunAsContext(runAsContext, !succeeded);
+            }
         }
 
         return uid;
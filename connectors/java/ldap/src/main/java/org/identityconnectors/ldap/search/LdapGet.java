@@ -0,0 +1,134 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.     
+ * 
+ * The contents of this file are subject to the terms of the Common Development 
+ * and Distribution License("CDDL") (the "License").  You may not use this file 
+ * except in compliance with the License.
+ * 
+ * You can obtain a copy of the License at 
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations 
+ * under the License. 
+ * 
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields 
+ * enclosed by brackets [] replaced by your own identifying information: 
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ * 
+ */
+package org.identityconnectors.ldap.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.ldap.LdapConnection;
+import org.identityconnectors.ldap.LdapEntry;
+
+/**
+ * Reads entries by their {@link Uid}.
+ * <p>
+ * When the Uid is the entry DN, the entry is read directly. Otherwise an
+ * entry whose DN is in the Uid cache is read directly too, checking that it
+ * still has the Uid, and the remaining entries are found by a search for all
+ * of their Uids at once, in batches of {@link #BATCH_SIZE}.
+ */
+public class LdapGet {
+
+    private static final Log log = Log.getLog(LdapGet.class);
+
+    /**
+     * The maximum number of Uids in the filter of one search.
+     */
+    static final int BATCH_SIZE = 100;
+
+    private final LdapConnection conn;
+    private final ObjectClass oclass;
+    private final OperationOptions options;
+
+    public LdapGet(LdapConnection conn, ObjectClass oclass, OperationOptions options) {
+        this.conn = conn;
+        this.oclass = oclass;
+        this.options = options;
+    }
+
+    public ConnectorObject getObject(Uid uid) {
+        final ConnectorObject[] result = new ConnectorObject[]{null};
+        getObjects(Collections.singletonList(uid), new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                result[0] = object;
+                return false;
+            }
+        });
+        return result[0];
+    }
+
+    public void getObjects(Collection<Uid> uids, final ResultsHandler handler) {
+        final boolean[] stopped = new boolean[]{false};
+        ResultsHandler stoppable = new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                stopped[0] = !handler.handle(object);
+                return !stopped[0];
+            }
+        };
+
+        boolean uidIsDN = LdapEntry.isDNAttribute(conn.getSchemaMapping().getLdapUidAttribute(oclass));
+        LdapFilterTranslator translator = new LdapFilterTranslator(conn.getSchemaMapping(), oclass);
+        List<LdapFilter> toSearch = new ArrayList<LdapFilter>();
+        for (Uid uid : uids) {
+            if (stopped[0]) {
+                return;
+            }
+            if (uidIsDN) {
+                read(LdapFilter.forEntryDN(uid.getUidValue()), stoppable);
+                continue;
+            }
+            LdapFilter filter = translator.createEqualsExpression((EqualsFilter) FilterBuilder.equalTo(uid), false);
+            String cachedDN = conn.getUidCache().get(oclass, uid);
+            if (cachedDN == null
+                    || !read(LdapFilter.forEntryDN(cachedDN).withNativeFilter(filter.getNativeFilter()), stoppable)) {
+                toSearch.add(filter);
+            }
+        }
+
+        for (int i = 0; i < toSearch.size() && !stopped[0]; i += BATCH_SIZE) {
+            LdapFilter filter = null;
+            for (LdapFilter uidFilter : toSearch.subList(i, Math.min(i + BATCH_SIZE, toSearch.size()))) {
+                filter = filter != null ? filter.or(uidFilter) : uidFilter;
+            }
+            log.ok("Searching for {0} objects of class {1}", Math.min(BATCH_SIZE, toSearch.size() - i),
+                    oclass.getObjectClassValue());
+            new LdapSearch(conn, oclass, filter, stoppable, options).execute();
+        }
+    }
+
+    /**
+     * Reads the entry of the filter with an entry DN.
+     *
+     * @return true if the entry exists and matches the native filter.
+     */
+    private boolean read(LdapFilter filter, final ResultsHandler handler) {
+        final boolean[] found = new boolean[]{false};
+        new LdapSearch(conn, oclass, filter, new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                found[0] = true;
+                return handler.handle(object);
+            }
+        }, options).execute();
+        return found[0];
+    }
+}
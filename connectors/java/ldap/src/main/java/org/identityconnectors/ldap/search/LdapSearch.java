@@ -25,8 +25,11 @@
  */
 package org.identityconnectors.ldap.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.singletonList;
@@ -100,6 +103,13 @@ public class LdapSearch {
     private PasswordDecryptor passwordDecryptor = null;
     private final ResultsHandler handler;
 
+    /**
+     * Groups resolved for the current batch of entries, null when the groups
+     * are resolved entry by entry.
+     */
+    private Map<String, List<String>> ldapGroupsByDN;
+    private Map<String, List<String>> posixGroupsByRef;
+
     public static Set<String> getAttributesReturnedByDefault(LdapConnection conn, ObjectClass oclass) {
         if (oclass.equals(LdapSchemaMapping.ANY_OBJECT_CLASS)) {
             return newSet(Name.NAME);
@@ -146,11 +156,18 @@ public class LdapSearch {
         final String[] attrsToGetOption = options.getAttributesToGet();
         final Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
         LdapInternalSearch search = getInternalSearch(attrsToGet);
-        search.execute(new LdapSearchResultsHandler() {
-            public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                return handler.handle(createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null));
-            }
-        });
+        int batchSize = conn.getConfiguration().getGroupMembershipBatchSize();
+        if (batchSize > 1
+                && (attrsToGet.contains(LdapConstants.LDAP_GROUPS_NAME) || attrsToGet
+                        .contains(LdapConstants.POSIX_GROUPS_NAME))) {
+            executeInBatches(search, handler, attrsToGet, attrsToGetOption != null, batchSize);
+        } else {
+            search.execute(new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                    return handler.handle(createConnectorObject(baseDN, result, attrsToGet, attrsToGetOption != null));
+                }
+            });
+        }
         
         if (handler instanceof SearchResultsHandler) {
         	String pagedResultsCookie = search.getPagedResultsCookie();
@@ -161,6 +178,66 @@ public class LdapSearch {
         }
     }
 
+    /**
+     * Collects the entries in batches and resolves the groups of a whole batch
+     * with one search before the entries are passed to the handler, instead of
+     * one search per entry.
+     */
+    private void executeInBatches(LdapInternalSearch search, final ResultsHandler handler,
+            final Set<String> attrsToGet, final boolean emptyAttrWhenNotFound, final int batchSize) {
+        final boolean ldapGroups = attrsToGet.contains(LdapConstants.LDAP_GROUPS_NAME);
+        final boolean posixGroups = attrsToGet.contains(LdapConstants.POSIX_GROUPS_NAME);
+        final List<LdapEntry> batch = new ArrayList<LdapEntry>(batchSize);
+        final boolean[] stopped = { false };
+        LdapSearchResultsHandler batchHandler = new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                batch.add(LdapEntry.create(baseDN, result));
+                if (batch.size() >= batchSize) {
+                    stopped[0] = !flushBatch(batch, handler, attrsToGet, emptyAttrWhenNotFound, ldapGroups, posixGroups);
+                    return !stopped[0];
+                }
+                return true;
+            }
+        };
+        search.execute(batchHandler);
+        if (!stopped[0]) {
+            flushBatch(batch, handler, attrsToGet, emptyAttrWhenNotFound, ldapGroups, posixGroups);
+        }
+    }
+
+    private boolean flushBatch(List<LdapEntry> batch, ResultsHandler handler, Set<String> attrsToGet,
+            boolean emptyAttrWhenNotFound, boolean ldapGroups, boolean posixGroups) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            if (ldapGroups) {
+                List<String> entryDNs = new ArrayList<String>(batch.size());
+                for (LdapEntry entry : batch) {
+                    entryDNs.add(entry.getDN().toString());
+                }
+                ldapGroupsByDN = groupHelper.getLdapGroups(entryDNs);
+            }
+            if (posixGroups) {
+                Set<String> posixRefAttrs = new LinkedHashSet<String>();
+                for (LdapEntry entry : batch) {
+                    posixRefAttrs.addAll(getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute()));
+                }
+                posixGroupsByRef = groupHelper.getPosixGroupsByRef(posixRefAttrs);
+            }
+            for (LdapEntry entry : batch) {
+                if (!handler.handle(createConnectorObject(entry, attrsToGet, emptyAttrWhenNotFound))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            batch.clear();
+            ldapGroupsByDN = null;
+            posixGroupsByRef = null;
+        }
+    }
+
     /**
      * Executes the query against all configured base DNs and returns the first
      * {@link ConnectorObject} or {@code null}.
@@ -247,8 +324,10 @@ public class LdapSearch {
      * is used to compute the connector object's name attribute.
      */
     private ConnectorObject createConnectorObject(String baseDN, SearchResult result, Set<String> attrsToGet, boolean emptyAttrWhenNotFound) {
-        LdapEntry entry = LdapEntry.create(baseDN, result);
+        return createConnectorObject(LdapEntry.create(baseDN, result), attrsToGet, emptyAttrWhenNotFound);
+    }
 
+    private ConnectorObject createConnectorObject(LdapEntry entry, Set<String> attrsToGet, boolean emptyAttrWhenNotFound) {
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
         builder.setObjectClass(oclass);
         builder.setUid(conn.getSchemaMapping().createUid(oclass, entry));
@@ -260,11 +339,25 @@ public class LdapSearch {
                 continue;
             }
             if (LdapConstants.isLdapGroups(attrName)) {
-                List<String> ldapGroups = groupHelper.getLdapGroups(entry.getDN().toString());
+                List<String> ldapGroups;
+                if (ldapGroupsByDN != null) {
+                    ldapGroups = ldapGroupsByDN.get(entry.getDN().toString());
+                } else {
+                    ldapGroups = groupHelper.getLdapGroups(entry.getDN().toString());
+                }
                 attribute = AttributeBuilder.build(LdapConstants.LDAP_GROUPS_NAME, ldapGroups);
             } else if (LdapConstants.isPosixGroups(attrName)) {
                 Set<String> posixRefAttrs = getStringAttrValues(entry.getAttributes(), GroupHelper.getPosixRefAttribute());
-                List<String> posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
+                List<String> posixGroups;
+                if (posixGroupsByRef != null) {
+                    Set<String> groups = new LinkedHashSet<String>();
+                    for (String posixRefAttr : posixRefAttrs) {
+                        groups.addAll(posixGroupsByRef.get(posixRefAttr));
+                    }
+                    posixGroups = new ArrayList<String>(groups);
+                } else {
+                    posixGroups = groupHelper.getPosixGroups(posixRefAttrs);
+                }
                 attribute = AttributeBuilder.build(LdapConstants.POSIX_GROUPS_NAME, posixGroups);
 			} else if (LdapConstants.PASSWORD.is(attrName)) {
 				try {
@@ -502,6 +595,21 @@ public class LdapSearch {
         	return new DefaultSearchStrategy(false, sortKeys);
     	}
         
+        int parallelism = conn.getConfiguration().getParallelSearchThreads();
+        if (parallelism > 1 && sortKeys == null && options.getPagedResultsOffset() == null
+                && options.getPagedResultsCookie() == null && options.getPageSize() == null
+                && getBaseDNs().size() > 1) {
+            boolean ordered = conn.getConfiguration().isParallelSearchOrdered();
+            if (LdapConfiguration.PAGING_STRATEGY_NONE.equals(pagingStrategy)) {
+                log.ok("Selecting parallel search strategy without paging");
+                return new ParallelSearchStrategy(parallelism, ordered, 0);
+            } else if (conn.supportsControl(PagedResultsControl.OID)) {
+                log.ok("Selecting parallel search strategy with SimplePaged control");
+                return new ParallelSearchStrategy(parallelism, ordered, blockSize);
+            }
+            // VLV pages can't be searched in parallel, search sequentially
+        }
+
         if (LdapConfiguration.PAGING_STRATEGY_NONE.equals(pagingStrategy)) {
         	// This may fail on a sizeLimit. But this is what has been configured so we are going to do it anyway.
         	log.ok("Selecting default search strategy because strategy setting is set to {0}", pagingStrategy);
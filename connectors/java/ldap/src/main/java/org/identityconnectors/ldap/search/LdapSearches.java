@@ -115,10 +115,27 @@ public class LdapSearches {
         OperationOptionsBuilder builder = new OperationOptionsBuilder();
         builder.setAttributesToGet("entryDN");
 
+        // An entry modified recently is likely in the cache. Without check a
+        // stale DN makes the modification fail, see UidDnCache.isStale().
+        // Otherwise the entry at the cached DN must still have the Uid.
+        String cachedDN = conn.getUidCache().get(oclass, uid);
+        if (cachedDN != null) {
+            if (!check) {
+                return cachedDN;
+            }
+            LdapFilter cachedFilter = LdapFilter.forEntryDN(cachedDN).withNativeFilter(ldapFilter.getNativeFilter());
+            if (new LdapSearch(conn, oclass, cachedFilter, null, builder.build()).getSingleResult() != null) {
+                return cachedDN;
+            }
+            conn.getUidCache().remove(oclass, uid);
+        }
+
         LdapSearch search = new LdapSearch(conn, oclass, ldapFilter, null, builder.build());
         ConnectorObject object = search.getSingleResult();
         if (object != null) {
-            return AttributeUtil.getStringValue(object.getAttributeByName("entryDN"));
+            String entryDN = AttributeUtil.getStringValue(object.getAttributeByName("entryDN"));
+            conn.getUidCache().put(oclass, uid, entryDN);
+            return entryDN;
         }
         throw new UnknownUidException(uid, oclass);
     }
@@ -0,0 +1,325 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://IdentityConnectors.dev.java.net/legal/license.txt
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at identityconnectors/legal/license.txt.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.ldap.search;
+
+import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.PartialResultException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.ldap.LdapConnection;
+
+/**
+ * Searches several base DNs at the same time.
+ * <p>
+ * Every base DN is searched on a context borrowed from
+ * {@link LdapConnection#borrowContext()} by one of at most
+ * {@code parallelism} worker threads, optionally with the simple paged results
+ * control. The results are handed to the handler on the calling thread, either
+ * as they arrive or grouped by base DN in the order of the base DNs. Each
+ * worker buffers at most one block of results, so a slow handler slows down
+ * the searches instead of filling the memory. The searches are abandoned as
+ * soon as the handler returns false.
+ * <p>
+ * The strategy does not support the paged results cookie, offset or sort keys
+ * of the search request; such requests are processed sequentially.
+ */
+public class ParallelSearchStrategy extends LdapSearchStrategy {
+
+    private static final Log log = Log.getLog(ParallelSearchStrategy.class);
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "LdapParallelSearch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Marks the end of the results of a base DN.
+     */
+    private static final Object END = new Object();
+
+    private static final long OFFER_TIMEOUT = 100;
+
+    private final int parallelism;
+    private final boolean ordered;
+    private final int pageSize;
+
+    /**
+     * Creates a new strategy.
+     *
+     * @param parallelism the maximum number of base DNs searched at the same
+     *        time.
+     * @param ordered whether the results are returned grouped by base DN in
+     *        the order of the base DNs, rather than as they arrive.
+     * @param pageSize the page size of the simple paged results control, or 0
+     *        to search without the control.
+     */
+    public ParallelSearchStrategy(int parallelism, boolean ordered, int pageSize) {
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void doSearch(LdapConnection conn, List<String> baseDNs, String query, SearchControls searchControls,
+            LdapSearchResultsHandler handler) throws IOException, NamingException {
+        log.ok("Searching in {0} with filter {1} and {2} by {3} threads", baseDNs, query,
+                searchControlsToString(searchControls), parallelism);
+
+        int capacity = Math.max(pageSize, 100);
+        List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>(baseDNs.size());
+        BlockingQueue<Object> shared = ordered ? null : new LinkedBlockingQueue<Object>(capacity);
+        for (int i = 0; i < baseDNs.size(); i++) {
+            queues.add(ordered ? new LinkedBlockingQueue<Object>(capacity) : shared);
+        }
+
+        Search search = new Search(baseDNs, queues, query, searchControls);
+        int workers = Math.min(parallelism, baseDNs.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(EXECUTOR.submit(search.newWorker(conn)));
+            }
+            if (ordered) {
+                for (int i = 0; i < baseDNs.size() && !search.stopped; i++) {
+                    drain(queues.get(i), 1, search, handler);
+                }
+            } else {
+                drain(shared, baseDNs.size(), search, handler);
+            }
+        } finally {
+            search.stopped = true;
+            awaitWorkers(futures);
+        }
+    }
+
+    /**
+     * Passes the results in the queue to the handler until the given number
+     * of base DNs are complete.
+     */
+    private void drain(BlockingQueue<Object> queue, int baseDNCount, Search search, LdapSearchResultsHandler handler)
+            throws IOException, NamingException {
+        int complete = 0;
+        try {
+            while (complete < baseDNCount) {
+                Object next = queue.take();
+                if (next == END) {
+                    complete++;
+                } else if (next instanceof Result) {
+                    Result result = (Result) next;
+                    if (!handler.handle(result.baseDN, result.searchResult)) {
+                        log.ok("Ending search because handler returned false");
+                        search.stopped = true;
+                        return;
+                    }
+                } else {
+                    search.stopped = true;
+                    rethrow((Throwable) next);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException(e);
+        }
+    }
+
+    private static void awaitWorkers(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // Already reported through the queue.
+                log.ok(e.getCause(), "Parallel search failed");
+            }
+        }
+    }
+
+    private static void rethrow(Throwable e) throws IOException, NamingException {
+        if (e instanceof NamingException) {
+            throw (NamingException) e;
+        } else if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new ConnectorException(e);
+    }
+
+    private static final class Result {
+
+        private final String baseDN;
+        private final SearchResult searchResult;
+
+        private Result(String baseDN, SearchResult searchResult) {
+            this.baseDN = baseDN;
+            this.searchResult = searchResult;
+        }
+    }
+
+    /**
+     * The state shared by the workers of one search.
+     */
+    private final class Search {
+
+        private final List<String> baseDNs;
+        private final List<BlockingQueue<Object>> queues;
+        private final String query;
+        private final SearchControls searchControls;
+        private final AtomicInteger nextBaseDN = new AtomicInteger();
+        private volatile boolean stopped = false;
+
+        private Search(List<String> baseDNs, List<BlockingQueue<Object>> queues, String query,
+                SearchControls searchControls) {
+            this.baseDNs = baseDNs;
+            this.queues = queues;
+            this.query = query;
+            this.searchControls = searchControls;
+        }
+
+        private Runnable newWorker(final LdapConnection conn) {
+            return new Runnable() {
+                public void run() {
+                    // Contexts are not thread safe, every worker gets its own.
+                    LdapContext ctx = null;
+                    boolean failed = false;
+                    try {
+                        // The base DNs are taken in order, so the base DN the
+                        // handler waits for in ordered mode is always searched.
+                        int index;
+                        while (!stopped && (index = nextBaseDN.getAndIncrement()) < baseDNs.size()) {
+                            BlockingQueue<Object> queue = queues.get(index);
+                            try {
+                                if (ctx == null) {
+                                    ctx = conn.borrowContext();
+                                }
+                                searchBaseDN(ctx, baseDNs.get(index), queue);
+                                put(queue, END);
+                            } catch (Throwable e) {
+                                failed = true;
+                                put(queue, e);
+                                return;
+                            }
+                        }
+                    } finally {
+                        if (ctx != null) {
+                            conn.releaseContext(ctx, failed);
+                        }
+                    }
+                }
+            };
+        }
+
+        private void searchBaseDN(LdapContext ctx, String baseDN, BlockingQueue<Object> queue)
+                throws IOException, NamingException {
+            byte[] cookie = null;
+            do {
+                if (pageSize > 0) {
+                    ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, cookie, Control.CRITICAL) });
+                }
+                NamingEnumeration<SearchResult> results = null;
+                try {
+                    results = ctx.search(escapeDNValueOfJNDIReservedChars(baseDN), query, searchControls);
+                    while (results.hasMore()) {
+                        if (!put(queue, new Result(baseDN, results.next()))) {
+                            return;
+                        }
+                    }
+                } catch (PartialResultException e) {
+                    log.ok("PartialResultException caught: {0}", e.getRemainingName());
+                } catch (SizeLimitExceededException e) {
+                    log.info("Size limit exceeded while searching in {0} with filter {1} and {2}", baseDN, query,
+                            searchControlsToString(searchControls));
+                    return;
+                } finally {
+                    if (results != null) {
+                        results.close();
+                    }
+                }
+                cookie = pageSize > 0 ? getCookie(ctx.getResponseControls()) : null;
+            } while (cookie != null && !stopped);
+        }
+
+        /**
+         * Waits for room in the queue.
+         *
+         * @return false if the search was stopped in the meantime
+         */
+        private boolean put(BlockingQueue<Object> queue, Object item) {
+            try {
+                while (!stopped) {
+                    if (queue.offer(item, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    private static byte[] getCookie(Control[] controls) {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl) control).getCookie();
+                    return cookie != null && cookie.length > 0 ? cookie : null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -115,188 +115,288 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
             // We use the uSNchanged attribute to detect changes on entries and newly created entries.
             // We have to detect deleted entries as well. To do so, we use the filter (isDeleted==TRUE) to detect
             // the tombstones in the cn=delete objects,<defaultNamingContext> container.
+            syncChanges(token, handler);
+        }
+    }
 
-            final TreeMap<Integer, SyncDelta> changes = new TreeMap<Integer, SyncDelta>();
-            final String[] usnChanged = {""};
-            String waterMark = gethighestCommittedUSN();
-
-            SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
-            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            controls.setDerefLinkFlag(false);
-
-            LdapInternalSearch search = new LdapInternalSearch(conn,
-                    generateUSNChangedFilter(oclass, token, false),
-                    Arrays.asList(conn.getConfiguration().getBaseContextsToSynchronize()),
-                    new SimplePagedSearchStrategy(conn.getConfiguration().getBlockSize()),
-                    controls);
+    /**
+     * Processes the changes up to the current highestCommittedUSN in windows
+     * of consecutive USNs. Each change gets its own USN, so a window never
+     * holds more entries than it spans USNs. The window grows while the
+     * changes are sparse and shrinks back when it holds more than
+     * changeLogBlockSize entries, so at most that many deltas are kept in
+     * memory no matter how many changes are pending. Within a window the live
+     * entries and the tombstones are ordered by uSNChanged before they are
+     * handed to the handler, and the token advances after every window.
+     */
+    private void syncChanges(SyncToken token, SyncResultsHandler handler) {
+        if (token == null) {
+            token = getLatestSyncToken();
+        }
+        final long highestUSN = Long.parseLong(gethighestCommittedUSN());
+        final int blockSize = conn.getConfiguration().getChangeLogBlockSize();
+        String waterMark = token.getValue().toString();
+        long from = Long.parseLong(waterMark) + 1;
+        long width = blockSize;
+
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setDerefLinkFlag(false);
+
+        LdapContext deletedContext = null;
+        String deletedContainer = null;
+        // Deletes
+        // ldapsearch -J 1.2.840.113556.1.4.417 -h xx -p 389 -b "dc=example,dc=com" -D "cn=administrator,cn=users,dc=example,dc=com" -w xx "&(isDeleted=TRUE)(uSNChanged>=528433)"
+        if (conn.supportsControl(DELETE_CTRL)) {
             try {
-                search.execute(new LdapSearchResultsHandler() {
-                    public boolean handle(String baseDN, SearchResult result) throws NamingException {
-                        Attributes attrs = result.getAttributes();
-                        Uid uid = conn.getSchemaMapping().createUid(conn.getConfiguration().getUidAttribute(), attrs);
-                        // build the object first
-                        ConnectorObjectBuilder cob = new ConnectorObjectBuilder();
-                        cob.setUid(uid);
-                        if (ObjectClass.ALL.equals(oclass)){
-                            cob.setObjectClass(guessObjectClass(conn, attrs.get(OBJECTCLASS_ATTR)));
-                        } else {
-                            cob.setObjectClass(oclass);
-                        }
-                        cob.setName(result.getNameInNamespace());
-                        if (attrs.get(LdapConstants.MS_GUID_ATTR) != null) {
-                            cob.addAttribute(AttributeBuilder.build(LdapConstants.MS_GUID_ATTR, objectGUIDtoString(attrs.get(LdapConstants.MS_GUID_ATTR))));
-                            attrs.remove(LdapConstants.MS_GUID_ATTR);
-                        }
-                        // Make sure we remove the SID
-                        attrs.remove(OBJSID_ATTR);
-
-                        // Make sure we're not hitting AD large group issue
-                        if (ObjectClass.GROUP.equals(oclass)) {
-                            // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
-                            if (attrs.get("member;range=0-1499") != null) {
-                                // we're in the limitation
-                                Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
-                                cob.addAttribute(range);
-                                if (conn.getConfiguration().isGetGroupMemberId()) {
-                                    cob.addAttribute(buildMemberIdAttribute(conn, range));
-                                }
-                                attrs.remove("member;range=0-1499");
-                                attrs.remove("member");
-                            }
-                        }
-                        // Process Account specifics (ENABLE/PASSWORD_EXPIRED/LOCKOUT/accountExpires/pwdLastSet)
-                        if (oclass.equals(ObjectClass.ACCOUNT)) {
-                            switch (conn.getServerType()) {
-                                case MSAD_GC:
-                                case MSAD:
-                                    if (attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
-                                        String controls = attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get(0).toString();
-                                        cob.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(controls)));
-                                        cob.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(controls)));
-                                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(controls)));
-                                    }
-                                    break;
-                                case MSAD_LDS:
-                                    if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
-                                    } else if (attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
-                                    } else if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
-                                        cob.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
-                                    }
-                                    break;
-                                default:
-                            }
-                            if (attrs.get(ADLdapUtil.ACCOUNT_EXPIRES) != null) {
-                                String value = (String) attrs.get(ADLdapUtil.ACCOUNT_EXPIRES).get();
-                                if ("0".equalsIgnoreCase(value) || ADLdapUtil.ACCOUNT_NEVER_EXPIRES.equalsIgnoreCase(value)) {
-                                    // Let's set it to zero - this is equivalent: it means Never
-                                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.ACCOUNT_EXPIRES, "0"));
-                                } else {
-                                    Date date = getJavaDateFromADTime(value);
-                                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.ACCOUNT_EXPIRES, getADLdapDatefromJavaDate(date)));
-                                }
-                                attrs.remove(ADLdapUtil.ACCOUNT_EXPIRES);
-                            }
-                            if (attrs.get(ADLdapUtil.PWD_LAST_SET) != null) {
-                                String value = (String) attrs.get(ADLdapUtil.PWD_LAST_SET).get();
-                                if ("0".equalsIgnoreCase(value)) {
-                                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.PWD_LAST_SET, "0"));
-                                } else {
-                                    Date date = getJavaDateFromADTime(value);
-                                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.PWD_LAST_SET, getADLdapDatefromJavaDate(date)));
-                                }
-                                attrs.remove(ADLdapUtil.PWD_LAST_SET);
-                            }
-                        }
-
-                        // Set all Attributes
-                        NamingEnumeration<? extends javax.naming.directory.Attribute> attrsEnum = attrs.getAll();
-                        while (attrsEnum.hasMore()) {
-                            javax.naming.directory.Attribute attr = attrsEnum.next();
-                            String id = attr.getID();
-                            NamingEnumeration vals = attr.getAll();
-                            ArrayList values = new ArrayList();
-                            while (vals.hasMore()) {
-                                values.add(vals.next());
-                            }
-                            cob.addAttribute(AttributeBuilder.build(id, values));
-                            if (conn.getConfiguration().isGetGroupMemberId() && oclass.equals(ObjectClass.GROUP) && attr.getID().equalsIgnoreCase("member")) {
-                                cob.addAttribute(buildMemberIdAttribute(conn, attr));
-                            }
-                        }
-                        SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
-                        usnChanged[0] = attrs.get(USN_CHANGED_ATTR).get().toString();
-                        if (usnChanged[0].equalsIgnoreCase(attrs.get(USN_CREATED_ATTR).get().toString())){
-                            syncDeltaBuilder.setDeltaType(SyncDeltaType.CREATE);
-                        } else {
-                            syncDeltaBuilder.setDeltaType(SyncDeltaType.UPDATE);
-                        }
-                        syncDeltaBuilder.setToken(new SyncToken(usnChanged[0]));
-                        syncDeltaBuilder.setUid(uid);
-                        syncDeltaBuilder.setObject(cob.build());
+                Attributes rootAttrs = conn.getInitialContext().getAttributes("", new String[]{NAMING_CTX_ATTR});
+                String defaultContext = getStringAttrValue(rootAttrs, NAMING_CTX_ATTR);
+                if (defaultContext != null) {
+                    deletedContainer = DELETED_PREFIX + defaultContext;
+                    deletedContext = conn.getInitialContext().newInstance(new Control[]{new BasicControl(DELETE_CTRL)});
+                } else if (LdapConnection.ServerType.MSAD_LDS.equals(conn.getServerType())) {
+                    logger.error("Active Directory Lightweight Directory Services is used but defaultNamingContext has not been set - impossible to detect deleted objects");
+                }
+            } catch (NamingException e) {
+                logger.info(e.getExplanation());
+            }
+        } else {
+            logger.info("The server does not support the control to search for deleted entries");
+        }
 
-                        changes.put(Integer.parseInt(usnChanged[0]), syncDeltaBuilder.build());
-                        return true;
+        try {
+            boolean proceed = true;
+            while (proceed && from <= highestUSN) {
+                long to = Math.min(highestUSN, from + width - 1);
+                // A window of blockSize USNs is always taken as a whole.
+                int limit = width <= blockSize ? Integer.MAX_VALUE : blockSize;
+                TreeMap<Long, SyncDelta> changes = new TreeMap<Long, SyncDelta>();
+                boolean complete = searchChanges(from, to, controls, limit, changes);
+                if (complete && deletedContext != null) {
+                    try {
+                        complete = searchDeleted(deletedContext, deletedContainer, from, to, controls, limit, changes);
+                    } catch (NamingException e) {
+                        logger.info(e.getExplanation());
+                        deletedContext = closeQuietly(deletedContext);
+                    }
+                }
+                if (!complete) {
+                    // Too many changes in this window, retry with a narrower one.
+                    logger.ok("More than {0} changes between USN {1} and {2}", blockSize, from, to);
+                    width = Math.max(blockSize, width / 2);
+                    continue;
+                }
+                // Changes are now ordered in the TreeMap according to usnChanged.
+                for (Map.Entry<Long, SyncDelta> entry : changes.entrySet()) {
+                    if (!handler.handle(entry.getValue())) {
+                        proceed = false;
+                        break;
+                    }
+                    waterMark = entry.getKey().toString();
+                }
+                if (proceed) {
+                    // Nothing else to synchronize up to the end of the window
+                    waterMark = Long.toString(to);
+                    if (changes.size() < blockSize / 2 && width < Long.MAX_VALUE / 4) {
+                        width *= 2;
                     }
-                });
-            } catch (ConnectorException e) {
-                if (e.getCause() instanceof PartialResultException) {
-                    // The default naming context is used on the DC as the baseContextsToSynchronize, hence this PartialResultException.
-                    // Let's just silently catch it not to break the sync cycle. It is thrown at the end of the search anyway...
-                    logger.warn("Default naming context of the DC is used as baseContextsToSynchronize.\nPartialResultException has been caught");
-                } else {
-                    throw e;
                 }
+                from = to + 1;
             }
+        } finally {
+            closeQuietly(deletedContext);
+        }
+        // ICF 1.4 now allows us to send the Token even if no entries were actually processed
+        ((SyncTokenResultsHandler) handler).handleResult(new SyncToken(waterMark));
+    }
 
-            // Deletes
-            // ldapsearch -J 1.2.840.113556.1.4.417 -h xx -p 389 -b "dc=example,dc=com" -D "cn=administrator,cn=users,dc=example,dc=com" -w xx "&(isDeleted=TRUE)(uSNChanged>=528433)"
-            if (conn.supportsControl(DELETE_CTRL)) {
-                try {
-                    Attributes rootAttrs = conn.getInitialContext().getAttributes("", new String[]{NAMING_CTX_ATTR});
-                    String defaultContext = getStringAttrValue(rootAttrs, NAMING_CTX_ATTR);
-                    if (defaultContext != null) {
-                        LdapContext context = conn.getInitialContext().newInstance(new Control[]{new BasicControl(DELETE_CTRL)});
-                        NamingEnumeration<SearchResult> deleted = context.search(DELETED_PREFIX + defaultContext, generateUSNChangedFilter(oclass, token, true), controls);
-
-                        while (deleted.hasMore()) {
-                            SearchResult entry = deleted.next();
-                            Attributes attrs = entry.getAttributes();
-                            Uid uid = conn.getSchemaMapping().createUid(conn.getConfiguration().getUidAttribute(), attrs);
-                            usnChanged[0] = attrs.get(USN_CHANGED_ATTR).get().toString();
-
-                            SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
-                            syncDeltaBuilder.setToken(new SyncToken(usnChanged[0]));
-                            syncDeltaBuilder.setDeltaType(SyncDeltaType.DELETE);
-                            syncDeltaBuilder.setUid(uid);
-                            if (ObjectClass.ALL.equals(oclass)) {
-                                syncDeltaBuilder.setObjectClass(guessObjectClass(conn, attrs.get(OBJECTCLASS_ATTR)));
-                            } else {
-                                syncDeltaBuilder.setObjectClass(oclass);
-                            }
-                            changes.put(Integer.parseInt(usnChanged[0]), syncDeltaBuilder.build());
-                        }
-                    } else if (LdapConnection.ServerType.MSAD_LDS.equals(conn.getServerType())) {
-                        logger.error("Active Directory Lightweight Directory Services is used but defaultNamingContext has not been set - impossible to detect deleted objects");
+    /**
+     * Adds the live entries changed between the given USNs to the changes.
+     *
+     * @return false if there are more than {@code limit} changes
+     */
+    private boolean searchChanges(long from, long to, SearchControls controls, final int limit, final TreeMap<Long, SyncDelta> changes) {
+        final boolean[] complete = {true};
+        LdapInternalSearch search = new LdapInternalSearch(conn,
+                generateUSNChangedFilter(oclass, from, to, false),
+                Arrays.asList(conn.getConfiguration().getBaseContextsToSynchronize()),
+                new SimplePagedSearchStrategy(conn.getConfiguration().getBlockSize()),
+                controls);
+        try {
+            search.execute(new LdapSearchResultsHandler() {
+                public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                    if (changes.size() >= limit) {
+                        complete[0] = false;
+                        return false;
                     }
-                } catch (NamingException e) {
-                    logger.info(e.getExplanation());
+                    SyncDelta delta = createSyncDelta(result);
+                    changes.put(Long.parseLong(delta.getToken().getValue().toString()), delta);
+                    return true;
                 }
+            });
+        } catch (ConnectorException e) {
+            if (e.getCause() instanceof PartialResultException) {
+                // The default naming context is used on the DC as the baseContextsToSynchronize, hence this PartialResultException.
+                // Let's just silently catch it not to break the sync cycle. It is thrown at the end of the search anyway...
+                logger.warn("Default naming context of the DC is used as baseContextsToSynchronize.\nPartialResultException has been caught");
             } else {
-                logger.info("The server does not support the control to search for deleted entries");
+                throw e;
             }
-            // Changes are now ordered in the TreeMap according to usnChanged.
-            for (Map.Entry<Integer, SyncDelta> entry : changes.entrySet()) {
-                if (!handler.handle(entry.getValue())) {
+        }
+        return complete[0];
+    }
+
+    /**
+     * Adds the tombstones of the entries deleted between the given USNs to
+     * the changes.
+     *
+     * @return false if there are more than {@code limit} changes
+     */
+    private boolean searchDeleted(LdapContext context, String container, long from, long to, SearchControls controls, int limit, TreeMap<Long, SyncDelta> changes) throws NamingException {
+        NamingEnumeration<SearchResult> deleted = context.search(container, generateUSNChangedFilter(oclass, from, to, true), controls);
+        try {
+            while (deleted.hasMore()) {
+                if (changes.size() >= limit) {
+                    return false;
+                }
+                SearchResult entry = deleted.next();
+                Attributes attrs = entry.getAttributes();
+                Uid uid = conn.getSchemaMapping().createUid(conn.getConfiguration().getUidAttribute(), attrs);
+                String usnChanged = attrs.get(USN_CHANGED_ATTR).get().toString();
+
+                SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
+                syncDeltaBuilder.setToken(new SyncToken(usnChanged));
+                syncDeltaBuilder.setDeltaType(SyncDeltaType.DELETE);
+                syncDeltaBuilder.setUid(uid);
+                if (ObjectClass.ALL.equals(oclass)) {
+                    syncDeltaBuilder.setObjectClass(guessObjectClass(conn, attrs.get(OBJECTCLASS_ATTR)));
+                } else {
+                    syncDeltaBuilder.setObjectClass(oclass);
+                }
+                changes.put(Long.parseLong(usnChanged), syncDeltaBuilder.build());
+            }
+        } finally {
+            deleted.close();
+        }
+        return true;
+    }
+
+    private SyncDelta createSyncDelta(SearchResult result) throws NamingException {
+        Attributes attrs = result.getAttributes();
+        Uid uid = conn.getSchemaMapping().createUid(conn.getConfiguration().getUidAttribute(), attrs);
+        // build the object first
+        ConnectorObjectBuilder cob = new ConnectorObjectBuilder();
+        cob.setUid(uid);
+        if (ObjectClass.ALL.equals(oclass)){
+            cob.setObjectClass(guessObjectClass(conn, attrs.get(OBJECTCLASS_ATTR)));
+        } else {
+            cob.setObjectClass(oclass);
+        }
+        cob.setName(result.getNameInNamespace());
+        if (attrs.get(LdapConstants.MS_GUID_ATTR) != null) {
+            cob.addAttribute(AttributeBuilder.build(LdapConstants.MS_GUID_ATTR, objectGUIDtoString(attrs.get(LdapConstants.MS_GUID_ATTR))));
+            attrs.remove(LdapConstants.MS_GUID_ATTR);
+        }
+        // Make sure we remove the SID
+        attrs.remove(OBJSID_ATTR);
+
+        // Make sure we're not hitting AD large group issue
+        if (ObjectClass.GROUP.equals(oclass)) {
+            // see: http://msdn.microsoft.com/en-us/library/ms817827.aspx
+            if (attrs.get("member;range=0-1499") != null) {
+                // we're in the limitation
+                Attribute range = AttributeBuilder.build("member", fetchGroupMembersByRange(conn, result));
+                cob.addAttribute(range);
+                if (conn.getConfiguration().isGetGroupMemberId()) {
+                    cob.addAttribute(buildMemberIdAttribute(conn, range));
+                }
+                attrs.remove("member;range=0-1499");
+                attrs.remove("member");
+            }
+        }
+        // Process Account specifics (ENABLE/PASSWORD_EXPIRED/LOCKOUT/accountExpires/pwdLastSet)
+        if (oclass.equals(ObjectClass.ACCOUNT)) {
+            switch (conn.getServerType()) {
+                case MSAD_GC:
+                case MSAD:
+                    if (attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR) != null) {
+                        String controls = attrs.get(ADUserAccountControl.MS_USR_ACCT_CTRL_ATTR).get(0).toString();
+                        cob.addAttribute(AttributeBuilder.buildEnabled(!ADUserAccountControl.isAccountDisabled(controls)));
+                        cob.addAttribute(AttributeBuilder.buildLockOut(ADUserAccountControl.isAccountLockOut(controls)));
+                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(ADUserAccountControl.isPasswordExpired(controls)));
+                    }
+                    break;
+                case MSAD_LDS:
+                    if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED) != null) {
+                        cob.addAttribute(AttributeBuilder.buildEnabled(!Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_DISABLED).get().toString())));
+                    } else if (attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED) != null) {
+                        cob.addAttribute(AttributeBuilder.buildPasswordExpired(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_PASSWORD_EXPIRED).get().toString())));
+                    } else if (attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED) != null) {
+                        cob.addAttribute(AttributeBuilder.buildLockOut(Boolean.parseBoolean(attrs.get(LdapConstants.MS_DS_USER_ACCOUNT_AUTOLOCKED).get().toString())));
+                    }
                     break;
+                default:
+            }
+            if (attrs.get(ADLdapUtil.ACCOUNT_EXPIRES) != null) {
+                String value = (String) attrs.get(ADLdapUtil.ACCOUNT_EXPIRES).get();
+                if ("0".equalsIgnoreCase(value) || ADLdapUtil.ACCOUNT_NEVER_EXPIRES.equalsIgnoreCase(value)) {
+                    // Let's set it to zero - this is equivalent: it means Never
+                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.ACCOUNT_EXPIRES, "0"));
                 } else {
-                    waterMark = entry.getKey().toString();
+                    Date date = getJavaDateFromADTime(value);
+                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.ACCOUNT_EXPIRES, getADLdapDatefromJavaDate(date)));
                 }
+                attrs.remove(ADLdapUtil.ACCOUNT_EXPIRES);
             }
-            // ICF 1.4 now allows us to send the Token even if no entries were actually processed
-            ((SyncTokenResultsHandler)handler).handleResult(new SyncToken(waterMark));
+            if (attrs.get(ADLdapUtil.PWD_LAST_SET) != null) {
+                String value = (String) attrs.get(ADLdapUtil.PWD_LAST_SET).get();
+                if ("0".equalsIgnoreCase(value)) {
+                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.PWD_LAST_SET, "0"));
+                } else {
+                    Date date = getJavaDateFromADTime(value);
+                    cob.addAttribute(AttributeBuilder.build(ADLdapUtil.PWD_LAST_SET, getADLdapDatefromJavaDate(date)));
+                }
+                attrs.remove(ADLdapUtil.PWD_LAST_SET);
+            }
+        }
+
+        // Set all Attributes
+        NamingEnumeration<? extends javax.naming.directory.Attribute> attrsEnum = attrs.getAll();
+        while (attrsEnum.hasMore()) {
+            javax.naming.directory.Attribute attr = attrsEnum.next();
+            String id = attr.getID();
+            NamingEnumeration vals = attr.getAll();
+            ArrayList values = new ArrayList();
+            while (vals.hasMore()) {
+                values.add(vals.next());
+            }
+            cob.addAttribute(AttributeBuilder.build(id, values));
+            if (conn.getConfiguration().isGetGroupMemberId() && oclass.equals(ObjectClass.GROUP) && attr.getID().equalsIgnoreCase("member")) {
+                cob.addAttribute(buildMemberIdAttribute(conn, attr));
+            }
+        }
+        SyncDeltaBuilder syncDeltaBuilder = new SyncDeltaBuilder();
+        String usnChanged = attrs.get(USN_CHANGED_ATTR).get().toString();
+        if (usnChanged.equalsIgnoreCase(attrs.get(USN_CREATED_ATTR).get().toString())){
+            syncDeltaBuilder.setDeltaType(SyncDeltaType.CREATE);
+        } else {
+            syncDeltaBuilder.setDeltaType(SyncDeltaType.UPDATE);
         }
+        syncDeltaBuilder.setToken(new SyncToken(usnChanged));
+        syncDeltaBuilder.setUid(uid);
+        syncDeltaBuilder.setObject(cob.build());
+        return syncDeltaBuilder.build();
+    }
+
+    private static LdapContext closeQuietly(LdapContext context) {
+        if (context != null) {
+            try {
+                context.close();
+            } catch (NamingException e) {
+                logger.ok(e, "Failed to close the context");
+            }
+        }
+        return null;
     }
 
     private String gethighestCommittedUSN() {
@@ -315,15 +415,13 @@ public class ActiveDirectoryChangeLogSyncStrategy implements LdapSyncStrategy {
         return hcUSN;
     }
     
-    private String generateUSNChangedFilter(ObjectClass oc, SyncToken token, boolean isDeleted) {
+    private String generateUSNChangedFilter(ObjectClass oc, long from, long to, boolean isDeleted) {
         StringBuilder filter = new StringBuilder();
 
-        if (token == null) {
-            token = this.getLatestSyncToken();
-        }
-
         filter.append("(uSNChanged>=");
-        filter.append(Integer.parseInt(token.getValue().toString()) + 1);
+        filter.append(from);
+        filter.append(")(uSNChanged<=");
+        filter.append(to);
         filter.append(")");
 
         if (isDeleted) {
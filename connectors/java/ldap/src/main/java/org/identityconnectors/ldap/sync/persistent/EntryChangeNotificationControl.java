@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.ldap.sync.persistent;
+
+import com.sun.jndi.ldap.Ber;
+import com.sun.jndi.ldap.BerDecoder;
+import java.io.IOException;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+
+/**
+ * The entry change notification control the server attaches to the entries
+ * returned by a persistent search.
+ */
+public class EntryChangeNotificationControl extends BasicControl {
+
+    public static final String OID = "2.16.840.1.113730.3.4.7";
+
+    private static final long serialVersionUID = 1L;
+
+    private int changeType;
+    private String previousDN;
+
+    public EntryChangeNotificationControl(String id, boolean criticality, byte[] value) throws IOException {
+        super(id, criticality, value);
+        if ((value != null) && (value.length > 0)) {
+            BerDecoder decoder = new BerDecoder(value, 0, value.length);
+            decoder.parseSeq(null);
+            changeType = decoder.parseEnumeration();
+            if (decoder.bytesLeft() > 0 && decoder.peekByte() == Ber.ASN_OCTET_STR) {
+                previousDN = decoder.parseString(true);
+            }
+            // The optional change number is not used.
+        }
+    }
+
+    /**
+     * Returns the entry change notification control among the given
+     * controls, or {@code null}.
+     */
+    public static EntryChangeNotificationControl find(Control[] controls) throws IOException {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof EntryChangeNotificationControl) {
+                    return (EntryChangeNotificationControl) control;
+                }
+                if (OID.equals(control.getID())) {
+                    return new EntryChangeNotificationControl(control.getID(), control.isCritical(), control.getEncodedValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the type of the change, one of the constants of
+     * {@link PersistentSearchControl}.
+     */
+    public int getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * Returns the DN of a renamed entry before the rename, or {@code null}.
+     */
+    public String getPreviousDN() {
+        return previousDN;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.ldap.sync.persistent;
+
+import static org.identityconnectors.ldap.LdapUtil.escapeDNValueOfJNDIReservedChars;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.HasControls;
+import javax.naming.ldap.LdapContext;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.ldap.LdapConnection;
+
+/**
+ * A persistent search kept open on each of the base contexts to synchronize.
+ * <p>
+ * A daemon thread per base context reads the changes as the server sends
+ * them and appends them to a bounded buffer, numbered in the order they
+ * arrived. The buffer is drained by {@link PersistentSearchSyncStrategy} and
+ * the changes are removed once a later sync acknowledges them. When the
+ * buffer overflows or a search ends, the stream becomes invalid and the
+ * changes since {@link #getBaseToken()} must be read by the fallback strategy.
+ * <p>
+ * The open searches are registered by their id, so a sync token can be
+ * resumed by any connector instance of the same process.
+ */
+public class PersistentSearch {
+
+    private static final Log logger = Log.getLog(PersistentSearch.class);
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private static final ConcurrentMap<String, PersistentSearch> OPEN = new ConcurrentHashMap<String, PersistentSearch>();
+
+    /**
+     * A change read from the stream.
+     */
+    public static final class Change {
+
+        private final long sequence;
+        private final String baseDN;
+        private final SearchResult result;
+        private final int changeType;
+        private final String previousDN;
+
+        private Change(long sequence, String baseDN, SearchResult result, int changeType, String previousDN) {
+            this.sequence = sequence;
+            this.baseDN = baseDN;
+            this.result = result;
+            this.changeType = changeType;
+            this.previousDN = previousDN;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getBaseDN() {
+            return baseDN;
+        }
+
+        public SearchResult getResult() {
+            return result;
+        }
+
+        /**
+         * Returns the type of the change as defined in
+         * {@link PersistentSearchControl}, or 0 if the server did not send an
+         * entry change notification.
+         */
+        public int getChangeType() {
+            return changeType;
+        }
+
+        /**
+         * Returns the DN the entry had before it was renamed, or null.
+         */
+        public String getPreviousDN() {
+            return previousDN;
+        }
+    }
+
+    private final String id;
+    private final ObjectClass oclass;
+    private final SyncToken baseToken;
+    private final int capacity;
+    private final LinkedList<Change> changes = new LinkedList<Change>();
+    private final List<LdapContext> contexts = new ArrayList<LdapContext>();
+    private final List<NamingEnumeration<SearchResult>> searches = new ArrayList<NamingEnumeration<SearchResult>>();
+    private long lastSequence = 0;
+    private long acknowledged = 0;
+    private boolean valid = true;
+    private boolean closed = false;
+
+    /**
+     * Opens the persistent searches.
+     *
+     * @param baseToken the token of the fallback strategy read before the
+     *        searches are started.
+     */
+    public PersistentSearch(LdapConnection conn, ObjectClass oclass, List<String> baseDNs, String filter,
+            String[] attrsToGet, int capacity, SyncToken baseToken) {
+        this.id = Long.toString(System.currentTimeMillis(), 36) + COUNTER.incrementAndGet();
+        this.oclass = oclass;
+        this.baseToken = baseToken;
+        this.capacity = capacity;
+
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(attrsToGet);
+        try {
+            for (String baseDN : baseDNs) {
+                LdapContext ctx = conn.getInitialContext().newInstance(
+                        new Control[]{new PersistentSearchControl(PersistentSearchControl.ANY)});
+                synchronized (this) {
+                    contexts.add(ctx);
+                }
+                // A search with changesOnly gets no reply until the first
+                // change, so it must not wait for one; the reader does.
+                ctx.addToEnvironment("com.sun.jndi.ldap.search.waitForReply", "false");
+                NamingEnumeration<SearchResult> results =
+                        ctx.search(escapeDNValueOfJNDIReservedChars(baseDN), filter, controls);
+                synchronized (this) {
+                    searches.add(results);
+                }
+                Thread reader = new Thread(new Reader(baseDN, results), "LdapPersistentSearch-" + id + "-" + baseDN);
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (NamingException e) {
+            close();
+            throw new ConnectorException(e);
+        } catch (IOException e) {
+            close();
+            throw new ConnectorException(e);
+        }
+        OPEN.put(id, this);
+        logger.ok("Persistent search {0} started on {1}", id, baseDNs);
+    }
+
+    /**
+     * Returns the open persistent search with the given id, or null if it was
+     * closed in the meantime.
+     */
+    public static PersistentSearch forId(String id) {
+        return OPEN.get(id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ObjectClass getObjectClass() {
+        return oclass;
+    }
+
+    public SyncToken getBaseToken() {
+        return baseToken;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Returns true if all the changes after the given sequence number are
+     * still available.
+     */
+    public synchronized boolean isValid(long sequence) {
+        return valid && sequence >= acknowledged && sequence <= lastSequence;
+    }
+
+    /**
+     * Removes the changes up to the given sequence number and returns the
+     * ones after it.
+     */
+    public synchronized List<Change> acknowledge(long sequence) {
+        while (!changes.isEmpty() && changes.getFirst().sequence <= sequence) {
+            changes.removeFirst();
+        }
+        acknowledged = Math.max(acknowledged, sequence);
+        return new ArrayList<Change>(changes);
+    }
+
+    public void close() {
+        OPEN.remove(id);
+        List<NamingEnumeration<SearchResult>> openSearches;
+        List<LdapContext> openContexts;
+        synchronized (this) {
+            closed = true;
+            valid = false;
+            changes.clear();
+            openSearches = new ArrayList<NamingEnumeration<SearchResult>>(searches);
+            openContexts = new ArrayList<LdapContext>(contexts);
+            searches.clear();
+            contexts.clear();
+        }
+        // Abandoning the searches wakes up the readers.
+        for (NamingEnumeration<SearchResult> search : openSearches) {
+            try {
+                search.close();
+            } catch (NamingException e) {
+                logger.ok(e, "Failed to abandon the persistent search");
+            }
+        }
+        for (LdapContext ctx : openContexts) {
+            try {
+                ctx.close();
+            } catch (NamingException e) {
+                logger.ok(e, "Failed to close the persistent search context");
+            }
+        }
+    }
+
+    private synchronized boolean add(String baseDN, SearchResult result, int changeType, String previousDN) {
+        if (!valid) {
+            return false;
+        }
+        if (changes.size() >= capacity) {
+            logger.warn("Persistent search {0} dropped after more than {1} changes were buffered", id, capacity);
+            invalidate();
+            return false;
+        }
+        changes.add(new Change(++lastSequence, baseDN, result, changeType, previousDN));
+        return true;
+    }
+
+    private synchronized void invalidate() {
+        valid = false;
+        changes.clear();
+    }
+
+    private class Reader implements Runnable {
+
+        private final String baseDN;
+        private final NamingEnumeration<SearchResult> results;
+
+        private Reader(String baseDN, NamingEnumeration<SearchResult> results) {
+            this.baseDN = baseDN;
+            this.results = results;
+        }
+
+        public void run() {
+            try {
+                while (results.hasMore()) {
+                    SearchResult result = results.next();
+                    int changeType = 0;
+                    String previousDN = null;
+                    if (result instanceof HasControls) {
+                        EntryChangeNotificationControl ecn =
+                                EntryChangeNotificationControl.find(((HasControls) result).getControls());
+                        if (ecn != null) {
+                            changeType = ecn.getChangeType();
+                            previousDN = ecn.getPreviousDN();
+                        }
+                    }
+                    if (!add(baseDN, result, changeType, previousDN)) {
+                        break;
+                    }
+                }
+                logger.info("Persistent search {0} on {1} ended", id, baseDN);
+            } catch (NamingException e) {
+                logDisconnect(e);
+            } catch (IOException e) {
+                logDisconnect(e);
+            } finally {
+                // Any gap in the stream must be covered by the fallback.
+                invalidate();
+            }
+        }
+
+        private void logDisconnect(Exception e) {
+            synchronized (PersistentSearch.this) {
+                if (closed) {
+                    return;
+                }
+            }
+            logger.warn(e, "Persistent search {0} on {1} failed", id, baseDN);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.ldap.sync.persistent;
+
+import com.sun.jndi.ldap.Ber;
+import com.sun.jndi.ldap.BerEncoder;
+import java.io.IOException;
+import javax.naming.ldap.BasicControl;
+
+/**
+ * The persistent search request control, see
+ * draft-ietf-ldapext-psearch-03.
+ */
+public class PersistentSearchControl extends BasicControl {
+
+    public static final String OID = "2.16.840.1.113730.3.4.3";
+
+    public static final int ADD = 1;
+    public static final int DELETE = 2;
+    public static final int MODIFY = 4;
+    public static final int MODDN = 8;
+    public static final int ANY = ADD | DELETE | MODIFY | MODDN;
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a control which asks for the changes only, each entry returned
+     * with an entry change notification control.
+     */
+    public PersistentSearchControl(int changeTypes) throws IOException {
+        super(OID, true, null);
+        final BerEncoder ber = new BerEncoder(32);
+        ber.beginSeq(Ber.ASN_SEQUENCE | Ber.ASN_CONSTRUCTOR);
+        ber.encodeInt(changeTypes);
+        // changesOnly
+        ber.encodeBoolean(true);
+        // returnECs
+        ber.encodeBoolean(true);
+        ber.endSeq();
+        super.value = ber.getTrimmedBuf();
+    }
+}
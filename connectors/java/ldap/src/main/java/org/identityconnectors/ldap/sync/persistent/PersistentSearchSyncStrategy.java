@@ -0,0 +1,341 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.ldap.sync.persistent;
+
+import static org.identityconnectors.common.CollectionUtil.newSet;
+import static org.identityconnectors.ldap.LdapConstants.OBJECTCLASS_ATTR;
+import static org.identityconnectors.ldap.LdapUtil.getObjectClassFilter;
+import static org.identityconnectors.ldap.LdapUtil.guessObjectClass;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
+import org.identityconnectors.ldap.LdapConfiguration;
+import org.identityconnectors.ldap.LdapConnection;
+import org.identityconnectors.ldap.LdapEntry;
+import org.identityconnectors.ldap.search.LdapFilter;
+import org.identityconnectors.ldap.search.LdapSearch;
+import org.identityconnectors.ldap.search.LdapSearches;
+import org.identityconnectors.ldap.sync.LdapSyncStrategy;
+
+/**
+ * Returns the changes buffered by a {@link PersistentSearch} and falls back
+ * to another strategy for the changes the search did not see.
+ * <p>
+ * The token is a string {@code psearch:<search id>:<sequence>:<token>} where
+ * the last part is the token of the fallback strategy the search started
+ * from. As long as the search which issued the token is still open and has
+ * not lost any change, a sync only drains its buffer. Otherwise a new search
+ * is opened and the fallback strategy reads the changes since the last token,
+ * so a change may be returned twice but none is lost. Tokens of the fallback
+ * strategy itself are accepted too, which lets existing sync jobs switch to
+ * this strategy.
+ * <p>
+ * Servers without the persistent search control are synchronized by the
+ * fallback strategy alone, with its own tokens.
+ */
+public class PersistentSearchSyncStrategy implements LdapSyncStrategy {
+
+    private static final Log logger = Log.getLog(PersistentSearchSyncStrategy.class);
+
+    private static final String PREFIX = "psearch:";
+
+    private final LdapConnection conn;
+    private final ObjectClass oclass;
+    private final LdapSyncStrategy fallback;
+
+    public PersistentSearchSyncStrategy(LdapConnection conn, ObjectClass oclass, LdapSyncStrategy fallback) {
+        this.conn = conn;
+        this.oclass = oclass;
+        this.fallback = fallback;
+    }
+
+    public SyncToken getLatestSyncToken() {
+        if (!isSupported()) {
+            return fallback.getLatestSyncToken();
+        }
+        PersistentSearch search = conn.getPersistentSearch(oclass);
+        if (search != null) {
+            long sequence = search.getLastSequence();
+            if (search.isValid(sequence)) {
+                return createToken(search, sequence, search.getBaseToken());
+            }
+        }
+        // Only a sync opens a search, a token which is never used must not
+        // leave one running. The first sync from this token starts it.
+        return createToken(null, 0, fallback.getLatestSyncToken());
+    }
+
+    public void sync(SyncToken token, SyncResultsHandler handler, OperationOptions options) {
+        if (!isSupported()) {
+            fallback.sync(token, handler, options);
+            return;
+        }
+        String searchId = null;
+        long sequence = 0;
+        SyncToken fallbackToken = token;
+        if (token != null && token.getValue() instanceof String && ((String) token.getValue()).startsWith(PREFIX)) {
+            // psearch:<id>:<sequence>:<fallback token>
+            String[] parts = ((String) token.getValue()).substring(PREFIX.length()).split(":", 3);
+            if (parts.length != 3) {
+                throw new ConnectorException("Invalid sync token: " + token.getValue());
+            }
+            searchId = parts[0];
+            sequence = Long.parseLong(parts[1]);
+            fallbackToken = decodeToken(parts[2]);
+        }
+
+        PersistentSearch search = searchId != null ? PersistentSearch.forId(searchId) : null;
+        if (search != null && oclass.equals(search.getObjectClass()) && search.isValid(sequence)) {
+            syncFromSearch(search, sequence, handler, options);
+        } else {
+            if (searchId != null) {
+                logger.info("Persistent search {0} is not available, falling back", searchId);
+            }
+            syncFromFallback(fallbackToken, handler, options);
+        }
+    }
+
+    private void syncFromSearch(PersistentSearch search, long sequence, SyncResultsHandler handler,
+            OperationOptions options) {
+        List<PersistentSearch.Change> changes = search.acknowledge(sequence);
+        logger.ok("Returning {0} changes of persistent search {1}", changes.size(), search.getId());
+        long last = sequence;
+        for (PersistentSearch.Change change : changes) {
+            if (change.getChangeType() == PersistentSearchControl.MODDN && change.getPreviousDN() != null
+                    && isUidDN()) {
+                // The Uid is renamed with the entry, the old one is gone. The
+                // token stays before the change until the new Uid is returned.
+                SyncToken token = createToken(search, change.getSequence() - 1, search.getBaseToken());
+                if (!handler.handle(createDeleteDelta(change, new Uid(change.getPreviousDN()), token))) {
+                    return;
+                }
+            }
+            SyncToken token = createToken(search, change.getSequence(), search.getBaseToken());
+            SyncDelta delta = createSyncDelta(change, token, options);
+            if (delta != null && !handler.handle(delta)) {
+                return;
+            }
+            last = change.getSequence();
+        }
+        ((SyncTokenResultsHandler) handler).handleResult(createToken(search, last, search.getBaseToken()));
+    }
+
+    private void syncFromFallback(SyncToken token, final SyncResultsHandler handler, OperationOptions options) {
+        // The new search must be open before the fallback reads the changes,
+        // the changes in between are then returned by both.
+        final PersistentSearch search = open();
+        final boolean[] stopped = { false };
+        final SyncToken[] lastToken = { token };
+        fallback.sync(token, new SyncTokenResultsHandler() {
+            public boolean handle(SyncDelta delta) {
+                lastToken[0] = delta.getToken();
+                SyncDeltaBuilder builder = new SyncDeltaBuilder(delta);
+                builder.setToken(createToken(null, 0, delta.getToken()));
+                if (!handler.handle(builder.build())) {
+                    stopped[0] = true;
+                    return false;
+                }
+                return true;
+            }
+
+            public void handleResult(SyncToken result) {
+                lastToken[0] = result;
+            }
+        }, options);
+        if (stopped[0]) {
+            ((SyncTokenResultsHandler) handler).handleResult(createToken(null, 0, lastToken[0]));
+        } else {
+            ((SyncTokenResultsHandler) handler).handleResult(createToken(search, 0, search.getBaseToken()));
+        }
+    }
+
+    /**
+     * Opens a new persistent search in place of the current one.
+     */
+    private PersistentSearch open() {
+        LdapConfiguration config = conn.getConfiguration();
+        PersistentSearch old = conn.getPersistentSearch(oclass);
+        if (old != null) {
+            old.close();
+        }
+        String uidAttr = conn.getSchemaMapping().getLdapUidAttribute(oclass);
+        String[] attrsToGet = LdapEntry.isDNAttribute(uidAttr)
+                ? new String[] { OBJECTCLASS_ATTR }
+                : new String[] { uidAttr, OBJECTCLASS_ATTR };
+        PersistentSearch search = new PersistentSearch(conn, oclass,
+                Arrays.asList(config.getBaseContextsToSynchronize()), generateFilter(), attrsToGet,
+                config.getPersistentSearchQueueSize(), fallback.getLatestSyncToken());
+        conn.setPersistentSearch(oclass, search);
+        return search;
+    }
+
+    private SyncDelta createSyncDelta(PersistentSearch.Change change, SyncToken token, OperationOptions options) {
+        SearchResult result = change.getResult();
+        String entryDN = result.getNameInNamespace();
+        try {
+            Attributes attrs = result.getAttributes();
+            if (change.getChangeType() == PersistentSearchControl.DELETE) {
+                return createDeleteDelta(change, isUidDN()
+                        ? new Uid(entryDN)
+                        : conn.getSchemaMapping().createUid(conn.getSchemaMapping().getLdapUidAttribute(oclass), attrs),
+                        token);
+            }
+            ObjectClass entryClass = getEntryClass(change);
+
+            SyncDeltaBuilder builder = new SyncDeltaBuilder();
+            builder.setToken(token);
+
+            // The search only returns the identifiers, the entry is read again
+            // with the attributes asked for.
+            Set<String> attrsToGet = options.getAttributesToGet() != null
+                    ? newSet(options.getAttributesToGet())
+                    : LdapSearch.getAttributesReturnedByDefault(conn, entryClass);
+            ConnectorObject object = LdapSearches.findObject(conn, entryClass,
+                    LdapFilter.forEntryDN(entryDN).withNativeFilter(getSynchronizationFilter()),
+                    attrsToGet.toArray(new String[attrsToGet.size()]));
+            if (object == null) {
+                logger.ok("Skipping {0} because the entry is missing or not matching the search filter", entryDN);
+                return null;
+            }
+            builder.setDeltaType(change.getChangeType() == PersistentSearchControl.ADD
+                    ? SyncDeltaType.CREATE
+                    : SyncDeltaType.CREATE_OR_UPDATE);
+            builder.setObject(object);
+            return builder.build();
+        } catch (NamingException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    private SyncDelta createDeleteDelta(PersistentSearch.Change change, Uid uid, SyncToken token) {
+        SyncDeltaBuilder builder = new SyncDeltaBuilder();
+        builder.setToken(token);
+        builder.setDeltaType(SyncDeltaType.DELETE);
+        builder.setObjectClass(getEntryClass(change));
+        builder.setUid(uid);
+        return builder.build();
+    }
+
+    private ObjectClass getEntryClass(PersistentSearch.Change change) {
+        return ObjectClass.ALL.equals(oclass)
+                ? guessObjectClass(conn, change.getResult().getAttributes().get(OBJECTCLASS_ATTR))
+                : oclass;
+    }
+
+    private boolean isUidDN() {
+        return LdapEntry.isDNAttribute(conn.getSchemaMapping().getLdapUidAttribute(oclass));
+    }
+
+    private String generateFilter() {
+        LdapConfiguration config = conn.getConfiguration();
+        StringBuilder filter = new StringBuilder();
+        if (ObjectClass.ACCOUNT.equals(oclass)) {
+            filter.append(getObjectClassFilter(config.getAccountObjectClasses()));
+        } else if (ObjectClass.GROUP.equals(oclass)) {
+            filter.append(getObjectClassFilter(config.getGroupObjectClasses()));
+        } else if (ObjectClass.ALL.equals(oclass)) {
+            filter.append(getObjectClassFilter(config.getObjectClassesToSynchronize()));
+        } else {
+            filter.append("(objectClass=");
+            filter.append(oclass.getObjectClassValue());
+            filter.append(")");
+        }
+        // The synchronization filter is only applied when the entry is read
+        // again, an entry modified so that it no longer matches must not be
+        // missed by the search.
+        return filter.toString();
+    }
+
+    private String getSynchronizationFilter() {
+        if (ObjectClass.ACCOUNT.equals(oclass)) {
+            return conn.getConfiguration().getAccountSynchronizationFilter();
+        } else if (ObjectClass.GROUP.equals(oclass)) {
+            return conn.getConfiguration().getGroupSynchronizationFilter();
+        }
+        return null;
+    }
+
+    private boolean isSupported() {
+        return conn.supportsControl(PersistentSearchControl.OID);
+    }
+
+    private static SyncToken createToken(PersistentSearch search, long sequence, SyncToken fallbackToken) {
+        StringBuilder value = new StringBuilder(PREFIX);
+        if (search != null) {
+            value.append(search.getId());
+        }
+        value.append(':').append(sequence).append(':').append(encodeToken(fallbackToken));
+        return new SyncToken(value.toString());
+    }
+
+    /**
+     * Encodes the fallback token with its type, the strategies expect the
+     * value they issued.
+     */
+    private static String encodeToken(SyncToken token) {
+        if (token == null || token.getValue() == null) {
+            return "";
+        }
+        Object value = token.getValue();
+        if (value instanceof Integer) {
+            return "I" + value;
+        } else if (value instanceof Long) {
+            return "L" + value;
+        }
+        return "S" + value;
+    }
+
+    private static SyncToken decodeToken(String encoded) {
+        if (encoded.length() == 0) {
+            return null;
+        }
+        String value = encoded.substring(1);
+        switch (encoded.charAt(0)) {
+            case 'I':
+                return new SyncToken(Integer.valueOf(value));
+            case 'L':
+                return new SyncToken(Long.valueOf(value));
+            case 'S':
+                return new SyncToken(value);
+            default:
+                throw new ConnectorException("Invalid sync token: " + encoded);
+        }
+    }
+}
@@ -31,6 +31,7 @@ import static org.identityconnectors.common.CollectionUtil.newSet;
 import static org.identityconnectors.common.CollectionUtil.nullAsEmpty;
 import static org.identityconnectors.common.StringUtil.isBlank;
 import static org.identityconnectors.ldap.LdapUtil.checkedListByFilter;
+import static org.identityconnectors.ldap.LdapUtil.escapeAttrValue;
 import static org.identityconnectors.ldap.LdapUtil.getStringAttrValue;
 import static org.identityconnectors.ldap.LdapUtil.isUnderContexts;
 import static org.identityconnectors.ldap.LdapUtil.nullAsEmpty;
@@ -39,10 +40,12 @@ import static org.identityconnectors.ldap.LdapUtil.quietCreateLdapName;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.naming.InvalidNameException;
 import javax.naming.NamingException;
@@ -50,8 +53,10 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
 
 import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.Pair;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.GuardedByteArray.Accessor;
@@ -62,7 +67,9 @@ import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
 import org.identityconnectors.framework.common.objects.SyncDeltaType;
@@ -78,6 +85,7 @@ import org.identityconnectors.ldap.search.LdapInternalSearch;
 import org.identityconnectors.ldap.search.LdapSearch;
 import org.identityconnectors.ldap.search.LdapSearches;
 import org.identityconnectors.ldap.search.LdapSearchResultsHandler;
+import org.identityconnectors.ldap.search.SimplePagedSearchStrategy;
 import org.identityconnectors.ldap.sync.LdapSyncStrategy;
 import org.identityconnectors.ldap.sync.sunds.LdifParser.ChangeSeparator;
 import org.identityconnectors.ldap.sync.sunds.LdifParser.Line;
@@ -124,11 +132,13 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
     }
 
     public void sync(SyncToken token, final SyncResultsHandler handler, final OperationOptions options) {
+        if (conn.getConfiguration().isUseChangeLogPagedSearch() && conn.supportsControl(PagedResultsControl.OID)) {
+            syncPaged(token, handler, options);
+            return;
+        }
         String context = getChangeLogAttributes().getChangeLogContext();
         final String changeNumberAttr = getChangeNumberAttribute();
-        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
-        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
-        controls.setReturningAttributes(new String[] { changeNumberAttr, "targetDN", "changeType", "changes", "newRdn", "deleteOldRdn", "newSuperior", "targetEntryUUID", "targetUniqueID", "changeInitiatorsName" });
+        SearchControls controls = createChangeLogSearchControls(changeNumberAttr);
 
         final int[] currentChangeNumber = { getStartChangeNumber(token) };
         final int[] processedChangeNumber = { -1 };
@@ -150,7 +160,7 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
                         currentChangeNumber[0] = changeNumber;
                     }
 
-                    SyncDelta delta = createSyncDelta(entry, changeNumber, options.getAttributesToGet());
+                    SyncDelta delta = createSyncDelta(entry, changeNumber, options.getAttributesToGet(), null);
                     if (delta != null) {
                         boolean handled = handler.handle(delta);
                         if (handled){
@@ -177,7 +187,207 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         }
     }
 
-    private SyncDelta createSyncDelta(LdapEntry changeLogEntry, int changeNumber, String[] attrsToGetOption) {
+    /**
+     * The number of blocks of changes kept while waiting for a missing change
+     * number during a paged change log search.
+     */
+    private static final int MAX_PENDING_BLOCKS = 10;
+
+    /**
+     * Reads all the changes up to the last change number with a single paged
+     * search. The server does not return the changes in order, so they are
+     * only processed once all the change numbers before them have been read.
+     * A change number which is still missing after
+     * {@link #MAX_PENDING_BLOCKS} blocks is assumed to have been trimmed from
+     * the change log. The changes are processed by blocks of
+     * {@code changeLogBlockSize} entries and the entries they modified are
+     * read with one search per block.
+     */
+    private void syncPaged(SyncToken token, final SyncResultsHandler handler, final OperationOptions options) {
+        String context = getChangeLogAttributes().getChangeLogContext();
+        final String changeNumberAttr = getChangeNumberAttribute();
+        final int blockSize = conn.getConfiguration().getChangeLogBlockSize();
+        int startChangeNumber = getStartChangeNumber(token);
+        int lastChangeNumber = getChangeLogAttributes().getLastChangeNumber();
+        if (startChangeNumber > lastChangeNumber) {
+            log.ok("No change after change number {0}", lastChangeNumber);
+            return;
+        }
+
+        String filter = getChangeLogRangeFilter(changeNumberAttr, startChangeNumber, lastChangeNumber);
+        LdapInternalSearch search = new LdapInternalSearch(conn, filter, singletonList(context),
+                new SimplePagedSearchStrategy(blockSize), createChangeLogSearchControls(changeNumberAttr));
+
+        final TreeMap<Integer, LdapEntry> pending = new TreeMap<Integer, LdapEntry>();
+        final int maxPending = blockSize * MAX_PENDING_BLOCKS;
+        final int[] nextChangeNumber = { Math.max(startChangeNumber, getChangeLogAttributes().getFirstChangeNumber()) };
+        final List<Pair<Integer, LdapEntry>> block = new ArrayList<Pair<Integer, LdapEntry>>(blockSize);
+        final int[] processedChangeNumber = { -1 };
+        final boolean[] stopped = { false };
+        search.execute(new LdapSearchResultsHandler() {
+            public boolean handle(String baseDN, SearchResult result) throws NamingException {
+                LdapEntry entry = LdapEntry.create(baseDN, result);
+                int changeNumber = convertToInt(getStringAttrValue(entry.getAttributes(), changeNumberAttr), -1);
+                pending.put(changeNumber, entry);
+                while (!pending.isEmpty()
+                        && (pending.firstKey() <= nextChangeNumber[0] || pending.size() > maxPending)) {
+                    Map.Entry<Integer, LdapEntry> next = pending.pollFirstEntry();
+                    if (next.getKey() > nextChangeNumber[0]) {
+                        log.warn("Change number {0} not found in the change log", nextChangeNumber[0]);
+                    }
+                    nextChangeNumber[0] = Math.max(nextChangeNumber[0], next.getKey() + 1);
+                    block.add(new Pair<Integer, LdapEntry>(next.getKey(), next.getValue()));
+                    if (block.size() >= blockSize) {
+                        stopped[0] = !processBlock(block, handler, options, processedChangeNumber);
+                        block.clear();
+                        if (stopped[0]) {
+                            break;
+                        }
+                    }
+                }
+                return !stopped[0];
+            }
+        });
+        // The whole range has been read, the remaining changes are complete.
+        while (!stopped[0] && !pending.isEmpty()) {
+            Map.Entry<Integer, LdapEntry> next = pending.pollFirstEntry();
+            block.add(new Pair<Integer, LdapEntry>(next.getKey(), next.getValue()));
+            if (block.size() >= blockSize || pending.isEmpty()) {
+                stopped[0] = !processBlock(block, handler, options, processedChangeNumber);
+                block.clear();
+            }
+        }
+        if (!stopped[0] && !block.isEmpty()) {
+            processBlock(block, handler, options, processedChangeNumber);
+        }
+        if (processedChangeNumber[0] != -1) {
+            ((SyncTokenResultsHandler) handler).handleResult(new SyncToken(processedChangeNumber[0]));
+        }
+    }
+
+    /**
+     * Passes the changes of a block to the handler. The token only moves
+     * forward, even for a change which arrived after its number was assumed
+     * trimmed.
+     *
+     * @return false if the handler asked to stop.
+     */
+    private boolean processBlock(List<Pair<Integer, LdapEntry>> block, SyncResultsHandler handler,
+            OperationOptions options, int[] processedChangeNumber) {
+        Map<LdapName, ConnectorObject> targets = findTargetObjects(block, options.getAttributesToGet());
+        for (Pair<Integer, LdapEntry> change : block) {
+            SyncDelta delta = createSyncDelta(change.second, change.first, options.getAttributesToGet(), targets);
+            if (delta != null && !handler.handle(delta)) {
+                return false;
+            }
+            processedChangeNumber[0] = Math.max(processedChangeNumber[0], change.first);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the entries modified by the changes of a block with one search
+     * on their entry DN. The entries which are not found are read one by one
+     * later, for instance when the server can not search on entryDN.
+     */
+    private Map<LdapName, ConnectorObject> findTargetObjects(List<Pair<Integer, LdapEntry>> block,
+            String[] attrsToGetOption) {
+        final Map<LdapName, ConnectorObject> result = new HashMap<LdapName, ConnectorObject>();
+        StringBuilder filter = new StringBuilder();
+        int count = 0;
+        for (Pair<Integer, LdapEntry> change : block) {
+            String newTargetDN = getNewTargetDN(change.second);
+            if (newTargetDN != null) {
+                filter.append("(entryDN=");
+                escapeAttrValue(newTargetDN, filter);
+                filter.append(')');
+                count++;
+            }
+        }
+        if (count == 0) {
+            return result;
+        }
+        if (count > 1) {
+            filter.insert(0, "(|").append(')');
+        }
+        String modifiedEntryFilter = getModifiedEntrySearchFilter();
+        if (modifiedEntryFilter != null) {
+            filter.insert(0, "(&").append(modifiedEntryFilter).append(')');
+        }
+
+        Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
+        attrsToGet.add("objectClass");
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        builder.setAttributesToGet(attrsToGet);
+        List<String> baseContexts = Arrays.asList(conn.getConfiguration().getBaseContextsToSynchronize());
+        if (baseContexts.isEmpty()) {
+            baseContexts = Arrays.asList(conn.getConfiguration().getBaseContexts());
+        }
+        LdapSearch search = new LdapSearch(conn, oclass, LdapFilter.forNativeFilter(filter.toString()), null,
+                builder.build(), baseContexts.toArray(new String[baseContexts.size()]));
+        search.execute(new ResultsHandler() {
+            public boolean handle(ConnectorObject object) {
+                result.put(quietCreateLdapName(object.getName().getNameValue()), object);
+                return true;
+            }
+        });
+        log.ok("Found {0} of the {1} entries modified by the block", result.size(), count);
+        return result;
+    }
+
+    /**
+     * Returns the DN of the entry after an add, modify or modrdn change, or
+     * null if the change is skipped before the entry is read.
+     */
+    private String getNewTargetDN(LdapEntry changeLogEntry) {
+        String targetDN = getStringAttrValue(changeLogEntry.getAttributes(), "targetDN");
+        String changeType = getStringAttrValue(changeLogEntry.getAttributes(), "changeType");
+        if (targetDN == null || changeType == null || "delete".equalsIgnoreCase(changeType)) {
+            return null;
+        }
+        LdapName targetName = quietCreateLdapName(targetDN);
+        if (filterOutByBaseContexts(targetName)) {
+            return null;
+        }
+        if ("modrdn".equalsIgnoreCase(changeType)) {
+            String newRdn = getStringAttrValue(changeLogEntry.getAttributes(), "newRdn");
+            if (isBlank(newRdn)) {
+                return null;
+            }
+            String newSuperior = getStringAttrValue(changeLogEntry.getAttributes(), "newSuperior");
+            return getNewTargetDN(targetName, newSuperior, newRdn);
+        }
+        return targetDN;
+    }
+
+    private SearchControls createChangeLogSearchControls(String changeNumberAttr) {
+        SearchControls controls = LdapInternalSearch.createDefaultSearchControls();
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+        controls.setReturningAttributes(new String[] { changeNumberAttr, "targetDN", "changeType", "changes", "newRdn", "deleteOldRdn", "newSuperior", "targetEntryUUID", "targetUniqueID", "changeInitiatorsName" });
+        return controls;
+    }
+
+    /**
+     * Returns the attributes to read from the modified entries.
+     */
+    private Set<String> getAttributesToGet(String[] attrsToGetOption) {
+        // Always specify the attributes to get. This will return attributes with
+        // empty values when the attribute is not present, allowing the client to
+        // detect that the attribute has been removed.
+        Set<String> attrsToGet;
+        if (attrsToGetOption != null) {
+            attrsToGet = newSet(attrsToGetOption);
+            // Do not retrieve the password attribute from the entry (usually it is an unusable
+            // hashed value anyway). We will use the one from the change log below.
+            attrsToGet.remove(OperationalAttributes.PASSWORD_NAME);
+        } else {
+            attrsToGet = newSet(LdapSearch.getAttributesReturnedByDefault(conn, oclass));
+        }
+        return attrsToGet;
+    }
+
+    private SyncDelta createSyncDelta(LdapEntry changeLogEntry, int changeNumber, String[] attrsToGetOption,
+            Map<LdapName, ConnectorObject> targets) {
         log.ok("Attempting to create sync delta for log entry {0}", changeNumber);
 
         String targetDN = getStringAttrValue(changeLogEntry.getAttributes(), "targetDN");
@@ -265,23 +475,15 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
             newTargetDN = getNewTargetDN(targetName, newSuperior, newRdn);
         }
 
-        // Always specify the attributes to get. This will return attributes with
-        // empty values when the attribute is not present, allowing the client to
-        // detect that the attribute has been removed.
-        Set<String> attrsToGet;
-        if (attrsToGetOption != null) {
-            attrsToGet = newSet(attrsToGetOption);
-            // Do not retrieve the password attribute from the entry (usually it is an unusable
-            // hashed value anyway). We will use the one from the change log below.
-            attrsToGet.remove(OperationalAttributes.PASSWORD_NAME);
-        } else {
-            attrsToGet = newSet(LdapSearch.getAttributesReturnedByDefault(conn, oclass));
-        }
+        Set<String> attrsToGet = getAttributesToGet(attrsToGetOption);
         // If objectClass is not in the list of attributes to get, prepare to remove it later.
         boolean removeObjectClass = attrsToGet.add("objectClass");
-        LdapFilter filter = LdapFilter.forEntryDN(newTargetDN).withNativeFilter(getModifiedEntrySearchFilter());
 
-        ConnectorObject object = LdapSearches.findObject(conn, oclass, filter, attrsToGet.toArray(new String[attrsToGet.size()]));
+        ConnectorObject object = targets != null ? targets.get(quietCreateLdapName(newTargetDN)) : null;
+        if (object == null) {
+            LdapFilter filter = LdapFilter.forEntryDN(newTargetDN).withNativeFilter(getModifiedEntrySearchFilter());
+            object = LdapSearches.findObject(conn, oclass, filter, attrsToGet.toArray(new String[attrsToGet.size()]));
+        }
         if (object == null) {
             log.ok("Skipping entry because the modified entry is missing, not of the right object class, or not matching the search filter");
             return null;
@@ -525,6 +727,30 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
         }
     }
 
+    /**
+     * Returns a filter matching the change log entries between the given
+     * change numbers, inclusive.
+     */
+    private String getChangeLogRangeFilter(String changeNumberAttr, int startChangeNumber, int endChangeNumber) {
+        StringBuilder result = new StringBuilder();
+        result.append("(&");
+        if (!conn.getConfiguration().isRemoveLogEntryObjectClassFromFilter()) {
+            result.append("(objectClass=changeLogEntry)");
+        }
+        result.append("(");
+        result.append(changeNumberAttr);
+        result.append(">=");
+        result.append(startChangeNumber);
+        result.append(')');
+        result.append("(");
+        result.append(changeNumberAttr);
+        result.append("<=");
+        result.append(endChangeNumber);
+        result.append(')');
+        result.append(')');
+        return result.toString();
+    }
+
     private String getChangeLogSearchFilter(String changeNumberAttr, int startChangeNumber) {
         int blockSize = conn.getConfiguration().getChangeLogBlockSize();
         boolean filterWithOrInsteadOfAnd = conn.getConfiguration().isFilterWithOrInsteadOfAnd();
@@ -555,24 +781,7 @@ public class SunDSChangeLogSyncStrategy implements LdapSyncStrategy {
                 result.append(')');
             }
         } else {
-            result.append("(&");
-            if (filterByLogEntryOClass) {
-                result.append("(objectClass=changeLogEntry)");
-            }
-            result.append("(");
-            result.append(changeNumberAttr);
-            result.append(">=");
-            result.append(startChangeNumber);
-            result.append(')');
-
-            int endChangeNumber = startChangeNumber + blockSize -1;
-            result.append("(");
-            result.append(changeNumberAttr);
-            result.append("<=");
-            result.append(endChangeNumber);
-            result.append(')');
-
-            result.append(')');
+            result.append(getChangeLogRangeFilter(changeNumberAttr, startChangeNumber, startChangeNumber + blockSize - 1));
         }
 
         return result.toString();
@@ -23,11 +23,15 @@
 package org.identityconnectors.common.script.groovy;
 
 import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 
+import java.io.Closeable;
 import java.util.Map;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
+
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
@@ -35,7 +39,9 @@ import org.identityconnectors.common.script.ScriptExecutorFactory;
 
 /**
  * Creates a new ScriptExecutorFactory for executing Groovy scripts. Scripts are
- * compiled at the creation of a new instance of {@link ScriptExecutor}.
+ * compiled at the creation of a new instance of {@link ScriptExecutor}. Every
+ * execution runs a new instance of the compiled script class, so an executor
+ * can be executed concurrently. Closing the executor releases the script class.
  */
 public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
 
@@ -57,17 +63,28 @@ public class GroovyScriptExecutorFactory extends ScriptExecutorFactory {
         return new GroovyScriptExecutor(loader, script);
     }
 
-    private static class GroovyScriptExecutor implements ScriptExecutor {
-        private final Script groovyScript;
+    private static class GroovyScriptExecutor implements ScriptExecutor, Closeable {
+        private final GroovyClassLoader classLoader;
+        private final Class<? extends Script> scriptClass;
 
         public GroovyScriptExecutor(ClassLoader loader, String script) {
-            groovyScript = new GroovyShell(loader).parse(script);
+            GroovyShell shell = new GroovyShell(loader);
+            classLoader = shell.getClassLoader();
+            scriptClass = shell.parse(script).getClass();
         }
 
         public Object execute(Map<String, Object> arguments) throws Exception {
             Map<String, Object> args = CollectionUtil.nullAsEmpty(arguments);
-            groovyScript.setBinding(new Binding(args));
-            return groovyScript.run();
+            return InvokerHelper.createScript(scriptClass, new Binding(args)).run();
+        }
+
+        /**
+         * Drops the script class from the Groovy caches, so it can be unloaded
+         * with its classloader.
+         */
+        public void close() {
+            InvokerHelper.removeClass(scriptClass);
+            classLoader.clearCache();
         }
     }
 
@@ -26,20 +26,129 @@ package org.identityconnectors.framework.impl.api;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Locale;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 
+/**
+ * Runs a search on a producer thread and passes the results to the caller
+ * through a bounded buffer, with a timeout on each element.
+ * <p/>
+ * The producers run in a shared pool of at most {@link #getMaxThreads()}
+ * threads. When all of them are busy the search gets a thread of its own which
+ * is not kept after the search, so the timeout applies in any case.
+ */
 public class BufferedResultsProxy implements InvocationHandler {
 
     private final static Log LOG = Log.getLog(BufferedResultsProxy.class);
 
+    /**
+     * Default maximum number of producer threads.
+     */
+    public static final int DEFAULT_MAX_THREADS = 100;
+
+    /**
+     * Statistics bean
+     */
+    public static final class Statistics {
+        private final int activeThreads;
+        private final int largestPoolSize;
+        private final long completedSearches;
+        private final long overflowSearches;
+
+        private Statistics(final int activeThreads, final int largestPoolSize,
+                final long completedSearches, final long overflowSearches) {
+            this.activeThreads = activeThreads;
+            this.largestPoolSize = largestPoolSize;
+            this.completedSearches = completedSearches;
+            this.overflowSearches = overflowSearches;
+        }
+
+        /**
+         * Returns the number of producer threads running a search
+         */
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        /**
+         * Returns the largest number of producer threads at the same time
+         */
+        public int getLargestPoolSize() {
+            return largestPoolSize;
+        }
+
+        /**
+         * Returns the number of searches completed by producer threads
+         */
+        public long getCompletedSearches() {
+            return completedSearches;
+        }
+
+        /**
+         * Returns the number of searches run on a thread of their own because
+         * all pooled producer threads were busy
+         */
+        public long getOverflowSearches() {
+            return overflowSearches;
+        }
+    }
+
+    /**
+     * Pool of producer threads, threads are only kept while there is work.
+     */
+    private static final ThreadPoolExecutor THREADPOOL = new ThreadPoolExecutor(0,
+            DEFAULT_MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread =
+                            new Thread(r, "BufferedResultsProducer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final AtomicLong OVERFLOW = new AtomicLong();
+
+    /**
+     * Returns the maximum number of producer threads.
+     */
+    public static int getMaxThreads() {
+        return THREADPOOL.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets the maximum number of producer threads.
+     */
+    public static void setMaxThreads(int maxThreads) {
+        THREADPOOL.setMaximumPoolSize(maxThreads);
+    }
+
+    /**
+     * Returns the usage of the producer threads.
+     */
+    public static Statistics getStatistics() {
+        return new Statistics(THREADPOOL.getActiveCount(), THREADPOOL.getLargestPoolSize(),
+                THREADPOOL.getCompletedTaskCount(), OVERFLOW.get());
+    }
+
     private final Object target;
     private final int bufferSize;
     private final long timeoutMillis;
@@ -63,14 +172,19 @@ public class BufferedResultsProxy implements InvocationHandler {
         this.bufferSize = (bufferSize < 1) ? 100 : bufferSize;
     }
 
-    private static class BufferedResultsHandler extends Thread implements ObjectStreamHandler {
+    private static class BufferedResultsHandler implements Runnable, ObjectStreamHandler {
         private static final Object DONE = new Object();
         private final AtomicBoolean stopped = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
         private final Method method;
         private final Object target;
         private final Object[] arguments;
         private final long timeoutMillis;
         private final ArrayBlockingQueue<Object> buffer;
+        private final Locale locale;
+        private final ClassLoader contextClassLoader;
+        private volatile Thread producer = null;
+        private volatile MethodTimeoutProxy.Cancellation cancellation = null;
         private Object result = null;
 
         public BufferedResultsHandler(Method method, Object target, Object[] arguments,
@@ -80,6 +194,9 @@ public class BufferedResultsProxy implements InvocationHandler {
             this.arguments = arguments;
             buffer = new ArrayBlockingQueue<Object>(bufferSize);
             this.timeoutMillis = timeoutMillis;
+            // propagate to the pooled producer thread
+            locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+            contextClassLoader = Thread.currentThread().getContextClassLoader();
         }
 
         public boolean handle(final Object obj) {
@@ -97,15 +214,15 @@ public class BufferedResultsProxy implements InvocationHandler {
         }
 
         /**
-         * Stops the thread and optionally waits for it to finish.
+         * Stops the producer and optionally waits for it to finish.
          *
          * @param wait
-         *            True if we should wait for the thread to finish
+         *            True if we should wait for the producer to finish
          * @throws OperationTimeoutException
          *             If we said to wait and we timed out.
          */
         public void stop(boolean wait) {
-            if (wait && Thread.currentThread() == this) {
+            if (wait && Thread.currentThread() == producer) {
                 throw new IllegalStateException("A thread cannot wait on itself");
             }
 
@@ -116,21 +233,34 @@ public class BufferedResultsProxy implements InvocationHandler {
                 buffer.clear();
                 if (wait) {
                     try {
-                        // join with a time-limit. this may timeout
+                        // wait with a time-limit. this may timeout
                         // if we are blocked in the producer
-                        join(timeoutMillis);
+                        if (!finished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                            // if we're still running, we've timed out
+                            cancel();
+                            throw new OperationTimeoutException();
+                        }
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw ConnectorException.wrap(e);
                     }
-                    // if we're still alive, we've timed out
-                    if (isAlive()) {
-                        throw new OperationTimeoutException();
-                    }
+                } else {
+                    cancel();
                 }
             }
         }
 
+        /**
+         * Interrupts a producer which is still running so it does not hold
+         * its thread any longer.
+         */
+        private void cancel() {
+            MethodTimeoutProxy.Cancellation c = cancellation;
+            if (null != c) {
+                c.run();
+            }
+        }
+
         public boolean isStopped() {
             return stopped.get();
         }
@@ -150,9 +280,22 @@ public class BufferedResultsProxy implements InvocationHandler {
             return actualArguments;
         }
 
-        @Override
         public void run() {
+            Thread thread = Thread.currentThread();
+            ClassLoader savedClassLoader = thread.getContextClassLoader();
+            MethodTimeoutProxy.Cancellation c = new MethodTimeoutProxy.Cancellation();
+            MethodTimeoutProxy.Cancellation outer = c.install();
+            producer = thread;
+            cancellation = c;
             try {
+                thread.setContextClassLoader(contextClassLoader);
+                if (null != locale) {
+                    CurrentLocale.set(locale);
+                }
+                if (isStopped()) {
+                    // stopped before the pool ran us
+                    return;
+                }
                 try {
                     result = method.invoke(target, createActualArguments());
                     buffer.put(DONE);
@@ -166,7 +309,16 @@ public class BufferedResultsProxy implements InvocationHandler {
                     buffer.put(ConnectorException.wrap(e));
                 }
             } catch (InterruptedException e) {
-                LOG.error(e, null);
+                if (!isStopped()) {
+                    LOG.error(e, null);
+                }
+            } finally {
+                c.finish();
+                MethodTimeoutProxy.Cancellation.restore(outer);
+                CurrentLocale.clear();
+                thread.setContextClassLoader(savedClassLoader);
+                producer = null;
+                finished.countDown();
             }
         }
 
@@ -240,12 +392,18 @@ public class BufferedResultsProxy implements InvocationHandler {
                     "We only support operations that have a single stream handler " + method);
         }
 
-        // this guy will automatically inherit
-        // CurrentLocale since we are using a new thread
-        // NOTE: if we ever introduce thread pooling
-        // here, it needs to explicitly propagate
-        bufHandler.setDaemon(true);
-        bufHandler.start();
+        try {
+            THREADPOOL.execute(bufHandler);
+        } catch (RejectedExecutionException e) {
+            // all producers are busy, the search must still be timed out so
+            // it can't run on the calling thread
+            OVERFLOW.incrementAndGet();
+            LOG.ok("All {0} producer threads are busy, running {1} on a new thread",
+                    THREADPOOL.getMaximumPoolSize(), method.getName());
+            Thread thread = new Thread(bufHandler, "BufferedResultsProducer-overflow");
+            thread.setDaemon(true);
+            thread.start();
+        }
         while (!bufHandler.isStopped()) {
             Object obj = bufHandler.getNextObject();
             if (obj != null) {
@@ -34,6 +34,7 @@ import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorFacadeImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnectionPool;
 
 public class ConnectorFacadeFactoryImpl extends ConnectorFacadeFactory {
 
@@ -94,6 +95,7 @@ public class ConnectorFacadeFactoryImpl extends ConnectorFacadeFactory {
     @Override
     public void dispose() {
         ConnectorPoolManager.dispose();
+        RemoteFrameworkConnectionPool.getInstance().dispose();
     }
 
 }
@@ -30,6 +30,7 @@ import java.util.Map;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.ScriptExecutorFactory;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
@@ -53,6 +54,8 @@ public class ConnectorInfoManagerFactoryImpl extends ConnectorInfoManagerFactory
         synchronized (localManagerCache) {
             localManagerCache.clear();
         }
+        // the compiled scripts keep the classloaders of the bundles reachable
+        ScriptExecutorFactory.getCompiledScriptCache().clear();
     }
 
     @Override
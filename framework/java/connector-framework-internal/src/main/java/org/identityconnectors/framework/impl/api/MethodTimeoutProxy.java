@@ -22,19 +22,27 @@
  */
 package org.identityconnectors.framework.impl.api;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 
@@ -45,13 +53,149 @@ import org.identityconnectors.framework.common.exceptions.OperationTimeoutExcept
  * element by element basis. Moreover, it would be unsafe for search since the
  * thread could continue to return elements after it has timed out and we need
  * to guarantee that not happen.
+ * <p/>
+ * The method runs on a pooled thread and the caller stops waiting for it when
+ * the timeout expires. Only if the target is a proxy with a
+ * {@link CancellableHandler}, which registers the resource it blocks on with
+ * {@link #setCancellable(Closeable)}, the method runs on the calling thread. A
+ * single shared timer thread then interrupts the caller when the timeout
+ * expires and closes that resource, so that blocking I/O which ignores
+ * interruption returns as well. In both cases the result of a call which timed
+ * out is discarded and {@link OperationTimeoutException} is thrown.
  */
 public class MethodTimeoutProxy implements InvocationHandler {
 
+    private static final Log LOG = Log.getLog(MethodTimeoutProxy.class);
+
+    /**
+     * An invocation handler whose calls register the resource they block on
+     * with {@link MethodTimeoutProxy#setCancellable(Closeable)}, so they can
+     * be timed out on the calling thread.
+     */
+    public interface CancellableHandler extends InvocationHandler {
+    }
+
     /**
      * Get a pool of threads to use for operational timeouts.
      */
-    private static final ExecutorService THREADPOOL = Executors.newCachedThreadPool();
+    private static final ExecutorService THREADPOOL = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread =
+                            new Thread(r, "ConnectorOperation-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Timer shared by all timed operations.
+     */
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ConnectorOperationTimeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // don't keep the cancelled timeouts of finished calls in the queue
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The cancellation of the operation running on the current thread.
+     */
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<Cancellation>();
+
+    /**
+     * Cancels the operation started by a thread: interrupts the thread and
+     * closes the resource the operation is blocked on.
+     */
+    static final class Cancellation implements Runnable {
+        private final Thread thread = Thread.currentThread();
+        private Closeable cancellable = null;
+        private boolean finished = false;
+        private boolean cancelled = false;
+
+        public synchronized void run() {
+            if (!finished && !cancelled) {
+                cancelled = true;
+                thread.interrupt();
+                close(cancellable);
+            }
+        }
+
+        synchronized void setCancellable(Closeable cancellable) {
+            this.cancellable = cancellable;
+            if (cancelled) {
+                close(cancellable);
+            }
+        }
+
+        /**
+         * Marks the operation finished.
+         *
+         * @return true if the operation was cancelled before it finished.
+         */
+        synchronized boolean finish() {
+            finished = true;
+            if (cancelled && thread == Thread.currentThread()) {
+                // clear the interrupt sent by the cancellation
+                Thread.interrupted();
+            }
+            return cancelled;
+        }
+
+        private static void close(Closeable cancellable) {
+            if (null != cancellable) {
+                try {
+                    cancellable.close();
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to close the resource of a cancelled operation");
+                }
+            }
+        }
+
+        /**
+         * Makes this the cancellation of the current thread.
+         *
+         * @return the cancellation it replaces, to be given to
+         *         {@link #restore(Cancellation)}.
+         */
+        Cancellation install() {
+            Cancellation outer = CURRENT.get();
+            CURRENT.set(this);
+            return outer;
+        }
+
+        static void restore(Cancellation outer) {
+            if (null == outer) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Registers the resource the operation of the current thread blocks on. It
+     * is closed when the operation times out because a thread blocked on
+     * socket I/O does not react to interruption.
+     *
+     * @param cancellable
+     *            the resource or null to unregister it.
+     */
+    public static void setCancellable(Closeable cancellable) {
+        Cancellation cancellation = CURRENT.get();
+        if (null != cancellation) {
+            cancellation.setCancellable(cancellable);
+        }
+    }
 
     /**
      * The underlying operation that we are providing a timeout for
@@ -63,6 +207,11 @@ public class MethodTimeoutProxy implements InvocationHandler {
      */
     private final long timeoutMillis;
 
+    /**
+     * True if the target registers its blocking resource.
+     */
+    private final boolean cancellable;
+
     /**
      * Create a new MethodTimeoutProxy.
      *
@@ -73,6 +222,9 @@ public class MethodTimeoutProxy implements InvocationHandler {
     public MethodTimeoutProxy(Object target, long timeoutMillis) {
         this.target = target;
         this.timeoutMillis = timeoutMillis;
+        this.cancellable =
+                Proxy.isProxyClass(target.getClass())
+                        && Proxy.getInvocationHandler(target) instanceof CancellableHandler;
     }
 
     public Object invoke(final Object proxy, final Method method, final Object[] args)
@@ -83,6 +235,42 @@ public class MethodTimeoutProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
 
+        if (!cancellable) {
+            return invokeOnPooledThread(method, args);
+        }
+
+        Cancellation cancellation = new Cancellation();
+        Cancellation outer = cancellation.install();
+        ScheduledFuture<?> timeout =
+                TIMER.schedule(cancellation, timeoutMillis, TimeUnit.MILLISECONDS);
+        Object result = null;
+        Throwable failure = null;
+        boolean timedOut;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            failure = e.getCause();
+        } finally {
+            timeout.cancel(false);
+            timedOut = cancellation.finish();
+            Cancellation.restore(outer);
+        }
+        if (timedOut) {
+            throw new OperationTimeoutException("Operation " + method.getName()
+                    + " timed out after " + timeoutMillis + " ms", failure);
+        }
+        if (null != failure) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Runs the method on a pooled thread. The caller returns when the timeout
+     * expires, even if the method ignores the interruption.
+     */
+    private Object invokeOnPooledThread(final Method method, final Object[] args)
+            throws Throwable {
         final Locale locale = CurrentLocale.get();
 
         Callable<Object> callable = new Callable<Object>() {
@@ -112,15 +300,15 @@ public class MethodTimeoutProxy implements InvocationHandler {
             }
         };
 
+        FutureTask<Object> t = new FutureTask<Object>(callable);
+        THREADPOOL.execute(t);
         try {
-            // package in a future task so we can set a timeout..
-            FutureTask<Object> t = new FutureTask<Object>(callable);
-            // execute it in the thread pool so we don't waste resources.
-            THREADPOOL.execute(t);
-            // execute and hope it doesn't timeout :)
             return t.get(timeoutMillis, TimeUnit.MILLISECONDS);
         } catch (TimeoutException ex) {
-            throw new OperationTimeoutException(ex);
+            // free the pooled thread if the method reacts to interruption
+            t.cancel(true);
+            throw new OperationTimeoutException("Operation " + method.getName()
+                    + " timed out after " + timeoutMillis + " ms", ex);
         } catch (ExecutionException ex) {
             throw ex.getCause();
         }
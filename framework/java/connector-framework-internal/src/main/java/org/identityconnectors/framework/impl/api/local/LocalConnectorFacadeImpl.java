@@ -53,6 +53,7 @@ import org.identityconnectors.framework.impl.api.local.operations.ConnectorOpera
 import org.identityconnectors.framework.impl.api.local.operations.CreateImpl;
 import org.identityconnectors.framework.impl.api.local.operations.DeleteImpl;
 import org.identityconnectors.framework.impl.api.local.operations.GetImpl;
+import org.identityconnectors.framework.impl.api.local.operations.NativeGetImpl;
 import org.identityconnectors.framework.impl.api.local.operations.OperationalContext;
 import org.identityconnectors.framework.impl.api.local.operations.ResolveUsernameImpl;
 import org.identityconnectors.framework.impl.api.local.operations.SchemaImpl;
@@ -65,6 +66,7 @@ import org.identityconnectors.framework.impl.api.local.operations.ThreadClassLoa
 import org.identityconnectors.framework.impl.api.local.operations.UpdateImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ValidateImpl;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.GetOp;
 
 /**
  * Implements all the methods of the facade.
@@ -81,6 +83,11 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
     private static final Map<Class<? extends APIOperation>, Constructor<? extends ConnectorAPIOperationRunner>> API_TO_IMPL =
             new HashMap<Class<? extends APIOperation>, Constructor<? extends ConnectorAPIOperationRunner>>();
 
+    /**
+     * The implementation of {@link GetApiOp} for connectors with {@link GetOp}.
+     */
+    private static final Constructor<? extends ConnectorAPIOperationRunner> NATIVE_GET_IMPL;
+
     private static void addImplementation(final Class<? extends APIOperation> inter,
             final Class<? extends ConnectorAPIOperationRunner> impl) {
         Constructor<? extends ConnectorAPIOperationRunner> constructor;
@@ -105,6 +112,14 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
         addImplementation(ScriptOnConnectorApiOp.class, ScriptOnConnectorImpl.class);
         addImplementation(ScriptOnResourceApiOp.class, ScriptOnResourceImpl.class);
         addImplementation(SyncApiOp.class, SyncImpl.class);
+        try {
+            NATIVE_GET_IMPL =
+                    NativeGetImpl.class.getConstructor(ConnectorOperationalContext.class,
+                            Connector.class);
+        } catch (Exception e) {
+            // this should never happen..
+            throw ConnectorException.wrap(e);
+        }
     }
 
     // =======================================================================
@@ -178,6 +193,12 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
             final OperationalContext context =
                     new OperationalContext(connectorInfo, getAPIConfiguration());
             proxy = new ValidateImpl(context);
+        } else if (api == GetApiOp.class
+                && GetOp.class.isAssignableFrom(connectorInfo.getConnectorClass())) {
+            // read the objects directly..
+            final ConnectorAPIOperationRunnerProxy handler =
+                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), NATIVE_GET_IMPL);
+            proxy = newAPIOperationProxy(api, handler);
         } else if (api == GetApiOp.class) {
             final Constructor<? extends APIOperationRunner> constructor =
                     API_TO_IMPL.get(SearchApiOp.class);
@@ -22,36 +22,98 @@
  * Portions Copyrighted 2010-2013 ForgeRock AS.
  */
 
+
 package org.identityconnectors.framework.impl.api.local;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration.ValidationPolicy;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
-
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+/**
+ * Pool of connector instances.
+ * <p/>
+ * Borrowing and returning an object only touches lock-free structures unless
+ * the pool is exhausted and the caller has to wait. Idle objects are borrowed
+ * in LIFO order so the most recently used instance is reused and the ones
+ * which are not needed any more age out. Objects idle longer than
+ * {@code minEvictableIdleTimeMillis} and objects older than
+ * {@code maxLifetimeMillis} are disposed by a background evictor shared by
+ * all pools, which also refills the pool to {@code minIdle} if
+ * {@code prewarm} is enabled and tests the idle objects with the
+ * {@link ValidationPolicy#BACKGROUND} policy.
+ */
 public class ObjectPool<T> {
 
     private static final Log LOG = Log.getLog(ObjectPool.class);
 
+    /**
+     * Upper bounds in milliseconds of the buckets of
+     * {@link Statistics#getWaitTimeHistogram()}. The last bucket of the
+     * histogram counts the longer waits.
+     */
+    public static final long[] WAIT_TIME_BUCKET_MILLIS = { 1, 10, 100, 1000, 10000 };
+
+    /**
+     * Shortest and longest period of the evictor.
+     */
+    private static final long MIN_EVICTION_PERIOD = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_EVICTION_PERIOD = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Single daemon thread evicting and pre-warming the objects of all pools.
+     */
+    private static final ScheduledThreadPoolExecutor EVICTOR;
+
+    static {
+        EVICTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ObjectPoolEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        EVICTOR.setRemoveOnCancelPolicy(true);
+    }
+
     /**
      * Statistics bean
      */
     public static final class Statistics {
         private final int numIdle;
         private final int numActive;
+        private final long borrowCount;
+        private final long createdCount;
+        private final long evictedCount;
+        private final long[] waitTimeHistogram;
 
-        private Statistics(final int numIdle, final int numActive) {
+        private Statistics(final int numIdle, final int numActive, final long borrowCount,
+                final long createdCount, final long evictedCount, final long[] waitTimeHistogram) {
             this.numIdle = numIdle;
             this.numActive = numActive;
+            this.borrowCount = borrowCount;
+            this.createdCount = createdCount;
+            this.evictedCount = evictedCount;
+            this.waitTimeHistogram = waitTimeHistogram;
         }
 
         /**
@@ -67,6 +129,39 @@ public class ObjectPool<T> {
         public int getNumActive() {
             return numActive - numIdle;
         }
+
+        /**
+         * Returns the number of successful borrows since the pool was created
+         */
+        public long getBorrowCount() {
+            return borrowCount;
+        }
+
+        /**
+         * Returns the number of objects created since the pool was created
+         */
+        public long getCreatedCount() {
+            return createdCount;
+        }
+
+        /**
+         * Returns the number of idle objects disposed because of the
+         * {@code maxIdle}, {@code minEvictableIdleTimeMillis} or
+         * {@code maxLifetimeMillis} limits
+         */
+        public long getEvictedCount() {
+            return evictedCount;
+        }
+
+        /**
+         * Returns the number of borrows by the time they waited for an
+         * object. The element {@code i} counts the borrows which took less
+         * than {@code WAIT_TIME_BUCKET_MILLIS[i]} and more than the previous
+         * bound, the last element counts the longer ones.
+         */
+        public long[] getWaitTimeHistogram() {
+            return waitTimeHistogram.clone();
+        }
     }
 
     /**
@@ -79,14 +174,20 @@ public class ObjectPool<T> {
         private final T object;
 
         /**
-         * True if this is currently active, false if it is idle
+         * Creation time, for the maximum lifetime
          */
-        private boolean isActive;
+        private final long createdTimestamp;
+
+        /**
+         * True if this is currently active, false if it is idle. It is
+         * switched with compare-and-set so the object is returned only once.
+         */
+        private final AtomicBoolean isActive = new AtomicBoolean(false);
 
         /**
          * Last state change (change from active to idle or vice-versa)
          */
-        private long lastStateChangeTimestamp;
+        private volatile long lastStateChangeTimestamp;
 
         /**
          * Is this a freshly created object (never been pooled)?
@@ -96,7 +197,8 @@ public class ObjectPool<T> {
         public PooledObject(final T object) {
             this.object = object;
             isNew = true;
-            touch();
+            createdTimestamp = System.currentTimeMillis();
+            lastStateChangeTimestamp = createdTimestamp;
         }
 
         public T getPooledObject() {
@@ -104,11 +206,7 @@ public class ObjectPool<T> {
         }
 
         public void close() throws IOException {
-            try {
-                returnObject(this);
-            } catch (InterruptedException e) {
-                LOG.error(e, "Failed to close/dispose PooledObject object");
-            }
+            returnObject(this);
         }
 
         public boolean isNew() {
@@ -119,49 +217,105 @@ public class ObjectPool<T> {
             isNew = n;
         }
 
-        public void setActive(final boolean v) {
-            if (isActive != v) {
-                touch();
-                isActive = v;
+        public boolean setActive(final boolean v) {
+            if (isActive.compareAndSet(!v, v)) {
+                lastStateChangeTimestamp = System.currentTimeMillis();
+                return true;
             }
+            return false;
         }
 
-        private void touch() {
-            lastStateChangeTimestamp = System.currentTimeMillis();
+        public boolean isOlderThan(long maxAge, long now) {
+            return maxAge < (now - lastStateChangeTimestamp);
         }
 
-        public boolean isOlderThan(long maxAge) {
-            return maxAge < (System.currentTimeMillis() - lastStateChangeTimestamp);
+        public boolean isExpired(long now) {
+            long maxLifetime = poolConfiguration.getMaxLifetimeMillis();
+            return maxLifetime > 0 && maxLifetime < (now - createdTimestamp);
         }
     }
 
     /**
-     * Set contains all the PooledObject was made by this pool. It contains all
-     * idle and borrowed(active) objects.
+     * Periodic eviction of one pool. The pool is only weakly referenced so a
+     * pool which is not shut down can still be collected.
      */
-    private Set<PooledObject> activeObjects;
+    private static final class Evictor implements Runnable {
+        private final WeakReference<ObjectPool<?>> poolReference;
+        private volatile ScheduledFuture<?> future;
+
+        private Evictor(ObjectPool<?> pool) {
+            poolReference = new WeakReference<ObjectPool<?>>(pool);
+        }
+
+        public void run() {
+            ObjectPool<?> pool = poolReference.get();
+            if (null == pool || pool.isShutdown()) {
+                cancel();
+                return;
+            }
+            try {
+                pool.evictIdleObjects();
+                pool.validateIdleObjects();
+                pool.prewarm();
+            } catch (RuntimeException e) {
+                LOG.warn(e, "Failed to evict idle objects");
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> f = future;
+            if (null != f) {
+                f.cancel(false);
+            }
+        }
+    }
 
     /**
      * Queue of idle objects. The one that has been idle for the longest comes
-     * first in the queue
+     * first, objects are returned to and borrowed from the tail.
+     */
+    private final ConcurrentLinkedDeque<PooledObject> idleObjects =
+            new ConcurrentLinkedDeque<PooledObject>();
+
+    /**
+     * Number of idle objects, {@code idleObjects.size()} traverses the deque.
+     * It is incremented before an object is added and decremented after it
+     * is removed so it is never lower than the real size.
      */
-    private final ConcurrentLinkedQueue<PooledObject> idleObjects =
-            new ConcurrentLinkedQueue<PooledObject>();
+    private final AtomicInteger idleCount = new AtomicInteger();
 
     /**
-     * Limits the maximum available pooled object in the pool.
+     * Number of idle and borrowed(active) objects made by this pool.
      */
-    private Semaphore totalPermit;
+    private final AtomicInteger totalCount = new AtomicInteger();
 
     /**
-     * Lock to maintain the state changes of the pool.
+     * Limits the maximum available pooled object in the pool. A permit is
+     * held for every object made by this pool.
+     */
+    private final Semaphore totalPermit;
+
+    /**
+     * Lock and condition only used by the borrowers which have to wait for an
+     * object or a permit.
      */
-    /** Lock held by take, poll, etc */
     private final ReentrantLock takeLock = new ReentrantLock();
 
     /** Wait queue for waiting takes */
     private final Condition notEmpty = takeLock.newCondition();
 
+    /**
+     * Number of borrowers registered for a signal. Returns only take the lock
+     * if it is not zero.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLongArray waitTimeHistogram = new AtomicLongArray(
+            WAIT_TIME_BUCKET_MILLIS.length + 1);
+
     /**
      * ObjectPoolHandler we use for managing object lifecycle
      */
@@ -172,6 +326,13 @@ public class ObjectPool<T> {
      */
     private final ObjectPoolConfiguration poolConfiguration;
 
+    private final Evictor evictor;
+
+    /**
+     * Time of the last background validation.
+     */
+    private volatile long lastValidation = System.currentTimeMillis();
+
     /**
      * Is the pool shutdown
      */
@@ -193,8 +354,31 @@ public class ObjectPool<T> {
         this.handler = handler;
         // clone it
         poolConfiguration = this.handler.validate(config);
-        activeObjects = new HashSet<PooledObject>(poolConfiguration.getMaxObjects());
         totalPermit = new Semaphore(poolConfiguration.getMaxObjects());
+
+        boolean backgroundValidation =
+                poolConfiguration.getValidationPolicy() == ValidationPolicy.BACKGROUND;
+        if (poolConfiguration.getMinEvictableIdleTimeMillis() > 0
+                || poolConfiguration.getMaxLifetimeMillis() > 0 || poolConfiguration.isPrewarm()
+                || backgroundValidation) {
+            long period = MAX_EVICTION_PERIOD;
+            if (poolConfiguration.getMinEvictableIdleTimeMillis() > 0) {
+                period = Math.min(period, poolConfiguration.getMinEvictableIdleTimeMillis() / 2);
+            }
+            if (poolConfiguration.getMaxLifetimeMillis() > 0) {
+                period = Math.min(period, poolConfiguration.getMaxLifetimeMillis() / 2);
+            }
+            if (backgroundValidation) {
+                period = Math.min(period, poolConfiguration.getValidationIntervalMillis());
+            }
+            period = Math.max(MIN_EVICTION_PERIOD, period);
+            evictor = new Evictor(this);
+            evictor.future =
+                    EVICTOR.scheduleWithFixedDelay(evictor, poolConfiguration.isPrewarm() ? 0
+                            : period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
     }
 
     /**
@@ -211,25 +395,33 @@ public class ObjectPool<T> {
      *
      * @param pooled
      */
-    private void returnObject(PooledObject pooled) throws InterruptedException {
-        if (isShutdown() || poolConfiguration.getMaxIdle() < 1) {
+    private void returnObject(PooledObject pooled) {
+        if (!pooled.setActive(false)) {
+            // returned twice or disposed
+            return;
+        }
+        if (isShutdown() || poolConfiguration.getMaxIdle() < 1
+                || pooled.isExpired(System.currentTimeMillis())) {
             dispose(pooled);
-        } else {
-            try {
-                for (PooledObject entry : idleObjects) {
-                    if ((poolConfiguration.getMaxIdle() <= idleObjects.size())
-                            || entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis())) {
-                        if (idleObjects.remove(entry)) {
-                            dispose(entry);
-                        }
-                    }
-                }
-            } finally {
-                pooled.setActive(false);
-                pooled.setNew(false);
-                idleObjects.add(pooled);
-                signalNotEmpty();
+            return;
+        }
+        pooled.setNew(false);
+        // make room by evicting the eldest idle objects
+        while (idleCount.get() >= poolConfiguration.getMaxIdle()) {
+            PooledObject eldest = idleObjects.pollFirst();
+            if (null == eldest) {
+                break;
             }
+            idleCount.decrementAndGet();
+            evict(eldest);
+        }
+        idleCount.incrementAndGet();
+        idleObjects.offerLast(pooled);
+        if (isShutdown()) {
+            // shutdown() may have drained the queue before the offer
+            disposeIdleObjects();
+        } else {
+            signalNotEmpty();
         }
     }
 
@@ -240,98 +432,177 @@ public class ObjectPool<T> {
      */
     public ObjectPoolEntry<T> borrowObject() {
         PooledObject rv = null;
-        try {
-            do {
-                rv = borrowObjectNoTest();
-                try {
+        long start = System.nanoTime();
+        do {
+            rv = borrowObjectNoTest();
+            try {
+                if (isTestOnBorrow(rv)) {
                     handler.testObject(rv.getPooledObject());
-                } catch (Exception e) {
-                    if (null != rv) {
-                        dispose(rv);
-                        // if it's a new object, break out of the loop
-                        // immediately
-                        if (rv.isNew()) {
-                            throw ConnectorException.wrap(e);
-                        }
-                        rv = null;
-                    }
                 }
-            } while (null == rv);
-            rv.setActive(true);
-        } catch (InterruptedException e) {
-            LOG.error(e, "Failed to borrow object from pool.");
-            throw ConnectorException.wrap(e);
-        }
+            } catch (Exception e) {
+                dispose(rv);
+                // if it's a new object, break out of the loop
+                // immediately
+                if (rv.isNew()) {
+                    throw ConnectorException.wrap(e);
+                }
+                rv = null;
+            }
+        } while (null == rv);
+        rv.setActive(true);
+        recordBorrow(System.nanoTime() - start);
         return rv;
     }
 
+    /**
+     * Decides by the validation policy whether a borrowed object is tested.
+     */
+    private boolean isTestOnBorrow(PooledObject pooled) {
+        switch (poolConfiguration.getValidationPolicy()) {
+        case IDLE:
+            // a new object was just created, the idle time of a pooled one
+            // is counted from its return
+            return !pooled.isNew()
+                    && pooled.isOlderThan(poolConfiguration.getValidationIntervalMillis(), System
+                            .currentTimeMillis());
+        case BACKGROUND:
+        case ON_FAILURE:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Tests a borrowed object after an operation failed with it.
+     * <p/>
+     * With the {@link ValidationPolicy#ON_FAILURE} policy a pooled object is
+     * not tested before it is borrowed, so a connection error may only mean
+     * that the object went stale while it was idle. In this case the object
+     * is tested and disposed if it is broken; the caller may then retry the
+     * operation with another object.
+     *
+     * @param entry
+     *            the entry borrowed from this pool.
+     * @param failure
+     *            the exception thrown by the operation.
+     * @return true if the object was broken and it has been disposed, the
+     *         entry must not be used any more. False if the failure has to be
+     *         reported to the caller.
+     */
+    public boolean validateAfterFailure(ObjectPoolEntry<T> entry, Throwable failure) {
+        if (poolConfiguration.getValidationPolicy() != ValidationPolicy.ON_FAILURE
+                || !(failure instanceof ConnectorIOException)
+                || !(entry instanceof ObjectPool.PooledObject)) {
+            return false;
+        }
+        PooledObject pooled = (PooledObject) entry;
+        if (pooled.isNew()) {
+            // it has just been created, the failure is not a stale connection
+            return false;
+        }
+        try {
+            handler.testObject(pooled.getPooledObject());
+            return false;
+        } catch (Exception e) {
+            LOG.ok(e, "Pooled object failed the validation after a connection failure");
+        }
+        if (pooled.setActive(false)) {
+            dispose(pooled);
+        }
+        return true;
+    }
+
     /**
      * Borrow an object from the pool, but don't test it (it gets tested by the
      * caller *outside* of synchronization)
      *
      * @return the object
      */
-    private PooledObject borrowObjectNoTest() throws InterruptedException {
+    private PooledObject borrowObjectNoTest() {
         if (isShutdown()) {
             throw new IllegalStateException("Object pool already shutdown");
         }
 
         // First borrow from the idle pool
         PooledObject pooledConn = borrowIdleObject();
-        if (null == pooledConn) {
-            long nanos = TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait());
-            final ReentrantLock lock = this.takeLock;
+        if (null != pooledConn) {
+            return pooledConn;
+        }
+        if (totalPermit.tryAcquire()) {
+            // If the pool is empty and there are available permits
+            // then create a new instance.
+            return makeObject();
+        }
+
+        long nanos = TimeUnit.SECONDS.toNanos(poolConfiguration.getMaxWait());
+        final ReentrantLock lock = this.takeLock;
+        // register before polling again so a return which happens after the
+        // poll signals this thread
+        waiters.incrementAndGet();
+        try {
             lock.lockInterruptibly();
             try {
-                do {
+                while (true) {
+                    pooledConn = borrowIdleObject();
+                    if (null != pooledConn) {
+                        return pooledConn;
+                    }
                     if (totalPermit.tryAcquire()) {
-                        // If the pool is empty and there are available permits
-                        // then create a new instance.
-                        return makeObject();
-                    } else {
-                        // Wait for permit or object to became available
-                        try {
-                            nanos = notEmpty.awaitNanos(nanos);
-                        } catch (InterruptedException ie) {
-                            notEmpty.signal(); // propagate to non-interrupted
-                                               // thread
-                            throw ConnectorException.wrap(ie);
-                        }
-
-                        if (nanos <= 0) {
-                            throw new ConnectorException("TimeOut");
-                        }
-                        // Try to borrow from the idle pool
-                        pooledConn = borrowIdleObject();
-                        if (null != pooledConn) {
-                            return pooledConn;
-                        }
+                        break;
+                    }
+                    if (isShutdown()) {
+                        throw new IllegalStateException("Object pool already shutdown");
                     }
-                } while (nanos > 0);
+                    if (nanos <= 0) {
+                        throw new ConnectorException("TimeOut");
+                    }
+                    try {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } catch (InterruptedException ie) {
+                        notEmpty.signal(); // propagate to non-interrupted
+                                           // thread
+                        throw ie;
+                    }
+                }
             } finally {
                 lock.unlock();
             }
+        } catch (InterruptedException e) {
+            LOG.error(e, "Failed to borrow object from pool.");
+            throw ConnectorException.wrap(e);
+        } finally {
+            waiters.decrementAndGet();
         }
-        return pooledConn;
+        // create outside of the lock, it may take long
+        return makeObject();
     }
 
     /**
-     * Polls the head object from the queue.
+     * Polls the most recently returned object from the queue.
      * <p/>
-     * Polls the head object and before it returns it checks the {@code MaxIdle}
-     * size and the {@code MinEvictableIdleTime} before accepts the object.
+     * Before it polls it evicts the eldest objects which are older than
+     * {@code MinEvictableIdleTime} as long as more than {@code MinIdle}
+     * objects are idle, so a borrow never waits for the evictor.
      *
      * @return null if there was no fresh/new object in the queue.
-     * @throws InterruptedException
-     */
-    private PooledObject borrowIdleObject() throws InterruptedException {
-        for (PooledObject pooledConn = idleObjects.poll(); pooledConn != null; pooledConn =
-                idleObjects.poll()) {
-            int size = idleObjects.size();
-            if (poolConfiguration.getMinIdle() < size + 1
-                    && ((poolConfiguration.getMaxIdle() < size) || pooledConn
-                            .isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis()))) {
-                dispose(pooledConn);
+     */
+    private PooledObject borrowIdleObject() {
+        long now = System.currentTimeMillis();
+        PooledObject eldest;
+        while (idleCount.get() > poolConfiguration.getMinIdle()
+                && null != (eldest = idleObjects.peekFirst())
+                && eldest.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis(), now)) {
+            if (idleObjects.removeFirstOccurrence(eldest)) {
+                idleCount.decrementAndGet();
+                evict(eldest);
+            }
+        }
+        for (PooledObject pooledConn = idleObjects.pollLast(); pooledConn != null; pooledConn =
+                idleObjects.pollLast()) {
+            idleCount.decrementAndGet();
+            if (pooledConn.isExpired(now)) {
+                evict(pooledConn);
             } else {
                 return pooledConn;
             }
@@ -339,6 +610,99 @@ public class ObjectPool<T> {
         return null;
     }
 
+    /**
+     * Disposes the idle objects which exceeded the idle time or lifetime
+     * limits. Called by the evictor.
+     */
+    void evictIdleObjects() {
+        long now = System.currentTimeMillis();
+        for (PooledObject entry : idleObjects) {
+            boolean expired = entry.isExpired(now);
+            if (!expired) {
+                int idle = idleCount.get();
+                if (idle <= poolConfiguration.getMinIdle()) {
+                    continue;
+                }
+                if (idle <= poolConfiguration.getMaxIdle()
+                        && !entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis(),
+                                now)) {
+                    continue;
+                }
+            }
+            if (idleObjects.removeFirstOccurrence(entry)) {
+                idleCount.decrementAndGet();
+                evict(entry);
+            }
+        }
+    }
+
+    /**
+     * Tests the idle objects if the validation interval elapsed and disposes
+     * the broken ones. Called by the evictor with the
+     * {@link ValidationPolicy#BACKGROUND} policy.
+     */
+    void validateIdleObjects() {
+        if (poolConfiguration.getValidationPolicy() != ValidationPolicy.BACKGROUND) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastValidation < poolConfiguration.getValidationIntervalMillis()) {
+            return;
+        }
+        lastValidation = now;
+        // from the most recent to the eldest, each validated object is put
+        // back to the head so the order is the same at the end
+        List<PooledObject> snapshot = new ArrayList<PooledObject>(idleObjects);
+        for (int i = snapshot.size() - 1; i >= 0 && !isShutdown(); i--) {
+            PooledObject entry = snapshot.get(i);
+            if (!idleObjects.removeFirstOccurrence(entry)) {
+                // borrowed meanwhile
+                continue;
+            }
+            idleCount.decrementAndGet();
+            try {
+                handler.testObject(entry.getPooledObject());
+            } catch (Exception e) {
+                LOG.ok(e, "Idle object failed the validation");
+                dispose(entry);
+                continue;
+            }
+            idleCount.incrementAndGet();
+            idleObjects.offerFirst(entry);
+            signalNotEmpty();
+        }
+        if (isShutdown()) {
+            disposeIdleObjects();
+        }
+    }
+
+    /**
+     * Creates idle objects until there are {@code MinIdle} of them or no more
+     * permits are available. Called by the evictor.
+     */
+    void prewarm() {
+        if (!poolConfiguration.isPrewarm()) {
+            return;
+        }
+        while (!isShutdown() && idleCount.get() < poolConfiguration.getMinIdle()
+                && totalPermit.tryAcquire()) {
+            PooledObject pooled;
+            try {
+                pooled = makeObject();
+            } catch (RuntimeException e) {
+                LOG.warn(e, "Failed to pre-warm the pool");
+                return;
+            }
+            pooled.setNew(false);
+            idleCount.incrementAndGet();
+            idleObjects.offerLast(pooled);
+            signalNotEmpty();
+        }
+        if (isShutdown()) {
+            disposeIdleObjects();
+        }
+    }
+
     /**
      * Closes any idle objects in the pool.
      * <p/>
@@ -347,16 +711,23 @@ public class ObjectPool<T> {
      */
     public void shutdown() {
         isShutdown = true;
+        if (null != evictor) {
+            evictor.cancel();
+        }
         // just evict idle objects
         // if there are any active objects still
         // going, leave them alone so they can return
         // gracefully
         try {
-            for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
+            disposeIdleObjects();
+            // wake up the waiting borrowers, they fail
+            if (waiters.get() > 0) {
+                final ReentrantLock lock = this.takeLock;
+                lock.lock();
                 try {
-                    dispose(entry);
-                } catch (InterruptedException e) {
-                    LOG.error(e, "Failed to dispose PooledObject object");
+                    notEmpty.signalAll();
+                } finally {
+                    lock.unlock();
                 }
             }
         } finally {
@@ -370,63 +741,90 @@ public class ObjectPool<T> {
      * @return The statistics
      */
     public Statistics getStatistics() {
-        return new Statistics(idleObjects.size(), activeObjects.size());
+        long[] histogram = new long[waitTimeHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = waitTimeHistogram.get(i);
+        }
+        return new Statistics(idleCount.get(), totalCount.get(), borrowCount.get(), createdCount
+                .get(), evictedCount.get(), histogram);
+    }
+
+    private void recordBorrow(long nanos) {
+        borrowCount.incrementAndGet();
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < WAIT_TIME_BUCKET_MILLIS.length && millis >= WAIT_TIME_BUCKET_MILLIS[bucket]) {
+            bucket++;
+        }
+        waitTimeHistogram.incrementAndGet(bucket);
     }
 
     /**
      * This is a long running process to create and init the connector instance.
      * <p/>
+     * The caller must have acquired a permit, it is released if the creation
+     * fails.
      *
      * @throws ConnectorException
      *             if something happens.
      */
     private PooledObject makeObject() {
-        synchronized (activeObjects) {
-            PooledObject pooledConn =
-                    new PooledObject((activeObjects.size() > 0) ? handler.makeObject() : handler
-                            .makeObject());
-            activeObjects.add(pooledConn);
+        boolean success = false;
+        try {
+            PooledObject pooledConn = new PooledObject(handler.makeObject());
+            totalCount.incrementAndGet();
+            createdCount.incrementAndGet();
+            success = true;
             return pooledConn;
+        } finally {
+            if (!success) {
+                totalPermit.release();
+                signalNotEmpty();
+            }
+        }
+    }
+
+    private void disposeIdleObjects() {
+        for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
+            idleCount.decrementAndGet();
+            dispose(entry);
         }
     }
 
+    private void evict(final PooledObject entry) {
+        evictedCount.incrementAndGet();
+        dispose(entry);
+    }
+
     /**
      * Dispose of an object, but don't throw any exceptions
      *
      * @param entry
      */
-    private void dispose(final PooledObject entry) throws InterruptedException {
-        final ReentrantLock lock = this.takeLock;
-        lock.lockInterruptibly();
+    private void dispose(final PooledObject entry) {
         try {
-            synchronized (activeObjects) {
-                // Make sure the disposed object was the last item in the
-                // activeObjects
-                if (activeObjects.remove(entry) && activeObjects.isEmpty()) {
-                    handler.disposeObject(entry.getPooledObject());
-                } else {
-                    handler.disposeObject(entry.getPooledObject());
-                }
-            }
+            handler.disposeObject(entry.getPooledObject());
         } catch (Exception e) {
             LOG.warn(e, "disposeObject() is not supposed to throw");
         } finally {
+            totalCount.decrementAndGet();
             totalPermit.release();
-            notEmpty.signal();
-            lock.unlock();
+            signalNotEmpty();
         }
     }
 
     /**
-     * Signals a waiting take. Called only from borrowObjectNoTest
+     * Signals a waiting take if there is one.
      */
     private void signalNotEmpty() {
-        final ReentrantLock takeLock = this.takeLock;
-        takeLock.lock();
-        try {
-            notEmpty.signal();
-        } finally {
-            takeLock.unlock();
+        if (waiters.get() > 0) {
+            final ReentrantLock takeLock = this.takeLock;
+            takeLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                takeLock.unlock();
+            }
         }
     }
 }
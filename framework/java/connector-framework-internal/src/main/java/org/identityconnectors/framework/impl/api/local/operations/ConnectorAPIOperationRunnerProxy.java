@@ -27,8 +27,15 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.TestApiOp;
 import org.identityconnectors.framework.impl.api.local.ObjectPool;
 import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
 import org.identityconnectors.framework.spi.Connector;
@@ -45,6 +52,23 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
 
     private static final Log LOG = Log.getLog(ConnectorAPIOperationRunnerProxy.class);
 
+    /**
+     * Operations which have no side effect and return their result at once,
+     * they can be run again after a failure without handing out duplicate
+     * results. The get of a connector which does not implement
+     * {@link org.identityconnectors.framework.spi.operations.GetOp} runs as a
+     * search, which is not retried.
+     */
+    private static final Set<Class<? extends APIOperation>> RETRYABLE_OPERATIONS;
+
+    static {
+        Set<Class<? extends APIOperation>> operations = new HashSet<Class<? extends APIOperation>>();
+        operations.add(GetApiOp.class);
+        operations.add(SchemaApiOp.class);
+        operations.add(TestApiOp.class);
+        RETRYABLE_OPERATIONS = Collections.unmodifiableSet(operations);
+    }
+
     /**
      * The operational context
      */
@@ -92,10 +116,30 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
                 // initialize the connector..
                 connector.init(context.getConfiguration());
             }
-            APIOperationRunner runner =
-                runnerImplConstructor.newInstance(context,connector);
-            ret = method.invoke(runner, args);
-            // call out to the operation..
+            boolean retried = false;
+            while (true) {
+                APIOperationRunner runner =
+                    runnerImplConstructor.newInstance(context,connector);
+                try {
+                    // call out to the operation..
+                    ret = method.invoke(runner, args);
+                    break;
+                } catch (InvocationTargetException e) {
+                    // a pooled connector which is not tested on borrow may
+                    // have gone stale, retry once with another one
+                    if (poolEntry == null || retried
+                            || !RETRYABLE_OPERATIONS.contains(method.getDeclaringClass())
+                            || !pool.validateAfterFailure(poolEntry, e.getCause())) {
+                        throw e;
+                    }
+                    LOG.ok("Retrying {0} with another pooled connector", method.getName());
+                    retried = true;
+                    connector = null;
+                    poolEntry = null;
+                    poolEntry = pool.borrowObject();
+                    connector = poolEntry.getPooledObject();
+                }
+            }
         } catch (InvocationTargetException e) {
             Throwable root = e.getCause();
             throw root;
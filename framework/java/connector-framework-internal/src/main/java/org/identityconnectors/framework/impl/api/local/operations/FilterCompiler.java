@@ -0,0 +1,575 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.ComparableAttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.StringFilter;
+
+/**
+ * Compiles a {@link Filter} to a predicate for the filtering done by the
+ * framework.
+ * <p/>
+ * The filter tree is walked once per search instead of once per object:
+ * <ul>
+ * <li>every leaf looks up its attribute once and compares it with the
+ * constant of the filter directly,</li>
+ * <li>the filters chained by a {@link NormalizingFilter} normalize only the
+ * attribute they read instead of copying the whole normalized object, their
+ * constants are normalized already,</li>
+ * <li>nested AND and OR filters are flattened, the equality tests of one
+ * attribute in an OR filter are merged to one hash lookup,</li>
+ * <li>the operands of AND and OR filters are reordered by their estimated
+ * selectivity and cost, so the cheapest operand which is likely to decide
+ * the result is evaluated first.</li>
+ * </ul>
+ * A compiled filter accepts the same objects as the original filter. Its
+ * {@link Filter#accept(FilterVisitor, Object)} visits the original filter.
+ */
+public final class FilterCompiler implements
+        FilterVisitor<FilterCompiler.Predicate, ObjectNormalizerFacade> {
+
+    private static final FilterCompiler INSTANCE = new FilterCompiler();
+
+    /**
+     * The value types which are compared by {@link Object#equals(Object)} and
+     * whose equality is symmetric, values of these types are looked up in a
+     * hash set.
+     */
+    private static final Set<Class<?>> HASHABLE_TYPES = new HashSet<Class<?>>(Arrays
+            .<Class<?>> asList(String.class, Boolean.class, Character.class, Byte.class,
+                    Short.class, Integer.class, Long.class, Float.class, Double.class,
+                    BigInteger.class, BigDecimal.class));
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * Compiles the filter.
+     *
+     * @param filter
+     *            the filter, may be null.
+     * @return the compiled filter or null if the filter is null.
+     */
+    public static Filter compile(Filter filter) {
+        if (filter == null || filter instanceof CompiledFilter) {
+            return filter;
+        }
+        return new CompiledFilter(filter, filter.accept(INSTANCE, null));
+    }
+
+    /**
+     * A compiled filter.
+     */
+    abstract static class Predicate {
+
+        /**
+         * The estimated probability that an object is accepted.
+         */
+        final double selectivity;
+
+        /**
+         * The estimated relative cost of the evaluation.
+         */
+        final double cost;
+
+        Predicate(double selectivity, double cost) {
+            this.selectivity = selectivity;
+            this.cost = cost;
+        }
+
+        abstract boolean test(ConnectorObject object);
+    }
+
+    private static final class CompiledFilter implements Filter {
+
+        private final Filter filter;
+
+        private final Predicate predicate;
+
+        private CompiledFilter(Filter filter, Predicate predicate) {
+            this.filter = filter;
+            this.predicate = predicate;
+        }
+
+        public boolean accept(ConnectorObject obj) {
+            return predicate.test(obj);
+        }
+
+        public <R, P> R accept(FilterVisitor<R, P> v, P p) {
+            return filter.accept(v, p);
+        }
+
+        @Override
+        public String toString() {
+            return filter.toString();
+        }
+    }
+
+    // =======================================================================
+    // Leaves
+    // =======================================================================
+
+    private static final Predicate TRUE = new Predicate(1.0, 0.0) {
+        boolean test(ConnectorObject object) {
+            return true;
+        }
+    };
+
+    /**
+     * Reads one attribute of the object, normalized if the filter is chained
+     * by a {@link NormalizingFilter}.
+     */
+    private abstract static class AttributePredicate extends Predicate {
+
+        final String name;
+
+        final ObjectNormalizerFacade normalizer;
+
+        AttributePredicate(String name, ObjectNormalizerFacade normalizer, double selectivity,
+                double cost) {
+            super(selectivity, normalizer != null ? cost + 2.0 : cost);
+            this.name = name;
+            this.normalizer = normalizer;
+        }
+
+        final boolean test(ConnectorObject object) {
+            Attribute attribute = object.getAttributeByName(name);
+            if (attribute == null) {
+                return false;
+            }
+            return test(normalizer != null ? normalizer.normalizeAttribute(attribute) : attribute,
+                    object);
+        }
+
+        abstract boolean test(Attribute attribute, ConnectorObject object);
+    }
+
+    private static final class EqualsPredicate extends AttributePredicate {
+
+        private final Attribute constant;
+
+        EqualsPredicate(Attribute constant, ObjectNormalizerFacade normalizer) {
+            super(constant.getName(), normalizer, 0.05, 1.0);
+            this.constant = constant;
+        }
+
+        boolean test(Attribute attribute, ConnectorObject object) {
+            return constant.equals(attribute);
+        }
+    }
+
+    /**
+     * Equality tests of one single valued attribute merged from an OR filter.
+     */
+    private static final class InPredicate extends AttributePredicate {
+
+        private final Class<?> attributeType;
+
+        private final Set<Class<?>> valueTypes = new HashSet<Class<?>>();
+
+        private final Set<Object> values = new HashSet<Object>();
+
+        InPredicate(List<EqualsFilter> filters, ObjectNormalizerFacade normalizer) {
+            super(filters.get(0).getName(), normalizer, Math.min(0.05 * filters.size(), 0.9), 1.0);
+            this.attributeType = filters.get(0).getAttribute().getClass();
+            for (EqualsFilter filter : filters) {
+                Object value = filter.getAttribute().getValue().get(0);
+                valueTypes.add(value.getClass());
+                values.add(value);
+            }
+        }
+
+        boolean test(Attribute attribute, ConnectorObject object) {
+            if (attribute.getClass() != attributeType) {
+                return false;
+            }
+            List<Object> value = attribute.getValue();
+            if (value == null || value.size() != 1) {
+                return false;
+            }
+            Object single = value.get(0);
+            // the constants are equal only to values of their own type
+            return single != null && valueTypes.contains(single.getClass())
+                    && values.contains(single);
+        }
+
+        static boolean canMerge(EqualsFilter filter) {
+            List<Object> value = filter.getAttribute().getValue();
+            return value != null && value.size() == 1 && value.get(0) != null
+                    && HASHABLE_TYPES.contains(value.get(0).getClass());
+        }
+    }
+
+    private static final class StringPredicate extends AttributePredicate {
+
+        private final StringFilter filter;
+
+        StringPredicate(StringFilter filter, ObjectNormalizerFacade normalizer, double selectivity,
+                double cost) {
+            super(filter.getName(), normalizer, selectivity, cost);
+            this.filter = filter;
+        }
+
+        boolean test(Attribute attribute, ConnectorObject object) {
+            return filter.accept((String) attribute.getValue().get(0));
+        }
+    }
+
+    private static final class ComparePredicate extends AttributePredicate {
+
+        private final Object constant;
+
+        private final int sign;
+
+        private final boolean orEqual;
+
+        ComparePredicate(ComparableAttributeFilter filter, ObjectNormalizerFacade normalizer,
+                int sign, boolean orEqual) {
+            super(filter.getName(), normalizer, 0.33, 1.0);
+            this.constant = filter.getValue();
+            this.sign = sign;
+            this.orEqual = orEqual;
+        }
+
+        boolean test(Attribute attribute, ConnectorObject object) {
+            int result = -1;
+            List<Object> value = attribute.getValue();
+            if (value.size() == 1) {
+                if (!(value.get(0) instanceof Comparable)) {
+                    throw new IllegalArgumentException("Attribute value must be comparable!");
+                }
+                result = CollectionUtil.forceCompare(value.get(0), constant);
+            }
+            return result == 0 ? orEqual : Integer.signum(result) == sign;
+        }
+    }
+
+    private static final class ContainsAllValuesPredicate extends AttributePredicate {
+
+        private final List<Object> constants;
+
+        ContainsAllValuesPredicate(ContainsAllValuesFilter filter,
+                ObjectNormalizerFacade normalizer) {
+            super(filter.getName(), normalizer, 0.1, 2.0);
+            this.constants = filter.getAttribute().getValue();
+        }
+
+        boolean test(Attribute attribute, ConnectorObject object) {
+            List<Object> value = attribute.getValue();
+            if (value == null) {
+                throw new IllegalStateException("Null value found in attribute " + name
+                        + " of connector object " + object);
+            }
+            return value.containsAll(constants);
+        }
+    }
+
+    /**
+     * A filter the compiler does not know, evaluated as it is.
+     */
+    private static final class ExtendedPredicate extends Predicate {
+
+        private final Filter filter;
+
+        private final ObjectNormalizerFacade normalizer;
+
+        ExtendedPredicate(Filter filter, ObjectNormalizerFacade normalizer) {
+            super(0.5, 10.0);
+            this.filter = filter;
+            this.normalizer = normalizer;
+        }
+
+        boolean test(ConnectorObject object) {
+            return filter.accept(normalizer != null ? normalizer.normalizeObject(object) : object);
+        }
+    }
+
+    // =======================================================================
+    // Composites
+    // =======================================================================
+
+    private static final class NotPredicate extends Predicate {
+
+        private final Predicate predicate;
+
+        NotPredicate(Predicate predicate) {
+            super(1.0 - predicate.selectivity, predicate.cost);
+            this.predicate = predicate;
+        }
+
+        boolean test(ConnectorObject object) {
+            return !predicate.test(object);
+        }
+    }
+
+    private static final class AndPredicate extends Predicate {
+
+        private final Predicate[] predicates;
+
+        AndPredicate(Predicate[] predicates) {
+            super(andSelectivity(predicates), totalCost(predicates));
+            this.predicates = predicates;
+        }
+
+        boolean test(ConnectorObject object) {
+            for (Predicate predicate : predicates) {
+                if (!predicate.test(object)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static double andSelectivity(Predicate[] predicates) {
+            double selectivity = 1.0;
+            for (Predicate predicate : predicates) {
+                selectivity *= predicate.selectivity;
+            }
+            return selectivity;
+        }
+    }
+
+    private static final class OrPredicate extends Predicate {
+
+        private final Predicate[] predicates;
+
+        OrPredicate(Predicate[] predicates) {
+            super(orSelectivity(predicates), totalCost(predicates));
+            this.predicates = predicates;
+        }
+
+        boolean test(ConnectorObject object) {
+            for (Predicate predicate : predicates) {
+                if (predicate.test(object)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static double orSelectivity(Predicate[] predicates) {
+            double rejected = 1.0;
+            for (Predicate predicate : predicates) {
+                rejected *= 1.0 - predicate.selectivity;
+            }
+            return 1.0 - rejected;
+        }
+    }
+
+    private static double totalCost(Predicate[] predicates) {
+        double cost = 0.0;
+        for (Predicate predicate : predicates) {
+            cost += predicate.cost;
+        }
+        return cost;
+    }
+
+    /**
+     * Orders the operands of an AND by the cost per rejected object, the
+     * operands of an OR by the cost per accepted object.
+     */
+    private static final class RankComparator implements Comparator<Predicate> {
+
+        private final boolean and;
+
+        private RankComparator(boolean and) {
+            this.and = and;
+        }
+
+        public int compare(Predicate p1, Predicate p2) {
+            return Double.compare(rank(p1), rank(p2));
+        }
+
+        private double rank(Predicate predicate) {
+            double decides = and ? 1.0 - predicate.selectivity : predicate.selectivity;
+            return decides > 0.0 ? predicate.cost / decides : Double.MAX_VALUE;
+        }
+    }
+
+    private Predicate[] compileOperands(List<Filter> filters, ObjectNormalizerFacade normalizer,
+            boolean and) {
+        List<Predicate> predicates = new ArrayList<Predicate>(filters.size());
+        if (!and) {
+            // merge the equality tests of the same attribute
+            Map<String, List<EqualsFilter>> equals = new LinkedHashMap<String, List<EqualsFilter>>();
+            Map<String, List<EqualsFilter>> byName = CollectionUtil.newCaseInsensitiveMap();
+            List<Filter> others = new ArrayList<Filter>(filters.size());
+            for (Filter filter : filters) {
+                if (filter instanceof EqualsFilter && InPredicate.canMerge((EqualsFilter) filter)) {
+                    EqualsFilter equalsFilter = (EqualsFilter) filter;
+                    List<EqualsFilter> group = byName.get(equalsFilter.getName());
+                    if (group == null || group.get(0).getAttribute().getClass() != equalsFilter
+                            .getAttribute().getClass()) {
+                        if (group != null) {
+                            // a Uid and a plain attribute of the same name can't be merged
+                            others.add(filter);
+                            continue;
+                        }
+                        group = new ArrayList<EqualsFilter>();
+                        byName.put(equalsFilter.getName(), group);
+                        equals.put(equalsFilter.getName(), group);
+                    }
+                    group.add(equalsFilter);
+                } else {
+                    others.add(filter);
+                }
+            }
+            for (List<EqualsFilter> group : equals.values()) {
+                if (group.size() > 1) {
+                    predicates.add(new InPredicate(group, normalizer));
+                } else {
+                    others.add(group.get(0));
+                }
+            }
+            filters = others;
+        }
+        for (Filter filter : filters) {
+            predicates.add(filter.accept(this, normalizer));
+        }
+        Predicate[] result = predicates.toArray(new Predicate[predicates.size()]);
+        // stable, operands estimated equally keep their order
+        Arrays.sort(result, new RankComparator(and));
+        return result;
+    }
+
+    /**
+     * Collects the operands of nested filters of the same kind.
+     */
+    private static void flatten(Filter filter, Class<? extends Filter> kind, List<Filter> operands) {
+        if (kind.isInstance(filter)) {
+            Collection<Filter> filters =
+                    filter instanceof AndFilter ? ((AndFilter) filter).getFilters()
+                            : ((OrFilter) filter).getFilters();
+            for (Filter operand : filters) {
+                flatten(operand, kind, operands);
+            }
+        } else {
+            operands.add(filter);
+        }
+    }
+
+    // =======================================================================
+    // FilterVisitor
+    // =======================================================================
+
+    public Predicate visitAndFilter(ObjectNormalizerFacade p, AndFilter filter) {
+        List<Filter> operands = new ArrayList<Filter>();
+        flatten(filter, AndFilter.class, operands);
+        Predicate[] predicates = compileOperands(operands, p, true);
+        return predicates.length == 1 ? predicates[0] : new AndPredicate(predicates);
+    }
+
+    public Predicate visitOrFilter(ObjectNormalizerFacade p, OrFilter filter) {
+        List<Filter> operands = new ArrayList<Filter>();
+        flatten(filter, OrFilter.class, operands);
+        Predicate[] predicates = compileOperands(operands, p, false);
+        return predicates.length == 1 ? predicates[0] : new OrPredicate(predicates);
+    }
+
+    public Predicate visitNotFilter(ObjectNormalizerFacade p, NotFilter filter) {
+        return new NotPredicate(filter.getFilter().accept(this, p));
+    }
+
+    public Predicate visitEqualsFilter(ObjectNormalizerFacade p, EqualsFilter filter) {
+        return new EqualsPredicate(filter.getAttribute(), p);
+    }
+
+    public Predicate visitContainsFilter(ObjectNormalizerFacade p, ContainsFilter filter) {
+        return new StringPredicate(filter, p, 0.25, 2.0);
+    }
+
+    public Predicate visitStartsWithFilter(ObjectNormalizerFacade p, StartsWithFilter filter) {
+        return new StringPredicate(filter, p, 0.1, 1.0);
+    }
+
+    public Predicate visitEndsWithFilter(ObjectNormalizerFacade p, EndsWithFilter filter) {
+        return new StringPredicate(filter, p, 0.1, 1.0);
+    }
+
+    public Predicate visitContainsAllValuesFilter(ObjectNormalizerFacade p,
+            ContainsAllValuesFilter filter) {
+        return new ContainsAllValuesPredicate(filter, p);
+    }
+
+    public Predicate visitGreaterThanFilter(ObjectNormalizerFacade p, GreaterThanFilter filter) {
+        return new ComparePredicate(filter, p, 1, false);
+    }
+
+    public Predicate visitGreaterThanOrEqualFilter(ObjectNormalizerFacade p,
+            GreaterThanOrEqualFilter filter) {
+        return new ComparePredicate(filter, p, 1, true);
+    }
+
+    public Predicate visitLessThanFilter(ObjectNormalizerFacade p, LessThanFilter filter) {
+        return new ComparePredicate(filter, p, -1, false);
+    }
+
+    public Predicate visitLessThanOrEqualFilter(ObjectNormalizerFacade p,
+            LessThanOrEqualFilter filter) {
+        return new ComparePredicate(filter, p, -1, true);
+    }
+
+    public Predicate visitExtendedFilter(ObjectNormalizerFacade p, Filter filter) {
+        if (filter instanceof FilteredResultsHandler.PassThroughFilter) {
+            return TRUE;
+        } else if (filter instanceof CompiledFilter) {
+            if (p == null) {
+                return ((CompiledFilter) filter).predicate;
+            }
+        } else if (filter instanceof NormalizingFilter && p == null) {
+            // the chained filter is normalized, only the objects remain
+            NormalizingFilter normalizing = (NormalizingFilter) filter;
+            return normalizing.getFilter().accept(this, normalizing.getNormalizerFacade());
+        }
+        return new ExtendedPredicate(filter, p);
+    }
+}
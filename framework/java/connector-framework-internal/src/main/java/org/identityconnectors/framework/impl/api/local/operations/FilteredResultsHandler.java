@@ -54,7 +54,7 @@ public final class FilteredResultsHandler implements ResultsHandler {
         }
         this.handler = handler;
         // use a default pass through filter..
-        this.filter = filter == null ? new PassThroughFilter() : filter;
+        this.filter = filter == null ? new PassThroughFilter() : FilterCompiler.compile(filter);
     }
 
     public boolean handle(ConnectorObject object) {
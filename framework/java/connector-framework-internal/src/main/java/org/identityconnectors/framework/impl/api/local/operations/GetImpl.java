@@ -41,7 +41,9 @@ import org.identityconnectors.framework.spi.operations.SearchOp;
 
 /**
  * Uses {@link SearchOp} to find the object that is referenced by the
- * {@link Uid} provided.
+ * {@link Uid} provided. Used for connectors without
+ * {@link org.identityconnectors.framework.spi.operations.GetOp GetOp}, see
+ * {@link NativeGetImpl}.
  */
 public class GetImpl implements GetApiOp {
 
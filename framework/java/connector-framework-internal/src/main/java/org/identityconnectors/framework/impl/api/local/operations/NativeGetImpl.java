@@ -0,0 +1,91 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.GetOp;
+
+/**
+ * Uses {@link GetOp} to read the object that is referenced by the {@link Uid}
+ * provided, without a search.
+ */
+public class NativeGetImpl extends ConnectorAPIOperationRunner implements GetApiOp {
+
+    /**
+     * Initializes the operation works.
+     */
+    public NativeGetImpl(final ConnectorOperationalContext context, final Connector connector) {
+        super(context, connector);
+    }
+
+    public ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options) {
+        Assertions.nullCheck(objectClass, "objectClass");
+        if (ObjectClass.ALL.equals(objectClass)) {
+            throw new UnsupportedOperationException(
+                    "Operation is not allowed on __ALL__ object class");
+        }
+        Assertions.nullCheck(uid, "uid");
+        // cast null as empty
+        if (options == null) {
+            options = new OperationOptionsBuilder().build();
+        }
+        ConnectorObject obj = ((GetOp) getConnector()).getObject(objectClass, uid, options);
+        if (obj == null) {
+            return null;
+        }
+        final ConnectorObject[] result = new ConnectorObject[1];
+        createResultsHandler(objectClass, new ResultsHandler() {
+
+            public boolean handle(ConnectorObject obj) {
+                result[0] = obj;
+                return false;
+            }
+        }, options).handle(obj);
+        return result[0];
+    }
+
+    private ResultsHandler createResultsHandler(ObjectClass objectClass, ResultsHandler handler,
+            OperationOptions options) {
+        ResultsHandlerConfiguration hdlCfg =
+                null != getOperationalContext() ? getOperationalContext()
+                        .getResultsHandlerConfiguration() : new ResultsHandlerConfiguration();
+        ObjectNormalizerFacade normalizer =
+                hdlCfg.isEnableNormalizingResultsHandler() ? getNormalizer(objectClass) : null;
+        String[] attrsToGet =
+                hdlCfg.isEnableAttributesToGetSearchResultsHandler() ? options
+                        .getAttributesToGet() : null;
+        if (normalizer != null || (attrsToGet != null && attrsToGet.length > 0)) {
+            return new SearchResultsPipeline(handler, normalizer, null, attrsToGet);
+        }
+        return handler;
+    }
+}
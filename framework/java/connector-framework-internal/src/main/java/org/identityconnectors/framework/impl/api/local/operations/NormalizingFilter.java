@@ -47,6 +47,14 @@ public class NormalizingFilter extends ExternallyChainedFilter {
         this.normalizerFacade = normalizerFacade;
     }
 
+    /**
+     * Return the normalizer applied to the objects before they are passed to
+     * the chained filter.
+     */
+    public ObjectNormalizerFacade getNormalizerFacade() {
+        return normalizerFacade;
+    }
+
     /**
      * Return the decision based on normalized version of the object.
      *
@@ -61,10 +61,11 @@ public class ScriptOnConnectorImpl extends ConnectorAPIOperationRunner
             String language = request.getScriptLanguage();
             ClassLoader classloader =
                 getConnector().getClass().getClassLoader();
+            // the compiled script is cached, see ScriptExecutorFactory.getCompiledScriptCache()
             ScriptExecutor executor =
                 ScriptExecutorFactory.newInstance(language).newScriptExecutor(classloader,
                         request.getScriptText(),
-                        false);
+                        true);
             Map<String,Object> scriptArgs = new HashMap<String,Object>();
             scriptArgs.putAll(request.getScriptArguments()); //add the args passed by the application
             scriptArgs.put("connector",getConnector()); //add the connector instance itself
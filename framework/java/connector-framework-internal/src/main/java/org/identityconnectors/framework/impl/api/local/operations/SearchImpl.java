@@ -23,7 +23,10 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.identityconnectors.common.Assertions;
@@ -36,10 +39,14 @@ import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.operations.GetOp;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 
 public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApiOp {
@@ -88,29 +95,38 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
             actualFilter = new NormalizingFilter(actualFilter, normalizer);
         }
 
+        ObjectNormalizerFacade resultsNormalizer = null;
+        Filter resultsFilter = null;
         if (hdlCfg.isEnableNormalizingResultsHandler()) {
-            final ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
-            // chain a normalizing handler (must come before
-            // filter handler)
-            NormalizingResultsHandler normalizingHandler =
-                    new NormalizingResultsHandler(handler, normalizer);
-            // chain a filter handler..
+            // the results are normalized before they are filtered
+            resultsNormalizer = getNormalizer(objectClass);
             if (hdlCfg.isEnableFilteredResultsHandler()) {
-                // chain a filter handler..
-                final Filter normalizedFilter = normalizer.normalizeFilter(actualFilter);
-                handler = new FilteredResultsHandler(normalizingHandler, normalizedFilter);
-                actualFilter = normalizedFilter;
-            } else {
-                handler = normalizingHandler;
+                actualFilter = resultsNormalizer.normalizeFilter(actualFilter);
+                resultsFilter = actualFilter;
             }
         } else if (hdlCfg.isEnableFilteredResultsHandler()) {
-            // chain a filter handler..
-            handler = new FilteredResultsHandler(handler, actualFilter);
+            resultsFilter = actualFilter;
         }
-        // chain an attributes to get handler..
         String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0 && hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
-            handler = getAttributesToGetResutlsHandler(handler, options);
+        if (!hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
+            attrsToGet = null;
+        }
+        // normalize, filter and reduce the results in one pass..
+        if (resultsNormalizer != null || resultsFilter != null
+                || (attrsToGet != null && attrsToGet.length > 0)) {
+            handler = new SearchResultsPipeline(handler, resultsNormalizer, resultsFilter, attrsToGet);
+        }
+
+        // read the objects of a filter which only matches uids directly,
+        // the handler already normalizes and reduces them..
+        if (getConnector() instanceof GetOp && !(actualFilter instanceof NormalizingFilter)
+                && isUnpaged(options)) {
+            Set<Uid> uids = new LinkedHashSet<Uid>();
+            if (actualFilter != null && collectUids(actualFilter, uids)) {
+                logger.ok("Reading {0} objects by uid", uids.size());
+                ((GetOp) getConnector()).getObjects(objectClass, uids, handler, options);
+                return new SearchResult();
+            }
         }
 
         final ResultsHandler handlerChain = handler;
@@ -129,6 +145,34 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
         return result.get();
     }
 
+    private static boolean isUnpaged(OperationOptions options) {
+        return options.getPageSize() == null && options.getPagedResultsCookie() == null
+                && options.getPagedResultsOffset() == null && options.getSortKeys() == null;
+    }
+
+    /**
+     * Collect the uids of a filter which is an equals filter of a uid or an
+     * OR of such filters.
+     *
+     * @return false if the filter matches other objects too.
+     */
+    private static boolean collectUids(Filter filter, Collection<Uid> uids) {
+        if (filter instanceof EqualsFilter) {
+            if (((EqualsFilter) filter).getAttribute() instanceof Uid) {
+                uids.add((Uid) ((EqualsFilter) filter).getAttribute());
+                return true;
+            }
+        } else if (filter instanceof OrFilter) {
+            for (Filter subFilter : ((OrFilter) filter).getFilters()) {
+                if (!collectUids(subFilter, uids)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Public because it is used by TestHelpersImpl. Raw, SPI-level search.
      *
@@ -173,16 +217,6 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
         }
     }
 
-    private ResultsHandler getAttributesToGetResutlsHandler(ResultsHandler handler,
-            OperationOptions options) {
-        ResultsHandler ret = handler;
-        String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0) {
-            ret = new AttributesToGetSearchResultsHandler(handler, attrsToGet);
-        }
-        return ret;
-    }
-
     /**
      * Simple results handler that can reduce attributes to only the set of
      * attribute to get.
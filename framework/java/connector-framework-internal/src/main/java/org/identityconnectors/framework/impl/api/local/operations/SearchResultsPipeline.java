@@ -0,0 +1,261 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+
+/**
+ * Normalizes, filters and reduces the search results in one pass.
+ * <p/>
+ * It does the work of a {@link NormalizingResultsHandler}, a
+ * {@link FilteredResultsHandler} and an
+ * {@link SearchImpl.AttributesToGetSearchResultsHandler} chained in this
+ * order, but it copies every result at most once. When attributes to get are
+ * requested only these attributes, the {@link Uid}, the {@link Name} and the
+ * attributes read by the filter are normalized, the other attributes are
+ * dropped without being normalized. A result which is neither changed by the
+ * normalizer nor reduced is passed on as it is.
+ */
+public final class SearchResultsPipeline implements ResultsHandler {
+
+    private final ResultsHandler handler;
+
+    private final ObjectNormalizerFacade normalizer;
+
+    private final Filter filter;
+
+    /**
+     * The attributes passed to the handler, null to pass all of them.
+     */
+    private final Set<String> attributesToGet;
+
+    /**
+     * The attributes normalized and read by the filter, null for all of them.
+     */
+    private final Set<String> neededAttributes;
+
+    /**
+     * Creates the pipeline.
+     *
+     * @param handler
+     *            the handler receiving the results.
+     * @param normalizer
+     *            the normalizer of the results, may be null.
+     * @param filter
+     *            the filter the results must match, may be null.
+     * @param attributesToGet
+     *            the names of the attributes passed to the handler, null or
+     *            empty to pass all attributes.
+     */
+    public SearchResultsPipeline(ResultsHandler handler, ObjectNormalizerFacade normalizer,
+            Filter filter, String[] attributesToGet) {
+        Assertions.nullCheck(handler, "handler");
+        this.handler = handler;
+        this.normalizer = normalizer;
+        this.filter = FilterCompiler.compile(filter);
+        if (attributesToGet != null && attributesToGet.length > 0) {
+            Set<String> names = CollectionUtil.newCaseInsensitiveSet();
+            names.add(Uid.NAME);
+            names.add(Name.NAME);
+            for (String name : attributesToGet) {
+                names.add(name);
+            }
+            this.attributesToGet = names;
+            Set<String> filterNames = CollectionUtil.newCaseInsensitiveSet();
+            if (filter == null || filter.accept(FilterAttributeNames.INSTANCE, filterNames)) {
+                filterNames.addAll(names);
+                this.neededAttributes = filterNames;
+            } else {
+                // the filter may read any attribute
+                this.neededAttributes = null;
+            }
+        } else {
+            this.attributesToGet = null;
+            this.neededAttributes = null;
+        }
+    }
+
+    public boolean handle(ConnectorObject object) {
+        if (normalizer == null && attributesToGet == null) {
+            return (filter == null || filter.accept(object)) && handler.handle(object);
+        }
+        Set<Attribute> source = object.getAttributes();
+        List<Attribute> attributes = new ArrayList<Attribute>(source.size());
+        boolean changed = false;
+        int notToGet = 0;
+        for (Attribute attribute : source) {
+            String name = attribute.getName();
+            if (neededAttributes != null && !neededAttributes.contains(name)) {
+                changed = true;
+                continue;
+            }
+            Attribute normalized =
+                    normalizer != null ? normalizer.normalizeAttribute(attribute) : attribute;
+            changed |= normalized != attribute;
+            if (attributesToGet != null && !attributesToGet.contains(name)) {
+                notToGet++;
+            }
+            attributes.add(normalized);
+        }
+        ConnectorObject result =
+                changed ? new ConnectorObject(object.getObjectClass(), new AttributeSet(attributes))
+                        : object;
+        if (filter != null && !filter.accept(result)) {
+            return true;
+        }
+        if (notToGet > 0) {
+            // drop the attributes which were only needed by the filter
+            List<Attribute> reduced = new ArrayList<Attribute>(attributes.size() - notToGet);
+            for (Attribute attribute : attributes) {
+                if (attributesToGet.contains(attribute.getName())) {
+                    reduced.add(attribute);
+                }
+            }
+            result = new ConnectorObject(object.getObjectClass(), new AttributeSet(reduced));
+        }
+        return handler.handle(result);
+    }
+
+    /**
+     * Read only view of the attributes of a result, which have distinct names
+     * already, the {@link ConnectorObject} only iterates over it.
+     */
+    private static final class AttributeSet extends AbstractSet<Attribute> {
+
+        private final List<Attribute> attributes;
+
+        private AttributeSet(List<Attribute> attributes) {
+            this.attributes = attributes;
+        }
+
+        @Override
+        public Iterator<Attribute> iterator() {
+            return attributes.iterator();
+        }
+
+        @Override
+        public int size() {
+            return attributes.size();
+        }
+    }
+
+    /**
+     * Collects the names of the attributes read by a filter, returns false if
+     * the filter may read other attributes too.
+     */
+    private static final class FilterAttributeNames implements FilterVisitor<Boolean, Set<String>> {
+
+        private static final FilterAttributeNames INSTANCE = new FilterAttributeNames();
+
+        private Boolean add(Set<String> names, AttributeFilter filter) {
+            names.add(filter.getName());
+            return Boolean.TRUE;
+        }
+
+        public Boolean visitAndFilter(Set<String> names, AndFilter filter) {
+            return filter.getLeft().accept(this, names) && filter.getRight().accept(this, names);
+        }
+
+        public Boolean visitContainsFilter(Set<String> names, ContainsFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitContainsAllValuesFilter(Set<String> names,
+                ContainsAllValuesFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitEqualsFilter(Set<String> names, EqualsFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitExtendedFilter(Set<String> names, Filter filter) {
+            if (filter instanceof FilteredResultsHandler.PassThroughFilter) {
+                return Boolean.TRUE;
+            } else if (filter instanceof NormalizingFilter) {
+                return ((NormalizingFilter) filter).getFilter().accept(this, names);
+            }
+            return Boolean.FALSE;
+        }
+
+        public Boolean visitGreaterThanFilter(Set<String> names, GreaterThanFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitGreaterThanOrEqualFilter(Set<String> names,
+                GreaterThanOrEqualFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitLessThanFilter(Set<String> names, LessThanFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitLessThanOrEqualFilter(Set<String> names, LessThanOrEqualFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitNotFilter(Set<String> names, NotFilter filter) {
+            return filter.getFilter().accept(this, names);
+        }
+
+        public Boolean visitOrFilter(Set<String> names, OrFilter filter) {
+            return filter.getLeft().accept(this, names) && filter.getRight().accept(this, names);
+        }
+
+        public Boolean visitStartsWithFilter(Set<String> names, StartsWithFilter filter) {
+            return add(names, filter);
+        }
+
+        public Boolean visitEndsWithFilter(Set<String> names, EndsWithFilter filter) {
+            return add(names, filter);
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.OperationalAttributes;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.GetOp;
 import org.identityconnectors.framework.spi.operations.SearchOp;
 import org.identityconnectors.framework.spi.operations.UpdateAttributeValuesOp;
 import org.identityconnectors.framework.spi.operations.UpdateOp;
@@ -141,8 +142,8 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
 
     private Set<Attribute> fetchAndMerge(ObjectClass objclass, Uid uid,
             Set<Attribute> valuesToChange, boolean add, OperationOptions options) {
-        // check that this connector supports Search..
-        if (!(getConnector() instanceof SearchOp)) {
+        // check that this connector supports Get or Search..
+        if (!(getConnector() instanceof GetOp) && !(getConnector() instanceof SearchOp)) {
             throw new UnsupportedOperationException("Connector must support: " + SearchOp.class);
         }
 
@@ -220,7 +221,10 @@ public class UpdateImpl extends ConnectorAPIOperationRunner implements
      */
     private ConnectorObject getConnectorObject(ObjectClass oclass, Uid uid, OperationOptions options) {
         // attempt to get the connector object..
-        GetApiOp get = new GetImpl(new SearchImpl(getOperationalContext(), getConnector()));
+        GetApiOp get =
+                getConnector() instanceof GetOp ? new NativeGetImpl(getOperationalContext(),
+                        getConnector()) : new GetImpl(new SearchImpl(getOperationalContext(),
+                        getConnector()));
         return get.getObject(oclass, uid, options);
     }
 
@@ -0,0 +1,95 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Deflate stream which is sync-flushed on every {@link #flush()}, so the
+ * peer can inflate each message as soon as it is sent.
+ * <p/>
+ * The data written between two flushes is held back until it reaches the
+ * threshold. Smaller messages are sent as stored blocks because compressing
+ * them costs more CPU than it saves bandwidth.
+ */
+class CompressingOutputStream extends OutputStream {
+
+    private final Deflater deflater;
+    private final DeflaterOutputStream out;
+    private final int level;
+    private final byte[] pending;
+    private int count = 0;
+    private boolean compressing = false;
+
+    public CompressingOutputStream(OutputStream out, int level, int threshold) {
+        this.level = level;
+        this.deflater = new Deflater(level);
+        this.out = new DeflaterOutputStream(out, deflater, 4096, true);
+        this.pending = new byte[Math.max(0, threshold)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (!compressing) {
+            if (count + len <= pending.length) {
+                System.arraycopy(b, off, pending, count, len);
+                count += len;
+                return;
+            }
+            // the message is large enough to compress
+            deflater.setLevel(level);
+            compressing = true;
+            out.write(pending, 0, count);
+            count = 0;
+        }
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            deflater.setLevel(Deflater.NO_COMPRESSION);
+            out.write(pending, 0, count);
+            count = 0;
+        }
+        compressing = false;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            deflater.end();
+        }
+    }
+}
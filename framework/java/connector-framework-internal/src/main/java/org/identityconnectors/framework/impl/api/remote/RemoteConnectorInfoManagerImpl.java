@@ -110,6 +110,8 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
 
         List<ConnectorInfo> connectorInfoBefore = connectorInfoList;
         connectorInfoList = CollectionUtil.<ConnectorInfo>newReadOnlyList(remoteInfos);
+        RemoteFrameworkConnectionPool.getInstance().setServerInfo(frameworkConnectionInfo,
+                response.getServerInfo());
         Object o = response.getServerInfo().get(HelloResponse.SERVER_START_TIME);
         if (o instanceof Long) {
             serverStartTime = (Long) o;
@@ -257,6 +259,8 @@ public class RemoteConnectorInfoManagerImpl implements ConnectorInfoManager,
             } else if (response.getException() != null) {
                 throw ConnectorException.wrap(response.getException());
             }
+            RemoteFrameworkConnectionPool.getInstance().setServerInfo(frameworkConnectionInfo,
+                    response.getServerInfo());
             return response.getServerInfo();
         } finally {
             connection.close();
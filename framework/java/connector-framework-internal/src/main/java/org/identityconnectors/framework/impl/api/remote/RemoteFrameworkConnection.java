@@ -22,13 +22,20 @@
  */
 package org.identityconnectors.framework.impl.api.remote;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -42,17 +49,57 @@ import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
 
 public class RemoteFrameworkConnection implements Closeable {
 
+    /**
+     * Sent by the client instead of the object stream header to request a
+     * compressed connection. It is followed by the codec, the compression
+     * level and the threshold, then both directions are compressed.
+     */
+    public static final int COMPRESSION_MAGIC = 0xFAFC;
+
+    /**
+     * Deflate codec of the JDK.
+     */
+    public static final byte COMPRESSION_DEFLATE = 1;
+
+    /**
+     * Name of the deflate codec in the
+     * {@link org.identityconnectors.framework.impl.api.remote.messages.HelloResponse#COMPRESSION_CODECS}
+     * server info.
+     */
+    public static final String DEFLATE = "deflate";
+
     private static final Log LOG = Log.getLog(RemoteFrameworkConnection.class);
     private Socket socket;
     private BinaryObjectSerializer encoder;
     private BinaryObjectDeserializer decoder;
+    private CompressingOutputStream compressingOutput;
+    private Inflater inflater;
+    private boolean reused = false;
 
     public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info) {
+        this(info, 0, 0);
+    }
+
+    /**
+     * Opens a connection to the remote server.
+     *
+     * @param info
+     *            the remote server to connect to.
+     * @param compressionLevel
+     *            the deflate level (1-9) to use or 0 for an uncompressed
+     *            connection. The server must support compression.
+     * @param compressionThreshold
+     *            messages smaller than this number of bytes are sent without
+     *            compression.
+     */
+    public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info, int compressionLevel,
+            int compressionThreshold) {
         try {
-            init(info);
+            init(info, compressionLevel, compressionThreshold);
         } catch (SocketException e) {
             throw new ConnectorIOException("Failed to init remote connection to "
                     + (null != info ? info.toString() : "null"), e);
@@ -62,19 +109,16 @@ public class RemoteFrameworkConnection implements Closeable {
         }
     }
 
+    /**
+     * Accepts a connection on the server side. Whether it is compressed is
+     * decided by the first bytes the client sends.
+     */
     public RemoteFrameworkConnection(Socket socket) {
-        try {
-            init(socket);
-        } catch (SocketException e) {
-            throw new ConnectorIOException("Failed to init remote connection to "
-                    + (null != socket ? socket.toString() : "null"), e);
-        } catch (Exception e) {
-            throw new ConnectorException("Failed to init remote connection to "
-                    + (null != socket ? socket.toString() : "null"), e);
-        }
+        this.socket = socket;
     }
 
-    private void init(RemoteFrameworkConnectionInfo connectionInfo) throws Exception {
+    private void init(RemoteFrameworkConnectionInfo connectionInfo, int compressionLevel,
+            int compressionThreshold) throws Exception {
         Socket socket = new Socket();
         socket.setSoTimeout(connectionInfo.getTimeout());
         socket.connect(new InetSocketAddress(connectionInfo.getHost(), connectionInfo.getPort()),
@@ -110,20 +154,106 @@ public class RemoteFrameworkConnection implements Closeable {
             }
             throw e;
         }
-        init(socket);
+        this.socket = socket;
+        InputStream inputStream = socket.getInputStream();
+        OutputStream outputStream = socket.getOutputStream();
+        if (compressionLevel > 0) {
+            DataOutputStream header = new DataOutputStream(outputStream);
+            header.writeInt(COMPRESSION_MAGIC);
+            header.writeByte(COMPRESSION_DEFLATE);
+            header.writeByte(compressionLevel);
+            header.writeInt(compressionThreshold);
+            initStreams(inputStream, outputStream, compressionLevel, compressionThreshold);
+        } else {
+            initStreams(inputStream, outputStream, 0, 0);
+        }
     }
 
-    private void init(Socket socket) throws Exception {
-        this.socket = socket;
-        InputStream inputStream = this.socket.getInputStream();
-        OutputStream outputStream = this.socket.getOutputStream();
+    /**
+     * Reads the first bytes sent by the client to find out if it requests
+     * compression.
+     */
+    private void initServerStreams() throws IOException {
+        PushbackInputStream inputStream = new PushbackInputStream(socket.getInputStream(), 4);
+        DataInputStream header = new DataInputStream(inputStream);
+        byte[] magic = new byte[4];
+        header.readFully(magic);
+        if (((magic[0] & 0xFF) << 24 | (magic[1] & 0xFF) << 16 | (magic[2] & 0xFF) << 8 | (magic[3] & 0xFF)) == COMPRESSION_MAGIC) {
+            byte codec = header.readByte();
+            if (codec != COMPRESSION_DEFLATE) {
+                throw new ConnectorException("Unsupported compression codec: " + codec);
+            }
+            int compressionLevel = header.readByte();
+            int compressionThreshold = header.readInt();
+            initStreams(inputStream, socket.getOutputStream(), compressionLevel,
+                    compressionThreshold);
+        } else {
+            inputStream.unread(magic);
+            initStreams(inputStream, socket.getOutputStream(), 0, 0);
+        }
+    }
+
+    private void initStreams(InputStream inputStream, OutputStream outputStream,
+            int compressionLevel, int compressionThreshold) {
+        if (compressionLevel > 0) {
+            // the deflater writes in small pieces, collect them into one
+            // packet per message
+            compressingOutput =
+                    new CompressingOutputStream(new BufferedOutputStream(outputStream, 8192),
+                            compressionLevel, compressionThreshold);
+            outputStream = compressingOutput;
+            inflater = new Inflater();
+            inputStream = new DecompressingInputStream(inputStream, inflater);
+        }
         ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
         encoder = factory.newBinarySerializer(outputStream);
         decoder = factory.newBinaryDeserializer(inputStream);
     }
 
+    private void ensureStreams() {
+        if (null == encoder) {
+            try {
+                initServerStreams();
+            } catch (IOException e) {
+                throw ConnectorException.wrap(e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the data sent over this connection is compressed.
+     */
+    public boolean isCompressed() {
+        return null != compressingOutput;
+    }
+
+    /**
+     * Closes the socket without flushing. May be called from another thread
+     * to make a thread blocked on this connection fail.
+     */
+    public void abort() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.ok(e, "Failed to abort remote connection");
+        }
+    }
+
     public void close() {
-        flush();
+        try {
+            if (null != encoder) {
+                flush();
+            }
+        } finally {
+            if (null != compressingOutput) {
+                try {
+                    compressingOutput.close();
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to finish compressed stream");
+                }
+                inflater.end();
+            }
+        }
         try {
             if (socket instanceof SSLSocket) {
                 // SSLSocket doesn't like shutdownOutput/shutdownInput
@@ -139,18 +269,69 @@ public class RemoteFrameworkConnection implements Closeable {
         }
     }
 
+    /**
+     * Returns true if this connection already carried a request and was
+     * taken from the {@link RemoteFrameworkConnectionPool}.
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    void setReused(boolean reused) {
+        this.reused = reused;
+    }
+
     public void flush() {
-        encoder.flush();
+        if (null != encoder) {
+            encoder.flush();
+        }
     }
 
     public void writeObject(Object object) {
+        ensureStreams();
         encoder.writeObject(object);
     }
 
+    /**
+     * Returns true if the peer already sent data which was not read yet.
+     * Reading an object after this returned true does not wait for the peer
+     * (unless the object is still in transit).
+     */
+    public boolean hasPendingInput() {
+        ensureStreams();
+        if (decoder instanceof BinaryObjectDecoder) {
+            // the decoder reads ahead, its buffer may already hold the data
+            return ((BinaryObjectDecoder) decoder).available() > 0;
+        }
+        try {
+            return socket.getInputStream().available() > 0;
+        } catch (IOException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     public Object readObject() {
         // flush first in case there is any data in the
         // output buffer
         flush();
+        ensureStreams();
         return decoder.readObject();
     }
+
+    /**
+     * {@link InflaterInputStream#available()} returns 1 until the end of the
+     * stream, this one only if the inflater or the underlying stream still
+     * has input.
+     */
+    private static class DecompressingInputStream extends InflaterInputStream {
+
+        DecompressingInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, 4096);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inf.getRemaining() > 0 || in.available() > 0 ? 1 : 0;
+        }
+    }
 }
@@ -0,0 +1,335 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+
+/**
+ * Keeps authenticated {@link RemoteFrameworkConnection}s open between remote
+ * calls.
+ * <p/>
+ * The connector server processes requests on a socket one after the other
+ * until the client closes it, so a connection which finished a request
+ * cleanly can carry the next one. This saves the TCP connect, the SSL
+ * handshake and the setup of the encoder/decoder pair for every call and it
+ * keeps the constant pool of the binary encoding warm. Connections are
+ * borrowed exclusively for the duration of one request; concurrent calls
+ * share the small set of idle sockets kept per server.
+ * <p/>
+ * The idle time limit must stay below the keep-alive timeout of the server
+ * (see {@link org.identityconnectors.framework.server.ConnectorServer#getKeepAliveTimeout()})
+ * so a pooled socket is never closed by the server while the client still
+ * considers it usable.
+ */
+public final class RemoteFrameworkConnectionPool {
+
+    private static final Log LOG = Log.getLog(RemoteFrameworkConnectionPool.class);
+
+    /**
+     * Default number of idle connections kept per remote server.
+     */
+    public static final int DEFAULT_MAX_IDLE = 10;
+
+    /**
+     * Default time in milliseconds an idle connection is kept open.
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Default size in bytes under which a message is sent uncompressed.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 512;
+
+    private static final RemoteFrameworkConnectionPool INSTANCE =
+            new RemoteFrameworkConnectionPool();
+
+    /**
+     * Idle connection together with the time it was returned.
+     */
+    private static final class IdleConnection {
+        private final RemoteFrameworkConnection connection;
+        private final long idleSince;
+
+        private IdleConnection(RemoteFrameworkConnection connection) {
+            this.connection = connection;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private final Map<RemoteFrameworkConnectionInfo, LinkedList<IdleConnection>> idleConnections =
+            new ConcurrentHashMap<RemoteFrameworkConnectionInfo, LinkedList<IdleConnection>>();
+
+    private volatile int maxIdle = DEFAULT_MAX_IDLE;
+
+    private volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+
+    private volatile int compressionLevel = 0;
+
+    private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+    /**
+     * Servers which announced the deflate codec in their server info.
+     */
+    private final Set<RemoteFrameworkConnectionInfo> compressionSupported = Collections
+            .newSetFromMap(new ConcurrentHashMap<RemoteFrameworkConnectionInfo, Boolean>());
+
+    private RemoteFrameworkConnectionPool() {
+    }
+
+    /**
+     * Get the shared pool instance.
+     */
+    public static RemoteFrameworkConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the maximum number of idle connections kept per remote server.
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept per remote server. A
+     * value of 0 disables pooling, every call opens a new connection.
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+        if (maxIdle <= 0) {
+            dispose();
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds an idle connection is kept open.
+     */
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept open.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Returns the deflate level of new connections, 0 if compression is
+     * disabled.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate level (1 fastest - 9 best) used for new connections to
+     * servers which support compression. The default 0 disables compression;
+     * it only pays off on slow links with large search results or sync
+     * batches.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the size in bytes under which a message is sent uncompressed.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the size in bytes under which a message is sent uncompressed.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = Math.max(0, compressionThreshold);
+    }
+
+    /**
+     * Records the capabilities the server sent in its
+     * {@link org.identityconnectors.framework.impl.api.remote.messages.HelloResponse}.
+     */
+    public void setServerInfo(RemoteFrameworkConnectionInfo info, Map<String, Object> serverInfo) {
+        Object codecs = null != serverInfo ? serverInfo.get(HelloResponse.COMPRESSION_CODECS) : null;
+        if (codecs instanceof String
+                && Arrays.asList(((String) codecs).split(",")).contains(
+                        RemoteFrameworkConnection.DEFLATE)) {
+            compressionSupported.add(info);
+        } else {
+            compressionSupported.remove(info);
+        }
+    }
+
+    /**
+     * Borrows an idle connection to the given server or opens a new one.
+     *
+     * @param info
+     *            the remote server to connect to.
+     * @return a connection which is ready to receive the next request. It
+     *         must be given back with either
+     *         {@link #returnConnection(RemoteFrameworkConnectionInfo, RemoteFrameworkConnection)}
+     *         or {@link #invalidateConnection(RemoteFrameworkConnection)}.
+     */
+    public RemoteFrameworkConnection borrowConnection(RemoteFrameworkConnectionInfo info) {
+        LinkedList<IdleConnection> idle = idleConnections.get(info);
+        if (null != idle) {
+            long now = System.currentTimeMillis();
+            while (true) {
+                IdleConnection entry;
+                synchronized (idle) {
+                    entry = idle.pollLast();
+                }
+                if (null == entry) {
+                    break;
+                }
+                if (now - entry.idleSince < maxIdleTime) {
+                    entry.connection.setReused(true);
+                    return entry.connection;
+                }
+                invalidateConnection(entry.connection);
+            }
+        }
+        return openConnection(info);
+    }
+
+    /**
+     * Opens a new connection to the given server, compressed if the server
+     * supports it, without looking for an idle one.
+     *
+     * @param info
+     *            the remote server to connect to.
+     * @return a new connection, it must be given back like the borrowed
+     *         ones.
+     */
+    public RemoteFrameworkConnection openConnection(RemoteFrameworkConnectionInfo info) {
+        if (compressionLevel > 0 && compressionSupported.contains(info)) {
+            return new RemoteFrameworkConnection(info, compressionLevel, compressionThreshold);
+        }
+        return new RemoteFrameworkConnection(info);
+    }
+
+    /**
+     * Gives back a connection after the request/response exchange finished
+     * without a protocol or I/O error.
+     */
+    public void returnConnection(RemoteFrameworkConnectionInfo info,
+            RemoteFrameworkConnection connection) {
+        if (maxIdle <= 0) {
+            invalidateConnection(connection);
+            return;
+        }
+        LinkedList<IdleConnection> idle = idleConnections.get(info);
+        if (null == idle) {
+            synchronized (idleConnections) {
+                idle = idleConnections.get(info);
+                if (null == idle) {
+                    idle = new LinkedList<IdleConnection>();
+                    idleConnections.put(info, idle);
+                }
+            }
+        }
+        IdleConnection evicted = null;
+        synchronized (idle) {
+            idle.addLast(new IdleConnection(connection));
+            if (idle.size() > maxIdle) {
+                evicted = idle.removeFirst();
+            }
+        }
+        if (null != evicted) {
+            invalidateConnection(evicted.connection);
+        }
+        evictIdle();
+    }
+
+    /**
+     * Closes a connection which is in an unknown state and must not be used
+     * again.
+     */
+    public void invalidateConnection(RemoteFrameworkConnection connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            LOG.ok(e, "Failed to close remote connection");
+        }
+    }
+
+    /**
+     * Closes the connections which have been idle longer than the configured
+     * limit.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<IdleConnection> expired = new ArrayList<IdleConnection>();
+        for (LinkedList<IdleConnection> idle : idleConnections.values()) {
+            synchronized (idle) {
+                Iterator<IdleConnection> iterator = idle.iterator();
+                while (iterator.hasNext()) {
+                    IdleConnection entry = iterator.next();
+                    if (now - entry.idleSince < maxIdleTime) {
+                        // entries are ordered by the time they were returned
+                        break;
+                    }
+                    iterator.remove();
+                    expired.add(entry);
+                }
+            }
+        }
+        for (IdleConnection entry : expired) {
+            invalidateConnection(entry.connection);
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    public void dispose() {
+        List<IdleConnection> all = new ArrayList<IdleConnection>();
+        for (LinkedList<IdleConnection> idle : idleConnections.values()) {
+            synchronized (idle) {
+                all.addAll(idle);
+                idle.clear();
+            }
+        }
+        for (IdleConnection entry : all) {
+            invalidateConnection(entry.connection);
+        }
+    }
+}
@@ -23,16 +23,30 @@
  */
 package org.identityconnectors.framework.impl.api.remote;
 
-import java.lang.reflect.InvocationHandler;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.lang.reflect.Method;
+import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.GetApiOp;
+import org.identityconnectors.framework.api.operations.ResolveUsernameApiOp;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.SyncApiOp;
+import org.identityconnectors.framework.api.operations.TestApiOp;
+import org.identityconnectors.framework.api.operations.ValidateApiOp;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.MethodTimeoutProxy;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
@@ -45,7 +59,24 @@ import org.identityconnectors.framework.impl.api.remote.messages.OperationRespon
 /**
  * Invocation handler for all of our operations
  */
-public class RemoteOperationInvocationHandler implements InvocationHandler {
+public class RemoteOperationInvocationHandler implements MethodTimeoutProxy.CancellableHandler {
+
+    private static final Log LOG = Log.getLog(RemoteOperationInvocationHandler.class);
+
+    /**
+     * Number of results the server may stream ahead of the client. The server
+     * grows its window up to this limit while it has to wait for the client.
+     */
+    public static final int RESULTS_WINDOW = 5000;
+
+    /**
+     * Operations without side effects on the resource.
+     */
+    private static final Set<Class<? extends APIOperation>> IDEMPOTENT_OPERATIONS =
+            new HashSet<Class<? extends APIOperation>>(Arrays.<Class<? extends APIOperation>> asList(
+                    GetApiOp.class, SearchApiOp.class, SchemaApiOp.class, TestApiOp.class,
+                    ValidateApiOp.class, SyncApiOp.class, ResolveUsernameApiOp.class));
+
     private final RemoteConnectorInfoImpl connectorInfo;
     private final String connectorFacadeKey;
     private final Class<? extends APIOperation> operation;
@@ -73,52 +104,123 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
         RemoteFrameworkConnectionInfo connectionInfo = connectorInfo.getRemoteConnectionInfo();
         OperationRequest request =
                 new OperationRequest(connectorInfo.getConnectorKey(), connectorFacadeKey,
-                        operation, method.getName(), simpleMarshallArgs);
-
-        // create the connection
-        RemoteFrameworkConnection connection = null;
+                        operation, method.getName(), simpleMarshallArgs,
+                        streamHandlerArg != null ? RESULTS_WINDOW : 0);
 
+        RemoteFrameworkConnectionPool pool = RemoteFrameworkConnectionPool.getInstance();
+        RemoteFrameworkConnection connection = pool.borrowConnection(connectionInfo);
+        boolean reusable = false;
         try {
-            connection = new RemoteFrameworkConnection(connectionInfo);
-            connection.writeObject(CurrentLocale.get());
-            connection.writeObject(connectionInfo.getKey());
-            // send the request
-            connection.writeObject(request);
+            Object response;
+            boolean written = false;
+            try {
+                MethodTimeoutProxy.setCancellable(abortOnTimeout(connection));
+                writeRequest(connection, connectionInfo, request);
+                written = true;
+                response = connection.readObject();
+            } catch (RuntimeException e) {
+                if (!connection.isReused() || !isBrokenConnection(e)
+                        || Thread.currentThread().isInterrupted()
+                        || (written && !isIdempotent(operation))) {
+                    throw e;
+                }
+                // the server closed the idle connection. Either the request
+                // was not sent, or the operation has no side effect and
+                // returned nothing yet, send it again over a new connection,
+                // the other idle connections are likely closed as well
+                pool.invalidateConnection(connection);
+                connection = null;
+                connection = pool.openConnection(connectionInfo);
+                MethodTimeoutProxy.setCancellable(abortOnTimeout(connection));
+                writeRequest(connection, connectionInfo, request);
+                response = connection.readObject();
+            }
 
             // now process the response stream (if any)
             if (streamHandlerArg != null) {
-                handleStreamResponse(connection, streamHandlerArg);
+                response = handleStreamResponse(connection, response, streamHandlerArg);
             }
 
             // finally return the actual return value
-            OperationResponsePart response = (OperationResponsePart) connection.readObject();
-            if (response.getException() != null) {
-                throw response.getException();
+            OperationResponsePart part = (OperationResponsePart) response;
+            // the exchange is complete, the connection can carry the next
+            // request
+            reusable = true;
+            if (part.getException() != null) {
+                throw part.getException();
             }
-            return response.getResult();
+            return part.getResult();
         } finally {
+            MethodTimeoutProxy.setCancellable(null);
             if (null != connection) {
-                connection.close();
+                if (reusable) {
+                    pool.returnConnection(connectionInfo, connection);
+                } else {
+                    pool.invalidateConnection(connection);
+                }
             }
         }
 
     }
 
     /**
-     * Handles a stream response until the end of the stream
+     * Socket I/O does not react to the interruption of a timed out operation,
+     * it must be closed.
+     */
+    private static Closeable abortOnTimeout(final RemoteFrameworkConnection connection) {
+        return new Closeable() {
+            public void close() {
+                connection.abort();
+            }
+        };
+    }
+
+    /**
+     * Writes and flushes the request.
+     */
+    private static void writeRequest(final RemoteFrameworkConnection connection,
+            final RemoteFrameworkConnectionInfo connectionInfo, final OperationRequest request) {
+        connection.writeObject(CurrentLocale.get());
+        connection.writeObject(connectionInfo.getKey());
+        // send the request
+        connection.writeObject(request);
+        connection.flush();
+    }
+
+    /**
+     * Returns true if the operation can be sent again after the connection
+     * broke while waiting for the first response. The server may already have
+     * executed the request, so only operations without side effects qualify.
+     */
+    static boolean isIdempotent(Class<? extends APIOperation> operation) {
+        return IDEMPOTENT_OPERATIONS.contains(operation);
+    }
+
+    private static boolean isBrokenConnection(RuntimeException e) {
+        return e.getCause() instanceof EOFException || e.getCause() instanceof SocketException;
+    }
+
+    /**
+     * Handles a stream response until the end of the stream.
+     *
+     * @return the final {@link OperationResponsePart} of the operation.
      */
-    private static void handleStreamResponse(final RemoteFrameworkConnection connection,
-            final ObjectStreamHandler streamHandler) throws ConnectorException {
-        Object response;
+    private static Object handleStreamResponse(final RemoteFrameworkConnection connection,
+            final Object firstResponse, final ObjectStreamHandler streamHandler)
+            throws ConnectorException {
+        Object response = firstResponse;
         boolean handleMore = true;
+        long count = 0;
+        long startTime = System.currentTimeMillis();
         while (true) {
-            response = connection.readObject();
             if (response instanceof OperationResponsePart) {
                 OperationResponsePart part = (OperationResponsePart) response;
                 if (part.getException() != null) {
-                    throw part.getException();
+                    // the operation failed, this is the last message
+                    return part;
                 }
                 Object object = part.getResult();
+                count++;
                 if (handleMore) {
                     handleMore = streamHandler.handle(object);
                 }
@@ -129,10 +231,16 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                     connection.writeObject(new OperationRequestStopData());
                 }
             } else if (response instanceof OperationResponseEnd) {
-                break;
+                if (LOG.isOk() && count > 0) {
+                    long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                    LOG.ok("Received {0} results in {1} ms ({2} objects/sec)", count, elapsed,
+                            count * 1000 / elapsed);
+                }
+                return connection.readObject();
             } else {
                 throw new ConnectorException("Unexpected response: " + response);
             }
+            response = connection.readObject();
         }
     }
 
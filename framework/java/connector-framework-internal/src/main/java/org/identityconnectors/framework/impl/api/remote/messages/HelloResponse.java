@@ -37,6 +37,11 @@ import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 public class HelloResponse implements Message {
 
     public static final String SERVER_START_TIME = "SERVER_START_TIME";
+    /**
+     * Comma separated names of the transport compression codecs the server
+     * accepts. Older servers don't send it and support no compression.
+     */
+    public static final String COMPRESSION_CODECS = "COMPRESSION_CODECS";
     /**
      * The exception
      */
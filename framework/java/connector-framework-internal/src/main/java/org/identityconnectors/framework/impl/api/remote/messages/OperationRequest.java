@@ -63,14 +63,29 @@ public class OperationRequest implements Message {
      */
     private final List<Object> arguments;
 
+    /**
+     * The number of results the server may stream ahead before it waits for
+     * the client to answer an {@link OperationResponsePause}. A value of zero
+     * means the client did not grant any credit, the server waits at every
+     * pause (this is what older clients expect).
+     */
+    private final int resultsWindow;
+
     public OperationRequest(ConnectorKey key, String connectorFacadeKey,
             Class<? extends APIOperation> operation, String operationMethodName,
             List<Object> arguments) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, 0);
+    }
+
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, int resultsWindow) {
         connectorKey = key;
         configuration = connectorFacadeKey;
         this.operation = operation;
         this.operationMethodName = operationMethodName;
         this.arguments = CollectionUtil.newReadOnlyList(arguments);
+        this.resultsWindow = resultsWindow;
     }
 
     public ConnectorKey getConnectorKey() {
@@ -92,4 +107,8 @@ public class OperationRequest implements Message {
     public List<Object> getArguments() {
         return arguments;
     }
+
+    public int getResultsWindow() {
+        return resultsWindow;
+    }
 }
@@ -24,8 +24,10 @@ package org.identityconnectors.framework.impl.api.remote.messages;
 
 /**
  * Special marker class to ask if the client wants more data.
- * At this point the client will respond with either
- * OperationRequestMoreData or OperationRequestStopData
+ * The client responds to every pause with either
+ * OperationRequestMoreData or OperationRequestStopData. Depending on the
+ * results window of the request the server keeps streaming until the answer
+ * arrives.
  */
 public class OperationResponsePause implements Message {
 
@@ -58,6 +58,16 @@ class APIConfigurationHandlers {
                 rv.setMinEvictableIdleTimeMillis(decoder.readLongField(
                         "minEvictableIdleTimeMillis", rv.getMinEvictableIdleTimeMillis()));
                 rv.setMinIdle(decoder.readIntField("minIdle", rv.getMinIdle()));
+                rv.setMaxLifetimeMillis(decoder.readLongField("maxLifetimeMillis", rv
+                        .getMaxLifetimeMillis()));
+                rv.setPrewarm(decoder.readBooleanField("prewarm", rv.isPrewarm()));
+                String policy = decoder.readStringField("validationPolicy", null);
+                if (null != policy) {
+                    rv.setValidationPolicy(ObjectPoolConfiguration.ValidationPolicy
+                            .valueOf(policy));
+                }
+                rv.setValidationIntervalMillis(decoder.readLongField("validationIntervalMillis",
+                        rv.getValidationIntervalMillis()));
                 return rv;
             }
 
@@ -69,6 +79,19 @@ class APIConfigurationHandlers {
                 encoder.writeLongField("minEvictableIdleTimeMillis", val
                         .getMinEvictableIdleTimeMillis());
                 encoder.writeIntField("minIdle", val.getMinIdle());
+                // only written when set, older peers don't know them
+                if (val.getMaxLifetimeMillis() > 0) {
+                    encoder.writeLongField("maxLifetimeMillis", val.getMaxLifetimeMillis());
+                }
+                if (val.isPrewarm()) {
+                    encoder.writeBooleanField("prewarm", val.isPrewarm());
+                }
+                if (val.getValidationPolicy() != ObjectPoolConfiguration.ValidationPolicy.ALWAYS) {
+                    encoder.writeStringField("validationPolicy", val.getValidationPolicy()
+                            .name());
+                    encoder.writeLongField("validationIntervalMillis", val
+                            .getValidationIntervalMillis());
+                }
             }
 
         });
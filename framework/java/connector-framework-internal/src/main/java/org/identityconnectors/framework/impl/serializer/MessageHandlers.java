@@ -107,8 +107,9 @@ class MessageHandlers {
                 @SuppressWarnings("unchecked")
                 final List<Object> arguments =
                         (List) decoder.readObjectField("Arguments", List.class, null);
+                final int resultsWindow = decoder.readIntField("resultsWindow", 0);
                 return new OperationRequest(connectorKey, connectorFacadeKey, operation,
-                        operationMethodName, arguments);
+                        operationMethodName, arguments, resultsWindow);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
@@ -118,6 +119,9 @@ class MessageHandlers {
                 encoder.writeObjectField("ConnectorKey", val.getConnectorKey(), true);
                 encoder.writeStringField("connectorFacadeKey", val.getConnectorFacadeKey());
                 encoder.writeObjectField("Arguments", val.getArguments(), true);
+                if (val.getResultsWindow() > 0) {
+                    encoder.writeIntField("resultsWindow", val.getResultsWindow());
+                }
             }
         });
 
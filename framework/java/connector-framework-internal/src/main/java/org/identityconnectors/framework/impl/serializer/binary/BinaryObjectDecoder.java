@@ -25,6 +25,7 @@ package org.identityconnectors.framework.impl.serializer.binary;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
@@ -43,21 +44,56 @@ import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
 
 public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeserializer {
 
+    /**
+     * Content of a field: a range of the array which holds the enclosing
+     * top-level object. Nested fields point into the same array, so reading
+     * them does not copy any bytes.
+     */
+    private static class FieldContent {
+        private final byte[] buf;
+        private final int offset;
+        private final int length;
+
+        public FieldContent(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class FieldInputStream extends ByteArrayInputStream {
+
+        public FieldInputStream(FieldContent content) {
+            super(content.buf, content.offset, content.length);
+        }
+
+        public FieldContent readContent(int length) throws EOFException {
+            if (length < 0 || count - pos < length) {
+                throw new EOFException();
+            }
+            FieldContent content = new FieldContent(buf, pos, length);
+            pos += length;
+            return content;
+        }
+    }
+
     private static class ReadState {
-        public Map<String, byte[]> objectFields = new HashMap<String, byte[]>();
-        public List<byte[]> anonymousFields = new ArrayList<byte[]>();
+        public Map<String, FieldContent> objectFields = new HashMap<String, FieldContent>();
+        public List<FieldContent> anonymousFields = new ArrayList<FieldContent>();
+        public FieldInputStream currentField;
         public DataInputStream currentInput;
 
         public ReadState() {
         }
 
         public boolean startField(String name) {
+            currentField = null;
             currentInput = null;
-            byte[] content = objectFields.get(name);
+            FieldContent content = objectFields.get(name);
             if (content == null) {
                 return false;
             } else {
-                currentInput = new DataInputStream(new ByteArrayInputStream(content));
+                startField(content);
                 return true;
             }
         }
@@ -66,8 +102,12 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             if (index >= anonymousFields.size()) {
                 throw new ConnectorException("Anonymous content not found");
             }
-            currentInput =
-                    new DataInputStream(new ByteArrayInputStream(anonymousFields.get(index)));
+            startField(anonymousFields.get(index));
+        }
+
+        private void startField(FieldContent content) {
+            currentField = new FieldInputStream(content);
+            currentInput = new DataInputStream(currentField);
         }
     }
 
@@ -116,12 +156,10 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
                 if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
                     break;
                 } else if (type == BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
-                    byte[] bytes = readByteArray();
-                    state.anonymousFields.add(bytes);
+                    state.anonymousFields.add(readFieldContent());
                 } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
                     String fieldName = readString(true);
-                    byte[] bytes = readByteArray();
-                    state.objectFields.put(fieldName, bytes);
+                    state.objectFields.put(fieldName, readFieldContent());
                 } else {
                     throw new ConnectorException("Unknown type: " + type);
                 }
@@ -228,6 +266,26 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             }
         }
 
+        /**
+         * Reads a length prefixed field. Fields of a top-level object are
+         * read from the stream, nested fields are taken from the content of
+         * their parent without copying.
+         */
+        private FieldContent readFieldContent() {
+            try {
+                int length = getCurrentInput().readInt();
+                FieldInputStream field = getCurrentField();
+                if (field != null) {
+                    return field.readContent(length);
+                }
+                byte[] bytes = new byte[length];
+                getCurrentInput().readFully(bytes);
+                return new FieldContent(bytes, 0, length);
+            } catch (IOException e) {
+                throw ConnectorException.wrap(e);
+            }
+        }
+
         public byte readByte() {
             try {
                 return getCurrentInput().readByte();
@@ -255,13 +313,22 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             }
 
             try {
-                byte[] bytes = readByteArray();
-                return new String(bytes, "UTF8");
+                FieldContent content = readFieldContent();
+                return new String(content.buf, content.offset, content.length, "UTF8");
             } catch (IOException e) {
                 throw ConnectorException.wrap(e);
             }
         }
 
+        private FieldInputStream getCurrentField() {
+            if (readStateStack.size() > 0) {
+                ReadState state = readStateStack.get(readStateStack.size() - 1);
+                return state.currentField;
+            } else {
+                return null;
+            }
+        }
+
         private DataInputStream getCurrentInput() {
             if (readStateStack.size() > 0) {
                 ReadState state = readStateStack.get(readStateStack.size() - 1);
@@ -291,6 +358,18 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
         return internalDecoder.readObject(this);
     }
 
+    /**
+     * Returns an estimate of the number of bytes which can be read without
+     * blocking, including the bytes read ahead into the buffer of the decoder.
+     */
+    public int available() {
+        try {
+            return internalDecoder.rootInput.available();
+        } catch (IOException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     public boolean readBooleanContents() {
         internalDecoder.startAnonymousField(0);
         return internalDecoder.readBoolean();
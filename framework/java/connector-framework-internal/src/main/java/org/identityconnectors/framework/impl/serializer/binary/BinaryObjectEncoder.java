@@ -32,9 +32,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import org.identityconnectors.common.Pair;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.impl.serializer.ObjectEncoder;
@@ -60,9 +58,45 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
     public static final byte FIELD_TYPE_NAMED_FIELD = 71;
     public static final byte FIELD_TYPE_END_OBJECT = 72;
 
-    private static class OutputBuffer extends Pair<ByteArrayOutputStream, DataOutputStream> {
-        public OutputBuffer(ByteArrayOutputStream buf, DataOutputStream data) {
-            super(buf, data);
+    /**
+     * Growable buffer which holds a top-level object while it is encoded.
+     * Field lengths are written as placeholders and patched when the field
+     * ends, so nested content is never copied into its parent. The result
+     * is byte for byte the same as encoding every field into its own buffer.
+     */
+    private static class OutputBuffer extends ByteArrayOutputStream {
+
+        /**
+         * Buffers which grew beyond this size are released after the object
+         * was written.
+         */
+        private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+        public OutputBuffer() {
+            super(4096);
+        }
+
+        public int reserveInt() {
+            int position = count;
+            write(0);
+            write(0);
+            write(0);
+            write(0);
+            return position;
+        }
+
+        public void patchInt(int position, int v) {
+            buf[position] = (byte) (v >>> 24);
+            buf[position + 1] = (byte) (v >>> 16);
+            buf[position + 2] = (byte) (v >>> 8);
+            buf[position + 3] = (byte) v;
+        }
+
+        public void release() {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[4096];
+            }
+            reset();
         }
     }
 
@@ -75,7 +109,20 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         private List<String> constantBuffer = new ArrayList<String>();
 
-        private Stack<OutputBuffer> outputBufferStack = new Stack<OutputBuffer>();
+        private final OutputBuffer objectBuffer = new OutputBuffer();
+        private final DataOutputStream objectOutput = new DataOutputStream(objectBuffer);
+
+        /**
+         * Positions of the length placeholders of the open fields.
+         */
+        private int[] fieldStack = new int[16];
+        private int fieldDepth = 0;
+
+        /**
+         * Number of objects and fields currently open.
+         */
+        private int depth = 0;
+
         private DataOutputStream rootOutput;
         private boolean firstObject = true;
 
@@ -92,13 +139,7 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
 
             // push the stack
-            OutputBuffer objectBuffer;
-            {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream data = new DataOutputStream(baos);
-                objectBuffer = new OutputBuffer(baos, data);
-                outputBufferStack.push(objectBuffer);
-            }
+            depth++;
 
             if (object == null) {
                 writeByte(OBJECT_TYPE_NULL);
@@ -129,26 +170,25 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
                                               // current obj buffer
 
             // pop the stack
-            outputBufferStack.pop();
+            depth--;
 
-            // it's a top-level object, flush the constant pool
-            if (outputBufferStack.size() == 0) {
+            // it's a top-level object, flush the constant pool and then the
+            // actual object
+            if (depth == 0) {
                 writeInt(constantBuffer.size());
                 for (String constant : constantBuffer) {
                     writeString(constant, false);
                     writeInt(constantPool.get(constant));
                 }
                 constantBuffer.clear();
+                try {
+                    objectBuffer.writeTo(rootOutput);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                } finally {
+                    objectBuffer.release();
+                }
             }
-
-            // now write the actual object
-            try {
-                objectBuffer.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
-            byte[] bytes = objectBuffer.first.toByteArray();
-            writeBytes(bytes);
         }
 
         public void writeClass(Class<?> clazz) {
@@ -171,28 +211,29 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         public void startAnonymousField() {
             writeByte(FIELD_TYPE_ANONYMOUS_FIELD);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            pushField();
         }
 
         public void startField(String name) {
             writeByte(FIELD_TYPE_NAMED_FIELD);
             writeString(name, true);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            pushField();
         }
 
         public void endField() {
-            OutputBuffer buf = outputBufferStack.pop();
-            try {
-                buf.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            int position = fieldStack[--fieldDepth];
+            depth--;
+            objectBuffer.patchInt(position, objectBuffer.size() - position - 4);
+        }
+
+        private void pushField() {
+            if (fieldDepth == fieldStack.length) {
+                int[] stack = new int[fieldStack.length * 2];
+                System.arraycopy(fieldStack, 0, stack, 0, fieldDepth);
+                fieldStack = stack;
             }
-            byte[] bytes = buf.first.toByteArray();
-            writeByteArray(bytes);
+            fieldStack[fieldDepth++] = objectBuffer.reserveInt();
+            depth++;
         }
 
         public void writeInt(int v) {
@@ -258,14 +299,6 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
         }
 
-        private void writeBytes(byte[] v) {
-            try {
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
-        }
-
         private int internIdentifier(String name) {
             Integer code = constantPool.get(name);
             if (code == null) {
@@ -276,11 +309,25 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             return code;
         }
 
+        /**
+         * Discards a top-level object which failed to encode, so the stream
+         * stays usable for the next one.
+         */
+        public void reset() {
+            for (String constant : constantBuffer) {
+                constantPool.remove(constant);
+            }
+            constantBuffer.clear();
+            fieldDepth = 0;
+            depth = 0;
+            objectBuffer.release();
+        }
+
         private DataOutputStream getCurrentOutput() {
-            if (outputBufferStack.size() == 0) {
+            if (depth == 0) {
                 return rootOutput;
             } else {
-                return outputBufferStack.peek().second;
+                return objectOutput;
             }
         }
     }
@@ -310,7 +357,12 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
     }
 
     public void writeObject(Object o) {
-        internalEncoder.writeObject(this, o);
+        try {
+            internalEncoder.writeObject(this, o);
+        } catch (RuntimeException e) {
+            internalEncoder.reset();
+            throw e;
+        }
     }
 
     public void writeBooleanContents(boolean v) {
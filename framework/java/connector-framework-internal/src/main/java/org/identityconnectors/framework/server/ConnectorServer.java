@@ -70,6 +70,18 @@ public abstract class ConnectorServer {
      */
     private int maxWorkers = 100;
 
+    /**
+     * The time in milliseconds an idle client connection is kept open between
+     * two requests.
+     */
+    private int keepAliveTimeout = 60 * 1000;
+
+    /**
+     * Wait for the requests of idle clients with a selector instead of a
+     * worker thread per connection.
+     */
+    private boolean useNio = false;
+
     /**
      * The maximum time in minutes a facade can be inactive.
      */
@@ -202,6 +214,59 @@ public abstract class ConnectorServer {
         this.minWorkers = minWorkers;
     }
 
+    /**
+     * Returns the time in milliseconds an idle client connection is kept open
+     * between two requests.
+     *
+     * @return The keep-alive timeout in milliseconds. A value of zero means
+     *         infinite timeout.
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle client connection is kept open
+     * between two requests. Clients keep idle connections for a shorter time
+     * than this, otherwise they may try to reuse a connection which was
+     * already closed by the server.
+     *
+     * @param keepAliveTimeout
+     *            The keep-alive timeout in milliseconds. A value of zero means
+     *            infinite timeout.
+     */
+    public void setKeepAliveTimeout(final int keepAliveTimeout) {
+        assertNotStarted();
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Returns true if the server waits for the requests of idle clients with a
+     * selector.
+     *
+     * @return true if worker threads are only used while a request is
+     *         processed.
+     */
+    public boolean getUseNio() {
+        return useNio;
+    }
+
+    /**
+     * Sets whether the server waits for the requests of idle clients with a
+     * selector. Then an idle connection does not hold a worker thread, the
+     * number of open connections is not limited by the max worker threads.
+     * When the worker threads are all busy the server stops reading new
+     * requests until one of them is free. Not supported with SSL, a server
+     * which uses SSL always assigns a worker thread to each connection.
+     *
+     * @param useNio
+     *            true to use a selector for idle connections.
+     */
+    public void setUseNio(final boolean useNio) {
+        assertNotStarted();
+        this.useNio = useNio;
+    }
+
     /**
      * Returns the max inactive lifetime of
      * {@link org.identityconnectors.framework.api.ConnectorFacade} to allow.
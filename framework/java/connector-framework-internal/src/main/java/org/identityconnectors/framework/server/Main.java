@@ -54,6 +54,10 @@ public final class Main {
     private static final String PROP_IFADDRESS = "connectorserver.ifaddress";
     private static final String PROP_KEY = "connectorserver.key";
     private static final String PROP_FACADE_LIFETIME = "connectorserver.maxFacadeLifeTime";
+    private static final String PROP_KEEP_ALIVE_TIMEOUT = "connectorserver.keepAliveTimeout";
+    private static final String PROP_USE_NIO = "connectorserver.useNio";
+    private static final String PROP_MIN_WORKERS = "connectorserver.minWorkers";
+    private static final String PROP_MAX_WORKERS = "connectorserver.maxWorkers";
     private static final String PROP_LOGGER_CLASS = "connectorserver.loggerClass";
 
     private static final String DEFAULT_LOG_SPI =
@@ -206,6 +210,10 @@ public final class Main {
         String ifAddress = properties.getProperty(PROP_IFADDRESS);
         String keyHash = properties.getProperty(PROP_KEY);
         String facadeLifeTime = properties.getProperty(PROP_FACADE_LIFETIME);
+        String keepAliveTimeout = properties.getProperty(PROP_KEEP_ALIVE_TIMEOUT);
+        String useNioStr = properties.getProperty(PROP_USE_NIO);
+        String minWorkers = properties.getProperty(PROP_MIN_WORKERS);
+        String maxWorkers = properties.getProperty(PROP_MAX_WORKERS);
         String loggerClass = properties.getProperty(PROP_LOGGER_CLASS);
         if (portStr == null) {
             throw new ConnectorException("connectorserver.properties is missing " + PROP_PORT);
@@ -249,6 +257,18 @@ public final class Main {
         if (facadeLifeTime != null) {
             connectorServer.setMaxFacadeLifeTime(Long.parseLong(facadeLifeTime));
         }
+        if (keepAliveTimeout != null) {
+            connectorServer.setKeepAliveTimeout(Integer.parseInt(keepAliveTimeout));
+        }
+        if (useNioStr != null) {
+            connectorServer.setUseNio(Boolean.parseBoolean(useNioStr));
+        }
+        if (minWorkers != null) {
+            connectorServer.setMinWorkers(Integer.parseInt(minWorkers));
+        }
+        if (maxWorkers != null) {
+            connectorServer.setMaxWorkers(Integer.parseInt(maxWorkers));
+        }
     }
 
     public static void stop(String[] args) {
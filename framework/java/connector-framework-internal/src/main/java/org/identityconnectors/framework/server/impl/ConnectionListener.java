@@ -25,9 +25,13 @@ package org.identityconnectors.framework.server.impl;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,29 +41,27 @@ import org.identityconnectors.framework.server.ConnectorServer;
 
 class ConnectionListener extends CCLWatchThread {
 
-    /**
-     * This is the size of our internal queue. For now I have this relatively
-     * small because I want the OS to manage the connect queue coming in. That
-     * way it can properly turn away excessive requests
-     */
-    private final static int INTERNAL_QUEUE_SIZE = 2;
-
     private static final Log LOG = Log.getLog(ConnectionListener.class);
 
     /**
      * The server object that we are using
      */
-    private final ConnectorServer connectorServer;
+    final ConnectorServer connectorServer;
 
     /**
      * The server socket. This must be bound at the time of creation.
      */
-    private final ServerSocket socket;
+    final ServerSocket socket;
 
     /**
      * Pool of executors
      */
-    private final ExecutorService threadPool;
+    final ExecutorService threadPool;
+
+    /**
+     * The processors of the open client connections
+     */
+    final Set<ConnectionProcessor> processors = new HashSet<ConnectionProcessor>();
 
     /**
      * Set to indicated we need to start shutting down
@@ -78,11 +80,14 @@ class ConnectionListener extends CCLWatchThread {
         super("ConnectionListener");
         connectorServer = server;
         this.socket = socket;
-        // idle time timeout
+        // idle time timeout. There is no internal queue: a processor keeps
+        // its thread while the client holds the connection open between
+        // requests, a queued one could wait for the keep-alive timeout of
+        // another client. Instead the OS manages the connect queue coming in,
+        // that way it can properly turn away excessive requests
         threadPool =
                 new ThreadPoolExecutor(server.getMinWorkers(), server.getMaxWorkers(), 30,
-                        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(INTERNAL_QUEUE_SIZE,
-                                true), // fair
+                        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(true), // fair
                         new CCLWatchThreadFactory());
     }
 
@@ -92,7 +97,10 @@ class ConnectionListener extends CCLWatchThread {
             try {
                 Socket connection = socket.accept();
                 ConnectionProcessor processor =
-                        new ConnectionProcessor(connectorServer, connection);
+                        new ConnectionProcessor(connectorServer, this, connection);
+                synchronized (processors) {
+                    processors.add(processor);
+                }
                 // this really sucks - ideally, execute would block
                 // if the queue is full. now we have to do a busy wait
                 // the effect is that eventually our socket's accept
@@ -127,11 +135,28 @@ class ConnectionListener extends CCLWatchThread {
         }
     }
 
+    /**
+     * Called by a processor which finished a request and is about to wait for
+     * the next one.
+     *
+     * @return true if the listener waits for the next request in place of the
+     *         processor, the processor must then return its thread.
+     */
+    boolean processorIdle(ConnectionProcessor processor) {
+        return false;
+    }
+
+    void processorFinished(ConnectionProcessor processor) {
+        synchronized (processors) {
+            processors.remove(processor);
+        }
+    }
+
     private synchronized void markStopped() {
         stopped = true;
     }
 
-    private synchronized boolean isStopped() {
+    synchronized boolean isStopped() {
         return stopped;
     }
 
@@ -149,6 +174,14 @@ class ConnectionListener extends CCLWatchThread {
                 // wait for the main listener thread to die so we don't
                 // get any new requests
                 join();
+                // close the connections kept open by clients between requests
+                List<ConnectionProcessor> open;
+                synchronized (processors) {
+                    open = new ArrayList<ConnectionProcessor>(processors);
+                }
+                for (ConnectionProcessor processor : open) {
+                    processor.shutdown();
+                }
                 // wait for all in-progress requests to finish
                 threadPool.shutdown();
             } catch (Exception e) {
@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -69,27 +71,78 @@ public class ConnectionProcessor implements Runnable {
 
     private static final Log LOG = Log.getLog(ConnectionListener.class);
 
+    /**
+     * Streams the results to the client.
+     * <p/>
+     * A {@link OperationResponsePause} is sent after every
+     * {@link #PAUSE_INTERVAL} results and the client answers each of them.
+     * Older clients grant no results window, so the handler waits for the
+     * answer at every pause. Otherwise it keeps streaming while less than the
+     * current window of results is unacknowledged. The window starts at one
+     * interval and doubles every time the handler has to wait for the client,
+     * up to the window granted in the request, so it grows until it covers
+     * the round trip time of the link.
+     * <p/>
+     * The client tells that its handler stopped in the answer to a pause, so
+     * the connector may produce up to a window of results more, which the
+     * client drops. The remaining paged results reported by the connector
+     * count from where the server stopped, not from where the client did.
+     */
     private static class RemoteResultsHandler implements ObjectStreamHandler {
         private static final int PAUSE_INTERVAL = 200;
 
         private final RemoteFrameworkConnection connection;
+        private final int maxWindow;
+        private int window = PAUSE_INTERVAL;
         private long count = 0;
+        private int pendingPauses = 0;
+        private boolean stopped = false;
+        private final long startTime = System.currentTimeMillis();
 
-        public RemoteResultsHandler(RemoteFrameworkConnection conn) {
+        public RemoteResultsHandler(RemoteFrameworkConnection conn, int resultsWindow) {
             connection = conn;
+            maxWindow = Math.max(PAUSE_INTERVAL, resultsWindow);
         }
 
         public boolean handle(Object obj) {
+            if (stopped) {
+                return false;
+            }
             try {
                 OperationResponsePart part = new OperationResponsePart(null, obj);
                 connection.writeObject(part);
                 count++;
                 if (count % PAUSE_INTERVAL == 0) {
                     connection.writeObject(new OperationResponsePause());
-                    Object message = connection.readObject();
-                    return message instanceof OperationRequestMoreData;
+                    connection.flush();
+                    pendingPauses++;
+                    if (pendingPauses * PAUSE_INTERVAL >= window) {
+                        // the client has not caught up, wait for its answer
+                        readAnswer();
+                        window = Math.min(window * 2, maxWindow);
+                    }
+                    while (pendingPauses > 0 && connection.hasPendingInput()) {
+                        readAnswer();
+                    }
+                }
+                return !stopped;
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new BrokenConnectionException((IOException) e.getCause());
                 } else {
-                    return true;
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Reads the answers to the pauses still in flight, so the next
+         * request on this connection starts at a message boundary.
+         */
+        public void finish() {
+            try {
+                while (pendingPauses > 0) {
+                    readAnswer();
                 }
             } catch (RuntimeException e) {
                 if (e.getCause() instanceof IOException) {
@@ -98,32 +151,71 @@ public class ConnectionProcessor implements Runnable {
                     throw e;
                 }
             }
+            if (LOG.isOk() && count > 0) {
+                long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                LOG.ok("Sent {0} results in {1} ms ({2} objects/sec), results window {3}",
+                        count, elapsed, count * 1000 / elapsed, window);
+            }
         }
 
+        private void readAnswer() {
+            Object message = connection.readObject();
+            pendingPauses--;
+            if (!(message instanceof OperationRequestMoreData)) {
+                stopped = true;
+            }
+        }
     }
 
     private final ConnectorServer connectorServer;
+    private final ConnectionListener listener;
+    private final Socket socket;
     private final RemoteFrameworkConnection connection;
 
+    /**
+     * True while the processor waits for the next request of the client.
+     */
+    private boolean idle = false;
+
+    /**
+     * Set when the server is shutting down, no further request is accepted.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Time the connection was parked by a {@link NioConnectionListener}.
+     */
+    volatile long idleSince;
+
     public ConnectionProcessor(ConnectorServer server, Socket socket) {
+        this(server, null, socket);
+    }
+
+    ConnectionProcessor(ConnectorServer server, ConnectionListener listener, Socket socket) {
         connectorServer = server;
+        this.listener = listener;
+        this.socket = socket;
         connection = new RemoteFrameworkConnection(socket);
     }
 
     public void run() {
         try {
+            boolean parked = false;
             try {
-                while (true) {
-                    boolean keepGoing = processRequest();
-                    if (!keepGoing) {
-                        break;
+                while (processRequest()) {
+                    if (null != listener) {
+                        connection.flush();
+                        if (listener.processorIdle(this)) {
+                            // the listener runs this processor again when the
+                            // next request arrives
+                            parked = true;
+                            break;
+                        }
                     }
                 }
             } finally {
-                try {
-                    connection.close();
-                } catch (Exception e) {
-                    LOG.error(e, null);
+                if (!parked) {
+                    close();
                 }
             }
         } catch (Throwable e) {
@@ -131,16 +223,75 @@ public class ConnectionProcessor implements Runnable {
         }
     }
 
+    private void close() {
+        try {
+            if (isStopped()) {
+                // don't flush into a socket closed by the shutdown
+                socket.close();
+            } else {
+                connection.close();
+            }
+        } catch (Exception e) {
+            LOG.error(e, null);
+        }
+        if (null != listener) {
+            listener.processorFinished(this);
+        }
+    }
+
+    /**
+     * Closes the connection if it is waiting for the next request, otherwise
+     * lets the request in progress finish and closes the connection after it.
+     */
+    synchronized void shutdown() {
+        stopped = true;
+        if (idle) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.ok(e, "Failed to close idle connection");
+            }
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    Socket getSocket() {
+        return socket;
+    }
+
+    synchronized boolean markIdle(boolean idle) {
+        this.idle = idle;
+        return !stopped;
+    }
+
     private boolean processRequest() throws Exception {
         Locale locale;
+        if (!markIdle(true)) {
+            return false;
+        }
         try {
+            // the client keeps the connection open for subsequent requests,
+            // don't let an idle client hold the worker thread forever
+            socket.setSoTimeout(connectorServer.getKeepAliveTimeout());
             locale = (Locale) connection.readObject();
         } catch (RuntimeException e) {
-            if (e.getCause() instanceof EOFException) {
+            if (e.getCause() instanceof EOFException
+                    || e.getCause() instanceof SocketTimeoutException) {
+                return false;
+            }
+            if (!markIdle(false) && e.getCause() instanceof SocketException) {
+                // the socket was closed by the shutdown
                 return false;
             }
             throw e;
         }
+        if (!markIdle(false)) {
+            return false;
+        }
+        socket.setSoTimeout(0);
         CurrentLocale.set(locale);
         GuardedString key = (GuardedString) connection.readObject();
 
@@ -212,6 +363,7 @@ public class ConnectionProcessor implements Runnable {
             serverInfo = new HashMap<String, Object>(1);
             if (request.isServerInfo()) {
                 serverInfo.put(HelloResponse.SERVER_START_TIME, connectorServer.getStartTime());
+                serverInfo.put(HelloResponse.COMPRESSION_CODECS, RemoteFrameworkConnection.DEFLATE);
             }
             if (request.isConnectorKeys()) {
                 ConnectorInfoManager manager = getConnectorInfoManager();
@@ -260,12 +412,14 @@ public class ConnectionProcessor implements Runnable {
             throws IOException {
         Object result;
         Throwable exception = null;
+        RemoteResultsHandler resultsHandler = null;
         try {
             Method method = getOperationMethod(request);
             APIOperation operation = getAPIOperation(request);
             List<Object> arguments = request.getArguments();
+            resultsHandler = new RemoteResultsHandler(connection, request.getResultsWindow());
             List<Object> argumentsAndStreamHandlers =
-                    populateStreamHandlers(method.getParameterTypes(), arguments);
+                    populateStreamHandlers(method.getParameterTypes(), arguments, resultsHandler);
             try {
                 result = method.invoke(operation, argumentsAndStreamHandlers.toArray());
             } catch (InvocationTargetException e) {
@@ -273,6 +427,7 @@ public class ConnectionProcessor implements Runnable {
             }
             boolean anyStreams = argumentsAndStreamHandlers.size() > arguments.size();
             if (anyStreams) {
+                resultsHandler.finish();
                 try {
                     connection.writeObject(new OperationResponseEnd());
                 } catch (RuntimeException e) {
@@ -290,11 +445,19 @@ public class ConnectionProcessor implements Runnable {
             LOG.error(e, null);
             exception = e;
             result = null;
+            if (null != resultsHandler) {
+                try {
+                    resultsHandler.finish();
+                } catch (BrokenConnectionException w) {
+                    throw w.getIOException();
+                }
+            }
         }
         return new OperationResponsePart(exception, result);
     }
 
-    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments) {
+    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments,
+            ObjectStreamHandler osh) {
         List<Object> rv = new ArrayList<Object>();
         boolean firstStream = true;
         Iterator<Object> argIt = arguments.iterator();
@@ -304,7 +467,6 @@ public class ConnectionProcessor implements Runnable {
                     throw new UnsupportedOperationException(
                             "At most one stream handler is supported");
                 }
-                ObjectStreamHandler osh = new RemoteResultsHandler(connection);
                 rv.add(StreamHandlerUtil.adaptFromObjectStreamHandler(paramType, osh));
                 firstStream = false;
             } else {
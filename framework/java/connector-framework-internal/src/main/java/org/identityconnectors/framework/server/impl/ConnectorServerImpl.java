@@ -24,7 +24,10 @@
 
 package org.identityconnectors.framework.server.impl;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -76,8 +79,16 @@ public class ConnectorServerImpl extends ConnectorServer {
                 (ConnectorInfoManagerFactoryImpl) ConnectorInfoManagerFactory.getInstance();
         factory.getLocalManager(getBundleURLs(), getBundleParentClassLoader());
 
-        final ServerSocket socket = createServerSocket();
-        final ConnectionListener listener = new ConnectionListener(this, socket);
+        final ConnectionListener listener;
+        if (getUseNio() && !getUseSSL()) {
+            listener = createNioListener();
+        } else {
+            if (getUseNio()) {
+                logger.warn("The selector is not supported with SSL, "
+                        + "using a worker thread per connection");
+            }
+            listener = new ConnectionListener(this, createServerSocket());
+        }
         listener.setDaemon(true);
         listener.start();
         stopLatch = new CountDownLatch(1);
@@ -114,6 +125,26 @@ public class ConnectorServerImpl extends ConnectorServer {
         }
     }
 
+    private ConnectionListener createNioListener() {
+        ServerSocketChannel channel = null;
+        try {
+            channel = ServerSocketChannel.open();
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(getIfAddress(), getPort()),
+                    getMaxConnections());
+            return new NioConnectionListener(this, channel);
+        } catch (Exception e) {
+            if (null != channel) {
+                try {
+                    channel.close();
+                } catch (IOException e2) {
+                    /* ignore */
+                }
+            }
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     private ServerSocketFactory createSSLServerSocketFactory() throws Exception {
         KeyManager[] keyManagers = null;
         // convert empty to null
@@ -0,0 +1,257 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+
+package org.identityconnectors.framework.server.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.server.ConnectorServer;
+
+/**
+ * Listener which waits for the requests of idle clients with a selector.
+ * <p/>
+ * A {@link ConnectionProcessor} only holds a worker thread while it processes
+ * a request; between two requests its channel is registered with the
+ * selector and the processor is handed to the thread pool again when the
+ * client sends the next request. The number of open connections is therefore
+ * not limited by the number of worker threads. When the pool is saturated the
+ * listener neither accepts new connections nor dispatches further requests
+ * until a worker is free, so the clients are slowed down by the TCP flow
+ * control instead of the server creating more threads.
+ * <p/>
+ * The request itself is still read and written with blocking streams, the
+ * channel is switched to blocking mode while a worker owns it.
+ */
+class NioConnectionListener extends ConnectionListener {
+
+    private static final Log LOG = Log.getLog(NioConnectionListener.class);
+
+    /**
+     * Time in milliseconds between two checks of the keep-alive timeout and
+     * between two attempts to dispatch to a saturated thread pool.
+     */
+    private static final long SELECT_TIMEOUT = 1000;
+
+    private static final long RETRY_TIMEOUT = 50;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Selector selector;
+
+    /**
+     * Processors which finished a request, to be registered with the selector
+     * by the listener thread.
+     */
+    private final Queue<ConnectionProcessor> parked = new ConcurrentLinkedQueue<ConnectionProcessor>();
+
+    /**
+     * Processors with a pending request which the saturated thread pool did
+     * not accept yet.
+     */
+    private final LinkedList<ConnectionProcessor> waiting = new LinkedList<ConnectionProcessor>();
+
+    /**
+     * Set at the beginning of the shutdown to leave the select loop.
+     */
+    private volatile boolean closing = false;
+
+    public NioConnectionListener(ConnectorServer server, ServerSocketChannel serverChannel)
+            throws IOException {
+        super(server, serverChannel.socket());
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void run() {
+        long lastEviction = System.currentTimeMillis();
+        try {
+            while (!closing && !isStopped()) {
+                try {
+                    selector.select(waiting.isEmpty() ? SELECT_TIMEOUT : RETRY_TIMEOUT);
+                    registerParked();
+                    List<ConnectionProcessor> ready = new ArrayList<ConnectionProcessor>();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            key.cancel();
+                            ready.add((ConnectionProcessor) key.attachment());
+                        }
+                    }
+                    if (!ready.isEmpty()) {
+                        // deregister the cancelled keys, a channel can't be
+                        // switched to blocking mode while it is registered
+                        selector.selectNow();
+                        for (ConnectionProcessor processor : ready) {
+                            processor.getSocket().getChannel().configureBlocking(true);
+                            waiting.add(processor);
+                        }
+                    }
+                    dispatch();
+                    long now = System.currentTimeMillis();
+                    if (now - lastEviction >= SELECT_TIMEOUT) {
+                        lastEviction = now;
+                        evictIdle(now);
+                    }
+                } catch (Throwable e) {
+                    // log the error unless it's because we've stopped
+                    if (!closing && !isStopped()) {
+                        LOG.error(e, "Error processing request");
+                        try {
+                            Thread.sleep(1000);
+                        } catch (Exception e2) {
+                            /* ignore */
+                        }
+                    }
+                }
+            }
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.ok(e, "Failed to close selector");
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (null == channel) {
+            return;
+        }
+        ConnectionProcessor processor =
+                new ConnectionProcessor(connectorServer, this, channel.socket());
+        synchronized (processors) {
+            processors.add(processor);
+        }
+        // wait for the first request like for any subsequent one
+        processor.markIdle(true);
+        park(processor);
+    }
+
+    /**
+     * Hands the processors with a pending request to the thread pool. The
+     * selector stops accepting new connections while the pool is saturated.
+     */
+    private void dispatch() {
+        while (!waiting.isEmpty()) {
+            try {
+                threadPool.execute(waiting.getFirst());
+                waiting.removeFirst();
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        SelectionKey acceptKey = serverChannel.keyFor(selector);
+        if (null != acceptKey && acceptKey.isValid()) {
+            acceptKey.interestOps(waiting.isEmpty() ? SelectionKey.OP_ACCEPT : 0);
+        }
+    }
+
+    private void registerParked() {
+        ConnectionProcessor processor;
+        while (null != (processor = parked.poll())) {
+            park(processor);
+        }
+    }
+
+    private void park(ConnectionProcessor processor) {
+        SocketChannel channel = processor.getSocket().getChannel();
+        try {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, processor);
+            processor.idleSince = System.currentTimeMillis();
+        } catch (ClosedChannelException e) {
+            close(processor);
+        } catch (Exception e) {
+            LOG.ok(e, "Failed to register idle connection");
+            close(processor);
+        }
+    }
+
+    /**
+     * Closes the connections which have been idle longer than the keep-alive
+     * timeout.
+     */
+    private void evictIdle(long now) {
+        int timeout = connectorServer.getKeepAliveTimeout();
+        if (timeout <= 0) {
+            return;
+        }
+        for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+            Object attachment = key.attachment();
+            if (key.isValid() && attachment instanceof ConnectionProcessor) {
+                ConnectionProcessor processor = (ConnectionProcessor) attachment;
+                if (now - processor.idleSince >= timeout) {
+                    key.cancel();
+                    close(processor);
+                }
+            }
+        }
+    }
+
+    private void close(ConnectionProcessor processor) {
+        processor.shutdown();
+        processorFinished(processor);
+    }
+
+    @Override
+    boolean processorIdle(ConnectionProcessor processor) {
+        if (!processor.markIdle(true)) {
+            return false;
+        }
+        parked.add(processor);
+        selector.wakeup();
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        closing = true;
+        selector.wakeup();
+        // closes the idle connections, they are all marked idle
+        super.shutdown();
+    }
+}
@@ -23,8 +23,11 @@
 package org.identityconnectors.common.script.groovy;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.CompiledScriptCache;
 import org.identityconnectors.common.script.ScriptExecutor;
 import org.identityconnectors.common.script.ScriptExecutorFactory;
 import org.testng.annotations.Test;
@@ -52,6 +55,51 @@ public class GroovyScriptExecutorFactoryTests {
         assertEquals(actual, 3);
     }
 
+    @Test
+    public void testCompiledScriptCache() throws Exception {
+        ClassLoader loader = getClass().getClassLoader();
+        ScriptExecutorFactory factory = ScriptExecutorFactory.newInstance("GROOVY");
+        CompiledScriptCache cache = ScriptExecutorFactory.getCompiledScriptCache();
+        long hits = cache.getHits();
+
+        final ScriptExecutor ex = factory.newScriptExecutor(loader, "return x * 2;", true);
+        assertSame(factory.newScriptExecutor(loader, "return x * 2;", true), ex);
+        assertEquals(cache.getHits(), hits + 1);
+
+        // every execution has its own binding
+        Thread[] threads = new Thread[4];
+        final Object[] results = new Object[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000 && results[n] == null; j++) {
+                            Object actual = ex.execute(CollectionUtil.<String, Object> newMap("x", n));
+                            if (!Integer.valueOf(n * 2).equals(actual)) {
+                                results[n] = actual;
+                            }
+                        }
+                    } catch (Exception e) {
+                        results[n] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(results, new Object[threads.length]);
+
+        // the evicted script is closed, a new one is compiled
+        cache.clear();
+        ScriptExecutor compiled = factory.newScriptExecutor(loader, "return x * 2;", true);
+        assertNotSame(compiled, ex);
+        assertEquals(compiled.execute(CollectionUtil.<String, Object> newMap("x", 2)), 4);
+        assertEquals(ex.execute(CollectionUtil.<String, Object> newMap("x", 3)), 6);
+    }
+
     private ScriptExecutor getScriptExecutor(String script) {
         ClassLoader loader = getClass().getClassLoader();
         return ScriptExecutorFactory.newInstance("GROOVY").newScriptExecutor(loader, script, false);
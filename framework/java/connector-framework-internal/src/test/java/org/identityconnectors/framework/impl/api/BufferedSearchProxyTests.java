@@ -23,6 +23,7 @@
 package org.identityconnectors.framework.impl.api;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.lang.reflect.Proxy;
@@ -129,6 +130,70 @@ public class BufferedSearchProxyTests {
         expected.assertFinished();
     }
 
+    @Test
+    public void testTimeoutReleasesProducer() throws Exception {
+        SearchApiOp search = new Searches.WaitObjectSearch(10, 1000);
+        SearchApiOp proxy = createSearchProxy(search, 10 + 1, 20);
+        long completed = BufferedResultsProxy.getStatistics().getCompletedSearches();
+        try {
+            proxy.search(ObjectClass.ACCOUNT, null, new ExpectedTestResults(), null);
+            fail("Should throw a TimeoutException");
+        } catch (OperationTimeoutException e) {
+        }
+        // the producer is interrupted instead of finishing the 10 seconds
+        // search
+        for (int i = 0; i < 50
+                && BufferedResultsProxy.getStatistics().getCompletedSearches() == completed; i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(BufferedResultsProxy.getStatistics().getCompletedSearches() > completed);
+    }
+
+    @Test
+    public void testOverflowWhenSaturated() throws Exception {
+        int maxThreads = BufferedResultsProxy.getMaxThreads();
+        BufferedResultsProxy.setMaxThreads(1);
+        try {
+            final SearchApiOp slow = createSearchProxy(new Searches.WaitObjectSearch(5, 100), 6, 20000);
+            Thread other = new Thread() {
+                public void run() {
+                    slow.search(ObjectClass.ACCOUNT, null, new ExpectedTestResults() {
+                        public boolean handle(ConnectorObject object) {
+                            return true;
+                        }
+                    }, null);
+                }
+            };
+            other.start();
+            while (BufferedResultsProxy.getStatistics().getActiveThreads() == 0) {
+                Thread.sleep(10);
+            }
+            long overflow = BufferedResultsProxy.getStatistics().getOverflowSearches();
+            ExpectedTestResults expected = new ExpectedTestResults();
+            expected.addExpectedRange(0, 10);
+            SearchApiOp proxy = createSearchProxy(new Searches.ConnectorObjectSearch(10), 11, 20000);
+            proxy.search(ObjectClass.ACCOUNT, null, expected, null);
+            expected.assertFinished();
+            assertEquals(BufferedResultsProxy.getStatistics().getOverflowSearches(),
+                    overflow + 1);
+
+            // the timeout applies to the overflow search too
+            SearchApiOp stuck = createSearchProxy(new Searches.WaitObjectSearch(2, 10000), 3, 100);
+            try {
+                stuck.search(ObjectClass.ACCOUNT, null, new ExpectedTestResults() {
+                    public boolean handle(ConnectorObject object) {
+                        return true;
+                    }
+                }, null);
+                fail("Should throw a TimeoutException");
+            } catch (OperationTimeoutException e) {
+            }
+            other.join();
+        } finally {
+            BufferedResultsProxy.setMaxThreads(maxThreads);
+        }
+    }
+
     @Test
     public void testCancel() {
         ExpectedTestResults expected = new ExpectedTestResults();
@@ -0,0 +1,185 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.annotations.Test;
+
+public class MethodTimeoutProxyTests {
+
+    public interface Operation {
+        String execute(long wait);
+    }
+
+    private static class WaitOperation implements Operation {
+        public String execute(long wait) {
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    return "interrupted";
+                }
+            }
+            return Thread.currentThread().getName();
+        }
+    }
+
+    private static Operation createProxy(Operation target, long timeout) {
+        return (Operation) Proxy.newProxyInstance(Operation.class.getClassLoader(),
+                new Class<?>[] { Operation.class }, new MethodTimeoutProxy(target, timeout));
+    }
+
+    /**
+     * Wraps the operation like the remote operations, which register the
+     * resource they block on.
+     */
+    private static Operation createCancellableProxy(final Operation target, long timeout) {
+        Operation cancellable =
+                (Operation) Proxy.newProxyInstance(Operation.class.getClassLoader(),
+                        new Class<?>[] { Operation.class },
+                        new MethodTimeoutProxy.CancellableHandler() {
+                            public Object invoke(Object proxy, Method method, Object[] args)
+                                    throws Throwable {
+                                try {
+                                    return method.invoke(target, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getTargetException();
+                                }
+                            }
+                        });
+        return createProxy(cancellable, timeout);
+    }
+
+    @Test
+    public void testRunsOnPooledThread() {
+        Operation proxy = createProxy(new WaitOperation(), 10000);
+        assertFalse(proxy.execute(0).equals(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testCancellableRunsOnCallingThread() {
+        Operation proxy = createCancellableProxy(new WaitOperation(), 10000);
+        assertEquals(proxy.execute(0), Thread.currentThread().getName());
+    }
+
+    @Test
+    public void testTimeout() {
+        Operation proxy = createProxy(new WaitOperation(), 50);
+        long start = System.currentTimeMillis();
+        try {
+            proxy.execute(10000);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        // the interrupt of the timer must not leak to the caller
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testTimeoutIgnoringInterrupt() {
+        Operation proxy = createProxy(new Operation() {
+            public String execute(long wait) {
+                // neither interruptible nor cancellable
+                long end = System.currentTimeMillis() + wait;
+                while (System.currentTimeMillis() < end) {
+                    Thread.yield();
+                }
+                return null;
+            }
+        }, 50);
+        long start = System.currentTimeMillis();
+        try {
+            proxy.execute(10000);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testTimeoutClosesCancellable() {
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        Operation proxy = createCancellableProxy(new Operation() {
+            public String execute(long wait) {
+                MethodTimeoutProxy.setCancellable(new Closeable() {
+                    public void close() {
+                        closed.set(true);
+                    }
+                });
+                try {
+                    // simulates I/O which ignores the interruption
+                    long end = System.currentTimeMillis() + wait;
+                    while (!closed.get() && System.currentTimeMillis() < end) {
+                        Thread.yield();
+                    }
+                    return null;
+                } finally {
+                    MethodTimeoutProxy.setCancellable(null);
+                }
+            }
+        }, 50);
+        try {
+            proxy.execute(10000);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(closed.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testException() {
+        Operation proxy = createProxy(new Operation() {
+            public String execute(long wait) {
+                throw new IllegalStateException();
+            }
+        }, 10000);
+        proxy.execute(0);
+    }
+
+    @Test
+    public void testShortCalls() {
+        Operation proxy = createCancellableProxy(new WaitOperation(), 10000);
+        String caller = Thread.currentThread().getName();
+        for (int i = 0; i < 100000; i++) {
+            // no thread hand-off and no interrupt of a finished call may leak
+            assertEquals(proxy.execute(0), caller);
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.net.InetAddress;
 import java.net.URL;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.SecurityUtil;
@@ -38,7 +39,12 @@ import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoManagerImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnectionPool;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.server.ConnectorServer;
 import org.testng.Assert;
@@ -153,4 +159,94 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
             server.stop();
         }
     }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        info.createDefaultAPIConfiguration());
+
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                        .toCharArray()), false, null, 0);
+        RemoteFrameworkConnectionPool pool = RemoteFrameworkConnectionPool.getInstance();
+        try {
+            pool.setMaxIdle(0);
+            long perCall = runGetLatestSyncToken(facade, 500);
+            RemoteFrameworkConnection connection = pool.borrowConnection(connInfo);
+            Assert.assertFalse(connection.isReused());
+            pool.invalidateConnection(connection);
+
+            pool.setMaxIdle(RemoteFrameworkConnectionPool.DEFAULT_MAX_IDLE);
+            long pooled = runGetLatestSyncToken(facade, 500);
+            connection = pool.borrowConnection(connInfo);
+            Assert.assertTrue(connection.isReused());
+            pool.returnConnection(connInfo, connection);
+
+            // every per-call operation opens a socket and exchanges the key
+            Assert.assertTrue(pooled < perCall, "pooled " + pooled + " ns, per-call " + perCall
+                    + " ns");
+        } finally {
+            pool.setMaxIdle(RemoteFrameworkConnectionPool.DEFAULT_MAX_IDLE);
+        }
+    }
+
+    @Test
+    public void testCompressedTransport() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                        .toCharArray()), false, null, 0);
+        RemoteConnectorInfoManagerImpl mgr = new RemoteConnectorInfoManagerImpl(connInfo, false);
+        Assert.assertEquals(mgr.getServerInfo().get(HelloResponse.COMPRESSION_CODECS),
+                RemoteFrameworkConnection.DEFLATE);
+
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().getProperty("numResults").setValue(5000);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        RemoteFrameworkConnectionPool pool = RemoteFrameworkConnectionPool.getInstance();
+        try {
+            pool.dispose();
+            pool.setCompressionLevel(Deflater.BEST_SPEED);
+            RemoteFrameworkConnection connection = pool.borrowConnection(connInfo);
+            Assert.assertTrue(connection.isCompressed());
+            pool.returnConnection(connInfo, connection);
+
+            final int[] count = new int[1];
+            facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                public boolean handle(ConnectorObject obj) {
+                    count[0]++;
+                    return true;
+                }
+            }, null);
+            Assert.assertEquals(count[0], 5000);
+            // the search ran over the compressed connection
+            connection = pool.borrowConnection(connInfo);
+            Assert.assertTrue(connection.isCompressed());
+            Assert.assertTrue(connection.isReused());
+            pool.returnConnection(connInfo, connection);
+        } finally {
+            pool.setCompressionLevel(0);
+            pool.dispose();
+        }
+    }
+
+    /**
+     * @return the total time of the calls in nanoseconds.
+     */
+    private long runGetLatestSyncToken(ConnectorFacade facade, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Assert.assertNotNull(facade.getLatestSyncToken(ObjectClass.ACCOUNT));
+        }
+        return System.nanoTime() - start;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the remote tests against a server which waits for idle connections
+ * with a selector.
+ */
+public class RemoteConnectorInfoManagerNioTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    final int PORT = 8762;
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerNioTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.setUseNio(true);
+                _server.setMinWorkers(2);
+                _server.setMaxWorkers(8);
+                _server.start();
+            }
+        }
+        ConnectorInfoManagerFactory fact = ConnectorInfoManagerFactory.getInstance();
+
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                        .toCharArray()), false, null, 0);
+
+        return fact.getRemoteManager(connInfo);
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerNioTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test(timeOut = 60000)
+    public void testManyIdleConnections() throws Exception {
+        getConnectorInfoManager();
+        GuardedString key = new GuardedString("changeit".toCharArray());
+        RemoteFrameworkConnectionInfo connInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, key);
+        // many more open connections than worker threads, all of them
+        // must be answered while the others stay open
+        List<RemoteFrameworkConnection> connections = new ArrayList<RemoteFrameworkConnection>();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                RemoteFrameworkConnection connection = new RemoteFrameworkConnection(connInfo);
+                connections.add(connection);
+                assertHello(connection, key);
+            }
+            for (RemoteFrameworkConnection connection : connections) {
+                assertHello(connection, key);
+            }
+        } finally {
+            for (RemoteFrameworkConnection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private void assertHello(RemoteFrameworkConnection connection, GuardedString key) {
+        connection.writeObject(Locale.getDefault());
+        connection.writeObject(key);
+        connection.writeObject(new HelloRequest(HelloRequest.SERVER_INFO));
+        HelloResponse response = (HelloResponse) connection.readObject();
+        Assert.assertNull(response.getException());
+        Assert.assertNotNull(response.getServerInfo().get(HelloResponse.SERVER_START_TIME));
+    }
+}
@@ -26,6 +26,8 @@ import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration.ValidationPolicy;
+import org.identityconnectors.framework.common.exceptions.ConnectionBrokenException;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.local.ObjectPool.Statistics;
 
@@ -55,6 +57,7 @@ public class ObjectPoolTests {
     private class MyTestConnectionFactory implements ObjectPoolHandler<MyTestConnection> {
         private boolean _createBadConnection = false;
         private int _totalCreatedConnections = 0;
+        private volatile int _totalTests = 0;
 
         public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
             ObjectPoolConfiguration configuration = (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
@@ -73,6 +76,7 @@ public class ObjectPoolTests {
         }
         @Test
         public void testObject(MyTestConnection object) {
+            _totalTests++;
             object.test();
         }
 
@@ -84,6 +88,10 @@ public class ObjectPoolTests {
             return _totalCreatedConnections;
         }
 
+        public int getTotalTests() {
+            return _totalTests;
+        }
+
 
         public void setCreateBadConnection(boolean v) {
             _createBadConnection = v;
@@ -232,6 +240,274 @@ public class ObjectPoolTests {
         Assert.assertEquals(true, conn4.getPooledObject().isGood());
     }
 
+    @Test
+    public void testMaxLifetime() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(2);
+        config.setMaxIdle(2);
+        config.setMinIdle(2);
+        config.setMaxLifetimeMillis(500);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        conn1.close();
+        Assert.assertSame(pool.borrowObject(), conn1);
+        Thread.sleep(config.getMaxLifetimeMillis() + 100);
+        //expired while active, disposed on return
+        conn1.close();
+        Assert.assertFalse(conn1.getPooledObject().isGood());
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        conn2.close();
+        //lifetime overrides minIdle
+        Thread.sleep(config.getMaxLifetimeMillis() + 100);
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        Assert.assertNotSame(conn3, conn2);
+        Assert.assertFalse(conn2.getPooledObject().isGood());
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 3);
+        Assert.assertEquals(pool.getStatistics().getEvictedCount(), 1);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBackgroundEviction() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(3);
+        config.setMaxIdle(3);
+        config.setMinIdle(1);
+        config.setMinEvictableIdleTimeMillis(1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 3);
+
+        //the evictor removes the eldest objects without any borrow
+        Thread.sleep(3000);
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumIdle(), 1);
+        Assert.assertEquals(stats.getEvictedCount(), 2);
+        Assert.assertFalse(conn1.getPooledObject().isGood());
+        Assert.assertFalse(conn2.getPooledObject().isGood());
+        Assert.assertTrue(conn3.getPooledObject().isGood());
+        pool.shutdown();
+        Assert.assertFalse(conn3.getPooledObject().isGood());
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(5);
+        config.setMaxIdle(5);
+        config.setMinIdle(3);
+        config.setPrewarm(true);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        for (int i = 0; i < 50 && pool.getStatistics().getNumIdle() < 3; i++) {
+            Thread.sleep(100);
+        }
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getNumIdle(), 3);
+        Assert.assertEquals(stats.getCreatedCount(), 3);
+
+        //pre-warmed objects are not new, they are tested like pooled ones
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertEquals(pool.getStatistics().getCreatedCount(), 3);
+        conn.close();
+        pool.shutdown();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(1);
+        config.setMaxIdle(1);
+        config.setMaxWait(60);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        final ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        final ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        conn.close();
+        //closing twice must not add the object twice
+        conn.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+
+        pool.borrowObject();
+        Thread returner = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    conn.close();
+                } catch (Exception e) {
+                    /* ignore */
+                }
+            }
+        };
+        returner.start();
+        //waits for the object borrowed above
+        Assert.assertSame(pool.borrowObject(), conn);
+        returner.join();
+
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getBorrowCount(), 3);
+        Assert.assertEquals(stats.getCreatedCount(), 1);
+        Assert.assertEquals(stats.getNumActive(), 1);
+        long[] histogram = stats.getWaitTimeHistogram();
+        Assert.assertEquals(histogram.length, ObjectPool.WAIT_TIME_BUCKET_MILLIS.length + 1);
+        //the wait of the third borrow is between 100 and 1000 ms
+        Assert.assertEquals(histogram[3], 1);
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        Assert.assertEquals(total, 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testConcurrentBorrow() throws Exception {
+        final int NUM_THREADS = 16;
+        final int NUM_ITERATIONS = 100000;
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(NUM_THREADS);
+        config.setMaxIdle(NUM_THREADS);
+        config.setMaxWait(60);
+        final ObjectPool<MyTestConnection> pool =
+                new ObjectPool<MyTestConnection>(new MyTestConnectionFactory(), config);
+
+        Thread[] threads = new Thread[NUM_THREADS];
+        final Exception[] failure = new Exception[1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < NUM_ITERATIONS; j++) {
+                            pool.borrowObject().close();
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure[0]);
+        Assert.assertEquals(pool.getStatistics().getBorrowCount(), (long) NUM_THREADS
+                * NUM_ITERATIONS);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+        // the returned objects are reused, never more than one per thread
+        Assert.assertTrue(pool.getStatistics().getCreatedCount() <= NUM_THREADS);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testIdleValidation() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setValidationPolicy(ValidationPolicy.IDLE);
+        config.setValidationIntervalMillis(500);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        //neither the new nor the recently returned object is tested
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        conn.close();
+        Assert.assertSame(pool.borrowObject(), conn);
+        conn.close();
+        Assert.assertEquals(fact.getTotalTests(), 0);
+
+        Thread.sleep(config.getValidationIntervalMillis() + 100);
+        Assert.assertSame(pool.borrowObject(), conn);
+        Assert.assertEquals(fact.getTotalTests(), 1);
+        conn.close();
+
+        //a broken object is replaced once it was idle long enough
+        conn.getPooledObject().dispose();
+        Assert.assertSame(pool.borrowObject(), conn);
+        conn.close();
+        Thread.sleep(config.getValidationIntervalMillis() + 100);
+        Assert.assertNotSame(pool.borrowObject(), conn);
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBackgroundValidation() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(2);
+        config.setMaxIdle(2);
+        config.setMinIdle(2);
+        config.setValidationPolicy(ValidationPolicy.BACKGROUND);
+        config.setValidationIntervalMillis(1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        Assert.assertEquals(fact.getTotalTests(), 0);
+        conn1.getPooledObject().dispose();
+
+        Thread.sleep(2500);
+        Assert.assertTrue(fact.getTotalTests() >= 2);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        //the order of the idle objects is kept
+        Assert.assertSame(pool.borrowObject(), conn2);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testValidateAfterFailure() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setValidationPolicy(ValidationPolicy.ON_FAILURE);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        ConnectionBrokenException failure = new ConnectionBrokenException("broken");
+        //a new object is not retried
+        conn.getPooledObject().dispose();
+        Assert.assertFalse(pool.validateAfterFailure(conn, failure));
+        conn.close();
+
+        //the broken object was returned without a test
+        conn = pool.borrowObject();
+        Assert.assertFalse(conn.getPooledObject().isGood());
+        Assert.assertEquals(fact.getTotalTests(), 0);
+        //only connection errors are retried
+        Assert.assertFalse(pool.validateAfterFailure(conn, new ConnectorException("other")));
+        Assert.assertTrue(pool.validateAfterFailure(conn, failure));
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+        //the disposed entry is not put back
+        conn.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+
+        conn = pool.borrowObject();
+        Assert.assertTrue(conn.getPooledObject().isGood());
+        conn.close();
+        Assert.assertFalse(pool.validateAfterFailure(pool.borrowObject(), failure));
+        pool.shutdown();
+    }
+
     @Test
     public void testCreateBadConnection()
         throws Exception
@@ -0,0 +1,207 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration.ValidationPolicy;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.SchemaApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectionBrokenException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
+import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.PoolableConnector;
+import org.testng.annotations.Test;
+
+public class ConnectorAPIOperationRunnerProxyTests {
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    /**
+     * Connector whose connection breaks after its first operation.
+     */
+    public static class StaleConnector implements PoolableConnector {
+        private boolean used = false;
+
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        public void init(Configuration cfg) {
+        }
+
+        public void dispose() {
+        }
+
+        public void checkAlive() {
+            if (used) {
+                throw new ConnectionBrokenException("stale");
+            }
+        }
+
+        boolean use() {
+            boolean stale = used;
+            used = true;
+            return stale;
+        }
+    }
+
+    /**
+     * Delivers a result before it notices the broken connection.
+     */
+    public static class StaleSearch extends ConnectorAPIOperationRunner implements SearchApiOp {
+        public StaleSearch(ConnectorOperationalContext context, Connector connector) {
+            super(context, connector);
+        }
+
+        public SearchResult search(ObjectClass objectClass, Filter filter,
+                ResultsHandler handler, OperationOptions options) {
+            RUNS.incrementAndGet();
+            boolean stale = ((StaleConnector) getConnector()).use();
+            handler.handle(new ConnectorObjectBuilder().setUid("1").setName("1").build());
+            if (stale) {
+                throw new ConnectionBrokenException("broken");
+            }
+            return new SearchResult();
+        }
+    }
+
+    public static class StaleSchema extends ConnectorAPIOperationRunner implements SchemaApiOp {
+        public StaleSchema(ConnectorOperationalContext context, Connector connector) {
+            super(context, connector);
+        }
+
+        public Schema schema() {
+            RUNS.incrementAndGet();
+            if (((StaleConnector) getConnector()).use()) {
+                throw new ConnectionBrokenException("broken");
+            }
+            return null;
+        }
+    }
+
+    private static ObjectPool<PoolableConnector> createPool() {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setValidationPolicy(ValidationPolicy.ON_FAILURE);
+        return new ObjectPool<PoolableConnector>(new ObjectPoolHandler<PoolableConnector>() {
+            public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+                return original;
+            }
+
+            public PoolableConnector makeObject() {
+                return new StaleConnector();
+            }
+
+            public void testObject(PoolableConnector object) {
+                object.checkAlive();
+            }
+
+            public void disposeObject(PoolableConnector object) {
+                object.dispose();
+            }
+
+            public void shutdown() {
+            }
+        }, config);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends APIOperation> T createProxy(Class<T> api,
+            final ObjectPool<PoolableConnector> pool,
+            Class<? extends ConnectorAPIOperationRunner> runner) throws Exception {
+        ConnectorOperationalContext context = new ConnectorOperationalContext(null, null) {
+            @Override
+            public ObjectPool<PoolableConnector> getPool() {
+                return pool;
+            }
+
+            @Override
+            public Class<? extends Connector> getConnectorClass() {
+                return StaleConnector.class;
+            }
+        };
+        return (T) Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] { api },
+                new ConnectorAPIOperationRunnerProxy(context, runner.getConstructor(
+                        ConnectorOperationalContext.class, Connector.class)));
+    }
+
+    @Test
+    public void testSchemaRetried() throws Exception {
+        ObjectPool<PoolableConnector> pool = createPool();
+        SchemaApiOp schema = createProxy(SchemaApiOp.class, pool, StaleSchema.class);
+        schema.schema();
+        RUNS.set(0);
+        // the stale connector is replaced by a new one
+        assertNull(schema.schema());
+        assertEquals(RUNS.get(), 2);
+        assertEquals(pool.getStatistics().getCreatedCount(), 2);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSearchWithResultsNotRetried() throws Exception {
+        ObjectPool<PoolableConnector> pool = createPool();
+        SearchApiOp search = createProxy(SearchApiOp.class, pool, StaleSearch.class);
+        search.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                return true;
+            }
+        }, null);
+        RUNS.set(0);
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        try {
+            search.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                public boolean handle(ConnectorObject obj) {
+                    results.add(obj);
+                    return true;
+                }
+            }, null);
+            fail("The failure must reach the caller");
+        } catch (ConnectionBrokenException e) {
+            // expected
+        }
+        // had it run again the result would have been delivered twice
+        assertEquals(RUNS.get(), 1);
+        assertEquals(results.size(), 1);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.impl.api.local.operations.ObjectNormalizerFacadeTests.MyAttributeNormalizer;
+import org.testng.annotations.Test;
+
+public class FilterCompilerTests {
+
+    private List<ConnectorObject> createObjects(int count) {
+        Random random = new Random(17);
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>(count);
+        for (int i = 0; i < count; i++) {
+            ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+            bld.setUid("uid" + i);
+            bld.setName("user" + i);
+            bld.addAttribute("foo", " bar" + random.nextInt(20) + " ");
+            if (random.nextInt(4) != 0) {
+                bld.addAttribute("count", random.nextInt(100));
+            }
+            if (random.nextInt(4) == 0) {
+                bld.addAttribute("count2", (long) random.nextInt(10));
+            }
+            bld.addAttribute("group", "group" + random.nextInt(5), "group" + random.nextInt(5));
+            for (int j = 0; j < 10; j++) {
+                bld.addAttribute("attribute" + j, "value" + j + "-" + random.nextInt(50));
+            }
+            objects.add(bld.build());
+        }
+        return objects;
+    }
+
+    private List<Filter> createFilters() {
+        List<Filter> filters = new ArrayList<Filter>();
+        Filter eq = FilterBuilder.equalTo(AttributeBuilder.build("foo", " bar3 "));
+        Filter gt = FilterBuilder.greaterThan(AttributeBuilder.build("count", 50));
+        Filter lte = FilterBuilder.lessThanOrEqualTo(AttributeBuilder.build("count", 50));
+        Filter sw = FilterBuilder.startsWith(AttributeBuilder.build("attribute3", "value3-1"));
+        Filter ew = FilterBuilder.endsWith(AttributeBuilder.build("attribute4", "7"));
+        Filter co = FilterBuilder.contains(AttributeBuilder.build("attribute5", "-2"));
+        Filter all = FilterBuilder.containsAllValues(AttributeBuilder.build("group", "group1"));
+        Filter in =
+                FilterBuilder.or(FilterBuilder.or(FilterBuilder.equalTo(AttributeBuilder.build(
+                        "count", 1)), FilterBuilder.equalTo(AttributeBuilder.build("count", 2))),
+                        FilterBuilder.or(FilterBuilder.equalTo(AttributeBuilder.build("count", 3L)),
+                                FilterBuilder.equalTo(AttributeBuilder.build("COUNT2", 3L))));
+        Filter uids =
+                FilterBuilder.or(FilterBuilder.equalTo(new Uid("uid7")), FilterBuilder
+                        .or(FilterBuilder.equalTo(AttributeBuilder.build(Uid.NAME, "uid8")),
+                                FilterBuilder.equalTo(new Uid("uid9"))));
+        filters.add(eq);
+        filters.add(gt);
+        filters.add(lte);
+        filters.add(sw);
+        filters.add(ew);
+        filters.add(co);
+        filters.add(all);
+        filters.add(in);
+        filters.add(uids);
+        filters.add(FilterBuilder.not(in));
+        filters.add(FilterBuilder.and(FilterBuilder.and(co, gt), FilterBuilder.or(sw, ew)));
+        filters.add(FilterBuilder.or(co, FilterBuilder.and(eq, FilterBuilder.not(lte))));
+        filters.add(FilterBuilder.and(all, FilterBuilder.or(in, uids)));
+        filters.add(new FilteredResultsHandler.PassThroughFilter());
+        filters.add(FilterBuilder.and(new FilteredResultsHandler.PassThroughFilter(), co));
+
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new MyAttributeNormalizer());
+        List<Filter> normalizing = new ArrayList<Filter>();
+        for (Filter filter : filters) {
+            normalizing.add(new NormalizingFilter(filter, normalizer));
+        }
+        filters.addAll(normalizing);
+        filters.add(FilterBuilder.and(normalizing.get(0), FilterBuilder.not(normalizing.get(7))));
+        return filters;
+    }
+
+    @Test
+    public void testSameResults() {
+        List<ConnectorObject> objects = createObjects(2000);
+        for (Filter filter : createFilters()) {
+            Filter compiled = FilterCompiler.compile(filter);
+            int accepted = 0;
+            for (ConnectorObject object : objects) {
+                boolean expected = filter.accept(object);
+                assertEquals(compiled.accept(object), expected, filter.toString());
+                if (expected) {
+                    accepted++;
+                }
+            }
+            assertEquals(compiled.toString(), filter.toString());
+            // none of the filters rejects all objects
+            assertEquals(accepted > 0, true, filter.toString());
+        }
+    }
+
+    @Test
+    public void testCompile() {
+        assertNull(FilterCompiler.compile(null));
+        Filter compiled =
+                FilterCompiler.compile(FilterBuilder.equalTo(AttributeBuilder.build("foo", "bar")));
+        assertSame(FilterCompiler.compile(compiled), compiled);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNotComparable() {
+        ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+        bld.setUid("uid");
+        bld.setName("name");
+        bld.addAttribute("foo", new Object());
+        FilterCompiler.compile(FilterBuilder.greaterThan(AttributeBuilder.build("foo", 1))).accept(
+                bld.build());
+    }
+}
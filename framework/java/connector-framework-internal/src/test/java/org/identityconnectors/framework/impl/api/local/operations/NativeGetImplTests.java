@@ -0,0 +1,187 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AbstractFilterTranslator;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.GetOp;
+import org.identityconnectors.framework.spi.operations.SearchOp;
+import org.testng.annotations.Test;
+
+public class NativeGetImplTests {
+
+    /**
+     * Connector which can't translate any filter.
+     */
+    public static class GetConnector implements Connector, SearchOp<String>, GetOp {
+
+        private final Map<String, ConnectorObject> objects =
+                new LinkedHashMap<String, ConnectorObject>();
+
+        private int queries = 0;
+
+        private int gets = 0;
+
+        public GetConnector() {
+            for (int i = 0; i < 10; i++) {
+                ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+                bld.setUid("uid" + i);
+                bld.setName("user" + i);
+                bld.addAttribute("foo", "bar" + i);
+                bld.addAttribute("baz", "qux" + i);
+                objects.put("uid" + i, bld.build());
+            }
+        }
+
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        public void init(Configuration cfg) {
+        }
+
+        public void dispose() {
+        }
+
+        public FilterTranslator<String> createFilterTranslator(ObjectClass objectClass,
+                OperationOptions options) {
+            return new AbstractFilterTranslator<String>() {
+            };
+        }
+
+        public void executeQuery(ObjectClass objectClass, String query, ResultsHandler handler,
+                OperationOptions options) {
+            queries++;
+            for (ConnectorObject obj : objects.values()) {
+                if (!handler.handle(obj)) {
+                    break;
+                }
+            }
+        }
+
+        public ConnectorObject getObject(ObjectClass objectClass, Uid uid,
+                OperationOptions options) {
+            gets++;
+            return objects.get(uid.getUidValue());
+        }
+
+        public void getObjects(ObjectClass objectClass, Collection<Uid> uids,
+                ResultsHandler handler, OperationOptions options) {
+            gets++;
+            for (Uid uid : uids) {
+                ConnectorObject obj = objects.get(uid.getUidValue());
+                if (obj != null && !handler.handle(obj)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<ConnectorObject> search(GetConnector connector, Filter filter,
+            OperationOptions options) {
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        new SearchImpl(null, connector).search(ObjectClass.ACCOUNT, filter, new ResultsHandler() {
+
+            public boolean handle(ConnectorObject obj) {
+                results.add(obj);
+                return true;
+            }
+        }, options);
+        return results;
+    }
+
+    @Test
+    public void testGetObject() {
+        GetConnector connector = new GetConnector();
+        NativeGetImpl get = new NativeGetImpl(null, connector);
+        OperationOptionsBuilder bld = new OperationOptionsBuilder();
+        bld.setAttributesToGet("foo");
+        ConnectorObject obj = get.getObject(ObjectClass.ACCOUNT, new Uid("uid3"), bld.build());
+        assertEquals(obj.getAttributes().size(), 3);
+        assertEquals(obj.getAttributeByName("foo"), AttributeBuilder.build("foo", "bar3"));
+        assertNull(obj.getAttributeByName("baz"));
+        assertNull(get.getObject(ObjectClass.ACCOUNT, new Uid("missing"), null));
+        assertEquals(connector.gets, 2);
+        assertEquals(connector.queries, 0);
+    }
+
+    @Test
+    public void testSearchByUids() {
+        GetConnector connector = new GetConnector();
+        Filter filter =
+                FilterBuilder.or(FilterBuilder.equalTo(new Uid("uid7")), FilterBuilder.or(
+                        FilterBuilder.equalTo(new Uid("uid2")), FilterBuilder.equalTo(new Uid(
+                                "missing"))));
+        List<ConnectorObject> results = search(connector, filter, null);
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(0).getUid(), new Uid("uid7"));
+        assertEquals(results.get(1).getUid(), new Uid("uid2"));
+        assertEquals(connector.gets, 1);
+        assertEquals(connector.queries, 0);
+    }
+
+    @Test
+    public void testSearchByOtherAttributes() {
+        GetConnector connector = new GetConnector();
+        Filter filter =
+                FilterBuilder.or(FilterBuilder.equalTo(new Uid("uid7")), FilterBuilder
+                        .equalTo(AttributeBuilder.build("foo", "bar2")));
+        List<ConnectorObject> results = search(connector, filter, null);
+        assertEquals(results.size(), 2);
+        assertEquals(connector.gets, 0);
+        assertEquals(connector.queries, 1);
+    }
+
+    @Test
+    public void testPagedSearchByUids() {
+        GetConnector connector = new GetConnector();
+        OperationOptionsBuilder bld = new OperationOptionsBuilder();
+        bld.setPageSize(1);
+        List<ConnectorObject> results =
+                search(connector, FilterBuilder.equalTo(new Uid("uid7")), bld.build());
+        assertEquals(results.size(), 1);
+        assertEquals(connector.gets, 0);
+        assertEquals(connector.queries, 1);
+    }
+}
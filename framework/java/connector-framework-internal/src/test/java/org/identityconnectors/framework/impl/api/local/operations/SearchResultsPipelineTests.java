@@ -0,0 +1,204 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.impl.api.local.operations.ObjectNormalizerFacadeTests.MyAttributeNormalizer;
+import org.testng.annotations.Test;
+
+public class SearchResultsPipelineTests {
+
+    private static class ListHandler implements ResultsHandler {
+        private final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+
+        public boolean handle(ConnectorObject object) {
+            objects.add(object);
+            return true;
+        }
+    }
+
+    private ConnectorObject createObject(int i, int attributes) {
+        ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+        bld.setUid("uid" + i);
+        bld.setName("user" + i);
+        bld.addAttribute("foo", " bar" + i + " ");
+        for (int j = 0; j < attributes; j++) {
+            bld.addAttribute("attribute" + j, "value" + j + "-" + i);
+        }
+        return bld.build();
+    }
+
+    private ObjectNormalizerFacade createNormalizer() {
+        return new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new MyAttributeNormalizer());
+    }
+
+    @Test
+    public void testNormalizeFilterAndReduce() {
+        ListHandler handler = new ListHandler();
+        Filter filter =
+                FilterBuilder.or(FilterBuilder.equalTo(AttributeBuilder.build("foo", "bar1")),
+                        FilterBuilder.equalTo(AttributeBuilder.build("foo", "bar2")));
+        // the filter reads an attribute which is not returned
+        SearchResultsPipeline pipeline =
+                new SearchResultsPipeline(handler, createNormalizer(), filter,
+                        new String[] { "attribute1" });
+        for (int i = 0; i < 5; i++) {
+            pipeline.handle(createObject(i, 3));
+        }
+
+        assertEquals(handler.objects.size(), 2);
+        ConnectorObject object = handler.objects.get(0);
+        assertEquals(object.getUid().getUidValue(), "uid1");
+        assertEquals(object.getAttributes().size(), 3);
+        assertEquals(object.getAttributeByName("attribute1").getValue().get(0), "value1-1");
+        assertNull(object.getAttributeByName("foo"));
+        assertNull(object.getAttributeByName("attribute0"));
+    }
+
+    @Test
+    public void testNormalize() {
+        ListHandler handler = new ListHandler();
+        SearchResultsPipeline pipeline =
+                new SearchResultsPipeline(handler, createNormalizer(), null, null);
+        ConnectorObject object = createObject(1, 3);
+        pipeline.handle(object);
+
+        assertEquals(handler.objects.get(0), createNormalizer().normalizeObject(object));
+    }
+
+    @Test
+    public void testUnchangedObjectIsNotCopied() {
+        ListHandler handler = new ListHandler();
+        ConnectorObject object = createObject(1, 3);
+        new SearchResultsPipeline(handler, new ObjectNormalizerFacade(ObjectClass.ACCOUNT, null),
+                FilterBuilder.equalTo(AttributeBuilder.build("attribute0", "value0-1")), null)
+                .handle(object);
+        new SearchResultsPipeline(handler, null, null,
+                new String[] { "foo", "attribute0", "attribute1", "attribute2" }).handle(object);
+
+        assertEquals(handler.objects.size(), 2);
+        assertSame(handler.objects.get(0), object);
+        assertSame(handler.objects.get(1), object);
+    }
+
+    @Test
+    public void testExtendedFilterReadsAllAttributes() {
+        ListHandler handler = new ListHandler();
+        Filter filter = new Filter() {
+            public boolean accept(ConnectorObject obj) {
+                return "bar2".equals(obj.getAttributeByName("foo").getValue().get(0));
+            }
+
+            public <R, P> R accept(FilterVisitor<R, P> v, P p) {
+                return v.visitExtendedFilter(p, this);
+            }
+        };
+        SearchResultsPipeline pipeline =
+                new SearchResultsPipeline(handler, createNormalizer(), filter,
+                        new String[] { "attribute0" });
+        for (int i = 0; i < 5; i++) {
+            pipeline.handle(createObject(i, 3));
+        }
+
+        assertEquals(handler.objects.size(), 1);
+        assertEquals(handler.objects.get(0).getAttributes().size(), 3);
+        assertNull(handler.objects.get(0).getAttributeByName("foo"));
+    }
+
+    @Test
+    public void testAllocationPerResult() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 1000; i++) {
+            objects.add(createObject(i, 30));
+        }
+        ObjectNormalizerFacade normalizer = createNormalizer();
+        Filter filter =
+                normalizer.normalizeFilter(FilterBuilder.startsWith(AttributeBuilder.build("foo",
+                        "bar")));
+        String[] attrsToGet = new String[] { "attribute0", "attribute1", "attribute2" };
+
+        // the normalizing, filtering and reducing handlers chained
+        ListHandler chainHandler = new ListHandler();
+        ResultsHandler chain =
+                new NormalizingResultsHandler(new FilteredResultsHandler(
+                        new SearchImpl.AttributesToGetSearchResultsHandler(chainHandler,
+                                attrsToGet), filter), normalizer);
+        ListHandler pipelineHandler = new ListHandler();
+        ResultsHandler pipeline =
+                new SearchResultsPipeline(pipelineHandler, normalizer, filter, attrsToGet);
+
+        // warm up
+        for (int i = 0; i < 10; i++) {
+            handleAll(chain, objects);
+            handleAll(pipeline, objects);
+        }
+        chainHandler.objects.clear();
+        pipelineHandler.objects.clear();
+
+        long chainBytes = handleAll(chain, objects);
+        long pipelineBytes = handleAll(pipeline, objects);
+        assertEquals(pipelineHandler.objects, chainHandler.objects);
+        if (chainBytes >= 0) {
+            assertTrue(pipelineBytes < chainBytes, "pipeline allocated " + pipelineBytes
+                    + " bytes, handler chain " + chainBytes + " bytes");
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or -1 if the JVM does
+     * not tell.
+     */
+    private long handleAll(ResultsHandler handler, List<ConnectorObject> objects) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocated = allocatedBytes(threads);
+        for (ConnectorObject object : objects) {
+            handler.handle(object);
+        }
+        return allocated < 0 ? -1 : allocatedBytes(threads) - allocated;
+    }
+
+    private long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread
+                    .currentThread().getId());
+        }
+        return -1;
+    }
+}
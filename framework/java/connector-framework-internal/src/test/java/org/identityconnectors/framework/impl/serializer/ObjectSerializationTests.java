@@ -32,6 +32,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.math.BigDecimal;
@@ -56,6 +57,7 @@ import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.common.FrameworkUtil;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
@@ -106,6 +108,9 @@ import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFil
 import org.identityconnectors.framework.common.objects.filter.NotFilter;
 import org.identityconnectors.framework.common.objects.filter.OrFilter;
 import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
+import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
+import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
@@ -433,6 +438,20 @@ public class ObjectSerializationTests {
         assertEquals(3, v2.getMaxWait());
         assertEquals(4, v2.getMinEvictableIdleTimeMillis());
         assertEquals(5, v2.getMinIdle());
+        assertEquals(0, v2.getMaxLifetimeMillis());
+        assertFalse(v2.isPrewarm());
+
+        v1.setMaxLifetimeMillis(6);
+        v1.setPrewarm(true);
+        v1.setValidationPolicy(ObjectPoolConfiguration.ValidationPolicy.BACKGROUND);
+        v1.setValidationIntervalMillis(7);
+        v2 = (ObjectPoolConfiguration) cloneObject(v1);
+        assertEquals(v1, v2);
+        assertEquals(6, v2.getMaxLifetimeMillis());
+        assertTrue(v2.isPrewarm());
+        assertEquals(ObjectPoolConfiguration.ValidationPolicy.BACKGROUND, v2
+                .getValidationPolicy());
+        assertEquals(7, v2.getValidationIntervalMillis());
     }
 
     @Test
@@ -617,6 +636,58 @@ public class ObjectSerializationTests {
         assertEquals(v1, v2);
     }
 
+    @Test
+    public void testBinaryObjectStream() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 1000; i++) {
+            ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+            bld.setUid("uid" + i);
+            bld.setName("uid=user" + i + ",ou=people,dc=example,dc=com");
+            for (int j = 0; j < 30; j++) {
+                bld.addAttribute("attribute" + j, "value" + j + "-" + i, "cn=group" + j
+                        + ",ou=groups,dc=example,dc=com");
+            }
+            objects.add(bld.build());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectSerializer encoder =
+                ObjectSerializerFactory.getInstance().newBinarySerializer(out);
+        for (int i = 0; i < objects.size(); i++) {
+            encoder.writeObject(objects.get(i));
+            if (i == objects.size() / 2) {
+                // a failed object must not corrupt the stream
+                try {
+                    encoder.writeObject(new Object());
+                    Assert.fail("Object should not be serializable");
+                } catch (ConnectorException e) {
+                    /* expected */
+                }
+            }
+        }
+        encoder.flush();
+
+        BinaryObjectDeserializer decoder =
+                ObjectSerializerFactory.getInstance().newBinaryDeserializer(
+                        new ByteArrayInputStream(out.toByteArray()));
+        for (ConnectorObject expected : objects) {
+            assertEquals(decoder.readObject(), expected);
+        }
+
+        // constants are shared across the stream, so it must be smaller
+        // than the objects encoded one by one
+        int separate = 0;
+        for (ConnectorObject object : objects) {
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            BinaryObjectSerializer singleEncoder =
+                    ObjectSerializerFactory.getInstance().newBinarySerializer(single);
+            singleEncoder.writeObject(object);
+            singleEncoder.flush();
+            separate += single.size();
+        }
+        assertTrue(out.size() < separate);
+    }
+
     @Test
     public void testName() {
         Name v1 = new Name("test");
@@ -950,6 +1021,17 @@ public class ObjectSerializationTests {
         assertEquals(CreateApiOp.class, v2.getOperation());
         assertEquals("mymethodName", v2.getOperationMethodName());
         assertEquals(args, v2.getArguments());
+        assertEquals(0, v2.getResultsWindow());
+    }
+
+    @Test
+    public void testOperationRequestResultsWindow() {
+        OperationRequest v1 =
+                new OperationRequest(new ConnectorKey("my bundle", "my version", "my connector"),
+                        "facade key", SearchApiOp.class, "search", new ArrayList<Object>(), 5000);
+        OperationRequest v2 = (OperationRequest) cloneObject(v1);
+        assertEquals(SearchApiOp.class, v2.getOperation());
+        assertEquals(5000, v2.getResultsWindow());
     }
 
     @Test
@@ -31,6 +31,33 @@ import java.util.Map;
  */
 public final class ObjectPoolConfiguration {
 
+    /**
+     * When the pooled objects are tested.
+     */
+    public static enum ValidationPolicy {
+        /**
+         * Test every object before it is borrowed.
+         */
+        ALWAYS,
+        /**
+         * Test an object before it is borrowed only if it was idle longer
+         * than the validation interval.
+         */
+        IDLE,
+        /**
+         * Test the idle objects in the background at the validation interval,
+         * borrowed objects are not tested.
+         */
+        BACKGROUND,
+        /**
+         * Don't test borrowed objects. If an operation fails with a
+         * connection error the object is tested then; if it is broken it is
+         * disposed. Get, schema and test operations are then retried once with
+         * another object, the others fail.
+         */
+        ON_FAILURE
+    }
+
     public ObjectPoolConfiguration() {
     }
 
@@ -40,6 +67,10 @@ public final class ObjectPoolConfiguration {
         this.setMaxWait(other.getMaxWait());
         this.setMinEvictableIdleTimeMillis(other.getMinEvictableIdleTimeMillis());
         this.setMinIdle(other.getMinIdle());
+        this.setMaxLifetimeMillis(other.getMaxLifetimeMillis());
+        this.setPrewarm(other.isPrewarm());
+        this.setValidationPolicy(other.getValidationPolicy());
+        this.setValidationIntervalMillis(other.getValidationIntervalMillis());
     }
 
     /**
@@ -69,6 +100,27 @@ public final class ObjectPoolConfiguration {
      */
     private int minIdle = 1;
 
+    /**
+     * Maximum time an object is kept from its creation. Zero means no limit.
+     */
+    private long maxLifetimeMillis = 0;
+
+    /**
+     * Create the minimum number of idle objects in the background.
+     */
+    private boolean prewarm = false;
+
+    /**
+     * When the pooled objects are tested.
+     */
+    private ValidationPolicy validationPolicy = ValidationPolicy.ALWAYS;
+
+    /**
+     * Idle time after which an object is tested on borrow, or the interval of
+     * the background validation.
+     */
+    private long validationIntervalMillis = 30 * 1000;
+
     /**
      * Get the set number of maximum objects (idle+active).
      */
@@ -144,6 +196,71 @@ public final class ObjectPoolConfiguration {
         this.minIdle = minIdle;
     }
 
+    /**
+     * Maximum time an object is kept from its creation. Zero means no limit.
+     */
+    public long getMaxLifetimeMillis() {
+        return maxLifetimeMillis;
+    }
+
+    /**
+     * Maximum time an object is kept from its creation. Older objects are
+     * disposed when they are returned or found idle. Zero means no limit.
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    /**
+     * Create the minimum number of idle objects in the background.
+     */
+    public boolean isPrewarm() {
+        return prewarm;
+    }
+
+    /**
+     * Create the minimum number of idle objects in the background when the
+     * pool is created and after idle objects were evicted, so the first
+     * operations don't pay for the creation.
+     */
+    public void setPrewarm(boolean prewarm) {
+        this.prewarm = prewarm;
+    }
+
+    /**
+     * When the pooled objects are tested.
+     */
+    public ValidationPolicy getValidationPolicy() {
+        return validationPolicy;
+    }
+
+    /**
+     * Sets when the pooled objects are tested. The default
+     * {@link ValidationPolicy#ALWAYS} tests every object before it is
+     * borrowed, which costs a round trip to the resource for most connectors.
+     */
+    public void setValidationPolicy(ValidationPolicy validationPolicy) {
+        this.validationPolicy = validationPolicy;
+    }
+
+    /**
+     * Idle time after which an object is tested on borrow with
+     * {@link ValidationPolicy#IDLE}, or the interval of the validation with
+     * {@link ValidationPolicy#BACKGROUND}.
+     */
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    /**
+     * Idle time after which an object is tested on borrow with
+     * {@link ValidationPolicy#IDLE}, or the interval of the validation with
+     * {@link ValidationPolicy#BACKGROUND}.
+     */
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
     public void validate() {
         if (minIdle < 0) {
             throw new IllegalArgumentException("Min idle is less than zero.");
@@ -160,6 +277,15 @@ public final class ObjectPoolConfiguration {
         if (minEvictableIdleTimeMillis < 0) {
             throw new IllegalArgumentException("Min evictable idle time millis less than zero.");
         }
+        if (maxLifetimeMillis < 0) {
+            throw new IllegalArgumentException("Max lifetime millis less than zero.");
+        }
+        if (validationPolicy == null) {
+            throw new IllegalArgumentException("Validation policy is null.");
+        }
+        if (validationIntervalMillis < 0) {
+            throw new IllegalArgumentException("Validation interval millis less than zero.");
+        }
         if (minIdle > maxIdle) {
             throw new IllegalArgumentException("Min idle is greater than max idle.");
         }
@@ -171,7 +297,8 @@ public final class ObjectPoolConfiguration {
     @Override
     public int hashCode() {
         return (int) (getMaxObjects() + getMaxIdle() + getMaxWait()
-                + getMinEvictableIdleTimeMillis() + getMinIdle());
+                + getMinEvictableIdleTimeMillis() + getMinIdle() + getMaxLifetimeMillis()
+                + getValidationIntervalMillis());
     }
 
     @Override
@@ -194,6 +321,18 @@ public final class ObjectPoolConfiguration {
             if (getMinIdle() != other.getMinIdle()) {
                 return false;
             }
+            if (getMaxLifetimeMillis() != other.getMaxLifetimeMillis()) {
+                return false;
+            }
+            if (isPrewarm() != other.isPrewarm()) {
+                return false;
+            }
+            if (getValidationPolicy() != other.getValidationPolicy()) {
+                return false;
+            }
+            if (getValidationIntervalMillis() != other.getValidationIntervalMillis()) {
+                return false;
+            }
             return true;
         }
         return false;
@@ -208,6 +347,10 @@ public final class ObjectPoolConfiguration {
         bld.put("MaxWait", getMaxWait());
         bld.put("MinEvictableIdleTimeMillis", getMinEvictableIdleTimeMillis());
         bld.put("MinIdle", getMinIdle());
+        bld.put("MaxLifetimeMillis", getMaxLifetimeMillis());
+        bld.put("Prewarm", isPrewarm());
+        bld.put("ValidationPolicy", getValidationPolicy());
+        bld.put("ValidationIntervalMillis", getValidationIntervalMillis());
         return bld.toString();
     }
 }
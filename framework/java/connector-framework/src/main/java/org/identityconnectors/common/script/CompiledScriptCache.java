@@ -0,0 +1,278 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.script;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * A bounded cache of compiled scripts shared by all {@link ScriptExecutorFactory}
+ * instances created by {@link ScriptExecutorFactory#newInstance(String)}.
+ * <p>
+ * The executors are keyed by the classloader, the language and the script
+ * text. The cache holds the executors strongly, and an executor usually
+ * references the classes compiled for its script and so their classloader.
+ * A classloader stays reachable until all its executors have been evicted, as
+ * the least recently used ones or by {@link #clear()}, which
+ * {@link org.identityconnectors.framework.api.ConnectorInfoManagerFactory#clearLocalCache()}
+ * calls when it drops the connector bundles. An evicted executor which
+ * implements {@link Closeable} is closed, so the factory can release the
+ * classes generated for the script.
+ *
+ * @since 1.4
+ */
+public final class CompiledScriptCache {
+
+    private static final Log LOG = Log.getLog(CompiledScriptCache.class);
+
+    /**
+     * The default maximum number of cached scripts.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Map<Key, ScriptExecutor> executors = new LinkedHashMap<Key, ScriptExecutor>(16, 0.75f, true);
+
+    private int maxSize;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public CompiledScriptCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the executor of the script, it is created by
+     * {@link ScriptExecutorFactory#newScriptExecutor(ClassLoader, String, boolean)}
+     * with compilation requested if it is not in the cache.
+     *
+     * @param factory
+     *            the factory of the language.
+     * @param loader
+     *            the classloader the script has access to.
+     * @param script
+     *            the script text.
+     * @return the executor, shared by all callers of the same script.
+     */
+    public ScriptExecutor getScriptExecutor(ScriptExecutorFactory factory, ClassLoader loader,
+            String script) {
+        Assertions.nullCheck(factory, "factory");
+        Assertions.nullCheck(script, "script");
+        final Key key = new Key(loader, factory.getLanguageName(), script);
+        synchronized (this) {
+            final ScriptExecutor executor = executors.get(key);
+            if (executor != null) {
+                hits++;
+                return executor;
+            }
+            misses++;
+        }
+        // compile outside of the lock, a script compiled twice concurrently
+        // is cached once
+        final ScriptExecutor executor = factory.newScriptExecutor(loader, script, true);
+        if (executor == null) {
+            return null;
+        }
+        final List<ScriptExecutor> evicted = new ArrayList<ScriptExecutor>();
+        final ScriptExecutor result;
+        synchronized (this) {
+            final ScriptExecutor existing = executors.get(key);
+            if (existing != null) {
+                evicted.add(executor);
+                result = existing;
+            } else if (maxSize == 0) {
+                result = executor;
+            } else {
+                executors.put(key, executor);
+                evict(evicted);
+                result = executor;
+            }
+        }
+        release(evicted);
+        return result;
+    }
+
+    /**
+     * Returns the maximum number of cached scripts.
+     *
+     * @return the maximum number of cached scripts.
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of cached scripts, the least recently used
+     * scripts above the new maximum are evicted.
+     *
+     * @param maxSize
+     *            the maximum number of cached scripts, 0 disables the cache.
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Maximum size must not be negative");
+        }
+        final List<ScriptExecutor> evicted = new ArrayList<ScriptExecutor>();
+        synchronized (this) {
+            this.maxSize = maxSize;
+            evict(evicted);
+        }
+        release(evicted);
+    }
+
+    /**
+     * Evicts all cached scripts.
+     */
+    public void clear() {
+        final List<ScriptExecutor> evicted;
+        synchronized (this) {
+            evicted = new ArrayList<ScriptExecutor>(executors.values());
+            evictions += executors.size();
+            executors.clear();
+        }
+        release(evicted);
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     *
+     * @return the number of cached scripts.
+     */
+    public synchronized int size() {
+        return executors.size();
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests which compiled the script.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of scripts evicted from the cache.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompiledScriptCache[size=" + executors.size() + ", maxSize=" + maxSize + ", hits="
+                + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    private void evict(List<ScriptExecutor> evicted) {
+        final Iterator<ScriptExecutor> eldest = executors.values().iterator();
+        while (executors.size() > maxSize && eldest.hasNext()) {
+            evicted.add(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static void release(List<ScriptExecutor> evicted) {
+        for (ScriptExecutor executor : evicted) {
+            if (executor instanceof Closeable) {
+                try {
+                    ((Closeable) executor).close();
+                } catch (IOException e) {
+                    LOG.ok(e, "Failed to release an evicted script");
+                }
+            }
+        }
+    }
+
+    /**
+     * The classloader is compared by identity. It is weakly referenced so the
+     * key alone does not keep it reachable.
+     */
+    private static final class Key {
+
+        private final WeakReference<ClassLoader> loader;
+
+        private final boolean nullLoader;
+
+        private final String language;
+
+        private final String script;
+
+        private final int hashCode;
+
+        private Key(ClassLoader loader, String language, String script) {
+            this.loader = new WeakReference<ClassLoader>(loader);
+            this.nullLoader = loader == null;
+            this.language = language;
+            this.script = script;
+            this.hashCode =
+                    (31 * System.identityHashCode(loader) + language.hashCode()) * 31
+                            + script.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            final ClassLoader l = loader.get();
+            // a collected classloader matches no other key
+            return hashCode == other.hashCode && l == other.loader.get()
+                    && (l != null || nullLoader && other.nullLoader)
+                    && language.equals(other.language) && script.equals(other.script);
+        }
+    }
+}
@@ -26,9 +26,9 @@ import java.util.Map;
 
 /**
  * Represents a (possibly compiled) script. It can be invoked many times with
- * many arguments: TODO: Specify thread safety. Can this be called from multiple
- * threads or not? Need empirical data from a few scripting engines to determine
- * which is most appropriate.
+ * many arguments. An executor created with compilation requested can be
+ * shared through the {@link CompiledScriptCache}, so it must allow concurrent
+ * invocations from multiple threads.
  */
 public interface ScriptExecutor {
 
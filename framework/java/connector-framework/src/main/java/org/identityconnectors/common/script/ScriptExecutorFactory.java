@@ -52,11 +52,19 @@ import org.identityconnectors.framework.spi.operations.ScriptOnResourceOp;
  * need to have a custom implementation of {@link ScriptOnConnectorOp}. This is
  * <b>not</b> intended for use by connectors that implement
  * {@link ScriptOnResourceOp}.
+ * <p>
+ * The factories returned by {@link #newInstance(String)} cache the executors
+ * of the scripts they are asked to compile in the {@link CompiledScriptCache}
+ * returned by {@link #getCompiledScriptCache()}, so a script run many times is
+ * compiled once.
  */
 public abstract class ScriptExecutorFactory {
 
     private static Map<String, Class<?>> factoryCache;
 
+    private static final CompiledScriptCache COMPILED_SCRIPT_CACHE =
+            new CompiledScriptCache(CompiledScriptCache.DEFAULT_MAX_SIZE);
+
     private static synchronized Map<String, Class<?>> getFactoryCache() {
         if (factoryCache == null) {
             factoryCache = CollectionUtil.newCaseInsensitiveMap();
@@ -145,8 +153,22 @@ public abstract class ScriptExecutorFactory {
         return Collections.unmodifiableSet(getFactoryCache().keySet());
     }
 
+    /**
+     * Returns the cache of the compiled scripts of the factories created by
+     * {@link #newInstance(String)}.
+     *
+     * @return the cache, shared by all languages.
+     * @since 1.4
+     */
+    public static CompiledScriptCache getCompiledScriptCache() {
+        return COMPILED_SCRIPT_CACHE;
+    }
+
     /**
      * Creates a ScriptExecutorFactory for the given language.
+     * <p>
+     * The executors of the scripts to compile are taken from the
+     * {@link #getCompiledScriptCache() compiled script cache}.
      *
      * @param language
      *            The name of the language
@@ -165,7 +187,7 @@ public abstract class ScriptExecutorFactory {
         }
         // exceptions here should not happened because of the register
         try {
-            return (ScriptExecutorFactory) clazz.newInstance();
+            return new CachingScriptExecutorFactory((ScriptExecutorFactory) clazz.newInstance());
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -187,7 +209,8 @@ public abstract class ScriptExecutorFactory {
      *            the given script. This need not be implemented by all script
      *            executors. If true, the caller is saying that they intend to
      *            call the script multiple times with different arguments, so
-     *            compile if possible.
+     *            compile if possible. The executor of a compiled script may be
+     *            cached and executed by several threads concurrently.
      * @return A script executor.
      */
     public abstract ScriptExecutor newScriptExecutor(ClassLoader loader, String script,
@@ -199,4 +222,30 @@ public abstract class ScriptExecutorFactory {
      * @return the name of the language.
      */
     public abstract String getLanguageName();
+
+    /**
+     * Takes the executors of the scripts to compile from the compiled script
+     * cache.
+     */
+    private static final class CachingScriptExecutorFactory extends ScriptExecutorFactory {
+
+        private final ScriptExecutorFactory factory;
+
+        private CachingScriptExecutorFactory(ScriptExecutorFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public ScriptExecutor newScriptExecutor(ClassLoader loader, String script, boolean compile) {
+            if (compile) {
+                return COMPILED_SCRIPT_CACHE.getScriptExecutor(factory, loader, script);
+            }
+            return factory.newScriptExecutor(loader, script, false);
+        }
+
+        @Override
+        public String getLanguageName() {
+            return factory.getLanguageName();
+        }
+    }
 }
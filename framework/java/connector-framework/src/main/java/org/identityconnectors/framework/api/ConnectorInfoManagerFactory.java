@@ -114,8 +114,9 @@ public abstract class ConnectorInfoManagerFactory {
             RemoteFrameworkConnectionInfo info);
 
     /**
-     * Clears the local bundle manager cache. NOTE: Avoid using this method
-     * outside of unit testing.
+     * Clears the local bundle manager cache and the
+     * {@link org.identityconnectors.common.script.CompiledScriptCache compiled
+     * scripts}. NOTE: Avoid using this method outside of unit testing.
      */
     public abstract void clearLocalCache();
 
@@ -68,6 +68,7 @@ import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.operations.AuthenticateOp;
 import org.identityconnectors.framework.spi.operations.CreateOp;
 import org.identityconnectors.framework.spi.operations.DeleteOp;
+import org.identityconnectors.framework.spi.operations.GetOp;
 import org.identityconnectors.framework.spi.operations.ResolveUsernameOp;
 import org.identityconnectors.framework.spi.operations.SPIOperation;
 import org.identityconnectors.framework.spi.operations.SchemaOp;
@@ -106,6 +107,7 @@ public final class FrameworkUtil {
         SPI_TO_API.put(CreateOp.class, CreateApiOp.class);
         SPI_TO_API.put(DeleteOp.class, DeleteApiOp.class);
         SPI_TO_API.put(SearchOp.class, SearchApiOp.class);
+        SPI_TO_API.put(GetOp.class, GetApiOp.class);
         SPI_TO_API.put(UpdateOp.class, UpdateApiOp.class);
         SPI_TO_API.put(UpdateAttributeValuesOp.class, UpdateApiOp.class);
         SPI_TO_API.put(SchemaOp.class, SchemaApiOp.class);
@@ -141,7 +143,7 @@ public final class FrameworkUtil {
     public static Set<Class<? extends APIOperation>> allAPIOperations() {
         Set<Class<? extends APIOperation>> set = new HashSet<Class<? extends APIOperation>>();
         set.addAll(SPI_TO_API.values());
-        // add Get/Validate because it doesn't have a corresponding SPI.
+        // add Validate because it doesn't have a corresponding SPI.
         set.add(GetApiOp.class);
         set.add(ValidateApiOp.class);
         return CollectionUtil.newReadOnlySet(set);
@@ -118,7 +118,22 @@ public class Attribute {
         // make this case insensitive
         this.name = name;
         // copy to prevent corruption..
-        this.value = (value == null) ? null : CollectionUtil.newReadOnlyList(value);
+        this.value = (value == null) ? null : compactReadOnlyList(value);
+    }
+
+    /**
+     * Copy the values to an immutable list, the most common empty and single
+     * values are stored without a backing array.
+     */
+    private static List<Object> compactReadOnlyList(List<Object> value) {
+        switch (value.size()) {
+        case 0:
+            return Collections.emptyList();
+        case 1:
+            return Collections.singletonList(value.get(0));
+        default:
+            return CollectionUtil.newReadOnlyList(value);
+        }
     }
 
     public String getName() {
@@ -126,7 +141,8 @@ public class Attribute {
     }
 
     public List<Object> getValue() {
-        return (this.value == null) ? null : Collections.unmodifiableList(this.value);
+        // the list is immutable, no need to wrap it
+        return this.value;
     }
 
     /**
@@ -0,0 +1,214 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The attribute names of a {@link ConnectorObject}, shared by all objects of
+ * an object class with the same attribute names.
+ * <p/>
+ * The names are folded the way {@link String#CASE_INSENSITIVE_ORDER} compares
+ * them and kept in that order, an object stores its attributes in an array in
+ * the order of its layout. The folded names and the layouts are interned per
+ * object class, so the objects of a search share one layout and lookups by
+ * name need no case folding after the first one.
+ */
+final class AttributeLayout {
+
+    /**
+     * Limits of the interned names and layouts, the names and layouts above
+     * the limits are used without being interned.
+     */
+    private static final int MAX_OBJECT_CLASSES = 256;
+
+    private static final int MAX_NAMES = 4096;
+
+    private static final int MAX_LAYOUTS = 1024;
+
+    private static final ConcurrentMap<ObjectClass, NameTable> TABLES =
+            new ConcurrentHashMap<ObjectClass, NameTable>();
+
+    /**
+     * The interned names and layouts of an object class.
+     */
+    private static final class NameTable {
+
+        private final ConcurrentMap<String, String> folded =
+                new ConcurrentHashMap<String, String>();
+
+        private final ConcurrentMap<List<String>, AttributeLayout> layouts =
+                new ConcurrentHashMap<List<String>, AttributeLayout>();
+
+        String fold(String name) {
+            String result = folded.get(name);
+            if (result == null) {
+                result = AttributeLayout.fold(name);
+                if (folded.size() < MAX_NAMES) {
+                    // share one instance of the folded name
+                    String interned = folded.get(result);
+                    if (interned == null) {
+                        interned = result;
+                        folded.putIfAbsent(result, result);
+                    }
+                    folded.putIfAbsent(name, interned);
+                    result = interned;
+                }
+            }
+            return result;
+        }
+
+        AttributeLayout layout(String[] names, Attribute[] attributes) {
+            List<String> key = Arrays.asList(names);
+            AttributeLayout layout = layouts.get(key);
+            if (layout == null) {
+                layout = new AttributeLayout(this, names, attributes);
+                if (layouts.size() < MAX_LAYOUTS) {
+                    AttributeLayout existing = layouts.putIfAbsent(key, layout);
+                    if (existing != null) {
+                        layout = existing;
+                    }
+                }
+            }
+            return layout;
+        }
+    }
+
+    private final NameTable table;
+
+    private final String[] names;
+
+    /**
+     * The positions by the folded names and by the names of the attributes
+     * the layout was created for.
+     */
+    private final Map<String, Integer> positions;
+
+    private AttributeLayout(NameTable table, String[] names, Attribute[] attributes) {
+        this.table = table;
+        this.names = names;
+        this.positions = new HashMap<String, Integer>(names.length * 4);
+        for (int i = 0; i < names.length; i++) {
+            positions.put(names[i], i);
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!positions.containsKey(attributes[i].getName())) {
+                positions.put(attributes[i].getName(), i);
+            }
+        }
+    }
+
+    /**
+     * Arranges the attributes in the order of their layout. Of several
+     * attributes with the same name the last one is kept.
+     *
+     * @param attributes
+     *            the attributes, they are rearranged in place, the first
+     *            {@link #size()} elements of the array are the attributes of
+     *            the layout.
+     * @return the layout of the attributes.
+     */
+    static AttributeLayout arrange(ObjectClass objectClass, Attribute[] attributes) {
+        NameTable table = TABLES.get(objectClass);
+        if (table == null) {
+            table = new NameTable();
+            if (TABLES.size() < MAX_OBJECT_CLASSES) {
+                NameTable existing = TABLES.putIfAbsent(objectClass, table);
+                if (existing != null) {
+                    table = existing;
+                }
+            }
+        }
+        final String[] folded = new String[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            folded[i] = table.fold(attributes[i].getName());
+        }
+        Integer[] order = new Integer[attributes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // stable, the attributes with the same name keep their order
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return folded[i1].compareTo(folded[i2]);
+            }
+        });
+        int count = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i + 1 == order.length || !folded[order[i]].equals(folded[order[i + 1]])) {
+                order[count++] = order[i];
+            }
+        }
+        String[] names = new String[count];
+        Attribute[] result = new Attribute[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = folded[order[i]];
+            result[i] = attributes[order[i]];
+        }
+        System.arraycopy(result, 0, attributes, 0, count);
+        Arrays.fill(attributes, count, attributes.length, null);
+        return table.layout(names, result);
+    }
+
+    /**
+     * Get the position of the attribute.
+     *
+     * @return the position or -1 if the layout does not contain the name.
+     */
+    int indexOf(String name) {
+        Integer position = positions.get(name);
+        if (position == null) {
+            position = positions.get(table.fold(name));
+        }
+        return position == null ? -1 : position;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Folds the name as {@link String#CASE_INSENSITIVE_ORDER} compares it, so
+     * the folded names are equal and ordered like the names in that order.
+     */
+    static String fold(String name) {
+        char[] chars = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (c != f) {
+                if (chars == null) {
+                    chars = name.toCharArray();
+                }
+                chars[i] = f;
+            }
+        }
+        return chars == null ? name : new String(chars);
+    }
+}
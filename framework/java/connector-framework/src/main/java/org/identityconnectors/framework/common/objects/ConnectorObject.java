@@ -23,8 +23,12 @@
  */
 package org.identityconnectors.framework.common.objects;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.identityconnectors.common.CollectionUtil;
@@ -36,10 +40,20 @@ import org.identityconnectors.common.CollectionUtil;
  *
  * The developer of a Connector will use a {@link ConnectorObjectBuilder} to
  * construct instances of ConnectorObject.
+ * <p/>
+ * The attributes are kept in an array in the order of an
+ * {@link AttributeLayout} shared by the objects of the object class with the
+ * same attribute names, the lookup by name is a hash lookup.
  */
 public final class ConnectorObject {
     final ObjectClass objectClass;
-    final Map<String, Attribute> attributeMap;
+    private final AttributeLayout layout;
+    private final Attribute[] attributes;
+
+    /**
+     * Read-only view of the attributes, created on first use.
+     */
+    private Set<Attribute> attributeSet;
 
     /**
      * Public only for serialization; please use {@link ConnectorObjectBuilder}.
@@ -58,14 +72,16 @@ public final class ConnectorObject {
             throw new IllegalArgumentException("The set can not be null or empty.");
         }
         this.objectClass = objectClass;
-        // create an easy look map..
-        this.attributeMap = AttributeUtil.toMap(set);
+        Attribute[] array = set.toArray(new Attribute[set.size()]);
+        this.layout = AttributeLayout.arrange(objectClass, array);
+        this.attributes =
+                array.length == layout.size() ? array : Arrays.copyOf(array, layout.size());
         // make sure the Uid was added..
-        if (!this.attributeMap.containsKey(Uid.NAME)) {
+        if (layout.indexOf(Uid.NAME) < 0) {
             throw new IllegalArgumentException("The Attribute set must contain a 'Uid'.");
         }
         // make sure the Name attribute was added..
-        if (!this.attributeMap.containsKey(Name.NAME)) {
+        if (layout.indexOf(Name.NAME) < 0) {
             throw new IllegalArgumentException("The Attribute set must contain a 'Name'.");
         }
     }
@@ -76,8 +92,13 @@ public final class ConnectorObject {
      * This includes the {@link Uid} and all {@link OperationalAttributes}.
      */
     public Set<Attribute> getAttributes() {
-        // create a copy/unmodifiable set..
-        return CollectionUtil.newReadOnlySet(this.attributeMap.values());
+        Set<Attribute> set = attributeSet;
+        if (set == null) {
+            // the view holds no state, a racing thread may create another one
+            set = new AttributeSet();
+            attributeSet = set;
+        }
+        return set;
     }
 
     /**
@@ -85,14 +106,15 @@ public final class ConnectorObject {
      */
     public Attribute getAttributeByName(String name) {
         // no need to clone since it has no setters
-        return this.attributeMap.get(name);
+        final int index = layout.indexOf(name);
+        return index < 0 ? null : attributes[index];
     }
 
     /**
      * Get the native identifier for this object.
      */
     public Uid getUid() {
-        final Attribute uid = this.attributeMap.get(Uid.NAME);
+        final Attribute uid = getAttributeByName(Uid.NAME);
         if (uid instanceof Uid) {
             return (Uid) uid;
         }
@@ -103,7 +125,7 @@ public final class ConnectorObject {
      * Gets the {@link Name} of the object.
      */
     public Name getName() {
-        final Attribute name = this.attributeMap.get(Name.NAME);
+        final Attribute name = getAttributeByName(Name.NAME);
         if (name instanceof Name) {
             return (Name) name;
         }
@@ -145,4 +167,50 @@ public final class ConnectorObject {
         return map.toString();
     }
 
+    /**
+     * Read-only set of the attributes backed by the array.
+     */
+    private final class AttributeSet extends AbstractSet<Attribute> {
+
+        @Override
+        public Iterator<Attribute> iterator() {
+            return new Iterator<Attribute>() {
+                private int index = 0;
+
+                public boolean hasNext() {
+                    return index < attributes.length;
+                }
+
+                public Attribute next() {
+                    if (index >= attributes.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return attributes[index++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return attributes.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Attribute)) {
+                return false;
+            }
+            final Attribute candidate = getAttributeByName(((Attribute) o).getName());
+            if (candidate != null) {
+                return candidate.equals(o);
+            }
+            // the names may be equal in the locale of Attribute.equals() only
+            return super.contains(o);
+        }
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.spi.operations;
+
+import java.util.Collection;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * Implement this interface to allow the Connector to read objects directly by
+ * their {@link Uid}.
+ * <p/>
+ * Without this operation the framework reads an object by a search with an
+ * equals filter of the {@link Uid}, which is a full scan for a connector whose
+ * filter translator can't handle the {@link Uid}. The framework prefers this
+ * operation for
+ * {@link org.identityconnectors.framework.api.operations.GetApiOp GetApiOp},
+ * for reading the object to update by
+ * {@link org.identityconnectors.framework.api.operations.UpdateApiOp#addAttributeValues
+ * addAttributeValues} and
+ * {@link org.identityconnectors.framework.api.operations.UpdateApiOp#removeAttributeValues
+ * removeAttributeValues} and for searches whose filter only matches
+ * {@link Uid}s.
+ * <p/>
+ * The objects are normalized and reduced to the attributes to get by the
+ * framework the same way as the results of a search.
+ *
+ * @since 1.4
+ */
+public interface GetOp extends SPIOperation {
+
+    /**
+     * Read an object by its {@link Uid}.
+     *
+     * @param objectClass
+     *            type of object to get. Will never be null.
+     * @param uid
+     *            the unique id of the object to get. Will never be null.
+     * @param options
+     *            additional options that impact the way this operation is run.
+     *            If the caller passes null, the framework will convert this
+     *            into an empty set of options, so SPI need not worry about this
+     *            ever being null.
+     * @return the object or <code>null</code> if no such object exists.
+     */
+    ConnectorObject getObject(ObjectClass objectClass, Uid uid, OperationOptions options);
+
+    /**
+     * Read the objects of the {@link Uid}s, in as few requests to the resource
+     * as possible.
+     *
+     * @param objectClass
+     *            type of objects to get. Will never be null.
+     * @param uids
+     *            the unique ids of the objects to get. Will never be null and
+     *            contains no duplicates.
+     * @param handler
+     *            the found objects should be returned to this handler in any
+     *            order, the unique ids without an object are skipped. If the
+     *            handler returns <code>false</code> no more objects should be
+     *            returned.
+     * @param options
+     *            additional options that impact the way this operation is run.
+     *            If the caller passes null, the framework will convert this
+     *            into an empty set of options, so SPI need not worry about this
+     *            ever being null.
+     */
+    void getObjects(ObjectClass objectClass, Collection<Uid> uids, ResultsHandler handler,
+            OperationOptions options);
+}
@@ -0,0 +1,150 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.common.script;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class CompiledScriptCacheTests {
+
+    private static class CountingScriptExecutorFactory extends ScriptExecutorFactory {
+
+        private final List<String> compiled = new ArrayList<String>();
+
+        private final List<String> closed = new ArrayList<String>();
+
+        @Override
+        public ScriptExecutor newScriptExecutor(ClassLoader loader, final String script,
+                boolean compile) {
+            compiled.add(script);
+            return new TestScriptExecutor(script);
+        }
+
+        @Override
+        public String getLanguageName() {
+            return "Counting";
+        }
+
+        private class TestScriptExecutor implements ScriptExecutor, Closeable {
+
+            private final String script;
+
+            private TestScriptExecutor(String script) {
+                this.script = script;
+            }
+
+            public Object execute(Map<String, Object> arguments) {
+                return script;
+            }
+
+            public void close() {
+                closed.add(script);
+            }
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        CountingScriptExecutorFactory factory = new CountingScriptExecutorFactory();
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        ClassLoader loader = getClass().getClassLoader();
+
+        ScriptExecutor first = cache.getScriptExecutor(factory, loader, "a");
+        assertSame(cache.getScriptExecutor(factory, loader, "a"), first);
+        assertSame(cache.getScriptExecutor(factory, loader, new String("a")), first);
+        assertNotSame(cache.getScriptExecutor(factory, loader, "b"), first);
+        assertNotSame(cache.getScriptExecutor(factory, null, "a"), first);
+        assertNotSame(cache.getScriptExecutor(factory, new URLClassLoader(new URL[0], loader), "a"),
+                first);
+        assertSame(cache.getScriptExecutor(factory, null, "a"), cache.getScriptExecutor(factory,
+                null, "a"));
+
+        assertEquals(factory.compiled.size(), 4);
+        assertEquals(cache.getMisses(), 4);
+        assertEquals(cache.getHits(), 4);
+        assertEquals(cache.size(), 4);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        CountingScriptExecutorFactory factory = new CountingScriptExecutorFactory();
+        CompiledScriptCache cache = new CompiledScriptCache(2);
+        ClassLoader loader = getClass().getClassLoader();
+
+        cache.getScriptExecutor(factory, loader, "a");
+        cache.getScriptExecutor(factory, loader, "b");
+        cache.getScriptExecutor(factory, loader, "a");
+        cache.getScriptExecutor(factory, loader, "c");
+        assertEquals(factory.closed.toString(), "[b]");
+        assertEquals(cache.getEvictions(), 1);
+
+        cache.getScriptExecutor(factory, loader, "a");
+        cache.getScriptExecutor(factory, loader, "b");
+        assertEquals(factory.compiled.toString(), "[a, b, c, b]");
+        assertEquals(factory.closed.toString(), "[b, c]");
+
+        cache.setMaxSize(1);
+        assertEquals(factory.closed.toString(), "[b, c, a]");
+        assertEquals(cache.size(), 1);
+
+        cache.clear();
+        assertEquals(factory.closed.toString(), "[b, c, a, b]");
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getEvictions(), 4);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        CountingScriptExecutorFactory factory = new CountingScriptExecutorFactory();
+        CompiledScriptCache cache = new CompiledScriptCache(0);
+        ClassLoader loader = getClass().getClassLoader();
+
+        assertEquals(cache.getScriptExecutor(factory, loader, "a").execute(null), "a");
+        cache.getScriptExecutor(factory, loader, "a");
+        assertEquals(factory.compiled.size(), 2);
+        assertEquals(factory.closed.size(), 0);
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testNewInstanceUsesCache() {
+        CompiledScriptCache cache = ScriptExecutorFactory.getCompiledScriptCache();
+        long misses = cache.getMisses();
+        ScriptExecutorFactory factory = ScriptExecutorFactory.newInstance("Foo");
+        // Foo returns no executor, nothing is cached
+        factory.newScriptExecutor(getClass().getClassLoader(), "foo", true);
+        assertEquals(factory.getLanguageName(), "Foo");
+        assertTrue(cache.getMisses() > misses);
+    }
+}
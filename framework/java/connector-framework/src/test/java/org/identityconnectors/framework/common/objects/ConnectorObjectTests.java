@@ -0,0 +1,143 @@
+/*
+ * ====================
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright 2008-2009 Sun Microsystems, Inc. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License("CDDL") (the "License").  You may not use this file
+ * except in compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://opensource.org/licenses/cddl1.php
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * When distributing the Covered Code, include this CDDL Header Notice in each file
+ * and include the License file at http://opensource.org/licenses/cddl1.php.
+ * If applicable, add the following below this CDDL Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ * ====================
+ */
+package org.identityconnectors.framework.common.objects;
+
+import static org.identityconnectors.framework.common.objects.AttributeBuilder.build;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.testng.annotations.Test;
+
+public class ConnectorObjectTests {
+
+    private ConnectorObject createObject(int i, int attributes) {
+        ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
+        bld.setUid("uid" + i);
+        bld.setName("user" + i);
+        for (int j = 0; j < attributes; j++) {
+            bld.addAttribute("attribute" + j, "value" + j + "-" + i);
+        }
+        bld.addAttribute("multi", "a" + i, "b" + i);
+        return bld.build();
+    }
+
+    @Test
+    public void testLookup() {
+        ConnectorObject obj = createObject(1, 10);
+        assertEquals(obj.getUid(), new Uid("uid1"));
+        assertEquals(obj.getName(), new Name("user1"));
+        assertEquals(obj.getAttributeByName("attribute3"), build("attribute3", "value3-1"));
+        assertEquals(obj.getAttributeByName("ATTRIBUTE3"), build("attribute3", "value3-1"));
+        assertEquals(obj.getAttributeByName("Multi").getValue().size(), 2);
+        assertNull(obj.getAttributeByName("attribute10"));
+        assertEquals(obj.getAttributes().size(), 13);
+    }
+
+    @Test
+    public void testAttributes() {
+        ConnectorObject obj = createObject(1, 10);
+        Set<Attribute> attributes = obj.getAttributes();
+        Set<Attribute> expected = new HashSet<Attribute>(attributes);
+        assertEquals(expected.size(), 13);
+        assertTrue(attributes.equals(expected));
+        assertTrue(expected.equals(attributes));
+        assertEquals(attributes.hashCode(), expected.hashCode());
+        assertTrue(attributes.contains(build("ATTRIBUTE1", "value1-1")));
+        assertFalse(attributes.contains(build("attribute1", "value1-2")));
+        assertFalse(attributes.contains(build("attribute10", "value1-1")));
+        assertFalse(attributes.contains("attribute1"));
+        // in the case insensitive order of the names
+        List<String> names = new ArrayList<String>();
+        for (Attribute attribute : attributes) {
+            names.add(attribute.getName());
+        }
+        Map<String, Attribute> map = AttributeUtil.toMap(expected);
+        assertEquals(names, new ArrayList<String>(map.keySet()));
+        try {
+            Iterator<Attribute> iter = attributes.iterator();
+            iter.next();
+            iter.remove();
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(createObject(1, 10), createObject(1, 10));
+        assertEquals(createObject(1, 10).hashCode(), createObject(1, 10).hashCode());
+        assertFalse(createObject(1, 10).equals(createObject(2, 10)));
+        assertFalse(createObject(1, 10).equals(createObject(1, 9)));
+    }
+
+    @Test
+    public void testSameNameLastWins() {
+        Set<Attribute> set = new java.util.LinkedHashSet<Attribute>();
+        set.add(new Uid("uid"));
+        set.add(new Name("name"));
+        set.add(build("foo", "1"));
+        set.add(build("FOO", "2"));
+        ConnectorObject obj = new ConnectorObject(ObjectClass.ACCOUNT, set);
+        assertEquals(obj.getAttributes().size(), 3);
+        assertEquals(obj.getAttributeByName("foo"), build("foo", "2"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingUid() {
+        new ConnectorObject(ObjectClass.ACCOUNT, CollectionUtil.<Attribute> newSet(new Name(
+                "name")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingName() {
+        new ConnectorObject(ObjectClass.ACCOUNT, CollectionUtil.<Attribute> newSet(new Uid(
+                "uid")));
+    }
+
+    @Test
+    public void testSingleValue() {
+        Attribute attribute = build("foo", "bar");
+        assertEquals(attribute.getValue().size(), 1);
+        assertSame(attribute.getValue(), attribute.getValue());
+        try {
+            attribute.getValue().set(0, "baz");
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(build("foo", new ArrayList<Object>()).getValue().size(), 0);
+        assertNull(build("foo").getValue());
+    }
+}